@@ -24,7 +24,7 @@ import java.io.File
 
 private val NORMAL_VERSION = 8
 private val EXPERIMENTAL_VERSION = 3
-private val DATA_CONTAINER_VERSION = 1
+private val DATA_CONTAINER_VERSION = 2
 
 private val NORMAL_VERSION_FILE_NAME = "format-version.txt"
 private val EXPERIMENTAL_VERSION_FILE_NAME = "experimental-format-version.txt"
@@ -47,7 +47,9 @@ class CacheVersion(
         get() {
             val metadata = JvmMetadataVersion.INSTANCE
             val bytecode = JvmBytecodeBinaryVersion.INSTANCE
-            return ownVersion * 1000000 +
+            val storageFormat = if (IncrementalCompilation.useMappedStorage()) 1 else 0
+            return storageFormat * 100000000 +
+                   ownVersion * 1000000 +
                    bytecode.major * 10000 + bytecode.minor * 100 +
                    metadata.major * 1000 + metadata.minor
         }
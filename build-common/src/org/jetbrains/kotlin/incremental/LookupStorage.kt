@@ -18,13 +18,14 @@ package org.jetbrains.kotlin.incremental
 
 import com.intellij.util.containers.MultiMap
 import com.intellij.util.containers.StringInterner
+import gnu.trove.TIntIntHashMap
+import gnu.trove.TObjectIntHashMap
 import org.jetbrains.annotations.TestOnly
 import org.jetbrains.kotlin.incremental.components.LookupTracker
 import org.jetbrains.kotlin.incremental.components.Position
 import org.jetbrains.kotlin.incremental.components.ScopeKind
 import org.jetbrains.kotlin.incremental.storage.*
 import org.jetbrains.kotlin.utils.Printer
-import org.jetbrains.kotlin.utils.keysToMap
 import java.io.File
 import java.util.*
 
@@ -61,22 +62,37 @@ open class LookupStorage(private val targetDataDir: File) : BasicMapsOwner() {
     fun get(lookupSymbol: LookupSymbol): Collection<String> {
         val key = LookupSymbolKey(lookupSymbol.name, lookupSymbol.scope)
         val fileIds = lookupMap[key] ?: return emptySet()
+        val paths = ArrayList<String>(fileIds.size)
 
-        return fileIds.mapNotNull {
+        for (id in fileIds) {
             // null means it's outdated
-            idToFile[it]?.path
+            val file = idToFile[id] ?: continue
+            paths.add(file.path)
         }
+
+        return paths
     }
 
     @Synchronized
     fun addAll(lookups: Set<Map.Entry<LookupSymbol, Collection<String>>>, allPaths: Set<String>) {
-        val pathToId = allPaths.keysToMap { addFileIfNeeded(File(it)) }
+        val pathToId = TObjectIntHashMap<String>(allPaths.size)
+        for (path in allPaths) {
+            pathToId.put(path, addFileIfNeeded(File(path)))
+        }
 
         for ((lookupSymbol, paths) in lookups) {
             val key = LookupSymbolKey(lookupSymbol.name, lookupSymbol.scope)
-            val fileIds = paths.mapTo(HashSet<Int>()) { pathToId[it]!! }
-            fileIds.addAll(lookupMap[key] ?: emptySet())
-            lookupMap[key] = fileIds
+            val fileIds = IntArray(paths.size)
+            var i = 0
+            for (path in paths) {
+                // TObjectIntHashMap returns 0 for absent keys, which is a valid file id
+                if (!pathToId.containsKey(path)) throw IllegalArgumentException("Lookup from $path which is not among all paths")
+                fileIds[i++] = pathToId[path]
+            }
+            Arrays.sort(fileIds)
+
+            val existing = lookupMap[key]
+            lookupMap[key] = if (existing == null) distinct(fileIds, fileIds.size) else union(existing, fileIds)
         }
     }
 
@@ -139,11 +155,11 @@ open class LookupStorage(private val targetDataDir: File) : BasicMapsOwner() {
 
     private fun doRemoveGarbage() {
         for (hash in lookupMap.keys) {
-            lookupMap[hash] = lookupMap[hash]!!.filter { it in idToFile }.toSet()
+            lookupMap[hash] = lookupMap[hash]!!.filter { it in idToFile }.toIntArray()
         }
 
         val oldFileToId = fileToId.toMap()
-        val oldIdToNewId = HashMap<Int, Int>(oldFileToId.size)
+        val oldIdToNewId = TIntIntHashMap(oldFileToId.size)
         idToFile.clean()
         fileToId.clean()
         size = 0
@@ -151,19 +167,66 @@ open class LookupStorage(private val targetDataDir: File) : BasicMapsOwner() {
 
         for ((file, oldId) in oldFileToId.entries) {
             val newId = addFileIfNeeded(file)
-            oldIdToNewId[oldId] = newId
+            oldIdToNewId.put(oldId, newId)
         }
 
         for (lookup in lookupMap.keys) {
-            val fileIds = lookupMap[lookup]!!.mapNotNull { oldIdToNewId[it] }.toSet()
+            val oldFileIds = lookupMap[lookup]!!
+            val fileIds = IntArray(oldFileIds.size)
+            var size = 0
+            for (oldId in oldFileIds) {
+                if (oldIdToNewId.containsKey(oldId)) {
+                    fileIds[size++] = oldIdToNewId[oldId]
+                }
+            }
 
-            if (fileIds.isEmpty()) {
+            if (size == 0) {
                 lookupMap.remove(lookup)
             }
             else {
-                lookupMap[lookup] = fileIds
+                Arrays.sort(fileIds, 0, size)
+                lookupMap[lookup] = distinct(fileIds, size)
+            }
+        }
+    }
+
+    /**
+     * @return sorted array of distinct elements of both sorted arrays
+     */
+    private fun union(a: IntArray, b: IntArray): IntArray {
+        val result = IntArray(a.size + b.size)
+        var i = 0
+        var j = 0
+        var size = 0
+
+        while (i < a.size || j < b.size) {
+            val next = when {
+                j == b.size -> a[i++]
+                i == a.size -> b[j++]
+                a[i] <= b[j] -> a[i++]
+                else -> b[j++]
+            }
+
+            if (size == 0 || result[size - 1] != next) {
+                result[size++] = next
             }
         }
+
+        return if (size == result.size) result else result.copyOf(size)
+    }
+
+    /**
+     * @return distinct elements of the first [size] elements of the sorted array
+     */
+    private fun distinct(sorted: IntArray, size: Int): IntArray {
+        var distinctSize = 0
+        for (i in 0..size - 1) {
+            if (distinctSize == 0 || sorted[distinctSize - 1] != sorted[i]) {
+                sorted[distinctSize++] = sorted[i]
+            }
+        }
+
+        return if (distinctSize == sorted.size) sorted else sorted.copyOf(distinctSize)
     }
 
     @TestOnly fun forceGC() {
@@ -20,6 +20,7 @@ import com.intellij.util.io.DataExternalizer
 import com.intellij.util.io.EnumeratorStringDescriptor
 import com.intellij.util.io.KeyDescriptor
 import org.jetbrains.annotations.TestOnly
+import org.jetbrains.kotlin.config.IncrementalCompilation
 import org.jetbrains.kotlin.utils.Printer
 import java.io.File
 
@@ -28,7 +29,11 @@ abstract class BasicMap<K : Comparable<K>, V>(
         keyDescriptor: KeyDescriptor<K>,
         valueExternalizer: DataExternalizer<V>
 ) {
-    protected val storage = LazyStorage(storageFile, keyDescriptor, valueExternalizer)
+    protected val storage: PersistentStorage<K, V> =
+            if (IncrementalCompilation.useMappedStorage())
+                MappedFileStorage(storageFile, keyDescriptor, valueExternalizer)
+            else
+                LazyStorage(storageFile, keyDescriptor, valueExternalizer)
 
     fun clean() {
         storage.clean()
@@ -18,19 +18,18 @@ package org.jetbrains.kotlin.incremental.storage
 
 import java.io.File
 
-internal class LookupMap(storage: File) : BasicMap<LookupSymbolKey, Collection<Int>>(storage, LookupSymbolKeyDescriptor, IntCollectionExternalizer) {
+internal class LookupMap(storage: File) : BasicMap<LookupSymbolKey, IntArray>(storage, LookupSymbolKeyDescriptor, SortedIntArrayExternalizer) {
     override fun dumpKey(key: LookupSymbolKey): String = key.toString()
 
-    override fun dumpValue(value: Collection<Int>): String = value.toString()
+    override fun dumpValue(value: IntArray): String = value.joinToString(prefix = "[", postfix = "]")
 
-    fun add(name: String, scope: String, fileId: Int) {
-        storage.append(LookupSymbolKey(name, scope), fileId)
-    }
-
-    operator fun get(key: LookupSymbolKey): Collection<Int>? = storage[key]
+    /**
+     * @return sorted ids of files containing the lookup
+     */
+    operator fun get(key: LookupSymbolKey): IntArray? = storage[key]
 
-    operator fun set(key: LookupSymbolKey, fileIds: Set<Int>) {
-        storage[key] = fileIds
+    operator fun set(key: LookupSymbolKey, sortedFileIds: IntArray) {
+        storage[key] = sortedFileIds
     }
 
     fun remove(key: LookupSymbolKey) {
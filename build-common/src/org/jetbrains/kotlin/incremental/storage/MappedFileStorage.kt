@@ -0,0 +1,479 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental.storage
+
+import com.intellij.util.io.DataExternalizer
+import com.intellij.util.io.IOUtil
+import com.intellij.util.io.KeyDescriptor
+import java.io.*
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * An alternative to [LazyStorage] which keeps all data of a map in a single append-only log file.
+ *
+ * The log is memory-mapped for reading, and an in-memory open addressing index points every key to the chunks of its value.
+ * All writes go to a memory buffer which is appended to the log only on [flush] with `memoryCachesOnly == false` or on [close],
+ * i.e. usually once per build. Outdated records are dropped by compaction on [close] when they take most of the log.
+ *
+ * Like [LazyStorage], the file is created only on the first write.
+ */
+class MappedFileStorage<K, V>(
+        storageFile: File,
+        private val keyDescriptor: KeyDescriptor<K>,
+        private val valueExternalizer: DataExternalizer<V>
+) : PersistentStorage<K, V> {
+    private val logFile = File(storageFile.path + LOG_FILE_SUFFIX)
+
+    private var index: OpenAddressingIndex<K>? = null
+    private var mapped: ByteBuffer? = null
+    private var flushedSize = 0L
+    private val pending = PendingRecords()
+    private var garbageSize = 0L
+
+    @Synchronized
+    private fun getIndexIfExists(): OpenAddressingIndex<K>? {
+        if (index == null && logFile.exists()) {
+            index = load()
+        }
+        return index
+    }
+
+    @Synchronized
+    private fun getIndexOrCreateNew(): OpenAddressingIndex<K> {
+        return getIndexIfExists() ?: OpenAddressingIndex(keyDescriptor).apply {
+            index = this
+            DataOutputStream(pending).run {
+                writeInt(MAGIC)
+                writeInt(FORMAT_VERSION)
+            }
+        }
+    }
+
+    override val keys: Collection<K>
+        @Synchronized get() = getIndexIfExists()?.keys() ?: listOf()
+
+    @Synchronized
+    override operator fun contains(key: K): Boolean =
+            getIndexIfExists()?.get(key) != null
+
+    @Synchronized
+    override operator fun get(key: K): V? {
+        val chunks = getIndexIfExists()?.get(key) ?: return null
+        return valueExternalizer.read(DataInputStream(ByteArrayInputStream(readChunks(chunks))))
+    }
+
+    @Synchronized
+    override operator fun set(key: K, value: V) {
+        val index = getIndexOrCreateNew()
+        val bytes = serialize { valueExternalizer.save(it, value) }
+        val position = writeRecord(PUT, key, bytes)
+        replace(index, key, Chunks(position, bytes.size))
+    }
+
+    @Synchronized
+    override fun remove(key: K) {
+        val index = getIndexIfExists() ?: return
+        val removed = index.remove(key) ?: return
+        garbageSize += removed.totalSize
+        writeRecord(REMOVE, key, null)
+    }
+
+    override fun append(key: K, value: String) {
+        append(key) { out -> IOUtil.writeUTF(out, value) }
+    }
+
+    override fun append(key: K, value: Int) {
+        append(key) { out -> out.writeInt(value) }
+    }
+
+    @Synchronized
+    private fun append(key: K, append: (DataOutput) -> Unit) {
+        val index = getIndexOrCreateNew()
+        val bytes = serialize(append)
+        val position = writeRecord(APPEND, key, bytes)
+        appendChunk(index, key, position, bytes.size)
+    }
+
+    private fun replace(index: OpenAddressingIndex<K>, key: K, chunks: Chunks) {
+        index.put(key, chunks)?.let { garbageSize += it.totalSize }
+    }
+
+    // The chunks are appended in place, so appending to a value n times takes O(n) in total
+    private fun appendChunk(index: OpenAddressingIndex<K>, key: K, position: Long, size: Int) {
+        val chunks = index[key]
+        if (chunks != null) {
+            chunks.add(position, size)
+        }
+        else {
+            replace(index, key, Chunks(position, size))
+        }
+    }
+
+    @Synchronized
+    override fun clean() {
+        index = null
+        mapped = null
+        flushedSize = 0
+        garbageSize = 0
+        pending.reset()
+        logFile.delete()
+    }
+
+    @Synchronized
+    override fun flush(memoryCachesOnly: Boolean) {
+        // Pending records are the memory cache of this storage, they're written in one batch
+        if (!memoryCachesOnly) {
+            writePending()
+        }
+    }
+
+    @Synchronized
+    override fun close() {
+        writePending()
+
+        if (flushedSize > COMPACTION_MIN_SIZE && garbageSize * 2 > flushedSize) {
+            compact()
+        }
+
+        index = null
+        mapped = null
+    }
+
+    private fun load(): OpenAddressingIndex<K> {
+        val index = OpenAddressingIndex(keyDescriptor)
+        val length = logFile.length()
+        checkLogSize(length)
+
+        // The log is read as a stream rather than mapped, so that an incomplete record at its end can be truncated on all platforms:
+        // a mapped file can't be truncated on Windows, and there's no way to unmap it explicitly
+        var validLength = length
+        DataInputStream(BufferedInputStream(FileInputStream(logFile))).use { input ->
+            if (length < HEADER_SIZE || input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                throw IOException("$logFile is not a storage file of a supported format")
+            }
+
+            var position = HEADER_SIZE.toLong()
+            while (position < length) {
+                try {
+                    // The index is updated only after a record is read completely
+                    val kind = input.readByte()
+                    val keySize = readRecordPartSize(input, length - position - 1)
+                    val keyBytes = ByteArray(keySize)
+                    input.readFully(keyBytes)
+                    val key = keyDescriptor.read(DataInputStream(ByteArrayInputStream(keyBytes)))
+                    var recordEnd = position + 1 + 4 + keyBytes.size
+                    when (kind) {
+                        PUT, APPEND -> {
+                            val size = readRecordPartSize(input, length - recordEnd)
+                            val valuePosition = recordEnd + 4
+                            recordEnd = valuePosition + size
+                            input.skipFully(size)
+
+                            if (kind == PUT) {
+                                replace(index, key, Chunks(valuePosition, size))
+                            }
+                            else {
+                                appendChunk(index, key, valuePosition, size)
+                            }
+                        }
+                        REMOVE -> index.remove(key)?.let { garbageSize += it.totalSize }
+                        else -> throw IOException("Unknown record kind $kind in $logFile")
+                    }
+                    position = recordEnd
+                }
+                catch (e: EOFException) {
+                    // The last record was not written completely, e.g. the build process was killed during flush
+                    validLength = position
+                    break
+                }
+            }
+        }
+
+        if (validLength < length) {
+            RandomAccessFile(logFile, "rw").use { it.channel.truncate(validLength) }
+        }
+        remap()
+
+        return index
+    }
+
+    /**
+     * Reads the size of a key or a value, which is followed by at most [remaining] bytes of the log.
+     * A size that exceeds them means that the record was not written completely, and a negative one that the log is corrupted.
+     */
+    private fun readRecordPartSize(input: DataInputStream, remaining: Long): Int {
+        val size = input.readInt()
+        if (size < 0) {
+            throw IOException("$logFile is corrupted: a record has negative size $size. Please rebuild the project to clear incremental caches")
+        }
+        if (size > remaining - 4) throw EOFException()
+        return size
+    }
+
+    private fun writeRecord(kind: Byte, key: K, value: ByteArray?): Long {
+        val keyBytes = serialize { keyDescriptor.save(it, key) }
+        val out = DataOutputStream(pending)
+        out.writeByte(kind.toInt())
+        out.writeInt(keyBytes.size)
+        out.write(keyBytes)
+        if (value == null) return -1
+
+        out.writeInt(value.size)
+        val position = flushedSize + pending.size()
+        out.write(value)
+        return position
+    }
+
+    private fun writePending() {
+        if (pending.size() == 0) return
+        checkLogSize(flushedSize + pending.size())
+
+        FileOutputStream(logFile, true).use { it.write(pending.buffer, 0, pending.size()) }
+        pending.reset()
+        remap()
+    }
+
+    private fun remap() {
+        RandomAccessFile(logFile, "r").use { file ->
+            val length = file.length()
+            checkLogSize(length)
+            mapped = file.channel.map(FileChannel.MapMode.READ_ONLY, 0, length)
+            flushedSize = length
+        }
+    }
+
+    /**
+     * Positions in the log are stored in a [ByteBuffer], so a log can't be longer than [Int.MAX_VALUE] bytes.
+     */
+    private fun checkLogSize(size: Long) {
+        if (size > MAX_LOG_SIZE) {
+            throw IOException("$logFile can't grow to $size bytes: the maximum size of a storage log is $MAX_LOG_SIZE bytes. " +
+                              "Please rebuild the project to clear incremental caches")
+        }
+    }
+
+    private fun readChunks(chunks: Chunks): ByteArray {
+        val result = ByteArray(chunks.totalSize.toInt())
+        var offset = 0
+        for (i in 0..chunks.count - 1) {
+            val position = chunks.position(i)
+            val size = chunks.size(i)
+            if (position >= flushedSize) {
+                System.arraycopy(pending.buffer, (position - flushedSize).toInt(), result, offset, size)
+            }
+            else {
+                val buffer = mapped!!.duplicate()
+                buffer.position(position.toInt())
+                buffer.get(result, offset, size)
+            }
+            offset += size
+        }
+        return result
+    }
+
+    /**
+     * Rewrites the log so that it contains a single record for each key, and replaces the old log with it.
+     */
+    private fun compact() {
+        val index = index ?: return
+        val compactedFile = File(logFile.path + ".tmp")
+
+        DataOutputStream(BufferedOutputStream(FileOutputStream(compactedFile))).use { out ->
+            out.writeInt(MAGIC)
+            out.writeInt(FORMAT_VERSION)
+            for (key in index.keys()) {
+                val keyBytes = serialize { keyDescriptor.save(it, key) }
+                val value = readChunks(index[key]!!)
+                out.writeByte(PUT.toInt())
+                out.writeInt(keyBytes.size)
+                out.write(keyBytes)
+                out.writeInt(value.size)
+                out.write(value)
+            }
+        }
+
+        // The old log can't be replaced on some platforms while it's mapped, in this case it's compacted next time
+        mapped = null
+        if (!logFile.delete() || !compactedFile.renameTo(logFile)) {
+            compactedFile.delete()
+            return
+        }
+
+        garbageSize = 0
+    }
+
+    private class PendingRecords : ByteArrayOutputStream(INITIAL_BUFFER_SIZE) {
+        val buffer: ByteArray
+            get() = buf
+    }
+
+    private companion object {
+        val LOG_FILE_SUFFIX = ".log"
+
+        val MAGIC = 0x4b4c4f47 // "KLOG"
+        val FORMAT_VERSION = 1
+        val HEADER_SIZE = 8
+
+        val PUT: Byte = 1
+        val APPEND: Byte = 2
+        val REMOVE: Byte = 3
+
+        val INITIAL_BUFFER_SIZE = 4096
+        val COMPACTION_MIN_SIZE = 64 * 1024L
+        val MAX_LOG_SIZE = Int.MAX_VALUE.toLong()
+
+        inline fun serialize(write: (DataOutput) -> Unit): ByteArray {
+            val bytes = ByteArrayOutputStream()
+            DataOutputStream(bytes).use(write)
+            return bytes.toByteArray()
+        }
+
+        fun DataInputStream.skipFully(size: Int) {
+            var remaining = size
+            while (remaining > 0) {
+                val skipped = skipBytes(remaining)
+                if (skipped <= 0) throw EOFException()
+                remaining -= skipped
+            }
+        }
+    }
+}
+
+/**
+ * Chunks of a serialized value in [MappedFileStorage]: positions and sizes of its parts in the log, in the order of appending.
+ */
+private class Chunks(position: Long, size: Int) {
+    private var positions = longArrayOf(position)
+    private var sizes = intArrayOf(size)
+
+    var count = 1
+        private set
+
+    var totalSize = size.toLong()
+        private set
+
+    fun position(i: Int): Long = positions[i]
+
+    fun size(i: Int): Int = sizes[i]
+
+    fun add(position: Long, size: Int) {
+        if (count == positions.size) {
+            positions = positions.copyOf(count * 2)
+            sizes = sizes.copyOf(count * 2)
+        }
+        positions[count] = position
+        sizes[count] = size
+        count++
+        totalSize += size
+    }
+}
+
+/**
+ * Hash table with open addressing and linear probing, which uses [KeyDescriptor] to compare keys.
+ * Values are [Chunks] of serialized values in [MappedFileStorage].
+ */
+private class OpenAddressingIndex<K>(private val keyDescriptor: KeyDescriptor<K>) {
+    private var keys = arrayOfNulls<Any>(INITIAL_CAPACITY)
+    private var values = arrayOfNulls<Chunks>(INITIAL_CAPACITY)
+    private var size = 0
+    private var occupied = 0
+
+    operator fun get(key: K): Chunks? {
+        val i = indexOf(key)
+        return if (i >= 0) values[i] else null
+    }
+
+    /**
+     * @return the previous value associated with the key
+     */
+    fun put(key: K, value: Chunks): Chunks? {
+        val existing = indexOf(key)
+        if (existing >= 0) {
+            val previous = values[existing]
+            values[existing] = value
+            return previous
+        }
+
+        if ((occupied + 1) * 4 > keys.size * 3) {
+            rehash(if ((size + 1) * 2 > keys.size) keys.size * 2 else keys.size)
+        }
+
+        var i = slotFor(key)
+        while (keys[i] != null && keys[i] !== TOMBSTONE) {
+            i = (i + 1) and (keys.size - 1)
+        }
+        if (keys[i] == null) {
+            occupied++
+        }
+        keys[i] = key
+        values[i] = value
+        size++
+        return null
+    }
+
+    fun remove(key: K): Chunks? {
+        val i = indexOf(key)
+        if (i < 0) return null
+
+        val previous = values[i]
+        keys[i] = TOMBSTONE
+        values[i] = null
+        size--
+        return previous
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    fun keys(): List<K> = keys.filter { it != null && it !== TOMBSTONE } as List<K>
+
+    @Suppress("UNCHECKED_CAST")
+    private fun indexOf(key: K): Int {
+        var i = slotFor(key)
+        while (true) {
+            val candidate = keys[i] ?: return -1
+            if (candidate !== TOMBSTONE && keyDescriptor.isEqual(candidate as K, key)) return i
+            i = (i + 1) and (keys.size - 1)
+        }
+    }
+
+    private fun slotFor(key: K): Int {
+        val hash = keyDescriptor.getHashCode(key)
+        return (hash xor (hash ushr 16)) and (keys.size - 1)
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun rehash(newCapacity: Int) {
+        val oldKeys = keys
+        val oldValues = values
+        keys = arrayOfNulls(newCapacity)
+        values = arrayOfNulls(newCapacity)
+        size = 0
+        occupied = 0
+
+        for (i in oldKeys.indices) {
+            val key = oldKeys[i]
+            if (key != null && key !== TOMBSTONE) {
+                put(key as K, oldValues[i]!!)
+            }
+        }
+    }
+
+    private companion object {
+        val INITIAL_CAPACITY = 16
+        val TOMBSTONE = Any()
+    }
+}
@@ -18,6 +18,7 @@ package org.jetbrains.kotlin.incremental.storage
 
 import com.intellij.openapi.util.io.FileUtil
 import com.intellij.util.io.DataExternalizer
+import com.intellij.util.io.DataInputOutputUtil
 import com.intellij.util.io.EnumeratorStringDescriptor
 import com.intellij.util.io.IOUtil
 import com.intellij.util.io.KeyDescriptor
@@ -171,6 +172,34 @@ object IntExternalizer : DataExternalizer<Int> {
     }
 }
 
+/**
+ * Stores a sorted array of non-negative ints as differences between neighbouring elements in the variable-length format,
+ * so that an element usually takes a single byte.
+ */
+object SortedIntArrayExternalizer : DataExternalizer<IntArray> {
+    override fun read(input: DataInput): IntArray {
+        val result = IntArray(DataInputOutputUtil.readINT(input))
+        var previous = 0
+
+        for (i in result.indices) {
+            previous += DataInputOutputUtil.readINT(input)
+            result[i] = previous
+        }
+
+        return result
+    }
+
+    override fun save(output: DataOutput, value: IntArray) {
+        DataInputOutputUtil.writeINT(output, value.size)
+        var previous = 0
+
+        for (element in value) {
+            DataInputOutputUtil.writeINT(output, element - previous)
+            previous = element
+        }
+    }
+}
+
 object PathStringDescriptor : EnumeratorStringDescriptor() {
     override fun getHashCode(value: String) = FileUtil.pathHashCode(value)
 
@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.codegen;
 
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.util.Function;
 import com.intellij.util.SmartList;
@@ -30,19 +31,30 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 import org.jetbrains.kotlin.backend.common.output.OutputFile;
 import org.jetbrains.kotlin.backend.common.output.OutputFileCollection;
+import org.jetbrains.kotlin.backend.common.output.SimpleOutputBinaryFile;
+import org.jetbrains.kotlin.codegen.optimization.TrivialMethodInliner;
 import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptor;
+import org.jetbrains.kotlin.descriptors.FunctionDescriptor;
 import org.jetbrains.kotlin.load.kotlin.JvmMetadataVersion;
 import org.jetbrains.kotlin.load.kotlin.PackagePartClassUtils;
 import org.jetbrains.kotlin.load.kotlin.PackageParts;
 import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.psi.KtFunction;
+import org.jetbrains.kotlin.resolve.DescriptorToSourceUtils;
+import org.jetbrains.kotlin.resolve.inline.InlineUtil;
 import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
 import org.jetbrains.kotlin.serialization.jvm.JvmPackageTable;
+import org.jetbrains.org.objectweb.asm.ClassReader;
 import org.jetbrains.org.objectweb.asm.Type;
+import org.jetbrains.org.objectweb.asm.util.TraceClassVisitor;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.*;
 
@@ -53,14 +65,33 @@ public class ClassFileFactory implements OutputFileCollection {
     private final ClassBuilderFactory builderFactory;
     private final Map<String, OutAndSourceFileList> generators = new LinkedHashMap<String, OutAndSourceFileList>();
 
+    @Nullable
+    private final ClassFileSink sink;
+    // Files not yet passed to the sink, in the order of generation. Only a finished prefix of this queue is ever written,
+    // so that classes removed while their outer class is being generated (see removeClasses) never reach the sink
+    private final Queue<String> pendingOutput = new ArrayDeque<String>();
+
     private boolean isDone = false;
 
     private final Set<File> packagePartSourceFiles = new HashSet<File>();
     private final Map<String, PackageParts> partsGroupedByPackage = new LinkedHashMap<String, PackageParts>();
 
+    private final ThreadLocal<OutputBatch> currentBatch = new ThreadLocal<OutputBatch>();
+
     public ClassFileFactory(@NotNull GenerationState state, @NotNull ClassBuilderFactory builderFactory) {
+        this(state, builderFactory, null);
+    }
+
+    public ClassFileFactory(
+            @NotNull GenerationState state,
+            @NotNull ClassBuilderFactory builderFactory,
+            @Nullable ClassFileSink sink
+    ) {
+        assert sink == null || !state.isTrivialMethodInliningEnabled() :
+                "Trivial methods are inlined into all classes of the module at once, so nothing can be written before that";
         this.state = state;
         this.builderFactory = builderFactory;
+        this.sink = sink;
     }
 
     @NotNull
@@ -78,22 +109,137 @@ public class ClassFileFactory implements OutputFileCollection {
             @NotNull Collection<? extends PsiFile> sourceFiles
     ) {
         ClassBuilder answer = builderFactory.newClassBuilder(origin);
-        generators.put(
-                asmType.getInternalName() + ".class",
-                new ClassBuilderAndSourceFileList(answer, toIoFilesIgnoringNonPhysical(sourceFiles))
+        ClassBuilderAndSourceFileList generator = new ClassBuilderAndSourceFileList(
+                answer, toIoFilesIgnoringNonPhysical(sourceFiles), sink != null && mayBeReadByInliner(origin)
         );
-        return answer;
+        String relativePath = asmType.getInternalName() + ".class";
+        OutputBatch batch = currentBatch.get();
+        if (batch != null) {
+            batch.generators.put(relativePath, generator);
+        }
+        else {
+            addGenerator(relativePath, generator);
+        }
+        return sink != null ? new StreamedClassBuilder(answer, generator) : answer;
+    }
+
+    private synchronized void addGenerator(@NotNull String relativePath, @NotNull OutAndSourceFileList generator) {
+        generators.put(relativePath, generator);
+        if (sink != null) {
+            pendingOutput.add(relativePath);
+        }
+    }
+
+    /**
+     * Anonymous objects and lambdas declared in inline functions, or in lambdas inlined into other functions, are read back by the inliner
+     * (see InlineCodegenUtil.buildClassReaderByInternalName) to regenerate them at call sites, so their bytecode is retained after
+     * they are written. Classes without a descriptor, such as the regenerated copies themselves, are retained as well.
+     */
+    private boolean mayBeReadByInliner(@NotNull JvmDeclarationOrigin origin) {
+        DeclarationDescriptor descriptor = origin.getDescriptor();
+        if (descriptor == null) return true;
+
+        for (DeclarationDescriptor current = descriptor; current != null; current = current.getContainingDeclaration()) {
+            if (InlineUtil.isInline(current)) return true;
+            if (current instanceof FunctionDescriptor) {
+                PsiElement declaration = DescriptorToSourceUtils.descriptorToDeclaration(current);
+                if (declaration instanceof KtFunction &&
+                    InlineUtil.isInlinedArgument((KtFunction) declaration, state.getBindingContext(), false)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Passes the longest prefix of pending files which are finished to the sink, and replaces them with their source file lists,
+     * so that the bytecode can be garbage collected unless the inliner may need it. If {@code all} is true, all pending files are written.
+     */
+    private synchronized void writeFinishedOutput(boolean all) {
+        assert sink != null : "There is no sink to write the output to";
+        while (!pendingOutput.isEmpty()) {
+            String relativePath = pendingOutput.peek();
+            OutAndSourceFileList generator = generators.get(relativePath);
+            if (generator != null && !(generator instanceof WrittenSourceFileList)) {
+                if (!all && !generator.isFinished()) break;
+
+                byte[] bytes = generator.asBytes(builderFactory);
+                sink.write(new SimpleOutputBinaryFile(generator.sourceFiles, relativePath, bytes));
+                generators.put(relativePath, generator.isReadByInliner()
+                                             ? new BytesAndSourceFileList(bytes, generator.sourceFiles)
+                                             : new WrittenSourceFileList(generator.sourceFiles));
+            }
+            pendingOutput.remove();
+        }
+    }
+
+    /**
+     * Runs the given generation task, collecting all classes and package parts it produces into a separate batch.
+     * Batches may be generated on different threads at the same time and then committed in a fixed order,
+     * so that the output doesn't depend on thread scheduling.
+     */
+    @NotNull
+    OutputBatch generateInBatch(@NotNull Runnable task) {
+        assert currentBatch.get() == null : "Batches can't be nested";
+        OutputBatch batch = new OutputBatch();
+        currentBatch.set(batch);
+        try {
+            task.run();
+        }
+        finally {
+            currentBatch.remove();
+        }
+        return batch;
+    }
+
+    synchronized void commitBatch(@NotNull OutputBatch batch) {
+        assert !isDone : "Already done!";
+        for (Map.Entry<String, OutAndSourceFileList> entry : batch.generators.entrySet()) {
+            addGenerator(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, List<String>> entry : batch.parts.entrySet()) {
+            for (String partShortName : entry.getValue()) {
+                addPart(entry.getKey(), partShortName);
+            }
+        }
+        if (sink != null) {
+            writeFinishedOutput(false);
+        }
     }
 
     void done() {
         if (!isDone) {
             isDone = true;
+            if (state.isTrivialMethodInliningEnabled() && builderFactory.getClassBuilderMode().generateBodies) {
+                inlineTrivialMethods();
+            }
             writeModuleMappings();
+            if (sink != null) {
+                writeFinishedOutput(true);
+            }
         }
     }
 
-    public void releaseGeneratedOutput() {
+    private void inlineTrivialMethods() {
+        Map<String, byte[]> classFiles = new LinkedHashMap<String, byte[]>();
+        Map<String, List<File>> sourceFiles = new HashMap<String, List<File>>();
+        for (Map.Entry<String, OutAndSourceFileList> entry : generators.entrySet()) {
+            if (entry.getValue() instanceof ClassBuilderAndSourceFileList) {
+                classFiles.put(entry.getKey(), entry.getValue().asBytes(builderFactory));
+                sourceFiles.put(entry.getKey(), entry.getValue().sourceFiles);
+            }
+        }
+
+        Map<String, byte[]> transformed = new TrivialMethodInliner().transform(classFiles, sourceFiles);
+        for (Map.Entry<String, byte[]> entry : transformed.entrySet()) {
+            generators.put(entry.getKey(), new BytesAndSourceFileList(entry.getValue(), sourceFiles.get(entry.getKey())));
+        }
+    }
+
+    public synchronized void releaseGeneratedOutput() {
         generators.clear();
+        pendingOutput.clear();
     }
 
     private void writeModuleMappings() {
@@ -107,7 +253,7 @@ public class ClassFileFactory implements OutputFileCollection {
         }
 
         if (builder.getPackagePartsCount() != 0) {
-            generators.put(outputFilePath, new OutAndSourceFileList(CollectionsKt.toList(packagePartSourceFiles)) {
+            addGenerator(outputFilePath, new OutAndSourceFileList(CollectionsKt.toList(packagePartSourceFiles)) {
                 @Override
                 public byte[] asBytes(ClassBuilderFactory factory) {
                     try {
@@ -152,7 +298,11 @@ public class ClassFileFactory implements OutputFileCollection {
 
     @NotNull
     public List<OutputFile> getCurrentOutput() {
-        return ContainerUtil.map(generators.keySet(), new Function<String, OutputFile>() {
+        List<String> relativePaths;
+        synchronized (this) {
+            relativePaths = new ArrayList<String>(generators.keySet());
+        }
+        return ContainerUtil.map(relativePaths, new Function<String, OutputFile>() {
             @Override
             public OutputFile fun(String relativeClassFilePath) {
                 return new OutputClassFile(relativeClassFilePath);
@@ -163,7 +313,23 @@ public class ClassFileFactory implements OutputFileCollection {
     @Override
     @Nullable
     public OutputFile get(@NotNull String relativePath) {
-        return generators.containsKey(relativePath) ? new OutputClassFile(relativePath) : null;
+        return findGenerator(relativePath) != null ? new OutputClassFile(relativePath) : null;
+    }
+
+    /**
+     * Classes generated by the current thread which are not committed yet take precedence: e.g. anonymous objects of a same-module
+     * inline function are generated into the batch of its call site, and the inliner reads them back before the batch is committed.
+     */
+    @Nullable
+    private OutAndSourceFileList findGenerator(@NotNull String relativePath) {
+        OutputBatch batch = currentBatch.get();
+        if (batch != null) {
+            OutAndSourceFileList generator = batch.generators.get(relativePath);
+            if (generator != null) return generator;
+        }
+        synchronized (this) {
+            return generators.get(relativePath);
+        }
     }
 
     @NotNull
@@ -208,16 +374,31 @@ public class ClassFileFactory implements OutputFileCollection {
         return new PackagePartRegistry() {
             @Override
             public void addPart(@NotNull String partShortName) {
-                MapsKt.getOrPut(partsGroupedByPackage, packageFqNameAsString, new Function0<PackageParts>() {
-                    @Override
-                    public PackageParts invoke() {
-                        return new PackageParts(packageFqNameAsString);
-                    }
-                }).getParts().add(partShortName);
+                OutputBatch batch = currentBatch.get();
+                if (batch != null) {
+                    MapsKt.getOrPut(batch.parts, packageFqNameAsString, new Function0<List<String>>() {
+                        @Override
+                        public List<String> invoke() {
+                            return new ArrayList<String>();
+                        }
+                    }).add(partShortName);
+                }
+                else {
+                    ClassFileFactory.this.addPart(packageFqNameAsString, partShortName);
+                }
             }
         };
     }
 
+    private void addPart(@NotNull final String packageFqName, @NotNull String partShortName) {
+        MapsKt.getOrPut(partsGroupedByPackage, packageFqName, new Function0<PackageParts>() {
+            @Override
+            public PackageParts invoke() {
+                return new PackageParts(packageFqName);
+            }
+        }).getParts().add(partShortName);
+    }
+
     public void registerPackagePartSourceFiles(Collection<KtFile> files) {
         packagePartSourceFiles.addAll(toIoFilesIgnoringNonPhysical(PackagePartClassUtils.getFilesWithCallables(files)));
     }
@@ -252,19 +433,23 @@ public class ClassFileFactory implements OutputFileCollection {
         @NotNull
         @Override
         public List<File> getSourceFiles() {
-            OutAndSourceFileList pair = generators.get(relativeClassFilePath);
-            if (pair == null) {
+            return getGenerator().sourceFiles;
+        }
+
+        @NotNull
+        private OutAndSourceFileList getGenerator() {
+            OutAndSourceFileList generator = findGenerator(relativeClassFilePath);
+            if (generator == null) {
                 throw new IllegalStateException("No record for binary file " + relativeClassFilePath);
             }
-
-            return pair.sourceFiles;
+            return generator;
         }
 
         @NotNull
         @Override
         public byte[] asByteArray() {
             try {
-                return generators.get(relativeClassFilePath).asBytes(builderFactory);
+                return getGenerator().asBytes(builderFactory);
             }
             catch (RuntimeException e) {
                 throw new RuntimeException("Error generating class file " + this.toString() + ": " + e.getMessage(), e);
@@ -275,7 +460,7 @@ public class ClassFileFactory implements OutputFileCollection {
         @Override
         public String asText() {
             try {
-                return generators.get(relativeClassFilePath).asText(builderFactory);
+                return getGenerator().asText(builderFactory);
             }
             catch (RuntimeException e) {
                 throw new RuntimeException("Error generating class file " + this.toString() + ": " + e.getMessage(), e);
@@ -291,10 +476,13 @@ public class ClassFileFactory implements OutputFileCollection {
 
     private static final class ClassBuilderAndSourceFileList extends OutAndSourceFileList {
         private final ClassBuilder classBuilder;
+        private final boolean readByInliner;
+        private volatile boolean finished = false;
 
-        private ClassBuilderAndSourceFileList(ClassBuilder classBuilder, List<File> sourceFiles) {
+        private ClassBuilderAndSourceFileList(ClassBuilder classBuilder, List<File> sourceFiles, boolean readByInliner) {
             super(sourceFiles);
             this.classBuilder = classBuilder;
+            this.readByInliner = readByInliner;
         }
 
         @Override
@@ -306,6 +494,45 @@ public class ClassFileFactory implements OutputFileCollection {
         public String asText(ClassBuilderFactory factory) {
             return factory.asText(classBuilder);
         }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReadByInliner() {
+            return readByInliner;
+        }
+    }
+
+    private static final class BytesAndSourceFileList extends OutAndSourceFileList {
+        private final byte[] bytes;
+
+        private BytesAndSourceFileList(byte[] bytes, List<File> sourceFiles) {
+            super(sourceFiles);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public byte[] asBytes(ClassBuilderFactory factory) {
+            return bytes;
+        }
+
+        @Override
+        public String asText(ClassBuilderFactory factory) {
+            StringWriter writer = new StringWriter();
+            new ClassReader(bytes).accept(new TraceClassVisitor(new PrintWriter(writer)), ClassReader.SKIP_FRAMES);
+            return writer.toString();
+        }
+    }
+
+    static final class OutputBatch {
+        private final Map<String, OutAndSourceFileList> generators = new LinkedHashMap<String, OutAndSourceFileList>();
+        private final Map<String, List<String>> parts = new LinkedHashMap<String, List<String>>();
+
+        private OutputBatch() {
+        }
     }
 
     private static abstract class OutAndSourceFileList {
@@ -319,11 +546,65 @@ public class ClassFileFactory implements OutputFileCollection {
         public abstract byte[] asBytes(ClassBuilderFactory factory);
 
         public abstract String asText(ClassBuilderFactory factory);
+
+        public boolean isFinished() {
+            return true;
+        }
+
+        public boolean isReadByInliner() {
+            return false;
+        }
+    }
+
+    private static final class WrittenSourceFileList extends OutAndSourceFileList {
+        private WrittenSourceFileList(List<File> sourceFiles) {
+            super(sourceFiles);
+        }
+
+        @Override
+        public byte[] asBytes(ClassBuilderFactory factory) {
+            throw new IllegalStateException("Output file has already been written and its content is not retained");
+        }
+
+        @Override
+        public String asText(ClassBuilderFactory factory) {
+            throw new IllegalStateException("Output file has already been written and its content is not retained");
+        }
+    }
+
+    private final class StreamedClassBuilder extends DelegatingClassBuilder {
+        private final ClassBuilder delegate;
+        private final ClassBuilderAndSourceFileList generator;
+
+        private StreamedClassBuilder(@NotNull ClassBuilder delegate, @NotNull ClassBuilderAndSourceFileList generator) {
+            this.delegate = delegate;
+            this.generator = generator;
+        }
+
+        @NotNull
+        @Override
+        protected ClassBuilder getDelegate() {
+            return delegate;
+        }
+
+        @Override
+        public void done() {
+            super.done();
+            generator.finished = true;
+            writeFinishedOutput(false);
+        }
     }
 
     public void removeClasses(Set<String> classNamesToRemove) {
-        for (String classInternalName : classNamesToRemove) {
-            generators.remove(classInternalName + ".class");
+        OutputBatch batch = currentBatch.get();
+        synchronized (this) {
+            for (String classInternalName : classNamesToRemove) {
+                String relativePath = classInternalName + ".class";
+                if (batch != null) {
+                    batch.generators.remove(relativePath);
+                }
+                generators.remove(relativePath);
+            }
         }
     }
 
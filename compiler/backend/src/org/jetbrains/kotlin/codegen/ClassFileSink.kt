@@ -0,0 +1,29 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.codegen
+
+import org.jetbrains.kotlin.backend.common.output.OutputFile
+
+/**
+ * Receives output files from [ClassFileFactory] as soon as they're generated, so that their bytes don't have to stay in memory
+ * until the end of compilation. Files are passed in the same order as they're listed by [ClassFileFactory.asList].
+ * Calls are never concurrent, but may come from different threads when bytecode is generated in parallel.
+ */
+interface ClassFileSink {
+    fun write(file: OutputFile)
+}
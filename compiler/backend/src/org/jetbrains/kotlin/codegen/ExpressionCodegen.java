@@ -48,6 +48,7 @@ import org.jetbrains.kotlin.codegen.signature.BothSignatureWriter;
 import org.jetbrains.kotlin.codegen.signature.JvmSignatureWriter;
 import org.jetbrains.kotlin.codegen.state.GenerationState;
 import org.jetbrains.kotlin.codegen.state.KotlinTypeMapper;
+import org.jetbrains.kotlin.codegen.when.StringSwitchCodegen;
 import org.jetbrains.kotlin.codegen.when.SwitchCodegen;
 import org.jetbrains.kotlin.codegen.when.SwitchCodegenUtil;
 import org.jetbrains.kotlin.coroutines.CoroutineUtilKt;
@@ -57,7 +58,6 @@ import org.jetbrains.kotlin.descriptors.impl.SyntheticFieldDescriptor;
 import org.jetbrains.kotlin.descriptors.impl.TypeAliasConstructorDescriptor;
 import org.jetbrains.kotlin.diagnostics.DiagnosticUtils;
 import org.jetbrains.kotlin.diagnostics.Errors;
-import org.jetbrains.kotlin.incremental.components.NoLookupLocation;
 import org.jetbrains.kotlin.lexer.KtTokens;
 import org.jetbrains.kotlin.load.java.JvmAbi;
 import org.jetbrains.kotlin.load.java.descriptors.SamConstructorDescriptor;
@@ -602,9 +602,9 @@ public class ExpressionCodegen extends KtVisitor<StackValue, StackValue> impleme
     private void generateFor(@NotNull KtForExpression forExpression) {
         ResolvedCall<? extends CallableDescriptor> loopRangeCall = RangeCodegenUtil.getLoopRangeResolvedCall(forExpression, bindingContext);
         if (loopRangeCall != null) {
-            AbstractForLoopGenerator optimizedForLoopGenerator = createOptimizedForLoopGeneratorOrNull(forExpression, loopRangeCall);
-            if (optimizedForLoopGenerator != null) {
-                generateForLoop(optimizedForLoopGenerator);
+            ProgressionBounds bounds = createProgressionBoundsOrNull(loopRangeCall);
+            if (bounds != null) {
+                generateForLoop(createProgressionLoopGenerator(forExpression, bounds));
                 return;
             }
         }
@@ -617,42 +617,83 @@ public class ExpressionCodegen extends KtVisitor<StackValue, StackValue> impleme
         if (asmLoopRangeType.getSort() == Type.ARRAY) {
             generateForLoop(new ForInArrayLoopGenerator(forExpression));
         }
-        else if (RangeCodegenUtil.isRange(loopRangeType)) {
-            generateForLoop(new ForInRangeInstanceLoopGenerator(forExpression));
-        }
-        else if (RangeCodegenUtil.isProgression(loopRangeType)) {
-            generateForLoop(new ForInProgressionExpressionLoopGenerator(forExpression));
+        else if (RangeCodegenUtil.isRange(loopRangeType) || RangeCodegenUtil.isProgression(loopRangeType)) {
+            generateForLoop(createProgressionLoopGenerator(forExpression, new ProgressionInstanceBounds(loopRange, loopRangeType)));
         }
         else {
             generateForLoop(new IteratorForLoopGenerator(forExpression));
         }
     }
 
-    @Nullable
-    private AbstractForLoopGenerator createOptimizedForLoopGeneratorOrNull(
+    @NotNull
+    private AbstractForLoopGenerator createProgressionLoopGenerator(
             @NotNull KtForExpression forExpression,
-            @NotNull ResolvedCall<? extends CallableDescriptor> loopRangeCall
+            @NotNull ProgressionBounds bounds
     ) {
-        CallableDescriptor loopRangeCallee = loopRangeCall.getResultingDescriptor();
-        if (RangeCodegenUtil.isPrimitiveNumberRangeTo(loopRangeCallee)) {
-            return new ForInRangeLiteralLoopGenerator(forExpression, loopRangeCall);
+        Integer constantStep = bounds.getConstantStep();
+        return constantStep != null
+               ? new ForInRangeLoopGenerator(forExpression, bounds, constantStep)
+               : new ForInProgressionLoopGenerator(forExpression, bounds);
+    }
+
+    /**
+     * Recognizes stdlib progression builders ({@code ..}, {@code downTo}, {@code until}, {@code indices}, {@code reversed()}
+     * and {@code step}) and their combinations, so that loops over them don't create progression objects.
+     */
+    @Nullable
+    private ProgressionBounds createProgressionBoundsOrNull(@NotNull ResolvedCall<? extends CallableDescriptor> rangeCall) {
+        CallableDescriptor rangeCallee = rangeCall.getResultingDescriptor();
+        if (RangeCodegenUtil.isPrimitiveNumberRangeTo(rangeCallee)) {
+            return new RangeLiteralBounds(rangeCall.getDispatchReceiver(), getSingleArgumentExpression(rangeCall), 1);
+        }
+        else if (RangeCodegenUtil.isPrimitiveNumberDownTo(rangeCallee)) {
+            return new RangeLiteralBounds(rangeCall.getExtensionReceiver(), getSingleArgumentExpression(rangeCall), -1);
         }
-        else if (RangeCodegenUtil.isPrimitiveNumberDownTo(loopRangeCallee)) {
-            return new ForInDownToProgressionLoopGenerator(forExpression, loopRangeCall);
+        else if (RangeCodegenUtil.isPrimitiveNumberUntil(rangeCallee)) {
+            return new UntilBounds(rangeCall.getExtensionReceiver(), getSingleArgumentExpression(rangeCall));
         }
-        else if (RangeCodegenUtil.isArrayOrPrimitiveArrayIndices(loopRangeCallee)) {
-            return new ForInArrayIndicesRangeLoopGenerator(forExpression, loopRangeCall);
+        else if (RangeCodegenUtil.isArrayOrPrimitiveArrayIndices(rangeCallee)) {
+            return new ArrayIndicesBounds(rangeCall);
         }
-        else if (RangeCodegenUtil.isCollectionIndices(loopRangeCallee)) {
-            return new ForInCollectionIndicesRangeLoopGenerator(forExpression, loopRangeCall);
+        else if (RangeCodegenUtil.isCollectionIndices(rangeCallee)) {
+            return new CollectionIndicesBounds(rangeCall);
         }
-        else if (RangeCodegenUtil.isCharSequenceIndices(loopRangeCallee)) {
-            return new ForInCharSequenceIndicesRangeLoopGenerator(forExpression, loopRangeCall);
+        else if (RangeCodegenUtil.isCharSequenceIndices(rangeCallee)) {
+            return new CharSequenceIndicesBounds(rangeCall);
+        }
+        else if (RangeCodegenUtil.isPrimitiveProgressionReversed(rangeCallee)) {
+            return new ReversedProgressionBounds(createReceiverProgressionBounds(rangeCall));
+        }
+        else if (RangeCodegenUtil.isPrimitiveProgressionStep(rangeCallee)) {
+            KtExpression stepExpression = getSingleArgumentExpression(rangeCall);
+            if (stepExpression == null) return null;
+            return new SteppedProgressionBounds(createReceiverProgressionBounds(rangeCall), stepExpression);
         }
 
         return null;
     }
 
+    @NotNull
+    private ProgressionBounds createReceiverProgressionBounds(@NotNull ResolvedCall<? extends CallableDescriptor> rangeCall) {
+        ReceiverValue receiver = rangeCall.getExtensionReceiver();
+        assert receiver != null : "Extension receiver should be non-null: " + rangeCall.getResultingDescriptor();
+
+        if (receiver instanceof ExpressionReceiver) {
+            ResolvedCall<? extends CallableDescriptor> receiverCall =
+                    RangeCodegenUtil.getRangeResolvedCall(((ExpressionReceiver) receiver).getExpression(), bindingContext);
+            if (receiverCall != null) {
+                ProgressionBounds bounds = createProgressionBoundsOrNull(receiverCall);
+                if (bounds != null) return bounds;
+            }
+        }
+
+        KotlinType receiverType = receiver.getType();
+        if (!RangeCodegenUtil.isRange(receiverType) && !RangeCodegenUtil.isProgression(receiverType)) {
+            receiverType = getExpectedReceiverType(rangeCall);
+        }
+        return new ProgressionInstanceBounds(receiver, receiverType);
+    }
+
     @NotNull
     private static KotlinType getExpectedReceiverType(@NotNull ResolvedCall<? extends CallableDescriptor> resolvedCall) {
         ReceiverParameterDescriptor extensionReceiver = resolvedCall.getResultingDescriptor().getExtensionReceiverParameter();
@@ -837,19 +878,6 @@ public class ExpressionCodegen extends KtVisitor<StackValue, StackValue> impleme
                 task.run();
             }
         }
-
-        // This method consumes range/progression from stack
-        // The result is stored to local variable
-        protected void generateRangeOrProgressionProperty(
-                @NotNull Type loopRangeType,
-                @NotNull String getterName,
-                @NotNull Type getterReturnType,
-                @NotNull Type varType,
-                int varToStore
-        ) {
-            v.invokevirtual(loopRangeType.getInternalName(), getterName, "()" + getterReturnType.getDescriptor(), false);
-            StackValue.local(varToStore, varType).store(StackValue.onStack(getterReturnType), v);
-        }
     }
 
     private void generateLoopBody(@Nullable KtExpression body) {
@@ -1001,12 +1029,15 @@ public class ExpressionCodegen extends KtVisitor<StackValue, StackValue> impleme
     }
 
     private abstract class AbstractForInProgressionOrRangeLoopGenerator extends AbstractForLoopGenerator {
+        protected final ProgressionBounds bounds;
+
         protected int endVar;
 
         private StackValue loopParameter;
 
-        private AbstractForInProgressionOrRangeLoopGenerator(@NotNull KtForExpression forExpression) {
+        private AbstractForInProgressionOrRangeLoopGenerator(@NotNull KtForExpression forExpression, @NotNull ProgressionBounds bounds) {
             super(forExpression);
+            this.bounds = bounds;
 
             switch (asmElementType.getSort()) {
                 case Type.INT:
@@ -1055,28 +1086,22 @@ public class ExpressionCodegen extends KtVisitor<StackValue, StackValue> impleme
         }
     }
 
-    private abstract class AbstractForInRangeLoopGenerator extends AbstractForInProgressionOrRangeLoopGenerator {
+    private class ForInRangeLoopGenerator extends AbstractForInProgressionOrRangeLoopGenerator {
         private final int step;
 
-        private AbstractForInRangeLoopGenerator(@NotNull KtForExpression forExpression, int step) {
-            super(forExpression);
+        private ForInRangeLoopGenerator(@NotNull KtForExpression forExpression, @NotNull ProgressionBounds bounds, int step) {
+            super(forExpression, bounds);
             this.step = step;
-            assert step == 1 || step == -1 : "'step' should be either 1 or -1: " + step;
-        }
-
-        private AbstractForInRangeLoopGenerator(@NotNull KtForExpression forExpression) {
-            this(forExpression, 1);
+            assert step != 0 : "'step' should be non-zero";
         }
 
         @Override
         public void beforeLoop() {
             super.beforeLoop();
 
-            storeRangeStartAndEnd();
+            bounds.store(this, loopParameter(), StackValue.local(endVar, asmElementType), null);
         }
 
-        protected abstract void storeRangeStartAndEnd();
-
         @Override
         public void checkEmptyLoop(@NotNull Label loopExit) {
             loopParameter().put(asmElementType, v);
@@ -1108,7 +1133,7 @@ public class ExpressionCodegen extends KtVisitor<StackValue, StackValue> impleme
         protected void increment(@NotNull Label loopExit) {
             checkPostCondition(loopExit);
 
-            if (loopParameterType == Type.INT_TYPE) {
+            if (loopParameterType == Type.INT_TYPE && step >= Short.MIN_VALUE && step <= Short.MAX_VALUE) {
                 v.iinc(loopParameterVar, step);
             }
             else {
@@ -1120,72 +1145,207 @@ public class ExpressionCodegen extends KtVisitor<StackValue, StackValue> impleme
         }
     }
 
-    private class ForInRangeLiteralLoopGenerator extends AbstractForInRangeLoopGenerator {
-        private final ReceiverValue from;
-        private final KtExpression to;
+    private class ForInProgressionLoopGenerator extends AbstractForInProgressionOrRangeLoopGenerator {
+        private int incrementVar;
+        private final Type incrementType;
 
-        private ForInRangeLiteralLoopGenerator(@NotNull KtForExpression forExpression, @NotNull ResolvedCall<?> loopRangeCall) {
-            super(forExpression);
-            this.from = loopRangeCall.getDispatchReceiver();
-            this.to = getSingleArgumentExpression(loopRangeCall);
+        private ForInProgressionLoopGenerator(@NotNull KtForExpression forExpression, @NotNull ProgressionBounds bounds) {
+            super(forExpression, bounds);
+            this.incrementType = getProgressionStepType(asmElementType);
         }
 
         @Override
-        protected void storeRangeStartAndEnd() {
-            loopParameter().store(generateReceiverValue(from, false), v);
-            StackValue.local(endVar, asmElementType).store(gen(to), v);
+        public void beforeLoop() {
+            super.beforeLoop();
+
+            incrementVar = createLoopTempVariable(incrementType);
+
+            bounds.store(this, loopParameter(), StackValue.local(endVar, asmElementType), StackValue.local(incrementVar, incrementType));
+        }
+
+        @Override
+        public void checkEmptyLoop(@NotNull Label loopExit) {
+            loopParameter().put(asmElementType, v);
+            v.load(endVar, asmElementType);
+            v.load(incrementVar, incrementType);
+
+            Label negativeIncrement = new Label();
+            Label afterIf = new Label();
+
+            if (asmElementType.getSort() == Type.LONG) {
+                v.lconst(0L);
+                v.lcmp();
+                v.ifle(negativeIncrement); // if increment < 0, jump
+
+                // increment > 0
+                v.lcmp();
+                v.ifgt(loopExit);
+                v.goTo(afterIf);
+
+                // increment < 0
+                v.mark(negativeIncrement);
+                v.lcmp();
+                v.iflt(loopExit);
+                v.mark(afterIf);
+            }
+            else {
+                v.ifle(negativeIncrement); // if increment < 0, jump
+
+                // increment > 0
+                v.ificmpgt(loopExit);
+                v.goTo(afterIf);
+
+                // increment < 0
+                v.mark(negativeIncrement);
+                v.ificmplt(loopExit);
+                v.mark(afterIf);
+            }
+        }
+
+        @Override
+        protected void assignToLoopParameter() {
+        }
+
+        @Override
+        protected void increment(@NotNull Label loopExit) {
+            checkPostCondition(loopExit);
+
+            StackValue loopParameter = loopParameter();
+            loopParameter.put(asmElementType, v);
+            v.load(incrementVar, asmElementType);
+            v.add(asmElementType);
+
+            if (asmElementType == Type.BYTE_TYPE || asmElementType == Type.SHORT_TYPE || asmElementType == Type.CHAR_TYPE) {
+                StackValue.coerce(Type.INT_TYPE, asmElementType, v);
+            }
+
+            loopParameter.store(StackValue.onStack(asmElementType), v);
         }
     }
 
-    private class ForInDownToProgressionLoopGenerator extends AbstractForInRangeLoopGenerator {
+    @NotNull
+    private static Type getProgressionStepType(@NotNull Type elementType) {
+        return elementType.getSort() == Type.LONG ? Type.LONG_TYPE : Type.INT_TYPE;
+    }
+
+    /**
+     * First element, last element and step of a primitive progression, computed without creating the progression object.
+     * The last element is normalized the same way as in the progression constructor, so that it's actually reached by the loop.
+     */
+    private abstract class ProgressionBounds {
+        /**
+         * @return the step if it's known at compile time and fits into int, null otherwise
+         */
+        @Nullable
+        public abstract Integer getConstantStep();
+
+        /**
+         * Evaluates the progression expression and stores its bounds. The step is stored only if it's not constant.
+         */
+        public abstract void store(
+                @NotNull AbstractForLoopGenerator loop,
+                @NotNull StackValue first,
+                @NotNull StackValue last,
+                @Nullable StackValue step
+        );
+    }
+
+    private class RangeLiteralBounds extends ProgressionBounds {
         private final ReceiverValue from;
         private final KtExpression to;
+        private final int step;
 
-        private ForInDownToProgressionLoopGenerator(@NotNull KtForExpression forExpression, @NotNull ResolvedCall<?> loopRangeCall) {
-            super(forExpression, -1);
-            this.from = loopRangeCall.getExtensionReceiver();
-            this.to = getSingleArgumentExpression(loopRangeCall);
+        private RangeLiteralBounds(@Nullable ReceiverValue from, @Nullable KtExpression to, int step) {
+            this.from = from;
+            this.to = to;
+            this.step = step;
         }
 
+        @Nullable
         @Override
-        protected void storeRangeStartAndEnd() {
-            loopParameter().store(generateReceiverValue(from, false), v);
-            StackValue.local(endVar, asmElementType).store(gen(to), v);
+        public Integer getConstantStep() {
+            return step;
+        }
+
+        @Override
+        public void store(
+                @NotNull AbstractForLoopGenerator loop,
+                @NotNull StackValue first,
+                @NotNull StackValue last,
+                @Nullable StackValue step
+        ) {
+            first.store(generateReceiverValue(from, false), v);
+            last.store(gen(to), v);
         }
     }
 
-    private class ForInRangeInstanceLoopGenerator extends AbstractForInRangeLoopGenerator {
-        private ForInRangeInstanceLoopGenerator(@NotNull KtForExpression forExpression) {
-            super(forExpression);
+    private class UntilBounds extends RangeLiteralBounds {
+        private UntilBounds(@Nullable ReceiverValue from, @Nullable KtExpression to) {
+            super(from, to, 1);
         }
 
         @Override
-        protected void storeRangeStartAndEnd() {
-            KotlinType loopRangeType = bindingContext.getType(forExpression.getLoopRange());
-            assert loopRangeType != null;
-            Type asmLoopRangeType = asmType(loopRangeType);
-            gen(forExpression.getLoopRange(), asmLoopRangeType);
-            v.dup();
+        public void store(
+                @NotNull AbstractForLoopGenerator loop,
+                @NotNull StackValue first,
+                @NotNull StackValue last,
+                @Nullable StackValue step
+        ) {
+            super.store(loop, first, last, step);
+
+            // 'x until MIN_VALUE' is empty, and its last element can't be computed as 'MIN_VALUE - 1'
+            Type elementType = loop.asmElementType;
+            Label notEmpty = new Label();
+            Label end = new Label();
+            last.put(elementType, v);
+            if (elementType.getSort() == Type.LONG) {
+                v.lconst(Long.MIN_VALUE);
+                v.lcmp();
+                v.ifne(notEmpty);
+            }
+            else {
+                v.iconst(elementType == Type.CHAR_TYPE ? Character.MIN_VALUE : Integer.MIN_VALUE);
+                v.ificmpne(notEmpty);
+            }
 
-            // ranges inherit first and last from corresponding progressions
-            generateRangeOrProgressionProperty(asmLoopRangeType, "getFirst", asmElementType, loopParameterType, loopParameterVar);
-            generateRangeOrProgressionProperty(asmLoopRangeType, "getLast", asmElementType, asmElementType, endVar);
+            numConst(1, elementType, v);
+            first.store(StackValue.onStack(elementType), v);
+            numConst(0, elementType, v);
+            last.store(StackValue.onStack(elementType), v);
+            v.goTo(end);
+
+            v.mark(notEmpty);
+            last.put(elementType, v);
+            genIncrement(elementType, -1, v);
+            last.store(StackValue.onStack(elementType), v);
+
+            v.mark(end);
         }
     }
 
-    private abstract class ForInOptimizedIndicesLoopGenerator extends AbstractForInRangeLoopGenerator {
-        protected final ReceiverValue receiverValue;
-        protected final KotlinType expectedReceiverType;
+    private abstract class IndicesBounds extends ProgressionBounds {
+        private final ReceiverValue receiverValue;
+        private final KotlinType expectedReceiverType;
 
-        private ForInOptimizedIndicesLoopGenerator(@NotNull KtForExpression forExpression, @NotNull ResolvedCall<?> loopRangeCall) {
-            super(forExpression);
-            this.receiverValue = loopRangeCall.getExtensionReceiver();
-            this.expectedReceiverType = getExpectedReceiverType(loopRangeCall);
+        private IndicesBounds(@NotNull ResolvedCall<? extends CallableDescriptor> indicesCall) {
+            this.receiverValue = indicesCall.getExtensionReceiver();
+            this.expectedReceiverType = getExpectedReceiverType(indicesCall);
+        }
+
+        @Nullable
+        @Override
+        public Integer getConstantStep() {
+            return 1;
         }
 
         @Override
-        protected void storeRangeStartAndEnd() {
-            loopParameter().store(StackValue.constant(0, asmElementType), v);
+        public void store(
+                @NotNull AbstractForLoopGenerator loop,
+                @NotNull StackValue first,
+                @NotNull StackValue last,
+                @Nullable StackValue step
+        ) {
+            first.store(StackValue.constant(0, loop.asmElementType), v);
 
             StackValue receiver = generateReceiverValue(receiverValue, false);
             Type receiverType = asmType(expectedReceiverType);
@@ -1193,7 +1353,7 @@ public class ExpressionCodegen extends KtVisitor<StackValue, StackValue> impleme
             getReceiverSizeAsInt();
             v.iconst(1);
             v.sub(Type.INT_TYPE);
-            StackValue.local(endVar, asmElementType).store(StackValue.onStack(Type.INT_TYPE), v);
+            last.store(StackValue.onStack(Type.INT_TYPE), v);
         }
 
         /**
@@ -1202,9 +1362,9 @@ public class ExpressionCodegen extends KtVisitor<StackValue, StackValue> impleme
         protected abstract void getReceiverSizeAsInt();
     }
 
-    private class ForInCollectionIndicesRangeLoopGenerator extends ForInOptimizedIndicesLoopGenerator {
-        private ForInCollectionIndicesRangeLoopGenerator(@NotNull KtForExpression forExpression, @NotNull ResolvedCall<?> loopRangeCall) {
-            super(forExpression, loopRangeCall);
+    private class CollectionIndicesBounds extends IndicesBounds {
+        private CollectionIndicesBounds(@NotNull ResolvedCall<? extends CallableDescriptor> indicesCall) {
+            super(indicesCall);
         }
 
         @Override
@@ -1213,9 +1373,9 @@ public class ExpressionCodegen extends KtVisitor<StackValue, StackValue> impleme
         }
     }
 
-    private class ForInArrayIndicesRangeLoopGenerator extends ForInOptimizedIndicesLoopGenerator {
-        private ForInArrayIndicesRangeLoopGenerator(@NotNull KtForExpression forExpression, @NotNull ResolvedCall<?> loopRangeCall) {
-            super(forExpression, loopRangeCall);
+    private class ArrayIndicesBounds extends IndicesBounds {
+        private ArrayIndicesBounds(@NotNull ResolvedCall<? extends CallableDescriptor> indicesCall) {
+            super(indicesCall);
         }
 
         @Override
@@ -1224,9 +1384,9 @@ public class ExpressionCodegen extends KtVisitor<StackValue, StackValue> impleme
         }
     }
 
-    private class ForInCharSequenceIndicesRangeLoopGenerator extends ForInOptimizedIndicesLoopGenerator {
-        private ForInCharSequenceIndicesRangeLoopGenerator(@NotNull KtForExpression forExpression, @NotNull ResolvedCall<?> loopRangeCall) {
-            super(forExpression, loopRangeCall);
+    private class CharSequenceIndicesBounds extends IndicesBounds {
+        private CharSequenceIndicesBounds(@NotNull ResolvedCall<? extends CallableDescriptor> indicesCall) {
+            super(indicesCall);
         }
 
         @Override
@@ -1235,96 +1395,239 @@ public class ExpressionCodegen extends KtVisitor<StackValue, StackValue> impleme
         }
     }
 
-    private class ForInProgressionExpressionLoopGenerator extends AbstractForInProgressionOrRangeLoopGenerator {
-        private int incrementVar;
-        private Type incrementType;
+    /**
+     * Bounds of a range or progression object which is created elsewhere, e.g. stored in a variable.
+     */
+    private class ProgressionInstanceBounds extends ProgressionBounds {
+        private final KtExpression expression;
+        private final ReceiverValue receiver;
+        private final KotlinType progressionType;
 
-        private ForInProgressionExpressionLoopGenerator(@NotNull KtForExpression forExpression) {
-            super(forExpression);
+        private ProgressionInstanceBounds(@NotNull KtExpression expression, @NotNull KotlinType progressionType) {
+            this.expression = expression;
+            this.receiver = null;
+            this.progressionType = progressionType;
+        }
+
+        private ProgressionInstanceBounds(@NotNull ReceiverValue receiver, @NotNull KotlinType progressionType) {
+            this.expression = null;
+            this.receiver = receiver;
+            this.progressionType = progressionType;
         }
 
+        @Nullable
         @Override
-        public void beforeLoop() {
-            super.beforeLoop();
+        public Integer getConstantStep() {
+            return RangeCodegenUtil.isRange(progressionType) ? 1 : null;
+        }
 
-            incrementVar = createLoopTempVariable(asmElementType);
+        @Override
+        public void store(
+                @NotNull AbstractForLoopGenerator loop,
+                @NotNull StackValue first,
+                @NotNull StackValue last,
+                @Nullable StackValue step
+        ) {
+            Type asmProgressionType = asmType(progressionType);
+            if (expression != null) {
+                gen(expression, asmProgressionType);
+            }
+            else {
+                generateReceiverValue(receiver, false).put(asmProgressionType, v);
+            }
+            v.dup();
+            if (step != null) {
+                v.dup();
+            }
 
-            KotlinType loopRangeType = bindingContext.getType(forExpression.getLoopRange());
-            assert loopRangeType != null;
-            Type asmLoopRangeType = asmType(loopRangeType);
+            // ranges inherit first and last from corresponding progressions
+            Type elementType = loop.asmElementType;
+            generateProgressionProperty(asmProgressionType, "getFirst", elementType, first);
+            generateProgressionProperty(asmProgressionType, "getLast", elementType, last);
+            if (step != null) {
+                generateProgressionProperty(asmProgressionType, "getStep", getProgressionStepType(elementType), step);
+            }
+        }
 
-            Collection<PropertyDescriptor> incrementProp =
-                    loopRangeType.getMemberScope().getContributedVariables(Name.identifier("step"), NoLookupLocation.FROM_BACKEND);
-            assert incrementProp.size() == 1 : loopRangeType + " " + incrementProp.size();
-            incrementType = asmType(incrementProp.iterator().next().getType());
+        // This method consumes range/progression from stack
+        private void generateProgressionProperty(
+                @NotNull Type progressionType,
+                @NotNull String getterName,
+                @NotNull Type getterReturnType,
+                @NotNull StackValue target
+        ) {
+            v.invokevirtual(progressionType.getInternalName(), getterName, "()" + getterReturnType.getDescriptor(), false);
+            target.store(StackValue.onStack(getterReturnType), v);
+        }
+    }
 
-            gen(forExpression.getLoopRange(), asmLoopRangeType);
-            v.dup();
-            v.dup();
+    private class ReversedProgressionBounds extends ProgressionBounds {
+        private final ProgressionBounds progression;
 
-            generateRangeOrProgressionProperty(asmLoopRangeType, "getFirst", asmElementType, loopParameterType, loopParameterVar);
-            generateRangeOrProgressionProperty(asmLoopRangeType, "getLast", asmElementType, asmElementType, endVar);
-            generateRangeOrProgressionProperty(asmLoopRangeType, "getStep", incrementType, incrementType, incrementVar);
+        private ReversedProgressionBounds(@NotNull ProgressionBounds progression) {
+            this.progression = progression;
         }
 
+        @Nullable
         @Override
-        public void checkEmptyLoop(@NotNull Label loopExit) {
-            loopParameter().put(asmElementType, v);
-            v.load(endVar, asmElementType);
-            v.load(incrementVar, incrementType);
-
-            Label negativeIncrement = new Label();
-            Label afterIf = new Label();
+        public Integer getConstantStep() {
+            Integer step = progression.getConstantStep();
+            return step != null && step != Integer.MIN_VALUE ? -step : null;
+        }
 
-            if (asmElementType.getSort() == Type.LONG) {
-                v.lconst(0L);
-                v.lcmp();
-                v.ifle(negativeIncrement); // if increment < 0, jump
+        @Override
+        public void store(
+                @NotNull AbstractForLoopGenerator loop,
+                @NotNull StackValue first,
+                @NotNull StackValue last,
+                @Nullable StackValue step
+        ) {
+            progression.store(loop, first, last, step);
 
-                // increment > 0
-                v.lcmp();
-                v.ifgt(loopExit);
-                v.goTo(afterIf);
+            // the last element is exact, so there's no need to normalize it after swapping
+            Type elementType = loop.asmElementType;
+            first.put(elementType, v);
+            last.put(elementType, v);
+            first.store(StackValue.onStack(elementType), v);
+            last.store(StackValue.onStack(elementType), v);
 
-                // increment < 0
-                v.mark(negativeIncrement);
-                v.lcmp();
-                v.iflt(loopExit);
-                v.mark(afterIf);
+            if (getConstantStep() == null) {
+                assert step != null : "Step should be stored for a progression with non-constant step";
+                Type stepType = getProgressionStepType(elementType);
+                step.put(stepType, v);
+                v.neg(stepType);
+                step.store(StackValue.onStack(stepType), v);
             }
-            else {
-                v.ifle(negativeIncrement); // if increment < 0, jump
+        }
+    }
 
-                // increment > 0
-                v.ificmpgt(loopExit);
-                v.goTo(afterIf);
+    private class SteppedProgressionBounds extends ProgressionBounds {
+        private final ProgressionBounds progression;
+        private final KtExpression stepExpression;
+        private final Integer constantStepArgument;
 
-                // increment < 0
-                v.mark(negativeIncrement);
-                v.ificmplt(loopExit);
-                v.mark(afterIf);
-            }
+        private SteppedProgressionBounds(@NotNull ProgressionBounds progression, @NotNull KtExpression stepExpression) {
+            this.progression = progression;
+            this.stepExpression = stepExpression;
+            this.constantStepArgument = getPositiveIntConstant(stepExpression);
         }
 
+        @Nullable
         @Override
-        protected void assignToLoopParameter() {
+        public Integer getConstantStep() {
+            Integer progressionStep = progression.getConstantStep();
+            if (progressionStep == null || constantStepArgument == null) return null;
+            return progressionStep > 0 ? constantStepArgument : -constantStepArgument;
         }
 
         @Override
-        protected void increment(@NotNull Label loopExit) {
-            checkPostCondition(loopExit);
+        public void store(
+                @NotNull AbstractForLoopGenerator loop,
+                @NotNull StackValue first,
+                @NotNull StackValue last,
+                @Nullable StackValue step
+        ) {
+            progression.store(loop, first, last, step);
 
-            StackValue loopParameter = loopParameter();
-            loopParameter.put(asmElementType, v);
-            v.load(incrementVar, asmElementType);
-            v.add(asmElementType);
+            Type stepType = getProgressionStepType(loop.asmElementType);
+            Integer constantStep = getConstantStep();
+            if (constantStep != null) {
+                if (constantStep == 1 || constantStep == -1) return;
+            }
+            else {
+                assert step != null : "Step should be stored for a progression with non-constant step";
+                storeStep(loop, step, stepType);
+            }
 
-            if (asmElementType == Type.BYTE_TYPE || asmElementType == Type.SHORT_TYPE || asmElementType == Type.CHAR_TYPE) {
-                StackValue.coerce(Type.INT_TYPE, asmElementType, v);
+            first.put(stepType, v);
+            last.put(stepType, v);
+            if (constantStep != null) {
+                numConst(constantStep, stepType, v);
+            }
+            else {
+                step.put(stepType, v);
             }
+            v.invokestatic("kotlin/internal/ProgressionUtilKt", "getProgressionLastElement",
+                           Type.getMethodDescriptor(stepType, stepType, stepType, stepType), false);
+            last.store(StackValue.onStack(stepType), v);
+        }
 
-            loopParameter.store(StackValue.onStack(asmElementType), v);
+        // step = if (progression.step > 0) stepArgument else -stepArgument
+        private void storeStep(@NotNull AbstractForLoopGenerator loop, @NotNull StackValue step, @NotNull Type stepType) {
+            StackValue stepArgument;
+            if (constantStepArgument != null) {
+                stepArgument = StackValue.constant(constantStepArgument, Type.INT_TYPE);
+            }
+            else {
+                stepArgument = StackValue.local(loop.createLoopTempVariable(stepType), stepType);
+                stepArgument.store(gen(stepExpression), v);
+                genCheckStepIsPositive(stepArgument, stepType);
+            }
+
+            Integer progressionStep = progression.getConstantStep();
+            if (progressionStep != null) {
+                stepArgument.put(stepType, v);
+                if (progressionStep < 0) {
+                    v.neg(stepType);
+                }
+                step.store(StackValue.onStack(stepType), v);
+                return;
+            }
+
+            Label negativeStep = new Label();
+            Label end = new Label();
+            step.put(stepType, v);
+            if (stepType.getSort() == Type.LONG) {
+                v.lconst(0L);
+                v.lcmp();
+            }
+            v.ifle(negativeStep);
+            stepArgument.put(stepType, v);
+            step.store(StackValue.onStack(stepType), v);
+            v.goTo(end);
+
+            v.mark(negativeStep);
+            stepArgument.put(stepType, v);
+            v.neg(stepType);
+            step.store(StackValue.onStack(stepType), v);
+
+            v.mark(end);
         }
+
+        private void genCheckStepIsPositive(@NotNull StackValue stepArgument, @NotNull Type stepType) {
+            Label positive = new Label();
+            stepArgument.put(stepType, v);
+            if (stepType.getSort() == Type.LONG) {
+                v.lconst(0L);
+                v.lcmp();
+            }
+            v.ifgt(positive);
+
+            v.anew(Type.getObjectType("java/lang/IllegalArgumentException"));
+            v.dup();
+            genStringBuilderConstructor(v);
+            v.aconst("Step must be positive, was: ");
+            genInvokeAppendMethod(v, JAVA_STRING_TYPE);
+            stepArgument.put(stepType, v);
+            genInvokeAppendMethod(v, stepType);
+            v.aconst(".");
+            genInvokeAppendMethod(v, JAVA_STRING_TYPE);
+            v.invokevirtual("java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false);
+            v.invokespecial("java/lang/IllegalArgumentException", "<init>", "(Ljava/lang/String;)V", false);
+            v.athrow();
+
+            v.mark(positive);
+        }
+    }
+
+    @Nullable
+    private Integer getPositiveIntConstant(@NotNull KtExpression expression) {
+        ConstantValue<?> constant = getCompileTimeConstant(expression, bindingContext);
+        if (constant == null) return null;
+        Object value = constant.getValue();
+        if (!(value instanceof Integer || value instanceof Long)) return null;
+        long longValue = ((Number) value).longValue();
+        return longValue > 0 && longValue <= Integer.MAX_VALUE ? (int) longValue : null;
     }
 
 
@@ -4476,12 +4779,26 @@ The "returned" value of try expression with no finally is either the last expres
                 Label end = new Label();
                 boolean hasElse = KtPsiUtil.checkWhenExpressionHasSingleElse(expression);
 
+                List<KtWhenEntry> entries = expression.getEntries();
                 Label nextCondition = null;
-                for (KtWhenEntry whenEntry : expression.getEntries()) {
+                for (int index = 0; index < entries.size(); index++) {
+                    KtWhenEntry whenEntry = entries.get(index);
                     if (nextCondition != null) {
                         v.mark(nextCondition);
                     }
                     nextCondition = new Label();
+
+                    int stringConstantsEnd = subjectLocal != -1
+                                             ? SwitchCodegenUtil.getStringConstantsEntriesEnd(entries, index, subjectType, bindingContext)
+                                             : index;
+                    if (stringConstantsEnd > index) {
+                        generateWhenEntriesBySwitch(
+                                entries.subList(index, stringConstantsEnd), expr, subjectLocal, subjectType, resultType, nextCondition, end
+                        );
+                        index = stringConstantsEnd - 1;
+                        continue;
+                    }
+
                     FrameMap.Mark mark = myFrameMap.mark();
                     Label thisEntry = new Label();
                     if (!whenEntry.isElse()) {
@@ -4519,6 +4836,35 @@ The "returned" value of try expression with no finally is either the last expres
         });
     }
 
+    private void generateWhenEntriesBySwitch(
+            @NotNull List<KtWhenEntry> entries,
+            @NotNull KtExpression subject,
+            int subjectLocal,
+            @NotNull Type subjectType,
+            @NotNull Type resultType,
+            @NotNull Label noMatch,
+            @NotNull Label end
+    ) {
+        List<Label> entryLabels = new ArrayList<Label>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            entryLabels.add(new Label());
+        }
+
+        KotlinType subjectKotlinType = bindingContext.getType(subject);
+        boolean isNullableSubject = subjectKotlinType == null || TypeUtils.isNullableType(subjectKotlinType);
+        StringSwitchCodegen.generateSwitchForEntries(
+                v, subjectLocal, subjectType, isNullableSubject, entries, entryLabels, noMatch, bindingContext
+        );
+
+        for (int i = 0; i < entries.size(); i++) {
+            v.visitLabel(entryLabels.get(i));
+            FrameMap.Mark mark = myFrameMap.mark();
+            gen(entries.get(i).getExpression(), resultType);
+            mark.dropTo();
+            v.goTo(end);
+        }
+    }
+
     private boolean isExhaustive(@NotNull KtWhenExpression whenExpression, boolean isStatement) {
         if (isStatement && !BindingContextUtilsKt.isUsedAsExpression(whenExpression, bindingContext)) {
             return Boolean.TRUE.equals(bindingContext.get(BindingContext.IMPLICIT_EXHAUSTIVE_WHEN, whenExpression));
@@ -37,6 +37,7 @@ import org.jetbrains.kotlin.codegen.signature.BothSignatureWriter;
 import org.jetbrains.kotlin.codegen.signature.JvmSignatureWriter;
 import org.jetbrains.kotlin.codegen.state.GenerationState;
 import org.jetbrains.kotlin.codegen.state.KotlinTypeMapper;
+import org.jetbrains.kotlin.codegen.when.SwitchCodegenUtil;
 import org.jetbrains.kotlin.descriptors.*;
 import org.jetbrains.kotlin.incremental.components.NoLookupLocation;
 import org.jetbrains.kotlin.lexer.KtTokens;
@@ -364,6 +365,8 @@ public class ImplementationBodyCodegen extends ClassBodyCodegen {
 
         generateEnumMethods();
 
+        generateSealedSubclassKeyMethods();
+
         generateFunctionsForDataClasses();
 
         new CollectionStubMethodGenerator(typeMapper, descriptor).generate(functionCodegen, v);
@@ -794,6 +797,37 @@ public class ImplementationBodyCodegen extends ClassBodyCodegen {
         }
     }
 
+    // The methods are package-private and synthetic, so they're not visible from other packages and from Java sources
+    private void generateSealedSubclassKeyMethods() {
+        if (!state.getClassBuilderMode().generateBodies) return;
+
+        if (isSealedClass(descriptor)) {
+            generateSealedSubclassKeyMethod(classAsmType, ACC_SYNTHETIC, 0);
+        }
+
+        ClassDescriptor superClass = DescriptorUtilsKt.getSuperClassNotAny(descriptor);
+        if (superClass != null && SwitchCodegenUtil.isNestedDirectSubclassOfSealedClass(descriptor, superClass)) {
+            generateSealedSubclassKeyMethod(
+                    typeMapper.mapClass(superClass), ACC_FINAL | ACC_SYNTHETIC,
+                    SwitchCodegenUtil.getSealedSubclassKey(classAsmType)
+            );
+        }
+    }
+
+    private void generateSealedSubclassKeyMethod(@NotNull Type sealedClassType, int flags, int key) {
+        String name = SwitchCodegenUtil.getSealedSubclassKeyMethodName(sealedClassType);
+        MethodVisitor mv = v.newMethod(
+                JvmDeclarationOriginKt.OtherOrigin(myClass, descriptor), flags, name,
+                SwitchCodegenUtil.SEALED_SUBCLASS_KEY_METHOD_DESC, null, null
+        );
+
+        mv.visitCode();
+        InstructionAdapter iv = new InstructionAdapter(mv);
+        iv.iconst(key);
+        iv.areturn(Type.INT_TYPE);
+        FunctionCodegen.endVisit(mv, name, myClass);
+    }
+
     private void generateEnumValuesMethod() {
         Type type = typeMapper.mapType(DescriptorUtilsKt.getBuiltIns(descriptor).getArrayType(INVARIANT, descriptor.getDefaultType()));
 
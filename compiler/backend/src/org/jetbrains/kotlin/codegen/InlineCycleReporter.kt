@@ -25,12 +25,19 @@ import org.jetbrains.kotlin.resolve.calls.model.ResolvedCall
 
 class InlineCycleReporter(val diagnostics: DiagnosticSink) {
 
-    val processingFunctions = linkedMapOf<PsiElement, CallableDescriptor>()
+    // Inlining stacks are tracked per thread, because independent packages may be generated concurrently
+    private val processingFunctionsForThread = object : ThreadLocal<LinkedHashMap<PsiElement, CallableDescriptor>>() {
+        override fun initialValue() = linkedMapOf<PsiElement, CallableDescriptor>()
+    }
+
+    val processingFunctions: LinkedHashMap<PsiElement, CallableDescriptor>
+        get() = processingFunctionsForThread.get()
 
     fun enterIntoInlining(call: ResolvedCall<*>?): Boolean {
         //null call for default method inlining
         if (call != null) {
             val callElement = call.call.callElement
+            val processingFunctions = processingFunctions
             if (processingFunctions.contains(callElement)) {
                 val cycle = processingFunctions.asSequence().dropWhile { it.key != callElement }
                 cycle.forEach {
@@ -25,9 +25,8 @@ import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus;
 import org.jetbrains.kotlin.psi.KtFile;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
 
 public class KotlinCodegenFacade {
 
@@ -47,7 +46,7 @@ public class KotlinCodegenFacade {
     public static void doGenerateFiles(
             @NotNull Collection<KtFile> files,
             @NotNull GenerationState state,
-            @NotNull CompilationErrorHandler errorHandler
+            @NotNull final CompilationErrorHandler errorHandler
     ) {
         MultiMap<FqName, KtFile> filesInPackages = new MultiMap<FqName, KtFile>();
         MultiMap<FqName, KtFile> filesInMultifileClasses = new MultiMap<FqName, KtFile>();
@@ -66,21 +65,95 @@ public class KotlinCodegenFacade {
         }
 
         Set<FqName> obsoleteMultifileClasses = new HashSet<FqName>(state.getObsoleteMultifileClasses());
-        for (FqName multifileClassFqName : Sets.union(filesInMultifileClasses.keySet(), obsoleteMultifileClasses)) {
-            doCheckCancelled(state);
-            generateMultifileClass(state, multifileClassFqName, filesInMultifileClasses.get(multifileClassFqName), errorHandler);
+        Set<FqName> multifileClassesToGenerate = Sets.union(filesInMultifileClasses.keySet(), obsoleteMultifileClasses);
+        Set<FqName> packagesWithObsoleteParts = new HashSet<FqName>(state.getPackagesWithObsoleteParts());
+        Set<FqName> packagesToGenerate = Sets.union(packagesWithObsoleteParts, filesInPackages.keySet());
+
+        if (state.isParallelBackend()) {
+            List<Runnable> tasks = new ArrayList<Runnable>(multifileClassesToGenerate.size() + packagesToGenerate.size());
+            for (FqName multifileClassFqName : multifileClassesToGenerate) {
+                final MultifileClassCodegen codegen =
+                        state.getFactory().forMultifileClass(multifileClassFqName, filesInMultifileClasses.get(multifileClassFqName));
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        codegen.generate(errorHandler);
+                    }
+                });
+            }
+            for (FqName packageFqName : packagesToGenerate) {
+                final PackageCodegen codegen = state.getFactory().forPackage(packageFqName, filesInPackages.get(packageFqName));
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        codegen.generate(errorHandler);
+                    }
+                });
+            }
+            generateInParallel(state, tasks);
         }
+        else {
+            for (FqName multifileClassFqName : multifileClassesToGenerate) {
+                doCheckCancelled(state);
+                generateMultifileClass(state, multifileClassFqName, filesInMultifileClasses.get(multifileClassFqName), errorHandler);
+            }
 
-        Set<FqName> packagesWithObsoleteParts = new HashSet<FqName>(state.getPackagesWithObsoleteParts());
-        for (FqName packageFqName : Sets.union(packagesWithObsoleteParts, filesInPackages.keySet())) {
-            doCheckCancelled(state);
-            generatePackage(state, packageFqName, filesInPackages.get(packageFqName), errorHandler);
+            for (FqName packageFqName : packagesToGenerate) {
+                doCheckCancelled(state);
+                generatePackage(state, packageFqName, filesInPackages.get(packageFqName), errorHandler);
+            }
         }
 
         doCheckCancelled(state);
         state.getFactory().done();
     }
 
+    /**
+     * Generates independent packages and multifile classes on a pool of {@link GenerationState#getBackendThreads()} threads.
+     * Each task writes its classes into a separate batch, and batches are committed to the factory in the order of tasks,
+     * so the resulting output is the same as the one of the sequential generation.
+     */
+    private static void generateInParallel(@NotNull final GenerationState state, @NotNull List<Runnable> tasks) {
+        final ClassFileFactory factory = state.getFactory();
+        ExecutorService executor = Executors.newFixedThreadPool(state.getBackendThreads());
+        try {
+            List<Future<ClassFileFactory.OutputBatch>> batches = new ArrayList<Future<ClassFileFactory.OutputBatch>>(tasks.size());
+            for (final Runnable task : tasks) {
+                batches.add(executor.submit(new Callable<ClassFileFactory.OutputBatch>() {
+                    @Override
+                    public ClassFileFactory.OutputBatch call() {
+                        doCheckCancelled(state);
+                        return factory.generateInBatch(task);
+                    }
+                }));
+            }
+
+            for (Future<ClassFileFactory.OutputBatch> batch : batches) {
+                factory.commitBatch(getBatch(batch));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @NotNull
+    private static ClassFileFactory.OutputBatch getBatch(@NotNull Future<ClassFileFactory.OutputBatch> batch) {
+        try {
+            return batch.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Bytecode generation was interrupted", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
     private static void doCheckCancelled(GenerationState state) {
         if (state.getClassBuilderMode().generateBodies) {
             ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
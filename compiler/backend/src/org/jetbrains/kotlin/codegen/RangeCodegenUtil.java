@@ -77,20 +77,25 @@ public class RangeCodegenUtil {
 
     @Nullable
     public static ResolvedCall<? extends CallableDescriptor> getLoopRangeResolvedCall(@NotNull KtForExpression forExpression, @NotNull BindingContext bindingContext) {
-        KtExpression loopRange = KtPsiUtil.deparenthesize(forExpression.getLoopRange());
+        return getRangeResolvedCall(forExpression.getLoopRange(), bindingContext);
+    }
+
+    @Nullable
+    public static ResolvedCall<? extends CallableDescriptor> getRangeResolvedCall(@Nullable KtExpression rangeExpression, @NotNull BindingContext bindingContext) {
+        KtExpression range = KtPsiUtil.deparenthesize(rangeExpression);
 
-        if (loopRange instanceof KtQualifiedExpression) {
-            KtQualifiedExpression qualifiedExpression = (KtQualifiedExpression) loopRange;
+        if (range instanceof KtQualifiedExpression) {
+            KtQualifiedExpression qualifiedExpression = (KtQualifiedExpression) range;
             KtExpression selector = qualifiedExpression.getSelectorExpression();
             if (selector instanceof KtCallExpression || selector instanceof KtSimpleNameExpression) {
                 return CallUtilKt.getResolvedCall(selector, bindingContext);
             }
         }
-        else if (loopRange instanceof KtSimpleNameExpression || loopRange instanceof KtCallExpression) {
-            return CallUtilKt.getResolvedCall(loopRange, bindingContext);
+        else if (range instanceof KtSimpleNameExpression || range instanceof KtCallExpression) {
+            return CallUtilKt.getResolvedCall(range, bindingContext);
         }
-        else if (loopRange instanceof KtBinaryExpression) {
-            return CallUtilKt.getResolvedCall(((KtBinaryExpression) loopRange).getOperationReference(), bindingContext);
+        else if (range instanceof KtBinaryExpression) {
+            return CallUtilKt.getResolvedCall(((KtBinaryExpression) range).getOperationReference(), bindingContext);
         }
 
         return null;
@@ -146,7 +151,15 @@ public class RangeCodegenUtil {
     }
 
     public static boolean isPrimitiveNumberDownTo(@NotNull CallableDescriptor descriptor) {
-        if (!isTopLevelInPackage(descriptor, "downTo", "kotlin.ranges")) return false;
+        return isPrimitiveNumberRangeExtension(descriptor, "downTo");
+    }
+
+    public static boolean isPrimitiveNumberUntil(@NotNull CallableDescriptor descriptor) {
+        return isPrimitiveNumberRangeExtension(descriptor, "until");
+    }
+
+    private static boolean isPrimitiveNumberRangeExtension(@NotNull CallableDescriptor descriptor, @NotNull String name) {
+        if (!isTopLevelInPackage(descriptor, name, "kotlin.ranges")) return false;
 
         ReceiverParameterDescriptor extensionReceiver = descriptor.getExtensionReceiverParameter();
         if (extensionReceiver == null) return false;
@@ -156,6 +169,24 @@ public class RangeCodegenUtil {
         return true;
     }
 
+    public static boolean isPrimitiveProgressionReversed(@NotNull CallableDescriptor descriptor) {
+        return isPrimitiveProgressionExtension(descriptor, "reversed");
+    }
+
+    public static boolean isPrimitiveProgressionStep(@NotNull CallableDescriptor descriptor) {
+        return isPrimitiveProgressionExtension(descriptor, "step");
+    }
+
+    private static boolean isPrimitiveProgressionExtension(@NotNull CallableDescriptor descriptor, @NotNull String name) {
+        if (!isTopLevelInPackage(descriptor, name, "kotlin.ranges")) return false;
+
+        ReceiverParameterDescriptor extensionReceiver = descriptor.getExtensionReceiverParameter();
+        if (extensionReceiver == null) return false;
+        if (!isProgression(extensionReceiver.getType())) return false;
+
+        return true;
+    }
+
     public static boolean isArrayOrPrimitiveArrayIndices(@NotNull CallableDescriptor descriptor) {
         if (!isTopLevelInPackage(descriptor, "indices", "kotlin.collections")) return false;
 
@@ -29,8 +29,11 @@ class SamWrapperClasses(private val state: GenerationState) {
 
     fun getSamWrapperClass(samType: SamType, file: KtFile, expressionCodegen: ExpressionCodegen): Type {
         val isInsideInline = InlineUtil.isInlineOrContainingInline(expressionCodegen.context.contextDescriptor)
-        return samInterfaceToWrapperClass.getOrPut(WrapperKey(samType, file, isInsideInline)) {
-            SamWrapperCodegen(state, samType, expressionCodegen.parentCodegen, isInsideInline).genWrapper(file)
+        // Wrapper generation is cheap, so it's done under the lock to never generate the same wrapper twice in parallel mode
+        return synchronized(samInterfaceToWrapperClass) {
+            samInterfaceToWrapperClass.getOrPut(WrapperKey(samType, file, isInsideInline)) {
+                SamWrapperCodegen(state, samType, expressionCodegen.parentCodegen, isInsideInline).genWrapper(file)
+            }
         }
     }
 }
@@ -29,13 +29,16 @@ class InlineCache {
 }
 
 inline fun <K, V> SLRUMap<K, V>.getOrPut(key: K, defaultValue: () -> V): V {
-    val value = get(key)
-    return if (value == null) {
-        val answer = defaultValue()
-        put(key, answer)
-        answer
-    }
-    else {
-        value
+    // SLRUMap reorders its entries even on reads, so all accesses are guarded to allow generating several packages in parallel
+    synchronized(this) {
+        val value = get(key)
+        return if (value == null) {
+            val answer = defaultValue()
+            put(key, answer)
+            answer
+        }
+        else {
+            value
+        }
     }
 }
@@ -254,7 +254,10 @@ public class InlineCodegen extends CallGenerator {
                 }
         );
 
-        return resultInCache.copyWithNewNode(cloneMethodNode(resultInCache.getNode()));
+        // Cloning resets labels of the cached node, so it shouldn't happen concurrently
+        synchronized (resultInCache) {
+            return resultInCache.copyWithNewNode(cloneMethodNode(resultInCache.getNode()));
+        }
     }
 
     @NotNull
@@ -302,24 +305,37 @@ public class InlineCodegen extends CallGenerator {
 
         final ClassId containerId = containingClasses.getImplClassId();
 
-        byte[] bytes = InlineCacheKt.getOrPut(state.getInlineCache().getClassBytes(), containerId, new Function0<byte[]>() {
+        Function0<byte[]> classBytes = new Function0<byte[]>() {
             @Override
             public byte[] invoke() {
-                VirtualFile file = InlineCodegenUtil.findVirtualFile(state, containerId);
-                if (file == null) {
-                    throw new IllegalStateException("Couldn't find declaration file for " + containerId);
-                }
-                try {
-                    return file.contentsToByteArray();
-                }
-                catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+                return InlineCacheKt.getOrPut(state.getInlineCache().getClassBytes(), containerId, new Function0<byte[]>() {
+                    @Override
+                    public byte[] invoke() {
+                        try {
+                            return findDeclarationFile(state, containerId).contentsToByteArray();
+                        }
+                        catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
             }
-        });
+        };
 
+        if (state.isInlineFunctionsCacheShared()) {
+            return SharedInlineFunctionsCache.getMethodNode(findDeclarationFile(state, containerId), containerId, asmMethod, state, classBytes);
+        }
 
-        return InlineCodegenUtil.getMethodNode(bytes, asmMethod.getName(), asmMethod.getDescriptor(), containerId, state);
+        return InlineCodegenUtil.getMethodNode(classBytes.invoke(), asmMethod.getName(), asmMethod.getDescriptor(), containerId, state);
+    }
+
+    @NotNull
+    private static VirtualFile findDeclarationFile(@NotNull GenerationState state, @NotNull ClassId containerId) {
+        VirtualFile file = InlineCodegenUtil.findVirtualFile(state, containerId);
+        if (file == null) {
+            throw new IllegalStateException("Couldn't find declaration file for " + containerId);
+        }
+        return file;
     }
 
     @NotNull
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.codegen.inline
+
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.util.containers.SLRUMap
+import com.intellij.util.io.URLUtil
+import org.jetbrains.kotlin.codegen.state.GenerationState
+import org.jetbrains.kotlin.name.ClassId
+import org.jetbrains.kotlin.util.PerformanceCounter
+import org.jetbrains.org.objectweb.asm.commons.Method
+import java.io.File
+
+/**
+ * Bodies of compiled inline functions shared between compilations in the same process, e.g. in the compile daemon,
+ * so that library inline functions are not read and parsed again for every build.
+ *
+ * Entries are keyed by the class file together with the time stamp and length of the file it's stored in, so a changed library
+ * is read again. For a class in a jar these are the ones of the jar itself: entries of jars are often written with a fixed
+ * time stamp to make builds reproducible, and a changed class may have the same length.
+ * Cached nodes must only be cloned under the lock on the [SMAPAndMethodNode], as in [InlineCodegen.createMethodNode].
+ */
+object SharedInlineFunctionsCache {
+    private data class Key(val path: String, val timeStamp: Long, val length: Long, val method: Method)
+
+    private class Entry(val classVersion: Int, val node: SMAPAndMethodNode)
+
+    private val cache = SLRUMap<Key, Entry>(2000, 1000)
+
+    private val hits = PerformanceCounter.create("Shared inline functions cache hits")
+    private val misses = PerformanceCounter.create("Shared inline functions cache misses")
+
+    @JvmStatic
+    fun getMethodNode(file: VirtualFile, classId: ClassId, method: Method, state: GenerationState, classBytes: () -> ByteArray): SMAPAndMethodNode? {
+        val key = createKey(file, method)
+
+        val cached = synchronized(cache) { cache[key] }
+        if (cached != null) {
+            hits.increment()
+            InlineCodegenUtil.assertVersionNotGreaterThanGeneratedOne(cached.classVersion, classId.asString(), state)
+            return cached.node
+        }
+
+        // several threads may parse the same function at the same time, but the lock is not held while parsing
+        return misses.time {
+            val bytes = classBytes()
+            val node = InlineCodegenUtil.getMethodNode(bytes, method.name, method.descriptor, classId, state) ?: return@time null
+            synchronized(cache) {
+                cache.put(key, Entry(readClassVersion(bytes), node))
+            }
+            node
+        }
+    }
+
+    private fun createKey(file: VirtualFile, method: Method): Key {
+        val path = file.path
+        val separator = path.indexOf(URLUtil.JAR_SEPARATOR)
+        if (separator < 0) return Key(path, file.timeStamp, file.length, method)
+
+        val jar = File(path.substring(0, separator))
+        return Key(path, jar.lastModified(), jar.length(), method)
+    }
+
+    // same as the version passed to ClassVisitor.visit: minor version in the high 16 bits, major version in the low ones
+    private fun readClassVersion(bytes: ByteArray): Int =
+            ((bytes[4].toInt() and 0xFF) shl 24) or ((bytes[5].toInt() and 0xFF) shl 16) or
+            ((bytes[6].toInt() and 0xFF) shl 8) or (bytes[7].toInt() and 0xFF)
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization
+
+import java.io.File
+import java.util.*
+
+/**
+ * Collects the number of not-null assertions removed by the bytecode optimizations and retained in the output, per class.
+ * Methods of different classes may be generated in parallel, so all accesses are synchronized.
+ *
+ * Each module of a compilation has its own statistics, they're written to the common [destination] at once by [dump].
+ */
+class NullCheckStatistics(val destination: File) {
+    private class Counts {
+        var removed = 0
+        var retained = 0
+    }
+
+    private val countsByClass = TreeMap<String, Counts>()
+
+    @Synchronized
+    fun record(className: String, removed: Int, retained: Int) {
+        val counts = countsByClass.getOrPut(className) { Counts() }
+        counts.removed += removed
+        counts.retained += retained
+    }
+
+    @Synchronized
+    private fun addTo(total: MutableMap<String, Counts>) {
+        for ((className, counts) in countsByClass) {
+            val totalCounts = total.getOrPut(className) { Counts() }
+            totalCounts.removed += counts.removed
+            totalCounts.retained += counts.retained
+        }
+    }
+
+    companion object {
+        /**
+         * Writes the statistics of all modules of a compilation to their destination, replacing its previous content.
+         */
+        @JvmStatic
+        fun dump(statistics: Collection<NullCheckStatistics>) {
+            val destination = statistics.firstOrNull()?.destination ?: return
+            assert(statistics.all { it.destination == destination }) { "Statistics of a compilation should have the same destination" }
+
+            val countsByClass = TreeMap<String, Counts>()
+            for (moduleStatistics in statistics) {
+                moduleStatistics.addTo(countsByClass)
+            }
+
+            destination.parentFile?.mkdirs()
+            destination.bufferedWriter().use { writer ->
+                var totalRemoved = 0
+                var totalRetained = 0
+                for ((className, counts) in countsByClass) {
+                    writer.append("$className: removed ${counts.removed}, retained ${counts.retained}\n")
+                    totalRemoved += counts.removed
+                    totalRetained += counts.retained
+                }
+                writer.append("Total: removed $totalRemoved, retained $totalRetained\n")
+            }
+        }
+    }
+}
@@ -20,16 +20,29 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.codegen.ClassBuilder;
 import org.jetbrains.kotlin.codegen.DelegatingClassBuilder;
+import org.jetbrains.kotlin.diagnostics.DiagnosticSink;
 import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
 import org.jetbrains.org.objectweb.asm.MethodVisitor;
 
 public class OptimizationClassBuilder extends DelegatingClassBuilder {
     private final ClassBuilder delegate;
     private final boolean disableOptimization;
+    private final NullCheckStatistics nullCheckStatistics;
+    private final boolean convertTailCallsToLoops;
+    private final DiagnosticSink diagnostics;
 
-    public OptimizationClassBuilder(@NotNull ClassBuilder delegate, boolean disableOptimization) {
+    public OptimizationClassBuilder(
+            @NotNull ClassBuilder delegate,
+            boolean disableOptimization,
+            @Nullable NullCheckStatistics nullCheckStatistics,
+            boolean convertTailCallsToLoops,
+            @NotNull DiagnosticSink diagnostics
+    ) {
         this.delegate = delegate;
         this.disableOptimization = disableOptimization;
+        this.nullCheckStatistics = nullCheckStatistics;
+        this.convertTailCallsToLoops = convertTailCallsToLoops;
+        this.diagnostics = diagnostics;
     }
 
     @NotNull
@@ -48,9 +61,17 @@ public class OptimizationClassBuilder extends DelegatingClassBuilder {
             @Nullable String signature,
             @Nullable String[] exceptions
     ) {
+        TailCallsToLoopMethodTransformer tailCallsToLoopTransformer =
+                convertTailCallsToLoops
+                ? TailCallsToLoopMethodTransformer.createIfApplicable(origin, getThisName(), diagnostics)
+                : null;
+
         return new OptimizationMethodVisitor(
                 super.newMethod(origin, access, name, desc, signature, exceptions),
                 disableOptimization,
+                tailCallsToLoopTransformer,
+                nullCheckStatistics,
+                nullCheckStatistics != null ? getThisName() : null,
                 access, name, desc, signature, exceptions
         );
     }
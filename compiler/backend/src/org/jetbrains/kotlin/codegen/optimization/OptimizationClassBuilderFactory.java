@@ -17,23 +17,39 @@
 package org.jetbrains.kotlin.codegen.optimization;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.codegen.ClassBuilder;
 import org.jetbrains.kotlin.codegen.ClassBuilderFactory;
 import org.jetbrains.kotlin.codegen.ClassBuilderMode;
 import org.jetbrains.kotlin.codegen.DelegatingClassBuilderFactory;
+import org.jetbrains.kotlin.diagnostics.DiagnosticSink;
 import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
 
 public class OptimizationClassBuilderFactory extends DelegatingClassBuilderFactory {
     private final boolean disableOptimization;
+    private final NullCheckStatistics nullCheckStatistics;
+    private final boolean convertTailCallsToLoops;
+    private final DiagnosticSink diagnostics;
 
-    public OptimizationClassBuilderFactory(ClassBuilderFactory delegate, boolean disableOptimization) {
+    public OptimizationClassBuilderFactory(
+            ClassBuilderFactory delegate,
+            boolean disableOptimization,
+            @Nullable NullCheckStatistics nullCheckStatistics,
+            boolean convertTailCallsToLoops,
+            @NotNull DiagnosticSink diagnostics
+    ) {
         super(delegate);
         this.disableOptimization = disableOptimization;
+        this.nullCheckStatistics = nullCheckStatistics;
+        this.convertTailCallsToLoops = convertTailCallsToLoops;
+        this.diagnostics = diagnostics;
     }
 
     @NotNull
     @Override
     public OptimizationClassBuilder newClassBuilder(@NotNull JvmDeclarationOrigin origin) {
-        return new OptimizationClassBuilder(getDelegate().newClassBuilder(origin), disableOptimization);
+        return new OptimizationClassBuilder(
+                getDelegate().newClassBuilder(origin), disableOptimization, nullCheckStatistics, convertTailCallsToLoops, diagnostics
+        );
     }
 }
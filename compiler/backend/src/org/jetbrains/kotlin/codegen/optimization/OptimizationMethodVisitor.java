@@ -16,14 +16,18 @@
 
 package org.jetbrains.kotlin.codegen.optimization;
 
+import kotlin.Unit;
+import kotlin.jvm.functions.Function0;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.codegen.TransformationMethodVisitor;
+import org.jetbrains.kotlin.codegen.optimization.boxing.CapturedVarsOptimizationMethodTransformer;
 import org.jetbrains.kotlin.codegen.optimization.boxing.RedundantBoxingMethodTransformer;
 import org.jetbrains.kotlin.codegen.optimization.boxing.RedundantCoercionToUnitTransformer;
 import org.jetbrains.kotlin.codegen.optimization.boxing.RedundantNullCheckMethodTransformer;
 import org.jetbrains.kotlin.codegen.optimization.common.UtilKt;
 import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer;
+import org.jetbrains.kotlin.util.PerformanceCounter;
 import org.jetbrains.org.objectweb.asm.MethodVisitor;
 import org.jetbrains.org.objectweb.asm.tree.MethodNode;
 
@@ -32,19 +36,39 @@ public class OptimizationMethodVisitor extends TransformationMethodVisitor {
 
     private static final MethodTransformer MANDATORY_METHOD_TRANSFORMER = new FixStackWithLabelNormalizationMethodTransformer();
 
-    private static final MethodTransformer[] OPTIMIZATION_TRANSFORMERS = new MethodTransformer[] {
+    // These transformers compute frames, so they are skipped for methods which are too large
+    private static final MethodTransformer[] FRAME_BASED_OPTIMIZATION_TRANSFORMERS = new MethodTransformer[] {
+            new CapturedVarsOptimizationMethodTransformer(),
             new RedundantNullCheckMethodTransformer(),
             new RedundantBoxingMethodTransformer(),
-            new RedundantCoercionToUnitTransformer(),
+            new RedundantCoercionToUnitTransformer()
+    };
+
+    // These ones work on the control flow graph or the instruction list only
+    private static final MethodTransformer[] STRUCTURAL_OPTIMIZATION_TRANSFORMERS = new MethodTransformer[] {
             new DeadCodeEliminationMethodTransformer(),
             new RedundantGotoMethodTransformer()
     };
 
+    private static final PerformanceCounter MANDATORY_TRANSFORMATIONS_COUNTER = createCounter(MANDATORY_METHOD_TRANSFORMER);
+    private static final PerformanceCounter[] FRAME_BASED_OPTIMIZATIONS_COUNTERS = createCounters(FRAME_BASED_OPTIMIZATION_TRANSFORMERS);
+    private static final PerformanceCounter[] STRUCTURAL_OPTIMIZATIONS_COUNTERS = createCounters(STRUCTURAL_OPTIMIZATION_TRANSFORMERS);
+    private static final PerformanceCounter TAIL_CALLS_TO_LOOP_COUNTER =
+            PerformanceCounter.Companion.createWithAllocations("Method transformer " + TailCallsToLoopMethodTransformer.class.getSimpleName());
+    private static final PerformanceCounter TOO_LARGE_METHODS_COUNTER =
+            PerformanceCounter.Companion.create("Methods too large for frame-based optimizations");
+
     private final boolean disableOptimization;
+    private final MethodTransformer tailCallsToLoopTransformer;
+    private final NullCheckStatistics nullCheckStatistics;
+    private final String className;
 
     public OptimizationMethodVisitor(
             @NotNull MethodVisitor delegate,
             boolean disableOptimization,
+            @Nullable MethodTransformer tailCallsToLoopTransformer,
+            @Nullable NullCheckStatistics nullCheckStatistics,
+            @Nullable String className,
             int access,
             @NotNull String name,
             @NotNull String desc,
@@ -53,21 +77,72 @@ public class OptimizationMethodVisitor extends TransformationMethodVisitor {
     ) {
         super(delegate, access, name, desc, signature, exceptions);
         this.disableOptimization = disableOptimization;
+        this.tailCallsToLoopTransformer = tailCallsToLoopTransformer;
+        this.nullCheckStatistics = nullCheckStatistics;
+        this.className = className;
     }
 
     @Override
     protected void performTransformations(@NotNull MethodNode methodNode) {
-        MANDATORY_METHOD_TRANSFORMER.transform("fake", methodNode);
-        if (canBeOptimized(methodNode) && !disableOptimization) {
-            for (MethodTransformer transformer : OPTIMIZATION_TRANSFORMERS) {
-                transformer.transform("fake", methodNode);
+        int notNullChecksBefore = nullCheckStatistics != null ? RedundantNullCheckMethodTransformer.countNotNullChecks(methodNode) : 0;
+
+        transform(MANDATORY_METHOD_TRANSFORMER, MANDATORY_TRANSFORMATIONS_COUNTER, methodNode);
+        if (!disableOptimization) {
+            if (canBeAnalyzed(methodNode)) {
+                for (int i = 0; i < FRAME_BASED_OPTIMIZATION_TRANSFORMERS.length; i++) {
+                    transform(FRAME_BASED_OPTIMIZATION_TRANSFORMERS[i], FRAME_BASED_OPTIMIZATIONS_COUNTERS[i], methodNode);
+                }
+                // Runs on the code without redundant coercions to Unit, so that more calls are followed by a return
+                if (tailCallsToLoopTransformer != null) {
+                    transform(tailCallsToLoopTransformer, TAIL_CALLS_TO_LOOP_COUNTER, methodNode);
+                }
+            }
+            else {
+                TOO_LARGE_METHODS_COUNTER.increment();
+            }
+            for (int i = 0; i < STRUCTURAL_OPTIMIZATION_TRANSFORMERS.length; i++) {
+                transform(STRUCTURAL_OPTIMIZATION_TRANSFORMERS[i], STRUCTURAL_OPTIMIZATIONS_COUNTERS[i], methodNode);
             }
         }
         UtilKt.prepareForEmitting(methodNode);
+
+        if (nullCheckStatistics != null) {
+            assert className != null : "Class name should be provided to collect null check statistics";
+            int notNullChecksAfter = RedundantNullCheckMethodTransformer.countNotNullChecks(methodNode);
+            nullCheckStatistics.record(className, notNullChecksBefore - notNullChecksAfter, notNullChecksAfter);
+        }
     }
 
-    private static boolean canBeOptimized(@NotNull MethodNode node) {
+    private static void transform(
+            @NotNull final MethodTransformer transformer,
+            @NotNull PerformanceCounter counter,
+            @NotNull final MethodNode methodNode
+    ) {
+        counter.time(new Function0<Unit>() {
+            @Override
+            public Unit invoke() {
+                transformer.transform("fake", methodNode);
+                return Unit.INSTANCE;
+            }
+        });
+    }
+
+    private static boolean canBeAnalyzed(@NotNull MethodNode node) {
         int totalFramesSizeMb = node.instructions.size() * (node.maxLocals + node.maxStack) / (1024 * 1024);
         return totalFramesSizeMb < MEMORY_LIMIT_BY_METHOD_MB;
     }
+
+    @NotNull
+    private static PerformanceCounter createCounter(@NotNull MethodTransformer transformer) {
+        return PerformanceCounter.Companion.createWithAllocations("Method transformer " + transformer.getClass().getSimpleName());
+    }
+
+    @NotNull
+    private static PerformanceCounter[] createCounters(@NotNull MethodTransformer[] transformers) {
+        PerformanceCounter[] counters = new PerformanceCounter[transformers.length];
+        for (int i = 0; i < transformers.length; i++) {
+            counters[i] = createCounter(transformers[i]);
+        }
+        return counters;
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization
+
+import org.jetbrains.kotlin.codegen.optimization.common.isMeaningful
+import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer
+import org.jetbrains.kotlin.descriptors.FunctionDescriptor
+import org.jetbrains.kotlin.diagnostics.DiagnosticSink
+import org.jetbrains.kotlin.psi.KtNamedFunction
+import org.jetbrains.kotlin.resolve.jvm.diagnostics.ErrorsJvm
+import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin
+import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOriginKind
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.jetbrains.org.objectweb.asm.Type
+import org.jetbrains.org.objectweb.asm.tree.*
+import org.jetbrains.org.objectweb.asm.tree.analysis.SourceInterpreter
+import org.jetbrains.org.objectweb.asm.tree.analysis.SourceValue
+import java.util.*
+
+/**
+ * Rewrites self-recursive tail calls of a method which can't be overridden into assignments to parameters
+ * and a jump to the method start, the same way as `tailrec` functions are generated.
+ *
+ * Works on the bytecode, so the calls in tail position after inlining, e.g. in branches of `if` and `when`, are handled as well.
+ * An info diagnostic is reported on the function whose calls were converted.
+ */
+class TailCallsToLoopMethodTransformer private constructor(
+        private val ownerInternalName: String,
+        private val function: KtNamedFunction,
+        private val diagnostics: DiagnosticSink
+) : MethodTransformer() {
+    companion object {
+        @JvmStatic
+        fun createIfApplicable(
+                origin: JvmDeclarationOrigin,
+                ownerInternalName: String,
+                diagnostics: DiagnosticSink
+        ): TailCallsToLoopMethodTransformer? {
+            if (origin.originKind != JvmDeclarationOriginKind.OTHER) return null
+            val function = origin.element as? KtNamedFunction ?: return null
+            val descriptor = origin.descriptor as? FunctionDescriptor ?: return null
+            // Tail calls of tailrec functions are generated as loops by TailRecursionCodegen already
+            if (descriptor.isTailrec || descriptor.isInline || descriptor.isSuspend) return null
+
+            return TailCallsToLoopMethodTransformer(ownerInternalName, function, diagnostics)
+        }
+    }
+
+    override fun transform(internalClassName: String, methodNode: MethodNode) {
+        if (!canBeConverted(methodNode)) return
+
+        val calls = methodNode.instructions.toArray().filter { it is MethodInsnNode && isSelfCall(methodNode, it) }
+        if (calls.isEmpty()) return
+
+        val frames = MethodTransformer.analyze(ownerInternalName, methodNode, SourceInterpreter())
+        val isStatic = (methodNode.access and Opcodes.ACC_STATIC) != 0
+        val argumentTypes = Type.getArgumentTypes(methodNode.desc)
+        val stackSizeAtCall = argumentTypes.size + if (isStatic) 0 else 1
+        val thisIsReassigned = !isStatic && methodNode.instructions.toArray().any {
+            it is VarInsnNode && it.`var` == 0 && it.opcode == Opcodes.ASTORE
+        }
+
+        val tailCalls = calls.filter { call ->
+            val frame = frames[methodNode.instructions.indexOf(call)] ?: return@filter false
+            frame.stackSize == stackSizeAtCall &&
+            (isStatic || !thisIsReassigned && isThisLoad(frame.getStack(0))) &&
+            !isInTryCatchBlock(methodNode, call) &&
+            isFollowedByReturn(call, Type.getReturnType(methodNode.desc))
+        }
+        if (tailCalls.isEmpty()) return
+
+        val methodStart = LabelNode()
+        methodNode.instructions.insert(methodStart)
+
+        for (call in tailCalls) {
+            val assignments = InsnList()
+            var index = argumentTypes.sumBy { it.size } + if (isStatic) 0 else 1
+            for (type in argumentTypes.reversed()) {
+                index -= type.size
+                assignments.add(VarInsnNode(type.getOpcode(Opcodes.ISTORE), index))
+            }
+            if (!isStatic) {
+                assignments.add(InsnNode(Opcodes.POP))
+            }
+            assignments.add(JumpInsnNode(Opcodes.GOTO, methodStart))
+
+            methodNode.instructions.insertBefore(call, assignments)
+            methodNode.instructions.remove(call)
+        }
+
+        diagnostics.report(ErrorsJvm.TAIL_CALLS_CONVERTED_TO_LOOP.on(function))
+    }
+
+    private fun canBeConverted(methodNode: MethodNode): Boolean {
+        if (methodNode.name == "<init>" || methodNode.name == "<clinit>") return false
+        if ((methodNode.access and (Opcodes.ACC_ABSTRACT or Opcodes.ACC_NATIVE)) != 0) return false
+        // The call must always dispatch to this very method
+        return (methodNode.access and (Opcodes.ACC_STATIC or Opcodes.ACC_PRIVATE or Opcodes.ACC_FINAL)) != 0
+    }
+
+    private fun isSelfCall(methodNode: MethodNode, insn: MethodInsnNode): Boolean {
+        if (insn.owner != ownerInternalName || insn.name != methodNode.name || insn.desc != methodNode.desc) return false
+        return if ((methodNode.access and Opcodes.ACC_STATIC) != 0)
+            insn.opcode == Opcodes.INVOKESTATIC
+        else
+            insn.opcode == Opcodes.INVOKEVIRTUAL || insn.opcode == Opcodes.INVOKESPECIAL
+    }
+
+    private fun isThisLoad(value: SourceValue): Boolean =
+            value.insns.all { it.opcode == Opcodes.ALOAD && (it as VarInsnNode).`var` == 0 }
+
+    private fun isInTryCatchBlock(methodNode: MethodNode, insn: AbstractInsnNode): Boolean {
+        val index = methodNode.instructions.indexOf(insn)
+        return methodNode.tryCatchBlocks.any { tcb ->
+            methodNode.instructions.indexOf(tcb.start) <= index && index < methodNode.instructions.indexOf(tcb.end)
+        }
+    }
+
+    private fun isFollowedByReturn(call: AbstractInsnNode, returnType: Type): Boolean {
+        val returnOpcode = if (returnType.sort == Type.VOID) Opcodes.RETURN else returnType.getOpcode(Opcodes.IRETURN)
+        val visitedJumps = HashSet<AbstractInsnNode>()
+        var current: AbstractInsnNode? = call.next
+        while (current != null) {
+            when {
+                !current.isMeaningful || current.opcode == Opcodes.NOP ->
+                    current = current.next
+                current.opcode == Opcodes.GOTO -> {
+                    if (!visitedJumps.add(current)) return false
+                    current = (current as JumpInsnNode).label
+                }
+                else ->
+                    return current.opcode == returnOpcode
+            }
+        }
+        return false
+    }
+}
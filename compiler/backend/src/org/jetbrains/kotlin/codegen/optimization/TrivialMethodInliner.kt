@@ -0,0 +1,313 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization
+
+import org.jetbrains.kotlin.codegen.optimization.common.asSequence
+import org.jetbrains.kotlin.codegen.optimization.common.isMeaningful
+import org.jetbrains.kotlin.load.java.JvmAbi
+import org.jetbrains.org.objectweb.asm.ClassReader
+import org.jetbrains.org.objectweb.asm.ClassWriter
+import org.jetbrains.org.objectweb.asm.Opcodes.*
+import org.jetbrains.org.objectweb.asm.Type
+import org.jetbrains.org.objectweb.asm.tree.*
+import java.io.File
+
+/**
+ * Module-wide pass over the generated class files, which inlines trivial synthetic accessors and folds calls to methods
+ * which can't be overridden and just return a constant.
+ *
+ * A synthetic `access$` method is trivial if it loads its parameters in order, performs a single field access or static call
+ * with them and returns the result. Its calls are replaced with that instruction, and the accessed private member is made
+ * package-private if it's accessed from another class of the same package. Accessors which are no longer called from any class
+ * of the module are removed.
+ *
+ * Only calls between classes compiled from the same source files are changed, and calls to static methods are only changed
+ * if they can't trigger the initialization of another class with a static initializer.
+ */
+class TrivialMethodInliner {
+    private val classes = linkedMapOf<String, ClassNode>()
+    private val paths = hashMapOf<String, String>()
+    private val sourceFiles = hashMapOf<String, List<File>>()
+    private val changedClasses = linkedSetOf<String>()
+    private val inlinedAccessors = hashSetOf<MemberKey>()
+
+    /**
+     * @param classFiles class file contents by their relative paths
+     * @param classSourceFiles source files of the class files by their relative paths
+     * @return new contents of the changed class files by their relative paths
+     */
+    fun transform(classFiles: Map<String, ByteArray>, classSourceFiles: Map<String, List<File>>): Map<String, ByteArray> {
+        for ((path, bytes) in classFiles) {
+            val classNode = ClassNode()
+            ClassReader(bytes).accept(classNode, ClassReader.SKIP_FRAMES)
+            classes[classNode.name] = classNode
+            paths[classNode.name] = path
+            sourceFiles[classNode.name] = classSourceFiles[path].orEmpty()
+        }
+
+        // Inlining an accessor may turn another method into a trivial one, e.g. an accessor to a function returning a constant
+        for (iteration in 1..MAX_ITERATIONS) {
+            if (!inlineCalls()) break
+        }
+
+        removeUnusedAccessors()
+
+        val result = linkedMapOf<String, ByteArray>()
+        for (className in changedClasses) {
+            result[paths[className]!!] = writeClass(classes[className]!!)
+        }
+        return result
+    }
+
+    private fun inlineCalls(): Boolean {
+        val constants = hashMapOf<MemberKey, AbstractInsnNode>()
+        val accessors = hashMapOf<MemberKey, AbstractInsnNode>()
+        for (classNode in classes.values) {
+            for (method in classNode.methods) {
+                val key = MemberKey(classNode.name, method.name, method.desc)
+                getReturnedConstant(classNode, method)?.let { constants[key] = it }
+                getForwardedInstruction(method)?.let { accessors[key] = it }
+            }
+        }
+
+        if (constants.isEmpty() && accessors.isEmpty()) return false
+
+        var changed = false
+        for (classNode in classes.values) {
+            for (method in classNode.methods) {
+                for (insn in method.instructions.toArray()) {
+                    if (insn !is MethodInsnNode) continue
+                    val key = MemberKey(insn.owner, insn.name, insn.desc)
+
+                    val constant = constants[key]
+                    val forwarded = accessors[key]
+                    val inlined = when {
+                        constant != null -> foldConstantCall(classNode, method, insn, constant)
+                        forwarded != null -> inlineAccessorCall(classNode, method, insn, forwarded)
+                        else -> false
+                    }
+
+                    if (inlined) {
+                        if (forwarded != null) {
+                            inlinedAccessors.add(key)
+                        }
+                        changedClasses.add(classNode.name)
+                        changed = true
+                    }
+                }
+            }
+        }
+
+        return changed
+    }
+
+    private fun getReturnedConstant(classNode: ClassNode, method: MethodNode): AbstractInsnNode? {
+        if (method.name == "<init>" || method.tryCatchBlocks.isNotEmpty()) return null
+        if (method.access and (ACC_STATIC or ACC_PRIVATE or ACC_FINAL) == 0 && classNode.access and ACC_FINAL == 0) return null
+
+        val insns = method.instructions.asSequence().filter { it.isMeaningful }.toList()
+        if (insns.size != 2) return null
+
+        val constant = insns[0]
+        if (!constant.isConstant() || insns[1].opcode != Type.getReturnType(method.desc).getOpcode(IRETURN)) return null
+
+        return constant
+    }
+
+    private fun getForwardedInstruction(method: MethodNode): AbstractInsnNode? {
+        if (method.access and (ACC_STATIC or ACC_SYNTHETIC) != ACC_STATIC or ACC_SYNTHETIC) return null
+        if (!method.name.startsWith(ACCESSOR_PREFIX) || method.tryCatchBlocks.isNotEmpty()) return null
+
+        val argumentTypes = Type.getArgumentTypes(method.desc)
+        val returnType = Type.getReturnType(method.desc)
+        val insns = method.instructions.asSequence().filter { it.isMeaningful }.toList()
+        if (insns.size != argumentTypes.size + 2) return null
+
+        var slot = 0
+        for ((index, argumentType) in argumentTypes.withIndex()) {
+            val load = insns[index]
+            if (load.opcode != argumentType.getOpcode(ILOAD) || (load as VarInsnNode).`var` != slot) return null
+            slot += argumentType.size
+        }
+
+        if (insns.last().opcode != returnType.getOpcode(IRETURN)) return null
+
+        val target = insns[argumentTypes.size]
+        val consumed: List<Type>
+        val produced: Type
+        when {
+            target is FieldInsnNode -> {
+                val fieldType = Type.getType(target.desc)
+                val ownerType = Type.getObjectType(target.owner)
+                when (target.opcode) {
+                    GETFIELD -> { consumed = listOf(ownerType); produced = fieldType }
+                    GETSTATIC -> { consumed = emptyList(); produced = fieldType }
+                    PUTFIELD -> { consumed = listOf(ownerType, fieldType); produced = Type.VOID_TYPE }
+                    PUTSTATIC -> { consumed = listOf(fieldType); produced = Type.VOID_TYPE }
+                    else -> return null
+                }
+            }
+            target is MethodInsnNode && target.opcode == INVOKESTATIC -> {
+                consumed = Type.getArgumentTypes(target.desc).toList()
+                produced = Type.getReturnType(target.desc)
+            }
+            else -> return null
+        }
+
+        // The accessor should take and return exactly what the instruction does, so that the stack stays the same
+        if (consumed != argumentTypes.toList() || produced != returnType) return null
+
+        return target
+    }
+
+    private fun foldConstantCall(classNode: ClassNode, method: MethodNode, call: MethodInsnNode, constant: AbstractInsnNode): Boolean {
+        val instructions = method.instructions
+        if (!isFromSameSourceFiles(classNode.name, call.owner)) return false
+
+        if (call.opcode == INVOKESTATIC) {
+            if (!canSkipInitialization(classNode, call.owner)) return false
+
+            for (argumentType in Type.getArgumentTypes(call.desc).reversed()) {
+                instructions.insertBefore(call, InsnNode(if (argumentType.size == 2) POP2 else POP))
+            }
+        }
+        else {
+            // Only receivers which are known to be not null are dropped, so that a call on null still throws
+            if (Type.getArgumentTypes(call.desc).isNotEmpty()) return false
+
+            val receiver = call.previous
+            when {
+                receiver.opcode == ALOAD && (receiver as VarInsnNode).`var` == 0 && method.access and ACC_STATIC == 0 ->
+                    instructions.remove(receiver)
+                receiver.opcode == GETSTATIC && (receiver as FieldInsnNode).owner == call.owner && receiver.name == JvmAbi.INSTANCE_FIELD ->
+                    instructions.insertBefore(call, InsnNode(POP))
+                else -> return false
+            }
+        }
+
+        instructions.set(call, constant.clone(emptyMap()))
+        return true
+    }
+
+    private fun inlineAccessorCall(classNode: ClassNode, method: MethodNode, call: MethodInsnNode, target: AbstractInsnNode): Boolean {
+        if (call.opcode != INVOKESTATIC) return false
+
+        val targetOwner: String
+        val targetName: String
+        val targetDesc: String
+        when (target) {
+            is FieldInsnNode -> { targetOwner = target.owner; targetName = target.name; targetDesc = target.desc }
+            is MethodInsnNode -> { targetOwner = target.owner; targetName = target.name; targetDesc = target.desc }
+            else -> return false
+        }
+
+        val targetClass = classes[targetOwner] ?: return false
+        if (targetClass.access and ACC_INTERFACE != 0) return false
+
+        if (!isFromSameSourceFiles(classNode.name, call.owner) || !isFromSameSourceFiles(classNode.name, targetOwner)) return false
+
+        // The accessed static member initializes its class itself, an instance member's class is initialized if there's an instance
+        val isStaticTarget = target.opcode == GETSTATIC || target.opcode == PUTSTATIC || target.opcode == INVOKESTATIC
+        if (!(isStaticTarget && call.owner == targetOwner) && !canSkipInitialization(classNode, call.owner)) return false
+
+        val field = if (target is FieldInsnNode) targetClass.fields.firstOrNull { it.name == targetName && it.desc == targetDesc } else null
+        val targetMethod = if (target is MethodInsnNode) targetClass.methods.firstOrNull { it.name == targetName && it.desc == targetDesc } else null
+        val access = field?.access ?: targetMethod?.access ?: return false
+
+        if ((target.opcode == PUTFIELD || target.opcode == PUTSTATIC) && access and ACC_FINAL != 0 && classNode.name != targetOwner) return false
+
+        val samePackage = getPackageName(classNode.name) == getPackageName(targetOwner)
+        if (targetClass.access and ACC_PUBLIC == 0 && !samePackage) return false
+
+        val isPrivate = access and ACC_PRIVATE != 0
+        val isAccessible = when {
+            access and ACC_PUBLIC != 0 -> true
+            isPrivate -> classNode.name == targetOwner || samePackage
+            else -> samePackage
+        }
+        if (!isAccessible) return false
+
+        if (isPrivate && classNode.name != targetOwner) {
+            field?.let { it.access = it.access and ACC_PRIVATE.inv() }
+            targetMethod?.let { it.access = it.access and ACC_PRIVATE.inv() }
+            changedClasses.add(targetOwner)
+        }
+
+        method.instructions.set(call, target.clone(emptyMap()))
+        return true
+    }
+
+    // Classes compiled from other files may be recompiled separately, so their methods' bodies can't be relied upon
+    private fun isFromSameSourceFiles(className: String, otherClassName: String): Boolean =
+            className == otherClassName || sourceFiles[className] == sourceFiles[otherClassName]
+
+    private fun canSkipInitialization(caller: ClassNode, className: String): Boolean {
+        if (caller.name == className) return true
+        val classNode = classes[className] ?: return false
+        return classNode.methods.none { it.name == "<clinit>" }
+    }
+
+    private fun removeUnusedAccessors() {
+        if (inlinedAccessors.isEmpty()) return
+
+        val usedMethods = hashSetOf<MemberKey>()
+        for (classNode in classes.values) {
+            for (method in classNode.methods) {
+                for (insn in method.instructions.asSequence()) {
+                    if (insn is MethodInsnNode) {
+                        usedMethods.add(MemberKey(insn.owner, insn.name, insn.desc))
+                    }
+                }
+            }
+        }
+
+        for (classNode in classes.values) {
+            val removed = classNode.methods.removeAll { method ->
+                val key = MemberKey(classNode.name, method.name, method.desc)
+                key in inlinedAccessors && key !in usedMethods
+            }
+            if (removed) {
+                changedClasses.add(classNode.name)
+            }
+        }
+    }
+
+    private fun writeClass(classNode: ClassNode): ByteArray {
+        val writer = object : ClassWriter(ClassWriter.COMPUTE_FRAMES or ClassWriter.COMPUTE_MAXS) {
+            // The same as the one used to generate the original class files, see ClassBuilderFactories
+            override fun getCommonSuperClass(type1: String, type2: String): String = "java/lang/Object"
+        }
+        classNode.accept(writer)
+        return writer.toByteArray()
+    }
+
+    private fun AbstractInsnNode.isConstant(): Boolean =
+            when (opcode) {
+                in ACONST_NULL..DCONST_1, BIPUSH, SIPUSH -> true
+                LDC -> (this as LdcInsnNode).cst.let { it is Number || it is String }
+                else -> false
+            }
+
+    private fun getPackageName(internalName: String): String = internalName.substringBeforeLast('/', "")
+
+    private data class MemberKey(val owner: String, val name: String, val desc: String)
+
+    companion object {
+        private val ACCESSOR_PREFIX = "access$"
+        private val MAX_ITERATIONS = 3
+    }
+}
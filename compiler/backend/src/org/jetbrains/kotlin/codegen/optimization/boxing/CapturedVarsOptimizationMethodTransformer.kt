@@ -0,0 +1,278 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization.boxing
+
+import org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter
+import org.jetbrains.kotlin.codegen.optimization.common.analyzeLiveness
+import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer
+import org.jetbrains.kotlin.resolve.jvm.AsmTypes
+import org.jetbrains.kotlin.util.PerformanceCounter
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.jetbrains.org.objectweb.asm.Type
+import org.jetbrains.org.objectweb.asm.tree.*
+import org.jetbrains.org.objectweb.asm.tree.analysis.BasicValue
+import org.jetbrains.org.objectweb.asm.tree.analysis.Frame
+import java.util.*
+
+/**
+ * Replaces kotlin.jvm.internal.Ref objects of captured variables with plain locals,
+ * when the Ref doesn't escape the method (which is usually the case once all lambdas using the variable are inlined).
+ */
+class CapturedVarsOptimizationMethodTransformer : MethodTransformer() {
+    override fun transform(internalClassName: String, methodNode: MethodNode) {
+        if (methodNode.instructions.toArray().none { it.opcode == Opcodes.NEW && isRefType((it as TypeInsnNode).desc) }) return
+
+        Transformer(internalClassName, methodNode).run()
+    }
+
+    private class Transformer(private val internalClassName: String, private val methodNode: MethodNode) {
+        private val insnList = methodNode.instructions
+
+        fun run() {
+            val interpreter = CapturedVarsInterpreter()
+            val frames = MethodTransformer.analyze(internalClassName, methodNode, interpreter)
+
+            checkStackOperations(frames)
+            checkInstancesAliveAtAllocation(frames, interpreter.values)
+
+            val valuesToOptimize = interpreter.values.filter { it.isSafeToRemove && it.initInsn != null }
+            if (valuesToOptimize.isEmpty()) return
+
+            for (value in valuesToOptimize) {
+                value.localIndex = methodNode.maxLocals
+                methodNode.maxLocals += value.elementType.size
+            }
+
+            // Should be done before instructions are changed, frames are indexed by instructions
+            adaptLocalVariableTable(frames)
+
+            for (value in valuesToOptimize) {
+                rewrite(value)
+                ELIMINATED_REFS_COUNTER.increment()
+            }
+        }
+
+        // Stack manipulations other than DUP of the top value are not interpreted by frames, so a Ref below the top can't be removed
+        private fun checkStackOperations(frames: Array<out Frame<BasicValue>?>) {
+            for (i in 0..insnList.size() - 1) {
+                val frame = frames[i] ?: continue
+                when (insnList[i].opcode) {
+                    Opcodes.POP, Opcodes.POP2, Opcodes.DUP_X1, Opcodes.DUP_X2,
+                    Opcodes.DUP2, Opcodes.DUP2_X1, Opcodes.DUP2_X2, Opcodes.SWAP -> {
+                        for (depth in 1..Math.min(4, frame.stackSize)) {
+                            (frame.getStack(frame.stackSize - depth) as? CapturedVarValue)?.markAsUnsafeToRemove()
+                        }
+                    }
+                }
+            }
+        }
+
+        // All instances allocated at the same NEW share one abstract value, so an instance from a previous loop iteration
+        // must not be used after a new one is allocated
+        private fun checkInstancesAliveAtAllocation(frames: Array<out Frame<BasicValue>?>, values: Collection<CapturedVarValue>) {
+            val liveness by lazy { analyzeLiveness(methodNode) }
+
+            for (value in values) {
+                if (!value.isSafeToRemove) continue
+                val index = insnList.indexOf(value.newInsn)
+                val frame = frames[index] ?: continue
+
+                for (i in 0..frame.stackSize - 1) {
+                    if (frame.getStack(i) === value) value.markAsUnsafeToRemove()
+                }
+                for (local in 0..frame.locals - 1) {
+                    if (frame.getLocal(local) === value && liveness[index].isAlive(local)) value.markAsUnsafeToRemove()
+                }
+            }
+        }
+
+        private fun adaptLocalVariableTable(frames: Array<out Frame<BasicValue>?>) {
+            for (localVariable in methodNode.localVariables ?: return) {
+                val desc = localVariable.desc
+                if (!desc.startsWith("L") || !isRefType(desc.substring(1, desc.length - 1))) continue
+
+                val frame = frames[insnList.indexOf(localVariable.start)] ?: continue
+                val value = frame.getLocal(localVariable.index) as? CapturedVarValue ?: continue
+                if (!value.isSafeToRemove || value.initInsn == null) continue
+
+                localVariable.index = value.localIndex
+                localVariable.desc = value.elementType.descriptor
+            }
+        }
+
+        private fun rewrite(value: CapturedVarValue) {
+            val elementType = value.elementType
+
+            insnList.insertBefore(value.newInsn, defaultValueInsn(elementType))
+            insnList.insertBefore(value.newInsn, VarInsnNode(elementType.getOpcode(Opcodes.ISTORE), value.localIndex))
+            insnList.remove(value.newInsn)
+            insnList.remove(value.initInsn)
+
+            for (insn in value.removedInsns) {
+                insnList.remove(insn)
+            }
+            for (insn in value.getFieldInsns) {
+                insnList.set(insn, VarInsnNode(elementType.getOpcode(Opcodes.ILOAD), value.localIndex))
+            }
+            for (insn in value.putFieldInsns) {
+                insnList.set(insn, VarInsnNode(elementType.getOpcode(Opcodes.ISTORE), value.localIndex))
+            }
+        }
+    }
+
+    private class CapturedVarValue(refType: Type, val newInsn: TypeInsnNode) : BasicValue(refType) {
+        val elementType: Type = REF_ELEMENT_TYPES[refType.internalName]!!
+
+        var initInsn: MethodInsnNode? = null
+        // Loads, stores and copies of the Ref itself
+        val removedInsns = LinkedHashSet<AbstractInsnNode>()
+        val getFieldInsns = LinkedHashSet<FieldInsnNode>()
+        val putFieldInsns = LinkedHashSet<FieldInsnNode>()
+
+        var localIndex = -1
+
+        var isSafeToRemove = true; private set
+
+        fun markAsUnsafeToRemove() {
+            isSafeToRemove = false
+        }
+
+        override fun equals(other: Any?) =
+                this === other
+
+        override fun hashCode() =
+                System.identityHashCode(this)
+    }
+
+    private class CapturedVarsInterpreter : OptimizationBasicInterpreter() {
+        private val refValues = LinkedHashMap<AbstractInsnNode, CapturedVarValue>()
+
+        val values: Collection<CapturedVarValue>
+            get() = refValues.values
+
+        override fun newOperation(insn: AbstractInsnNode): BasicValue? {
+            if (insn.opcode == Opcodes.NEW && isRefType((insn as TypeInsnNode).desc)) {
+                return refValues.getOrPut(insn) { CapturedVarValue(Type.getObjectType(insn.desc), insn) }
+            }
+            return super.newOperation(insn)
+        }
+
+        override fun copyOperation(insn: AbstractInsnNode, value: BasicValue): BasicValue {
+            if (value is CapturedVarValue) {
+                when (insn.opcode) {
+                    Opcodes.ALOAD, Opcodes.ASTORE, Opcodes.DUP -> value.removedInsns.add(insn)
+                    else -> value.markAsUnsafeToRemove()
+                }
+                return value
+            }
+            return super.copyOperation(insn, value)
+        }
+
+        override fun unaryOperation(insn: AbstractInsnNode, value: BasicValue): BasicValue? {
+            if (value is CapturedVarValue) {
+                when {
+                    insn.opcode == Opcodes.GETFIELD && isElementField(insn, value) -> value.getFieldInsns.add(insn as FieldInsnNode)
+                    insn.opcode == Opcodes.CHECKCAST && (insn as TypeInsnNode).desc == value.type.internalName -> {
+                        value.removedInsns.add(insn)
+                        return value
+                    }
+                    else -> value.markAsUnsafeToRemove()
+                }
+            }
+            return super.unaryOperation(insn, value)
+        }
+
+        override fun binaryOperation(insn: AbstractInsnNode, value1: BasicValue, value2: BasicValue): BasicValue? {
+            if (value1 is CapturedVarValue) {
+                if (insn.opcode == Opcodes.PUTFIELD && isElementField(insn, value1)) {
+                    value1.putFieldInsns.add(insn as FieldInsnNode)
+                }
+                else {
+                    value1.markAsUnsafeToRemove()
+                }
+            }
+            (value2 as? CapturedVarValue)?.markAsUnsafeToRemove()
+            return super.binaryOperation(insn, value1, value2)
+        }
+
+        override fun ternaryOperation(insn: AbstractInsnNode, value1: BasicValue, value2: BasicValue, value3: BasicValue): BasicValue? {
+            for (value in listOf(value1, value2, value3)) {
+                (value as? CapturedVarValue)?.markAsUnsafeToRemove()
+            }
+            return super.ternaryOperation(insn, value1, value2, value3)
+        }
+
+        override fun naryOperation(insn: AbstractInsnNode, values: List<BasicValue>): BasicValue? {
+            val receiver = values.firstOrNull()
+            if (receiver is CapturedVarValue && values.size == 1 && isRefConstructorCall(insn, receiver) &&
+                receiver.initInsn.let { it == null || it == insn }) {
+                receiver.initInsn = insn as MethodInsnNode
+            }
+            else {
+                for (value in values) {
+                    (value as? CapturedVarValue)?.markAsUnsafeToRemove()
+                }
+            }
+            return super.naryOperation(insn, values)
+        }
+
+        override fun merge(v: BasicValue, w: BasicValue): BasicValue {
+            if (v === w) return v
+            if (v != BasicValue.UNINITIALIZED_VALUE && w != BasicValue.UNINITIALIZED_VALUE) {
+                (v as? CapturedVarValue)?.markAsUnsafeToRemove()
+                (w as? CapturedVarValue)?.markAsUnsafeToRemove()
+            }
+            return super.merge(v, w)
+        }
+
+        private fun isElementField(insn: AbstractInsnNode, value: CapturedVarValue) =
+                insn is FieldInsnNode && insn.owner == value.type.internalName && insn.name == "element"
+
+        private fun isRefConstructorCall(insn: AbstractInsnNode, value: CapturedVarValue) =
+                insn is MethodInsnNode && insn.opcode == Opcodes.INVOKESPECIAL &&
+                insn.owner == value.type.internalName && insn.name == "<init>" && insn.desc == "()V"
+    }
+
+    companion object {
+        private val ELIMINATED_REFS_COUNTER = PerformanceCounter.create("Captured variable Ref allocations eliminated")
+
+        private val REF_ELEMENT_TYPES = hashMapOf(
+                AsmTypes.OBJECT_REF_TYPE.internalName to AsmTypes.OBJECT_TYPE,
+                refTypeName("Boolean") to Type.BOOLEAN_TYPE,
+                refTypeName("Char") to Type.CHAR_TYPE,
+                refTypeName("Byte") to Type.BYTE_TYPE,
+                refTypeName("Short") to Type.SHORT_TYPE,
+                refTypeName("Int") to Type.INT_TYPE,
+                refTypeName("Long") to Type.LONG_TYPE,
+                refTypeName("Float") to Type.FLOAT_TYPE,
+                refTypeName("Double") to Type.DOUBLE_TYPE
+        )
+
+        private fun refTypeName(primitive: String) = AsmTypes.REF_TYPE_PREFIX + primitive + "Ref"
+
+        private fun isRefType(internalName: String) = internalName in REF_ELEMENT_TYPES
+
+        private fun defaultValueInsn(type: Type): AbstractInsnNode =
+                when (type.sort) {
+                    Type.LONG -> InsnNode(Opcodes.LCONST_0)
+                    Type.FLOAT -> InsnNode(Opcodes.FCONST_0)
+                    Type.DOUBLE -> InsnNode(Opcodes.DCONST_0)
+                    Type.OBJECT -> InsnNode(Opcodes.ACONST_NULL)
+                    else -> InsnNode(Opcodes.ICONST_0)
+                }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization.boxing
+
+import org.jetbrains.kotlin.codegen.intrinsics.IntrinsicMethods
+import org.jetbrains.kotlin.codegen.optimization.common.MethodAnalyzer
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.jetbrains.org.objectweb.asm.Type
+import org.jetbrains.org.objectweb.asm.tree.*
+import org.jetbrains.org.objectweb.asm.tree.analysis.BasicValue
+import org.jetbrains.org.objectweb.asm.tree.analysis.Frame
+
+private val NOT_NULL_CHECK_METHOD_NAMES = setOf(
+        "checkParameterIsNotNull", "checkNotNullParameter",
+        "checkExpressionValueIsNotNull", "checkNotNullExpressionValue",
+        "checkNotNull"
+)
+
+private val NOT_NULL_CHECK_DESCRIPTORS = setOf("(Ljava/lang/Object;)V", "(Ljava/lang/Object;Ljava/lang/String;)V")
+
+fun AbstractInsnNode.isNotNullCheck(): Boolean =
+        opcode == Opcodes.INVOKESTATIC &&
+        this is MethodInsnNode &&
+        owner == IntrinsicMethods.INTRINSICS_CLASS_NAME &&
+        name in NOT_NULL_CHECK_METHOD_NAMES &&
+        desc in NOT_NULL_CHECK_DESCRIPTORS
+
+fun MethodInsnNode.getNotNullCheckArgumentsCount(): Int =
+        Type.getArgumentTypes(desc).size
+
+/**
+ * Returns the instruction which pushes the value checked by the given not-null check call,
+ * if the value and the message are pushed right before the call (as generated by codegen).
+ */
+fun MethodInsnNode.getNotNullCheckedValueSource(): AbstractInsnNode? {
+    if (getNotNullCheckArgumentsCount() == 1) return previous
+    val message = previous ?: return null
+    return if (message.opcode == Opcodes.LDC) message.previous else null
+}
+
+/**
+ * Tracks not-null values through the method: besides the values known to be not-null by [NullabilityInterpreter]
+ * (new objects, constants, boxed primitives), a value becomes not-null after a not-null check intrinsic
+ * and on the branches of null checks and instance-of checks where it can't be null.
+ *
+ * Facts are stored in frames, so they survive local variable stores (including ones introduced for inlined call arguments)
+ * and are kept at merge points only if they hold on all incoming edges.
+ */
+class NullabilityAnalyzer(owner: String, method: MethodNode) :
+        MethodAnalyzer<BasicValue>(owner, method, NullabilityInterpreter(method.instructions)) {
+
+    override fun refineFrameOnEdge(frame: Frame<BasicValue>, insn: Int, successor: Int): Frame<BasicValue> {
+        val insnNode = instructions[insn]
+        return when {
+            insnNode.isNotNullCheck() ->
+                refineNotNull(frame, (insnNode as MethodInsnNode).getNotNullCheckedValueSource())
+            insnNode is JumpInsnNode ->
+                if (isNotNullEdge(insnNode, insn, successor)) refineNotNull(frame, getCheckedValueSource(insnNode)) else frame
+            else ->
+                frame
+        }
+    }
+
+    private fun isNotNullEdge(jump: JumpInsnNode, insn: Int, successor: Int): Boolean {
+        val target = instructions.indexOf(jump.label)
+        // Both edges lead to the same instruction, so nothing is known there
+        if (target == insn + 1) return false
+        val isBranch = successor == target
+
+        return when (jump.opcode) {
+            Opcodes.IFNULL -> !isBranch
+            Opcodes.IFNONNULL -> isBranch
+            Opcodes.IFEQ -> jump.previous?.opcode == Opcodes.INSTANCEOF && !isBranch
+            Opcodes.IFNE -> jump.previous?.opcode == Opcodes.INSTANCEOF && isBranch
+            else -> false
+        }
+    }
+
+    private fun getCheckedValueSource(jump: JumpInsnNode): AbstractInsnNode? {
+        val checked = jump.previous ?: return null
+        return if (checked.opcode == Opcodes.INSTANCEOF) checked.previous else checked
+    }
+
+    private fun refineNotNull(frame: Frame<BasicValue>, source: AbstractInsnNode?): Frame<BasicValue> {
+        if (source == null) return frame
+
+        when (source.opcode) {
+            Opcodes.ALOAD -> {
+                val result = newFrame(frame)
+                markLocalNotNull(result, (source as VarInsnNode).`var`)
+                return result
+            }
+            Opcodes.DUP -> {
+                // The checked value was duplicated, the original one is on the top of the stack now
+                if (frame.stackSize == 0) return frame
+                val result = newFrame(frame)
+                val top = result.pop()
+                result.push(makeNotNull(top))
+                val duplicated = source.previous
+                if (duplicated?.opcode == Opcodes.ALOAD) {
+                    markLocalNotNull(result, (duplicated as VarInsnNode).`var`)
+                }
+                return result
+            }
+            else -> return frame
+        }
+    }
+
+    private fun markLocalNotNull(frame: Frame<BasicValue>, index: Int) {
+        frame.setLocal(index, makeNotNull(frame.getLocal(index)))
+    }
+
+    private fun makeNotNull(value: BasicValue): BasicValue {
+        if (value is NotNullBasicValue) return value
+        val sort = value.type?.sort
+        return if (sort == Type.OBJECT || sort == Type.ARRAY) NotNullBasicValue(value) else value
+    }
+}
@@ -26,6 +26,9 @@ import org.jetbrains.org.objectweb.asm.tree.analysis.Frame;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Removes null checks and not-null assertions on values proven to be not-null by {@link NullabilityAnalyzer}.
+ */
 public class RedundantNullCheckMethodTransformer extends MethodTransformer {
 
     @Override
@@ -35,23 +38,39 @@ public class RedundantNullCheckMethodTransformer extends MethodTransformer {
         }
     }
 
+    public static int countNotNullChecks(@NotNull MethodNode methodNode) {
+        int count = 0;
+        for (AbstractInsnNode insn = methodNode.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (NullabilityAnalyzerKt.isNotNullCheck(insn)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     private static boolean removeRedundantNullCheckPass(@NotNull String internalClassName, @NotNull MethodNode methodNode) {
         InsnList insnList = methodNode.instructions;
-        Frame<BasicValue>[] frames = analyze(
-                internalClassName, methodNode,
-                new NullabilityInterpreter(insnList)
-        );
+        Frame<BasicValue>[] frames = new NullabilityAnalyzer(internalClassName, methodNode).analyze();
 
         List<AbstractInsnNode> insnsToOptimize = new ArrayList<AbstractInsnNode>();
+        List<MethodInsnNode> checksToRemove = new ArrayList<MethodInsnNode>();
 
         for (int i = 0; i < insnList.size(); i++) {
             Frame<BasicValue> frame = frames[i];
             AbstractInsnNode insn = insnList.get(i);
+            if (frame == null) continue;
 
             if ((insn.getOpcode() == Opcodes.IFNULL || insn.getOpcode() == Opcodes.IFNONNULL) &&
-                frame != null && frame.getStack(frame.getStackSize() - 1) instanceof NotNullBasicValue) {
+                frame.getStack(frame.getStackSize() - 1) instanceof NotNullBasicValue) {
                 insnsToOptimize.add(insn);
             }
+            else if (NullabilityAnalyzerKt.isNotNullCheck(insn)) {
+                MethodInsnNode check = (MethodInsnNode) insn;
+                int checkedValueIndex = frame.getStackSize() - NullabilityAnalyzerKt.getNotNullCheckArgumentsCount(check);
+                if (frame.getStack(checkedValueIndex) instanceof NotNullBasicValue) {
+                    checksToRemove.add(check);
+                }
+            }
         }
 
         for (AbstractInsnNode insn : insnsToOptimize) {
@@ -76,6 +95,29 @@ public class RedundantNullCheckMethodTransformer extends MethodTransformer {
             }
         }
 
-        return insnsToOptimize.size() > 0;
+        for (MethodInsnNode check : checksToRemove) {
+            removeNotNullCheck(insnList, check);
+        }
+
+        return insnsToOptimize.size() > 0 || checksToRemove.size() > 0;
+    }
+
+    private static void removeNotNullCheck(@NotNull InsnList insnList, @NotNull MethodInsnNode check) {
+        AbstractInsnNode source = NullabilityAnalyzerKt.getNotNullCheckedValueSource(check);
+        if (source == null || (source.getOpcode() != Opcodes.ALOAD && source.getOpcode() != Opcodes.DUP)) {
+            // Arguments are computed elsewhere, just drop them from the stack
+            int argumentsCount = NullabilityAnalyzerKt.getNotNullCheckArgumentsCount(check);
+            insnList.set(check, new InsnNode(argumentsCount == 2 ? Opcodes.POP2 : Opcodes.POP));
+            return;
+        }
+
+        // Value and message are pushed right before the call and have no side effects
+        AbstractInsnNode insn = source;
+        while (insn != check) {
+            AbstractInsnNode next = insn.getNext();
+            insnList.remove(insn);
+            insn = next;
+        }
+        insnList.remove(check);
     }
 }
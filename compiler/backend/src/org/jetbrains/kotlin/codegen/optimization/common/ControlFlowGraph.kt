@@ -16,39 +16,116 @@
 
 package org.jetbrains.kotlin.codegen.optimization.common
 
-import org.jetbrains.org.objectweb.asm.tree.AbstractInsnNode
-import org.jetbrains.org.objectweb.asm.tree.InsnList
-import org.jetbrains.org.objectweb.asm.tree.MethodNode
-import org.jetbrains.org.objectweb.asm.tree.analysis.BasicValue
-
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.jetbrains.org.objectweb.asm.tree.*
+import java.util.*
 
+/**
+ * Control flow graph of the instructions reachable from the method entry.
+ * Built directly from the instruction list, so it is much cheaper than a frame analysis
+ * for analyses which need only the graph or the reachability.
+ */
 class ControlFlowGraph private constructor(private val insns: InsnList) {
     private val edges: Array<MutableList<Int>> = Array(insns.size()) { arrayListOf<Int>() }
+    private val backwardEdges: Array<MutableList<Int>> = Array(insns.size()) { arrayListOf<Int>() }
+    private val reachable = BitSet(insns.size())
+
+    val size: Int
+        get() = edges.size
 
     fun getSuccessorsIndices(insn: AbstractInsnNode): List<Int> = edges[insns.indexOf(insn)]
 
+    fun getSuccessorsIndices(index: Int): List<Int> = edges[index]
+
+    fun getPredecessorsIndices(index: Int): List<Int> = backwardEdges[index]
+
+    /**
+     * Same as having a non-null frame after data flow analysis: every edge is considered feasible.
+     */
+    fun isReachable(index: Int): Boolean = reachable[index]
+
+    private fun addEdge(from: Int, to: Int) {
+        edges[from].add(to)
+        backwardEdges[to].add(from)
+    }
+
     companion object {
         @JvmStatic
         fun build(node: MethodNode): ControlFlowGraph {
             val graph = ControlFlowGraph(node.instructions)
-
-            fun addEdge(from: Int, to: Int) {
-                graph.edges[from].add(to)
+            if (graph.size > 0) {
+                Builder(graph, node).build()
             }
+            return graph
+        }
+    }
 
-            object : MethodAnalyzer<BasicValue>("fake", node, OptimizationBasicInterpreter()) {
-                override fun visitControlFlowEdge(insn: Int, successor: Int): Boolean {
-                    addEdge(insn, successor)
-                    return true
-                }
+    private class Builder(private val graph: ControlFlowGraph, private val node: MethodNode) {
+        private val insns = node.instructions
+        private val handlers = arrayOfNulls<MutableList<Int>>(graph.size)
+        private val queue = IntArray(graph.size)
+        private var top = 0
 
-                override fun visitControlFlowExceptionEdge(insn: Int, successor: Int): Boolean {
-                    addEdge(insn, successor)
-                    return true
+        fun build() {
+            computeExceptionHandlersForEachInsn()
+
+            enqueue(0)
+            while (top > 0) {
+                val index = queue[--top]
+                val insn = insns[index]
+
+                when (insn) {
+                    is JumpInsnNode -> {
+                        if (insn.opcode == Opcodes.JSR) throw AssertionError("Subroutines are deprecated since Java 6")
+                        if (insn.opcode != Opcodes.GOTO) {
+                            edge(index, index + 1)
+                        }
+                        edge(index, insns.indexOf(insn.label))
+                    }
+                    is TableSwitchInsnNode -> {
+                        edge(index, insns.indexOf(insn.dflt))
+                        insn.labels.forEach { edge(index, insns.indexOf(it)) }
+                    }
+                    is LookupSwitchInsnNode -> {
+                        edge(index, insns.indexOf(insn.dflt))
+                        insn.labels.forEach { edge(index, insns.indexOf(it)) }
+                    }
+                    else -> {
+                        val opcode = insn.opcode
+                        if (opcode == Opcodes.RET) throw AssertionError("Subroutines are deprecated since Java 6")
+                        if (opcode != Opcodes.ATHROW && (opcode < Opcodes.IRETURN || opcode > Opcodes.RETURN)) {
+                            edge(index, index + 1)
+                        }
+                    }
                 }
-            }.analyze()
 
-            return graph
+                handlers[index]?.forEach { edge(index, it) }
+            }
+        }
+
+        private fun edge(from: Int, to: Int) {
+            // Falling off the end of the code is not valid bytecode, frame analysis would fail there
+            if (to >= graph.size) throw AssertionError("Execution can fall off the end of the code at instruction #$from")
+            graph.addEdge(from, to)
+            enqueue(to)
+        }
+
+        private fun enqueue(index: Int) {
+            if (graph.reachable[index]) return
+            graph.reachable[index] = true
+            queue[top++] = index
+        }
+
+        private fun computeExceptionHandlersForEachInsn() {
+            for (tcb in node.tryCatchBlocks) {
+                val begin = insns.indexOf(tcb.start)
+                val end = insns.indexOf(tcb.end)
+                val handler = insns.indexOf(tcb.handler)
+                for (j in begin..end - 1) {
+                    val insnHandlers = handlers[j] ?: arrayListOf<Int>().apply { handlers[j] = this }
+                    insnHandlers.add(handler)
+                }
+            }
         }
     }
 }
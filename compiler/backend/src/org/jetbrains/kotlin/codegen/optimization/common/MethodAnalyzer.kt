@@ -54,6 +54,12 @@ open class MethodAnalyzer<V : Value>(
 
     protected open fun visitControlFlowExceptionEdge(insn: Int, successor: Int): Boolean = true
 
+    /**
+     * Returns the frame to be merged into [successor] along the edge from [insn].
+     * [frame] is shared between all outgoing edges of [insn], so it should be copied rather than modified.
+     */
+    protected open fun refineFrameOnEdge(frame: Frame<V>, insn: Int, successor: Int): Frame<V> = frame
+
     protected open fun visitControlFlowExceptionEdge(insn: Int, tcb: TryCatchBlockNode): Boolean =
             visitControlFlowExceptionEdge(insn, instructions.indexOf(tcb.handler))
 
@@ -170,7 +176,7 @@ open class MethodAnalyzer<V : Value>(
 
     private fun processControlFlowEdge(current: Frame<V>, insn: Int, jump: Int) {
         if (visitControlFlowEdge(insn, jump)) {
-            mergeControlFlowEdge(jump, current)
+            mergeControlFlowEdge(jump, refineFrameOnEdge(current, insn, jump))
         }
     }
 
@@ -18,6 +18,7 @@ package org.jetbrains.kotlin.codegen.optimization.common
 
 import org.jetbrains.org.objectweb.asm.tree.AbstractInsnNode
 import org.jetbrains.org.objectweb.asm.tree.MethodNode
+import java.util.*
 
 interface VarFrame<F : VarFrame<F>> {
     fun mergeFrom(other: F)
@@ -31,35 +32,44 @@ interface BackwardAnalysisInterpreter<F : VarFrame<F>> {
     fun use(frame: F, insn: AbstractInsnNode)
 }
 
+/**
+ * Worklist-based backward analysis: an instruction is recomputed only when the frame of one of its successors has changed.
+ */
 fun <F : VarFrame<F>> analyze(node: MethodNode, interpreter: BackwardAnalysisInterpreter<F>): List<F> {
     val graph = ControlFlowGraph.build(node)
     val insnList = node.instructions
+    val size = insnList.size()
 
-    val frames = (1..insnList.size()).map { interpreter.newFrame(node.maxLocals) }.toMutableList()
-    val insnArray = insnList.toArray()
+    val frames = (1..size).map { interpreter.newFrame(node.maxLocals) }.toMutableList()
 
-    // see Figure 9.16 from Dragon book
-    var wereChanges: Boolean
+    // Initially every instruction is queued, the last one is on top as information flows backwards
+    val queue = IntArray(size) { it }
+    val queued = BitSet(size).apply { set(0, size) }
+    var top = size
 
-    do {
-        wereChanges = false
-        for (insn in insnArray) {
-            val index = insnList.indexOf(insn)
-            val newFrame = interpreter.newFrame(node.maxLocals)
-            for (successorIndex in graph.getSuccessorsIndices(insn)) {
-                newFrame.mergeFrom(frames[successorIndex])
-            }
+    while (top > 0) {
+        val index = queue[--top]
+        queued[index] = false
 
-            interpreter.def(newFrame, insn)
-            interpreter.use(newFrame, insn)
+        val insn = insnList[index]
+        val newFrame = interpreter.newFrame(node.maxLocals)
+        for (successorIndex in graph.getSuccessorsIndices(index)) {
+            newFrame.mergeFrom(frames[successorIndex])
+        }
 
-            if (frames[index] != newFrame) {
-                frames[index] = newFrame
-                wereChanges = true
+        interpreter.def(newFrame, insn)
+        interpreter.use(newFrame, insn)
+
+        if (frames[index] != newFrame) {
+            frames[index] = newFrame
+            for (predecessorIndex in graph.getPredecessorsIndices(index)) {
+                if (!queued[predecessorIndex]) {
+                    queued[predecessorIndex] = true
+                    queue[top++] = predecessorIndex
+                }
             }
         }
-
-    } while (wereChanges)
+    }
 
     return frames
 }
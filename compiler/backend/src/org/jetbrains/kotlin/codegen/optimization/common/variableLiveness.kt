@@ -20,6 +20,7 @@ import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer
 import org.jetbrains.org.objectweb.asm.Type
 import org.jetbrains.org.objectweb.asm.tree.AbstractInsnNode
 import org.jetbrains.org.objectweb.asm.tree.IincInsnNode
+import org.jetbrains.org.objectweb.asm.tree.LocalVariableNode
 import org.jetbrains.org.objectweb.asm.tree.MethodNode
 import org.jetbrains.org.objectweb.asm.tree.VarInsnNode
 import org.jetbrains.org.objectweb.asm.tree.analysis.BasicValue
@@ -53,15 +54,25 @@ class VariableLivenessFrame(val maxLocals: Int) : VarFrame<VariableLivenessFrame
 }
 fun analyzeLiveness(node: MethodNode): List<VariableLivenessFrame> {
     val typeAnnotatedFrames = MethodTransformer.analyze("fake", node, OptimizationBasicInterpreter())
+    val localVariables = LocalVariableRanges(node)
     return analyze(node, object : BackwardAnalysisInterpreter<VariableLivenessFrame> {
         override fun newFrame(maxLocals: Int) = VariableLivenessFrame(maxLocals)
         override fun def(frame: VariableLivenessFrame, insn: AbstractInsnNode) = defVar(frame, insn)
-        override fun use(frame: VariableLivenessFrame, insn: AbstractInsnNode) =
-                useVar(frame, insn, node, typeAnnotatedFrames[node.instructions.indexOf(insn)])
-
+        override fun use(frame: VariableLivenessFrame, insn: AbstractInsnNode) {
+            val index = node.instructions.indexOf(insn)
+            useVar(frame, insn, index, localVariables, typeAnnotatedFrames[index])
+        }
     })
 }
 
+// Ranges are computed once: use() is called for an instruction each time the frames of its successors change
+private class LocalVariableRanges(node: MethodNode) {
+    val variables: List<LocalVariableNode> = node.localVariables
+    val starts = IntArray(variables.size) { node.instructions.indexOf(variables[it].start) }
+    val ends = IntArray(variables.size) { node.instructions.indexOf(variables[it].end) }
+    val sorts = IntArray(variables.size) { Type.getType(variables[it].desc).sort }
+}
+
 private fun defVar(frame: VariableLivenessFrame, insn: AbstractInsnNode) {
     if (insn is VarInsnNode && insn.isStoreOperation()) {
         frame.markDead(insn.`var`)
@@ -71,16 +82,17 @@ private fun defVar(frame: VariableLivenessFrame, insn: AbstractInsnNode) {
 private fun useVar(
         frame: VariableLivenessFrame,
         insn: AbstractInsnNode,
-        node: MethodNode,
+        index: Int,
+        localVariables: LocalVariableRanges,
         // May be null in case of dead code
         typeAnnotatedFrame: Frame<BasicValue>?
 ) {
-    val index = node.instructions.indexOf(insn)
-    node.localVariables.filter {
-        node.instructions.indexOf(it.start) < index && index < node.instructions.indexOf(it.end) &&
-            Type.getType(it.desc).sort == typeAnnotatedFrame?.getLocal(it.index)?.type?.sort
-    }.forEach {
-        frame.markAlive(it.index)
+    for (i in localVariables.variables.indices) {
+        val variable = localVariables.variables[i]
+        if (localVariables.starts[i] < index && index < localVariables.ends[i] &&
+            localVariables.sorts[i] == typeAnnotatedFrame?.getLocal(variable.index)?.type?.sort) {
+            frame.markAlive(variable.index)
+        }
     }
 
     if (insn is VarInsnNode && insn.isLoadOperation()) {
@@ -68,12 +68,16 @@ class BuilderFactoryForDuplicateSignatureDiagnostics(
     private val reportDiagnosticsTasks = ArrayList<() -> Unit>()
 
     fun reportDiagnostics() {
-        reportDiagnosticsTasks.forEach { it() }
-        reportDiagnosticsTasks.clear()
+        val tasks = synchronized(reportDiagnosticsTasks) {
+            reportDiagnosticsTasks.toList().apply { reportDiagnosticsTasks.clear() }
+        }
+        tasks.forEach { it() }
     }
 
     override fun handleClashingSignatures(data: ConflictingJvmDeclarationsData) {
-        reportDiagnosticsTasks.add { reportConflictingJvmSignatures(data) }
+        synchronized(reportDiagnosticsTasks) {
+            reportDiagnosticsTasks.add { reportConflictingJvmSignatures(data) }
+        }
     }
 
     private fun reportConflictingJvmSignatures(data: ConflictingJvmDeclarationsData) {
@@ -105,9 +109,11 @@ class BuilderFactoryForDuplicateSignatureDiagnostics(
             classInternalName: String,
             signatures: MultiMap<RawSignature, JvmDeclarationOrigin>
     ) {
-        reportDiagnosticsTasks.add {
-            reportClashingWithPredefinedSignatures(classOrigin, classInternalName, signatures)
-            reportClashingSignaturesInHierarchy(classOrigin, classInternalName, signatures)
+        synchronized(reportDiagnosticsTasks) {
+            reportDiagnosticsTasks.add {
+                reportClashingWithPredefinedSignatures(classOrigin, classInternalName, signatures)
+                reportClashingSignaturesInHierarchy(classOrigin, classInternalName, signatures)
+            }
         }
     }
 
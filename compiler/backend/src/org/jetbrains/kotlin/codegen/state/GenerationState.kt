@@ -30,6 +30,7 @@ import org.jetbrains.kotlin.codegen.coroutines.CoroutineTransformerClassBuilderF
 import org.jetbrains.kotlin.codegen.extensions.ClassBuilderInterceptorExtension
 import org.jetbrains.kotlin.codegen.inline.InlineCache
 import org.jetbrains.kotlin.codegen.intrinsics.IntrinsicMethods
+import org.jetbrains.kotlin.codegen.optimization.NullCheckStatistics
 import org.jetbrains.kotlin.codegen.optimization.OptimizationClassBuilderFactory
 import org.jetbrains.kotlin.config.CommonConfigurationKeys
 import org.jetbrains.kotlin.config.CompilerConfiguration
@@ -49,8 +50,11 @@ import org.jetbrains.kotlin.resolve.BindingContext
 import org.jetbrains.kotlin.resolve.BindingTrace
 import org.jetbrains.kotlin.resolve.BindingTraceFilter
 import org.jetbrains.kotlin.resolve.DelegatingBindingTrace
+import org.jetbrains.kotlin.resolve.ThreadSafeBindingTrace
 import org.jetbrains.kotlin.resolve.diagnostics.Diagnostics
 import org.jetbrains.kotlin.resolve.jvm.JvmClassName
+import org.jetbrains.kotlin.storage.LockBasedStorageManager
+import org.jetbrains.kotlin.storage.StripedLockStorageManager
 import org.jetbrains.org.objectweb.asm.Opcodes
 import java.io.File
 
@@ -71,7 +75,9 @@ class GenerationState @JvmOverloads constructor(
         val outDirectory: File? = null,
         private val onIndependentPartCompilationEnd: GenerationStateEventCallback = GenerationStateEventCallback.DO_NOTHING,
         val codegenFactory: CodegenFactory = if (configuration.getBoolean(JVMConfigurationKeys.IR)) JvmIrCodegenFactory else DefaultCodegenFactory,
-        wantsDiagnostics: Boolean = true
+        wantsDiagnostics: Boolean = true,
+        // If not null, class files are passed to it as soon as they're generated instead of being kept in memory
+        classFileSink: ClassFileSink? = null
 ) {
     abstract class GenerateClassFilter {
         abstract fun shouldAnnotateClass(processingClassOrObject: KtClassOrObject): Boolean
@@ -94,6 +100,7 @@ class GenerationState @JvmOverloads constructor(
 
     val fileClassesProvider: CodegenFileClassesProvider = CodegenFileClassesProvider()
     val inlineCache: InlineCache = InlineCache()
+    val isInlineFunctionsCacheShared: Boolean = configuration.get(JVMConfigurationKeys.SHARE_INLINE_FUNCTIONS_CACHE, false)
 
     val incrementalCacheForThisTarget: IncrementalCache?
     val packagesWithObsoleteParts: Set<FqName>
@@ -118,7 +125,15 @@ class GenerationState @JvmOverloads constructor(
         }
     }
 
-    val extraJvmDiagnosticsTrace: BindingTrace = DelegatingBindingTrace(bindingContext, "For extra diagnostics in ${this.javaClass}", false)
+    val backendThreads: Int = configuration.get(JVMConfigurationKeys.BACKEND_THREADS, 1)
+    // Signature dumping writes into a single stream in the order classes are generated, so it's only supported sequentially
+    val isParallelBackend: Boolean = backendThreads > 1 && configuration.get(JVMConfigurationKeys.DECLARATIONS_JSON_PATH) == null
+
+    val extraJvmDiagnosticsTrace: BindingTrace =
+            if (isParallelBackend)
+                ThreadSafeBindingTrace(bindingContext, "For extra diagnostics in ${this.javaClass}", false)
+            else
+                DelegatingBindingTrace(bindingContext, "For extra diagnostics in ${this.javaClass}", false)
     private val interceptedBuilderFactory: ClassBuilderFactory
     private var used = false
 
@@ -133,12 +148,18 @@ class GenerationState @JvmOverloads constructor(
 
     val moduleName: String = moduleName ?: JvmCodegenUtil.getModuleName(module)
     val classBuilderMode: ClassBuilderMode = builderFactory.classBuilderMode
-    val bindingTrace: BindingTrace = DelegatingBindingTrace(bindingContext, "trace in GenerationState",
-                                                            filter = if (wantsDiagnostics) BindingTraceFilter.ACCEPT_ALL else BindingTraceFilter.NO_DIAGNOSTICS)
+    val bindingTrace: BindingTrace = run {
+        val filter = if (wantsDiagnostics) BindingTraceFilter.ACCEPT_ALL else BindingTraceFilter.NO_DIAGNOSTICS
+        if (isParallelBackend)
+            ThreadSafeBindingTrace(bindingContext, "trace in GenerationState", filter = filter)
+        else
+            DelegatingBindingTrace(bindingContext, "trace in GenerationState", filter = filter)
+    }
     val bindingContext: BindingContext = bindingTrace.bindingContext
     val typeMapper: KotlinTypeMapper = KotlinTypeMapper(
             this.bindingContext, classBuilderMode, fileClassesProvider, IncompatibleClassTrackerImpl(extraJvmDiagnosticsTrace),
-            this.moduleName, isJvm8Target
+            this.moduleName, isJvm8Target,
+            if (isParallelBackend) StripedLockStorageManager() else LockBasedStorageManager.NO_LOCKS
     )
     val intrinsics: IntrinsicMethods = IntrinsicMethods()
     val samWrapperClasses: SamWrapperClasses = SamWrapperClasses(this)
@@ -164,6 +185,10 @@ class GenerationState @JvmOverloads constructor(
     val isInlineDisabled: Boolean = configuration.getBoolean(CommonConfigurationKeys.DISABLE_INLINE)
     val useTypeTableInSerializer: Boolean = configuration.getBoolean(JVMConfigurationKeys.USE_TYPE_TABLE)
     val inheritMultifileParts: Boolean = configuration.getBoolean(JVMConfigurationKeys.INHERIT_MULTIFILE_PARTS)
+    val isTrivialMethodInliningEnabled: Boolean = configuration.getBoolean(JVMConfigurationKeys.INLINE_TRIVIAL_METHODS)
+    val isTailCallsToLoopsConversionEnabled: Boolean = configuration.getBoolean(JVMConfigurationKeys.CONVERT_TAIL_CALLS_TO_LOOPS)
+    val nullCheckStatistics: NullCheckStatistics? =
+            configuration.get(JVMConfigurationKeys.NULL_CHECK_STATISTICS_PATH)?.let { path -> NullCheckStatistics(File(path)) }
 
     val rootContext: CodegenContext<*> = RootContext(this)
 
@@ -172,7 +197,11 @@ class GenerationState @JvmOverloads constructor(
     init {
         this.interceptedBuilderFactory = builderFactory
                 .wrapWith(
-                    { OptimizationClassBuilderFactory(it, configuration.get(JVMConfigurationKeys.DISABLE_OPTIMIZATION, false)) },
+                    { OptimizationClassBuilderFactory(
+                            it, configuration.get(JVMConfigurationKeys.DISABLE_OPTIMIZATION, false),
+                            nullCheckStatistics,
+                            isTailCallsToLoopsConversionEnabled, diagnostics
+                      ) },
                     ::CoroutineTransformerClassBuilderFactory,
                     { BuilderFactoryForDuplicateSignatureDiagnostics(
                             it, this.bindingContext, diagnostics, fileClassesProvider, this.moduleName
@@ -185,7 +214,7 @@ class GenerationState @JvmOverloads constructor(
                     extension.interceptClassBuilderFactory(builderFactory, bindingContext, diagnostics)
                 }
 
-        this.factory = ClassFileFactory(this, interceptedBuilderFactory)
+        this.factory = ClassFileFactory(this, interceptedBuilderFactory, classFileSink)
     }
 
     fun beforeCompile() {
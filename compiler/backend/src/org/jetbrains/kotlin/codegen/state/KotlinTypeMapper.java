@@ -21,6 +21,7 @@ import com.intellij.psi.PsiElement;
 import kotlin.Pair;
 import kotlin.Unit;
 import kotlin.collections.CollectionsKt;
+import kotlin.jvm.functions.Function1;
 import kotlin.jvm.functions.Function3;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -73,8 +74,11 @@ import org.jetbrains.kotlin.resolve.jvm.jvmSignature.JvmMethodParameterSignature
 import org.jetbrains.kotlin.resolve.jvm.jvmSignature.JvmMethodSignature;
 import org.jetbrains.kotlin.serialization.deserialization.descriptors.DeserializedCallableMemberDescriptor;
 import org.jetbrains.kotlin.serialization.deserialization.descriptors.DeserializedClassDescriptor;
+import org.jetbrains.kotlin.storage.MemoizedFunctionToNotNull;
+import org.jetbrains.kotlin.storage.StorageManager;
 import org.jetbrains.kotlin.types.*;
 import org.jetbrains.kotlin.util.OperatorNameConventions;
+import org.jetbrains.kotlin.util.PerformanceCounter;
 import org.jetbrains.org.objectweb.asm.Type;
 import org.jetbrains.org.objectweb.asm.commons.Method;
 
@@ -100,6 +104,21 @@ public class KotlinTypeMapper {
     private final String moduleName;
     private final boolean isJvm8Target;
 
+    private static final PerformanceCounter SIGNATURE_CACHE_REQUESTS =
+            PerformanceCounter.Companion.create("Type mapper signature cache requests");
+    private static final PerformanceCounter SIGNATURE_CACHE_MISSES =
+            PerformanceCounter.Companion.create("Type mapper signature cache misses");
+    private static final PerformanceCounter CLASS_TYPE_CACHE_REQUESTS =
+            PerformanceCounter.Companion.create("Type mapper class type cache requests");
+    private static final PerformanceCounter CLASS_TYPE_CACHE_MISSES =
+            PerformanceCounter.Companion.create("Type mapper class type cache misses");
+
+    // null if this type mapper doesn't cache its results, see the constructor taking a StorageManager
+    @Nullable
+    private final MemoizedFunctionToNotNull<SignatureKey, JvmMethodGenericSignature> signatures;
+    @Nullable
+    private final MemoizedFunctionToNotNull<ClassDescriptor, Type> classTypes;
+
     private final TypeMappingConfiguration<Type> typeMappingConfiguration = new TypeMappingConfiguration<Type>() {
         @NotNull
         @Override
@@ -128,6 +147,24 @@ public class KotlinTypeMapper {
             @NotNull IncompatibleClassTracker incompatibleClassTracker,
             @NotNull String moduleName,
             boolean isJvm8Target
+    ) {
+        this(bindingContext, classBuilderMode, fileClassesProvider, incompatibleClassTracker, moduleName, isJvm8Target, null);
+    }
+
+    /**
+     * @param storageManager if not null, signatures of functions and types of non-local classes are computed once per descriptor
+     *                       and cached in memoized functions created by this storage manager. This is only correct as long as
+     *                       the binding context doesn't change in a way that affects those signatures, i.e. after
+     *                       {@link CodegenBinding#initTrace} has been run for all files the mapper is used for
+     */
+    public KotlinTypeMapper(
+            @NotNull BindingContext bindingContext,
+            @NotNull ClassBuilderMode classBuilderMode,
+            @NotNull JvmFileClassesProvider fileClassesProvider,
+            @NotNull IncompatibleClassTracker incompatibleClassTracker,
+            @NotNull String moduleName,
+            boolean isJvm8Target,
+            @Nullable StorageManager storageManager
     ) {
         this.bindingContext = bindingContext;
         this.classBuilderMode = classBuilderMode;
@@ -135,6 +172,27 @@ public class KotlinTypeMapper {
         this.incompatibleClassTracker = incompatibleClassTracker;
         this.moduleName = moduleName;
         this.isJvm8Target = isJvm8Target;
+
+        if (storageManager != null) {
+            signatures = storageManager.createMemoizedFunction(new Function1<SignatureKey, JvmMethodGenericSignature>() {
+                @Override
+                public JvmMethodGenericSignature invoke(SignatureKey key) {
+                    SIGNATURE_CACHE_MISSES.increment();
+                    return mapSignatureNoCache(key.descriptor, key.kind, key.skipGenericSignature);
+                }
+            });
+            classTypes = storageManager.createMemoizedFunction(new Function1<ClassDescriptor, Type>() {
+                @Override
+                public Type invoke(ClassDescriptor descriptor) {
+                    CLASS_TYPE_CACHE_MISSES.increment();
+                    return mapType(descriptor.getDefaultType(), null, TypeMappingMode.DEFAULT);
+                }
+            });
+        }
+        else {
+            signatures = null;
+            classTypes = null;
+        }
     }
 
     @NotNull
@@ -385,6 +443,11 @@ public class KotlinTypeMapper {
 
     @NotNull
     public Type mapClass(@NotNull ClassifierDescriptor classifier) {
+        // Types of local classes are recorded in the binding context while it's being initialized, so they're never cached
+        if (classTypes != null && classifier instanceof ClassDescriptor && !isLocal(classifier)) {
+            CLASS_TYPE_CACHE_REQUESTS.increment();
+            return classTypes.invoke((ClassDescriptor) classifier);
+        }
         return mapType(classifier.getDefaultType(), null, TypeMappingMode.DEFAULT);
     }
 
@@ -410,7 +473,7 @@ public class KotlinTypeMapper {
 
     @NotNull
     public Type mapType(@NotNull ClassifierDescriptor descriptor) {
-        return mapType(descriptor.getDefaultType());
+        return mapClass(descriptor);
     }
 
     @NotNull
@@ -943,6 +1006,17 @@ public class KotlinTypeMapper {
 
     @NotNull
     private JvmMethodGenericSignature mapSignature(@NotNull FunctionDescriptor f, @NotNull OwnerKind kind, boolean skipGenericSignature) {
+        // Constructors of classes with closures get captured variables as parameters, and closures are filled during codegen
+        if (signatures != null &&
+            !(f instanceof ConstructorDescriptor && bindingContext.get(CLOSURE, ((ConstructorDescriptor) f).getConstructedClass()) != null)) {
+            SIGNATURE_CACHE_REQUESTS.increment();
+            return signatures.invoke(new SignatureKey(f, kind, skipGenericSignature));
+        }
+        return mapSignatureNoCache(f, kind, skipGenericSignature);
+    }
+
+    @NotNull
+    private JvmMethodGenericSignature mapSignatureNoCache(@NotNull FunctionDescriptor f, @NotNull OwnerKind kind, boolean skipGenericSignature) {
         if (f.getInitialSignatureDescriptor() != null && f != f.getInitialSignatureDescriptor()) {
             // Overrides of special builtin in Kotlin classes always have special signature
             if (SpecialBuiltinMembers.getOverriddenBuiltinReflectingJvmDescriptor(f) == null ||
@@ -1408,4 +1482,33 @@ public class KotlinTypeMapper {
 
         return null;
     }
+
+    private static final class SignatureKey {
+        private final FunctionDescriptor descriptor;
+        private final OwnerKind kind;
+        private final boolean skipGenericSignature;
+
+        private SignatureKey(@NotNull FunctionDescriptor descriptor, @NotNull OwnerKind kind, boolean skipGenericSignature) {
+            this.descriptor = descriptor;
+            this.kind = kind;
+            this.skipGenericSignature = skipGenericSignature;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SignatureKey)) return false;
+            SignatureKey other = (SignatureKey) o;
+            // descriptors are compared by identity: substituted copies of the same function may have different signatures
+            return descriptor == other.descriptor && kind == other.kind && skipGenericSignature == other.skipGenericSignature;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(descriptor);
+            result = 31 * result + kind.hashCode();
+            result = 31 * result + (skipGenericSignature ? 1 : 0);
+            return result;
+        }
+    }
 }
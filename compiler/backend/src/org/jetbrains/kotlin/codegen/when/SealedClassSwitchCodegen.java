@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.when;
+
+import com.google.common.collect.Maps;
+import com.intellij.openapi.util.Pair;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.codegen.ExpressionCodegen;
+import org.jetbrains.kotlin.codegen.state.KotlinTypeMapper;
+import org.jetbrains.kotlin.descriptors.ClassDescriptor;
+import org.jetbrains.kotlin.psi.KtWhenCondition;
+import org.jetbrains.kotlin.psi.KtWhenEntry;
+import org.jetbrains.kotlin.psi.KtWhenExpression;
+import org.jetbrains.kotlin.resolve.constants.ConstantValue;
+import org.jetbrains.org.objectweb.asm.Label;
+import org.jetbrains.org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a 'when' over a sealed class checking the subject against the subclasses nested in the sealed class
+ * to a switch over the key returned by the synthetic method overridden by each of the subclasses.
+ * Keys are hash codes of the subclasses' names, so each switch target rechecks the subject with instanceof.
+ */
+public class SealedClassSwitchCodegen extends SwitchCodegen {
+    private final ClassDescriptor sealedClass;
+    private final Map<Integer, List<Pair<Type, Label>>> keysToSubclassAndEntryLabel = Maps.newLinkedHashMap();
+    private int tempVarIndex;
+
+    public SealedClassSwitchCodegen(
+            @NotNull KtWhenExpression expression,
+            boolean isStatement,
+            boolean isExhaustive,
+            @NotNull ExpressionCodegen codegen,
+            @NotNull ClassDescriptor sealedClass
+    ) {
+        super(expression, isStatement, isExhaustive, codegen);
+        this.sealedClass = sealedClass;
+    }
+
+    @Override
+    protected void prepareConfiguration() {
+        KotlinTypeMapper typeMapper = codegen.getState().getTypeMapper();
+
+        for (KtWhenEntry entry : expression.getEntries()) {
+            Label entryLabel = new Label();
+
+            for (KtWhenCondition condition : entry.getConditions()) {
+                ClassDescriptor subclass = SwitchCodegenUtil.getSealedSubclassFromCondition(condition, sealedClass, bindingContext);
+                assert subclass != null : "guaranteed by usage contract";
+                processSubclass(typeMapper.mapClass(subclass), entryLabel);
+            }
+
+            if (entry.isElse()) {
+                elseLabel = entryLabel;
+            }
+
+            entryLabels.add(entryLabel);
+        }
+    }
+
+    private void processSubclass(@NotNull Type subclassType, @NotNull Label entryLabel) {
+        int key = SwitchCodegenUtil.getSealedSubclassKey(subclassType);
+
+        if (!transitionsTable.containsKey(key)) {
+            transitionsTable.put(key, new Label());
+            keysToSubclassAndEntryLabel.put(key, new ArrayList<Pair<Type, Label>>());
+        }
+
+        keysToSubclassAndEntryLabel.get(key).add(new Pair<Type, Label>(subclassType, entryLabel));
+    }
+
+    @Override
+    protected void processConstant(@NotNull ConstantValue<?> constant, @NotNull Label entryLabel) {
+        assert false : "'when' over a sealed class is switched by subclasses, not by constants: " + constant;
+    }
+
+    @Override
+    public void generate() {
+        super.generate();
+        codegen.myFrameMap.leaveTemp(subjectType);
+    }
+
+    @Override
+    protected void generateSubject() {
+        tempVarIndex = codegen.myFrameMap.enterTemp(subjectType);
+        super.generateSubject();
+        v.store(tempVarIndex, subjectType);
+
+        v.load(tempVarIndex, subjectType);
+
+        generateNullCheckIfNeeded();
+
+        Type sealedClassType = codegen.getState().getTypeMapper().mapClass(sealedClass);
+        v.invokevirtual(
+                sealedClassType.getInternalName(),
+                SwitchCodegenUtil.getSealedSubclassKeyMethodName(sealedClassType),
+                SwitchCodegenUtil.SEALED_SUBCLASS_KEY_METHOD_DESC,
+                false
+        );
+    }
+
+    @Override
+    protected void generateEntries() {
+        for (int key : keysToSubclassAndEntryLabel.keySet()) {
+            v.visitLabel(transitionsTable.get(key));
+
+            List<Pair<Type, Label>> items = keysToSubclassAndEntryLabel.get(key);
+            for (Pair<Type, Label> subclassAndEntryLabel : items) {
+                v.load(tempVarIndex, subjectType);
+                v.instanceOf(subclassAndEntryLabel.first);
+                v.ifne(subclassAndEntryLabel.second);
+            }
+
+            v.goTo(defaultLabel);
+        }
+
+        super.generateEntries();
+    }
+}
@@ -20,15 +20,16 @@ import com.google.common.collect.Maps;
 import com.intellij.openapi.util.Pair;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.kotlin.codegen.ExpressionCodegen;
+import org.jetbrains.kotlin.psi.KtWhenEntry;
 import org.jetbrains.kotlin.psi.KtWhenExpression;
+import org.jetbrains.kotlin.resolve.BindingContext;
 import org.jetbrains.kotlin.resolve.constants.ConstantValue;
 import org.jetbrains.kotlin.resolve.constants.StringValue;
 import org.jetbrains.org.objectweb.asm.Label;
 import org.jetbrains.org.objectweb.asm.Type;
+import org.jetbrains.org.objectweb.asm.commons.InstructionAdapter;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 public class StringSwitchCodegen extends SwitchCodegen {
     private static final String HASH_CODE_METHOD_DESC = Type.getMethodDescriptor(Type.INT_TYPE);
@@ -87,6 +88,70 @@ public class StringSwitchCodegen extends SwitchCodegen {
 
     @Override
     protected void generateEntries() {
+        generateEqualsChecks(v, tempVarIndex, subjectType, transitionsTable, hashCodesToStringAndEntryLabel, defaultLabel);
+
+        super.generateEntries();
+    }
+
+    /**
+     * Generates a switch for the entries of a 'when' which have only string constants as conditions, if the 'when' itself
+     * can't be compiled to a switch because of its other entries.
+     * The subject should be already stored in the local variable, and the code of the entries should be generated
+     * by the caller at {@code entryLabels}. If no entry matches the subject, the control is passed to {@code noMatchLabel}.
+     */
+    public static void generateSwitchForEntries(
+            @NotNull InstructionAdapter v,
+            int subjectVarIndex,
+            @NotNull Type subjectType,
+            boolean isNullableSubject,
+            @NotNull List<KtWhenEntry> entries,
+            @NotNull List<Label> entryLabels,
+            @NotNull Label noMatchLabel,
+            @NotNull BindingContext bindingContext
+    ) {
+        NavigableMap<Integer, Label> transitionsTable = new TreeMap<Integer, Label>();
+        Map<Integer, List<Pair<String, Label>>> hashCodesToStringAndEntryLabel = Maps.newHashMap();
+
+        for (int i = 0; i < entries.size(); i++) {
+            for (ConstantValue<?> constant : SwitchCodegenUtil.getConstantsFromEntry(entries.get(i), bindingContext)) {
+                assert constant instanceof StringValue : "guaranteed by usage contract";
+                int hashCode = constant.hashCode();
+
+                if (!transitionsTable.containsKey(hashCode)) {
+                    transitionsTable.put(hashCode, new Label());
+                    hashCodesToStringAndEntryLabel.put(hashCode, new ArrayList<Pair<String, Label>>());
+                }
+
+                hashCodesToStringAndEntryLabel.get(hashCode).add(
+                        new Pair<String, Label>(((StringValue) constant).getValue(), entryLabels.get(i))
+                );
+            }
+        }
+
+        v.load(subjectVarIndex, subjectType);
+        if (isNullableSubject) {
+            v.ifnull(noMatchLabel);
+            v.load(subjectVarIndex, subjectType);
+        }
+
+        v.invokevirtual(
+                subjectType.getInternalName(),
+                "hashCode", HASH_CODE_METHOD_DESC, false
+        );
+
+        SwitchCodegen.generateSwitchInstruction(v, transitionsTable, noMatchLabel);
+
+        generateEqualsChecks(v, subjectVarIndex, subjectType, transitionsTable, hashCodesToStringAndEntryLabel, noMatchLabel);
+    }
+
+    private static void generateEqualsChecks(
+            @NotNull InstructionAdapter v,
+            int subjectVarIndex,
+            @NotNull Type subjectType,
+            @NotNull Map<Integer, Label> transitionsTable,
+            @NotNull Map<Integer, List<Pair<String, Label>>> hashCodesToStringAndEntryLabel,
+            @NotNull Label defaultLabel
+    ) {
         for (int hashCode : hashCodesToStringAndEntryLabel.keySet()) {
             v.visitLabel(transitionsTable.get(hashCode));
 
@@ -100,7 +165,7 @@ public class StringSwitchCodegen extends SwitchCodegen {
 
                 Pair<String, Label> stringAndEntryLabel = items.get(i);
 
-                v.load(tempVarIndex, subjectType);
+                v.load(subjectVarIndex, subjectType);
                 v.aconst(stringAndEntryLabel.first);
                 v.invokevirtual(
                         subjectType.getInternalName(),
@@ -120,7 +185,5 @@ public class StringSwitchCodegen extends SwitchCodegen {
                 v.goTo(stringAndEntryLabel.getSecond());
             }
         }
-
-        super.generateEntries();
     }
 }
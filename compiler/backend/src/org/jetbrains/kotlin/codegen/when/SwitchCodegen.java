@@ -94,7 +94,7 @@ abstract public class SwitchCodegen {
      * Sets up transitionsTable and maybe something else needed in a special case
      * Behaviour may be changed by overriding processConstant
      */
-    private void prepareConfiguration() {
+    protected void prepareConfiguration() {
         for (KtWhenEntry entry : expression.getEntries()) {
             Label entryLabel = new Label();
 
@@ -169,6 +169,14 @@ abstract public class SwitchCodegen {
     }
 
     private void generateSwitchInstructionByTransitionsTable() {
+        generateSwitchInstruction(v, transitionsTable, defaultLabel);
+    }
+
+    public static void generateSwitchInstruction(
+            @NotNull InstructionAdapter v,
+            @NotNull NavigableMap<Integer, Label> transitionsTable,
+            @NotNull Label defaultLabel
+    ) {
         int[] keys = new int[transitionsTable.size()];
         Label[] labels = new Label[transitionsTable.size()];
         int i = 0;
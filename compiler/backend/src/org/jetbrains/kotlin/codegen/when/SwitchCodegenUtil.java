@@ -21,38 +21,73 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.codegen.ExpressionCodegen;
 import org.jetbrains.kotlin.codegen.binding.CodegenBinding;
+import org.jetbrains.kotlin.descriptors.ClassDescriptor;
+import org.jetbrains.kotlin.descriptors.PackageFragmentDescriptor;
 import org.jetbrains.kotlin.psi.*;
 import org.jetbrains.kotlin.resolve.BindingContext;
+import org.jetbrains.kotlin.resolve.DescriptorToSourceUtils;
+import org.jetbrains.kotlin.resolve.DescriptorUtils;
 import org.jetbrains.kotlin.resolve.constants.ConstantValue;
 import org.jetbrains.kotlin.resolve.constants.IntegerValueConstant;
 import org.jetbrains.kotlin.resolve.constants.NullValue;
 import org.jetbrains.kotlin.resolve.constants.StringValue;
+import org.jetbrains.kotlin.resolve.inline.InlineUtil;
+import org.jetbrains.kotlin.types.KotlinType;
+import org.jetbrains.kotlin.types.TypeUtils;
 import org.jetbrains.org.objectweb.asm.Type;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class SwitchCodegenUtil {
+    public static final String SEALED_SUBCLASS_KEY_METHOD_PREFIX = "$sealedSubclassKey$";
+    public static final String SEALED_SUBCLASS_KEY_METHOD_DESC = Type.getMethodDescriptor(Type.INT_TYPE);
+
+    // A switch over a part of the entries is only generated if it replaces at least this number of entries' checks
+    private static final int MIN_ENTRIES_FOR_PARTIAL_STRING_SWITCH = 2;
+
+    // Smaller 'when's over sealed classes are faster as a chain of instanceof checks
+    private static final int MIN_BRANCHES_FOR_SEALED_CLASS_SWITCH = 3;
+
+    private static final Function1<ConstantValue<?>, Boolean> IS_STRING_CONSTANT = new Function1<ConstantValue<?>, Boolean>() {
+        @Override
+        public Boolean invoke(@NotNull ConstantValue<?> constant) {
+            return constant instanceof StringValue;
+        }
+    };
+
     public static boolean checkAllItemsAreConstantsSatisfying(
             @NotNull KtWhenExpression expression,
             @NotNull BindingContext bindingContext,
             Function1<ConstantValue<?>, Boolean> predicate
     ) {
         for (KtWhenEntry entry : expression.getEntries()) {
-            for (KtWhenCondition condition : entry.getConditions()) {
-                if (!(condition instanceof KtWhenConditionWithExpression)) {
-                    return false;
-                }
+            if (!checkAllItemsAreConstantsSatisfying(entry, bindingContext, predicate)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
 
-                // ensure that expression is constant
-                KtExpression patternExpression = ((KtWhenConditionWithExpression) condition).getExpression();
+    private static boolean checkAllItemsAreConstantsSatisfying(
+            @NotNull KtWhenEntry entry,
+            @NotNull BindingContext bindingContext,
+            Function1<ConstantValue<?>, Boolean> predicate
+    ) {
+        for (KtWhenCondition condition : entry.getConditions()) {
+            if (!(condition instanceof KtWhenConditionWithExpression)) {
+                return false;
+            }
 
-                if (patternExpression == null) return false;
+            // ensure that expression is constant
+            KtExpression patternExpression = ((KtWhenConditionWithExpression) condition).getExpression();
 
-                ConstantValue<?> constant = ExpressionCodegen.getCompileTimeConstant(patternExpression, bindingContext);
-                if (constant == null || !predicate.invoke(constant)) {
-                    return false;
-                }
+            if (patternExpression == null) return false;
+
+            ConstantValue<?> constant = ExpressionCodegen.getCompileTimeConstant(patternExpression, bindingContext);
+            if (constant == null || !predicate.invoke(constant)) {
+                return false;
             }
         }
 
@@ -106,6 +141,12 @@ public class SwitchCodegenUtil {
             @NotNull ExpressionCodegen codegen
     ) {
         BindingContext bindingContext = codegen.getBindingContext();
+
+        ClassDescriptor sealedClass = getSealedClassSwitchSubject(expression, codegen);
+        if (sealedClass != null) {
+            return new SealedClassSwitchCodegen(expression, isStatement, isExhaustive, codegen, sealedClass);
+        }
+
         if (!isThereConstantEntriesButNulls(expression, bindingContext)) {
             return null;
         }
@@ -180,4 +221,114 @@ public class SwitchCodegenUtil {
             }
         });
     }
+
+    /**
+     * Returns the end (exclusive) of the run of entries starting at {@code from} which have only string constants as conditions,
+     * or {@code from} if the run is too short to be compiled to a separate switch within a 'when' that can't be switched as a whole
+     */
+    public static int getStringConstantsEntriesEnd(
+            @NotNull List<KtWhenEntry> entries,
+            int from,
+            @NotNull Type subjectType,
+            @NotNull BindingContext bindingContext
+    ) {
+        if (!subjectType.getClassName().equals(String.class.getName())) {
+            return from;
+        }
+
+        int end = from;
+        while (end < entries.size()) {
+            KtWhenEntry entry = entries.get(end);
+            if (entry.isElse() || !checkAllItemsAreConstantsSatisfying(entry, bindingContext, IS_STRING_CONSTANT)) break;
+            end++;
+        }
+
+        return end - from >= MIN_ENTRIES_FOR_PARTIAL_STRING_SWITCH ? end : from;
+    }
+
+    /**
+     * Returns the sealed class if the expression is a 'when' over it that only checks the subject against its direct subclasses
+     * declared inside of it. Such subclasses override the method named by {@link #getSealedSubclassKeyMethodName}, so the 'when'
+     * is compiled to a switch over the key returned by it instead of a chain of instanceof checks.
+     * The method is only generated by this compiler, so the sealed class and the subclasses should be compiled from sources
+     * together with the 'when': classes from binaries may be compiled by an older compiler or without the method,
+     * even if they belong to the same module, e.g. with -Xsingle-module or in incremental compilation.
+     * The method is package-private, so that it's not a part of the ABI, thus the 'when' should be in the package of the sealed class
+     * and can't be inlined into other packages.
+     */
+    @Nullable
+    private static ClassDescriptor getSealedClassSwitchSubject(
+            @NotNull KtWhenExpression expression,
+            @NotNull ExpressionCodegen codegen
+    ) {
+        KtExpression subject = expression.getSubjectExpression();
+        if (subject == null) return null;
+
+        BindingContext bindingContext = codegen.getBindingContext();
+        KotlinType subjectType = bindingContext.getType(subject);
+        if (subjectType == null) return null;
+
+        ClassDescriptor sealedClass = TypeUtils.getClassDescriptor(subjectType);
+        if (!DescriptorUtils.isSealedClass(sealedClass) || !isCompiledFromSource(sealedClass)) return null;
+
+        PackageFragmentDescriptor sealedClassPackage = DescriptorUtils.getParentOfType(sealedClass, PackageFragmentDescriptor.class);
+        if (sealedClassPackage == null || !sealedClassPackage.getFqName().equals(expression.getContainingKtFile().getPackageFqName())) {
+            return null;
+        }
+        if (InlineUtil.isInlineOrContainingInline(codegen.getContext().getContextDescriptor())) return null;
+
+        int branches = 0;
+        for (KtWhenEntry entry : expression.getEntries()) {
+            if (entry.isElse()) continue;
+
+            for (KtWhenCondition condition : entry.getConditions()) {
+                if (getSealedSubclassFromCondition(condition, sealedClass, bindingContext) == null) return null;
+                branches++;
+            }
+        }
+
+        return branches >= MIN_BRANCHES_FOR_SEALED_CLASS_SWITCH ? sealedClass : null;
+    }
+
+    private static boolean isCompiledFromSource(@NotNull ClassDescriptor descriptor) {
+        return DescriptorToSourceUtils.descriptorToDeclaration(descriptor) instanceof KtClassOrObject;
+    }
+
+    @Nullable
+    static ClassDescriptor getSealedSubclassFromCondition(
+            @NotNull KtWhenCondition condition,
+            @NotNull ClassDescriptor sealedClass,
+            @NotNull BindingContext bindingContext
+    ) {
+        if (!(condition instanceof KtWhenConditionIsPattern)) return null;
+
+        KtWhenConditionIsPattern isPattern = (KtWhenConditionIsPattern) condition;
+        if (isPattern.isNegated() || isPattern.getTypeReference() == null) return null;
+
+        KotlinType type = bindingContext.get(BindingContext.TYPE, isPattern.getTypeReference());
+        if (type == null || type.isMarkedNullable()) return null;
+
+        ClassDescriptor subclass = TypeUtils.getClassDescriptor(type);
+        if (subclass == null || !isNestedDirectSubclassOfSealedClass(subclass, sealedClass) || !isCompiledFromSource(subclass)) return null;
+
+        return subclass;
+    }
+
+    public static boolean isNestedDirectSubclassOfSealedClass(@NotNull ClassDescriptor subclass, @NotNull ClassDescriptor sealedClass) {
+        return DescriptorUtils.isSealedClass(sealedClass) &&
+               DescriptorUtils.isAncestor(sealedClass.getOriginal(), subclass, true) &&
+               DescriptorUtils.isDirectSubclass(subclass, sealedClass);
+    }
+
+    @NotNull
+    public static String getSealedSubclassKeyMethodName(@NotNull Type sealedClassType) {
+        return SEALED_SUBCLASS_KEY_METHOD_PREFIX + sealedClassType.getInternalName().replace('/', '$');
+    }
+
+    /**
+     * The key only depends on the name of the subclass, so it's the same in the subclass and in all 'when's compiled against it
+     */
+    public static int getSealedSubclassKey(@NotNull Type subclassType) {
+        return subclassType.getInternalName().hashCode();
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.test.ConfigurationKind;
+import org.jetbrains.kotlin.test.KotlinTestUtils;
+import org.jetbrains.kotlin.test.TestJdkKind;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base state for benchmarks which need a compiler environment. Fixtures are paths relative to compiler/testData,
+ * multi-file fixtures are split by "// FILE:" directives the same way codegen tests do it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+public abstract class AbstractCompilerBenchmark {
+    private static final String FILE_DIRECTIVE = "// FILE:";
+
+    private Disposable disposable;
+    protected KotlinCoreEnvironment environment;
+
+    @Setup(Level.Trial)
+    public final void createEnvironment() throws Exception {
+        disposable = Disposer.newDisposable();
+        environment = KotlinTestUtils.createEnvironmentWithJdkAndNullabilityAnnotationsFromIdea(
+                disposable, ConfigurationKind.ALL, TestJdkKind.FULL_JDK
+        );
+        setUp();
+    }
+
+    @TearDown(Level.Trial)
+    public final void disposeEnvironment() {
+        Disposer.dispose(disposable);
+        environment = null;
+    }
+
+    protected void setUp() throws Exception {
+    }
+
+    @NotNull
+    protected static String loadFixture(@NotNull String path) throws IOException {
+        return KotlinTestUtils.doLoadFile(new File(KotlinTestUtils.getTestDataPathBase(), path));
+    }
+
+    @NotNull
+    protected List<KtFile> createFiles(@NotNull String path) throws IOException {
+        String text = loadFixture(path);
+        List<KtFile> files = new ArrayList<KtFile>();
+
+        int start = text.indexOf(FILE_DIRECTIVE);
+        if (start < 0) {
+            files.add(KotlinTestUtils.createFile(new File(path).getName(), text, environment.getProject()));
+            return files;
+        }
+
+        while (start >= 0) {
+            int nameEnd = text.indexOf('\n', start);
+            String name = text.substring(start + FILE_DIRECTIVE.length(), nameEnd).trim();
+            int next = text.indexOf(FILE_DIRECTIVE, nameEnd);
+            String content = text.substring(nameEnd + 1, next < 0 ? text.length() : next);
+            files.add(KotlinTestUtils.createFile(name, content, environment.getProject()));
+            start = next;
+        }
+        return files;
+    }
+}
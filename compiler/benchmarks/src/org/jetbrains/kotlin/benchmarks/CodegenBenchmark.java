@@ -0,0 +1,69 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.backend.common.output.OutputFile;
+import org.jetbrains.kotlin.codegen.ClassBuilderFactories;
+import org.jetbrains.kotlin.codegen.CompilationErrorHandler;
+import org.jetbrains.kotlin.codegen.KotlinCodegenFacade;
+import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.List;
+
+/**
+ * Bytecode generation of an analyzed fixture: ExpressionCodegen for the box fixtures,
+ * MethodInliner for the boxInline ones. Analysis happens once per trial and is not measured.
+ */
+public class CodegenBenchmark extends AbstractCompilerBenchmark {
+    @Param({
+            "codegen/box/regressions/collections.kt",
+            "codegen/box/controlStructures/bottles.kt",
+            "codegen/boxInline/complex/use.kt",
+            "codegen/boxInline/complex/closureChain.kt"
+    })
+    public String fixture;
+
+    private List<KtFile> files;
+    private AnalysisResult analysisResult;
+
+    @Override
+    protected void setUp() throws Exception {
+        files = createFiles(fixture);
+        analysisResult = JvmResolveUtil.analyzeAndCheckForErrors(files, environment);
+    }
+
+    @Benchmark
+    public int generate() {
+        GenerationState state = new GenerationState(
+                environment.getProject(), ClassBuilderFactories.BINARIES, analysisResult.getModuleDescriptor(),
+                analysisResult.getBindingContext(), files, environment.getConfiguration()
+        );
+        KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION);
+
+        int size = 0;
+        for (OutputFile file : state.getFactory().asList()) {
+            size += file.asByteArray().length;
+        }
+        state.destroy();
+        return size;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.descriptors.*;
+import org.jetbrains.kotlin.name.FqName;
+import org.jetbrains.kotlin.resolve.DescriptorUtils;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.jetbrains.kotlin.types.KotlinType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Loads every declaration of a runtime package from its metadata: dominated by TypeDeserializer.
+ * Descriptors are cached per module, so each invocation starts from a fresh module.
+ */
+public class DeserializationBenchmark extends AbstractCompilerBenchmark {
+    @Param({"kotlin", "kotlin.collections", "kotlin.text"})
+    public String packageFqName;
+
+    @Benchmark
+    public void deserializePackage(Blackhole blackhole) {
+        ModuleDescriptor module = JvmResolveUtil.analyze(environment).getModuleDescriptor();
+        PackageViewDescriptor packageView = module.getPackage(new FqName(packageFqName));
+        for (DeclarationDescriptor descriptor : DescriptorUtils.getAllDescriptors(packageView.getMemberScope())) {
+            consume(descriptor, blackhole);
+        }
+    }
+
+    private static void consume(DeclarationDescriptor descriptor, Blackhole blackhole) {
+        if (descriptor instanceof CallableDescriptor) {
+            CallableDescriptor callable = (CallableDescriptor) descriptor;
+            blackhole.consume(callable.getReturnType());
+            for (ValueParameterDescriptor parameter : callable.getValueParameters()) {
+                blackhole.consume(parameter.getType());
+            }
+            for (TypeParameterDescriptor typeParameter : callable.getTypeParameters()) {
+                blackhole.consume(typeParameter.getUpperBounds());
+            }
+        }
+        else if (descriptor instanceof ClassDescriptor) {
+            for (KotlinType supertype : ((ClassDescriptor) descriptor).getTypeConstructor().getSupertypes()) {
+                blackhole.consume(supertype);
+            }
+        }
+        else if (descriptor instanceof TypeAliasDescriptor) {
+            blackhole.consume(((TypeAliasDescriptor) descriptor).getExpandedType());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.jetbrains.kotlin.test.KotlinTestUtils;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Type inference of generic calls depending on the depth of the call structure.
+ * The "chain" shape is a long chain of collection operations and generic builder calls (like Rx chains),
+ * the "nested" shape nests generic calls with lambdas into each other, so that every call is inferred with the nested ones.
+ */
+public class InferenceBenchmark extends AbstractCompilerBenchmark {
+    @Param({"chain", "nested"})
+    public String shape;
+
+    @Param({"4", "8", "16"})
+    public int depth;
+
+    private KtFile file;
+
+    @Override
+    protected void setUp() throws Exception {
+        String text = "chain".equals(shape) ? generateChain() : generateNested();
+        file = KotlinTestUtils.createFile("inference.kt", text, environment.getProject());
+    }
+
+    private static String builderClass() {
+        return "class Builder<T>(val value: T) {\n" +
+               "    fun <R> map(f: (T) -> R): Builder<R> = Builder(f(value))\n" +
+               "    fun <R> flatMap(f: (T) -> Builder<R>): Builder<R> = f(value)\n" +
+               "    fun <R> zip(other: Builder<R>): Builder<Pair<T, R>> = Builder(value to other.value)\n" +
+               "}\n\n";
+    }
+
+    private String generateChain() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package inference\n\n");
+        sb.append(builderClass());
+
+        sb.append("fun collections(list: List<Int>) = list\n");
+        for (int i = 0; i < depth; i++) {
+            sb.append("    .map { it to \"").append(i).append("\" }\n");
+            sb.append("    .filter { it.second.isNotEmpty() }\n");
+            sb.append("    .groupBy { it.first % 3 }.flatMap { it.value }\n");
+            sb.append("    .map { it.first + ").append(i).append(" }\n");
+        }
+        sb.append("\n");
+
+        sb.append("fun builders() = Builder(0)\n");
+        for (int i = 0; i < depth; i++) {
+            sb.append("    .map { it.toString() }\n");
+            sb.append("    .flatMap { s -> Builder(s).zip(Builder(").append(i).append(")) }\n");
+            sb.append("    .map { it.first.length + it.second }\n");
+        }
+        return sb.toString();
+    }
+
+    private String generateNested() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package inference\n\n");
+        sb.append(builderClass());
+
+        sb.append("fun collections(list: List<Int>) = ");
+        for (int i = 0; i < depth; i++) {
+            sb.append("list.flatMap { x").append(i).append(" -> listOf(x").append(i).append(").map { y").append(i).append(" -> ");
+        }
+        sb.append("y0");
+        for (int i = 1; i < depth; i++) {
+            sb.append(" + y").append(i);
+        }
+        for (int i = 0; i < depth; i++) {
+            sb.append(" } }");
+        }
+        sb.append("\n\n");
+
+        sb.append("fun builders() = ");
+        for (int i = 0; i < depth; i++) {
+            sb.append("Builder(").append(i).append(").flatMap { a").append(i).append(" -> ");
+        }
+        sb.append("Builder(a0");
+        for (int i = 1; i < depth; i++) {
+            sb.append(" to a").append(i);
+        }
+        sb.append(")");
+        for (int i = 0; i < depth; i++) {
+            sb.append(" }");
+        }
+        sb.append("\n");
+        return sb.toString();
+    }
+
+    @Benchmark
+    public AnalysisResult analyze() {
+        return JvmResolveUtil.analyze(file, environment);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.kotlin.lexer.KotlinLexer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class LexerBenchmark {
+    @Param({"psi/When.kt", "psi/ControlStructures.kt", "codegen/box/regressions/collections.kt"})
+    public String fixture;
+
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        text = AbstractCompilerBenchmark.loadFixture(fixture);
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole blackhole) {
+        KotlinLexer lexer = new KotlinLexer();
+        lexer.start(text);
+        IElementType tokenType;
+        while ((tokenType = lexer.getTokenType()) != null) {
+            blackhole.consume(tokenType);
+            lexer.advance();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.kotlin.config.IncrementalCompilation;
+import org.jetbrains.kotlin.incremental.LookupStorage;
+import org.jetbrains.kotlin.incremental.LookupSymbol;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Incremental compilation lookup storage: queries against a storage populated with 1M lookups (symbol-file pairs)
+ * and additions of a compilation-sized batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class LookupStorageBenchmark {
+    private static final int FILES = 500;
+    private static final int SYMBOLS = 50000;
+    private static final int FILES_PER_SYMBOL = 20;
+    private static final int BATCH_FILES = 10;
+
+    @Param({"false", "true"})
+    public boolean mappedStorage;
+
+    private File storageDir;
+    private LookupStorage storage;
+    private List<LookupSymbol> symbols;
+    private Set<Map.Entry<LookupSymbol, Collection<String>>> batch;
+    private Set<String> batchPaths;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        IncrementalCompilation.setUseMappedStorage(mappedStorage);
+        storageDir = FileUtil.createTempDirectory("lookupStorageBenchmark", null);
+        storage = new LookupStorage(storageDir);
+
+        Random random = new Random(42);
+        List<String> paths = new ArrayList<String>(FILES);
+        for (int i = 0; i < FILES; i++) {
+            paths.add(new File(storageDir, "src/File" + i + ".kt").getPath());
+        }
+
+        symbols = new ArrayList<LookupSymbol>(SYMBOLS);
+        Map<LookupSymbol, Collection<String>> lookups = new HashMap<LookupSymbol, Collection<String>>();
+        for (int i = 0; i < SYMBOLS; i++) {
+            LookupSymbol symbol = new LookupSymbol("name" + i, "scope" + (i % 100));
+            symbols.add(symbol);
+            lookups.put(symbol, randomPaths(paths, FILES_PER_SYMBOL, random));
+        }
+        storage.addAll(lookups.entrySet(), new HashSet<String>(paths));
+        storage.flush(false);
+
+        List<String> recompiledPaths = paths.subList(0, BATCH_FILES);
+        Map<LookupSymbol, Collection<String>> batchLookups = new HashMap<LookupSymbol, Collection<String>>();
+        for (int i = 0; i < SYMBOLS; i += 20) {
+            batchLookups.put(symbols.get(i), randomPaths(recompiledPaths, 2, random));
+        }
+        batch = batchLookups.entrySet();
+        batchPaths = new HashSet<String>(recompiledPaths);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storage.close();
+        FileUtil.delete(storageDir);
+        IncrementalCompilation.setUseMappedStorage(false);
+    }
+
+    @Benchmark
+    public void get(Blackhole blackhole) {
+        for (int i = 0; i < SYMBOLS; i += 10) {
+            blackhole.consume(storage.get(symbols.get(i)));
+        }
+    }
+
+    @Benchmark
+    public void addAll() {
+        storage.addAll(batch, batchPaths);
+    }
+
+    private static Collection<String> randomPaths(List<String> paths, int count, Random random) {
+        Set<String> result = new HashSet<String>(count);
+        while (result.size() < count) {
+            result.add(paths.get(random.nextInt(paths.size())));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.backend.common.output.OutputFile;
+import org.jetbrains.kotlin.codegen.ClassBuilderFactories;
+import org.jetbrains.kotlin.codegen.CompilationErrorHandler;
+import org.jetbrains.kotlin.codegen.KotlinCodegenFacade;
+import org.jetbrains.kotlin.codegen.optimization.OptimizationMethodVisitor;
+import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.config.JVMConfigurationKeys;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.jetbrains.org.objectweb.asm.ClassReader;
+import org.jetbrains.org.objectweb.asm.ClassVisitor;
+import org.jetbrains.org.objectweb.asm.MethodVisitor;
+import org.jetbrains.org.objectweb.asm.Opcodes;
+import org.jetbrains.org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the method transformers of OptimizationMethodVisitor over the unoptimized bytecode of a fixture.
+ */
+public class OptimizationBenchmark extends AbstractCompilerBenchmark {
+    @Param({
+            "codegen/box/regressions/collections.kt",
+            "codegen/box/controlStructures/bottles.kt",
+            "codegen/boxInline/complex/use.kt"
+    })
+    public String fixture;
+
+    private final List<byte[]> classFiles = new ArrayList<byte[]>();
+
+    @Override
+    protected void setUp() throws Exception {
+        List<KtFile> files = createFiles(fixture);
+        CompilerConfiguration configuration = environment.getConfiguration().copy();
+        configuration.put(JVMConfigurationKeys.DISABLE_OPTIMIZATION, true);
+
+        AnalysisResult analysisResult = JvmResolveUtil.analyzeAndCheckForErrors(files, environment);
+        GenerationState state = new GenerationState(
+                environment.getProject(), ClassBuilderFactories.BINARIES, analysisResult.getModuleDescriptor(),
+                analysisResult.getBindingContext(), files, configuration
+        );
+        KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION);
+        for (OutputFile file : state.getFactory().asList()) {
+            if (file.getRelativePath().endsWith(".class")) {
+                classFiles.add(file.asByteArray());
+            }
+        }
+        state.destroy();
+    }
+
+    @Benchmark
+    public void optimize(final Blackhole blackhole) {
+        for (byte[] bytes : classFiles) {
+            new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM5) {
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                    MethodNode result = new MethodNode(access, name, desc, signature, exceptions);
+                    blackhole.consume(result);
+                    return new OptimizationMethodVisitor(result, false, null, null, null, access, name, desc, signature, exceptions);
+                }
+            }, ClassReader.SKIP_FRAMES);
+        }
+    }
+}
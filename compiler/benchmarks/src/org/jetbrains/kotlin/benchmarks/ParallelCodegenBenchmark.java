@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.backend.common.output.OutputFile;
+import org.jetbrains.kotlin.codegen.ClassBuilderFactories;
+import org.jetbrains.kotlin.codegen.CompilationErrorHandler;
+import org.jetbrains.kotlin.codegen.KotlinCodegenFacade;
+import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.config.JVMConfigurationKeys;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.jetbrains.kotlin.test.KotlinTestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bytecode generation of a large synthetic module with -Xbackend-threads, one package per file.
+ * Analysis happens once per trial and is not measured.
+ */
+public class ParallelCodegenBenchmark extends AbstractCompilerBenchmark {
+    private static final int FILES = 400;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private List<KtFile> files;
+    private AnalysisResult analysisResult;
+    private CompilerConfiguration configuration;
+
+    @Override
+    protected void setUp() throws Exception {
+        files = new ArrayList<KtFile>(FILES);
+        for (int i = 1; i <= FILES; i++) {
+            files.add(KotlinTestUtils.createFile("p" + i + ".kt", syntheticPackage(i), environment.getProject()));
+        }
+        analysisResult = JvmResolveUtil.analyzeAndCheckForErrors(files, environment);
+
+        configuration = environment.getConfiguration().copy();
+        configuration.put(JVMConfigurationKeys.BACKEND_THREADS, threads);
+    }
+
+    @Benchmark
+    public int generate() {
+        GenerationState state = new GenerationState(
+                environment.getProject(), ClassBuilderFactories.BINARIES, analysisResult.getModuleDescriptor(),
+                analysisResult.getBindingContext(), files, configuration
+        );
+        KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION);
+
+        int size = 0;
+        for (OutputFile file : state.getFactory().asList()) {
+            size += file.asByteArray().length;
+        }
+        state.destroy();
+        return size;
+    }
+
+    // Each package has classes, a 'when', inline calls, lambdas and anonymous objects, and refers to the previous package
+    private static String syntheticPackage(int index) {
+        String previous = index > 1 ? " + p" + (index - 1) + ".top" + (index - 1) + "(x)" : "";
+        return "package p" + index + "\n" +
+               "\n" +
+               "enum class E" + index + " { A, B, C }\n" +
+               "\n" +
+               "inline fun <T> call" + index + "(f: () -> T): T = f()\n" +
+               "\n" +
+               "class C" + index + "(val x: Int) {\n" +
+               "    fun f(e: E" + index + "): Int = when (e) {\n" +
+               "        E" + index + ".A -> call" + index + " { x + " + index + " }\n" +
+               "        E" + index + ".B -> call" + index + " { object : Runnable { override fun run() {} }.hashCode() }\n" +
+               "        E" + index + ".C -> { i: Int -> i * x }(" + index + ")\n" +
+               "    }\n" +
+               "\n" +
+               "    fun g(list: List<Int>): Int = list.filter { it > x }.map { it * " + index + " }.sum()\n" +
+               "}\n" +
+               "\n" +
+               "fun top" + index + "(x: Int): Int = C" + index + "(x).f(E" + index + ".A)" + previous + "\n";
+    }
+}
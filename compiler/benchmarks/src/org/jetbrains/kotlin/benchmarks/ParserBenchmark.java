@@ -0,0 +1,48 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.lang.ASTNode;
+import org.jetbrains.kotlin.test.KotlinTestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+public class ParserBenchmark extends AbstractCompilerBenchmark {
+    @Param({"psi/When.kt", "psi/ControlStructures.kt", "codegen/box/regressions/collections.kt"})
+    public String fixture;
+
+    private String text;
+
+    @Override
+    protected void setUp() throws Exception {
+        text = loadFixture(fixture);
+    }
+
+    @Benchmark
+    public int parse() {
+        return countNodes(KotlinTestUtils.createFile("benchmark.kt", text, environment.getProject()).getNode());
+    }
+
+    // Walking the whole tree also expands lazy parseable elements such as lambda bodies
+    private static int countNodes(ASTNode node) {
+        int count = 1;
+        for (ASTNode child = node.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+}
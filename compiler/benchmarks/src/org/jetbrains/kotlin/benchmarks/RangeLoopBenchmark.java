@@ -0,0 +1,236 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.codegen.ClassBuilderFactories;
+import org.jetbrains.kotlin.codegen.CompilationErrorHandler;
+import org.jetbrains.kotlin.codegen.GeneratedClassLoader;
+import org.jetbrains.kotlin.codegen.KotlinCodegenFacade;
+import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.jetbrains.kotlin.test.KotlinTestUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * For loops over stdlib progression builders as compiled by this tree, compared against the equivalent handwritten Java loops.
+ * The Kotlin loops are compiled once per trial with the current backend and loaded into the benchmark JVM, so the numbers
+ * (and the allocation rate reported by {@link BenchmarkRunner}) reflect the current range loop codegen.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RangeLoopBenchmark extends AbstractCompilerBenchmark {
+    private static final String KOTLIN_LOOPS =
+            "package rangeLoops\n" +
+            "\n" +
+            "import java.util.function.IntToLongFunction\n" +
+            "import java.util.function.ToLongFunction\n" +
+            "\n" +
+            "class RangeToLoop : IntToLongFunction {\n" +
+            "    override fun applyAsLong(n: Int): Long { var sum = 0L; for (i in 0..n) sum += i; return sum }\n" +
+            "}\n" +
+            "\n" +
+            "class UntilLoop : IntToLongFunction {\n" +
+            "    override fun applyAsLong(n: Int): Long { var sum = 0L; for (i in 0 until n) sum += i; return sum }\n" +
+            "}\n" +
+            "\n" +
+            "class DownToLoop : IntToLongFunction {\n" +
+            "    override fun applyAsLong(n: Int): Long { var sum = 0L; for (i in n downTo 0) sum += i; return sum }\n" +
+            "}\n" +
+            "\n" +
+            "class ReversedLoop : IntToLongFunction {\n" +
+            "    override fun applyAsLong(n: Int): Long { var sum = 0L; for (i in (0 until n).reversed()) sum += i; return sum }\n" +
+            "}\n" +
+            "\n" +
+            "class ConstantStepLoop : IntToLongFunction {\n" +
+            "    override fun applyAsLong(n: Int): Long { var sum = 0L; for (i in 0..n step 3) sum += i; return sum }\n" +
+            "}\n" +
+            "\n" +
+            "class StepLoop(private val step: Int) : IntToLongFunction {\n" +
+            "    override fun applyAsLong(n: Int): Long { var sum = 0L; for (i in n downTo 0 step step) sum += i; return sum }\n" +
+            "}\n" +
+            "\n" +
+            "class IndicesLoop : ToLongFunction<IntArray> {\n" +
+            "    override fun applyAsLong(array: IntArray): Long { var sum = 0L; for (i in array.indices) sum += array[i]; return sum }\n" +
+            "}\n";
+
+    @Param({"kotlin", "java"})
+    public String implementation;
+
+    @Param({"1000"})
+    public int size;
+
+    private IntToLongFunction rangeTo;
+    private IntToLongFunction until;
+    private IntToLongFunction downTo;
+    private IntToLongFunction reversed;
+    private IntToLongFunction constantStep;
+    private IntToLongFunction step;
+    private ToLongFunction<int[]> indices;
+    private int[] array;
+
+    @Override
+    protected void setUp() throws Exception {
+        array = new int[size];
+        for (int i = 0; i < size; i++) {
+            array[i] = i;
+        }
+
+        if ("java".equals(implementation)) {
+            rangeTo = new JavaRangeToLoop();
+            until = new JavaUntilLoop();
+            downTo = new JavaDownToLoop();
+            reversed = new JavaReversedLoop();
+            constantStep = new JavaConstantStepLoop();
+            step = new JavaStepLoop(3);
+            indices = new JavaIndicesLoop();
+            return;
+        }
+
+        ClassLoader loader = compileKotlinLoops();
+        rangeTo = (IntToLongFunction) loader.loadClass("rangeLoops.RangeToLoop").newInstance();
+        until = (IntToLongFunction) loader.loadClass("rangeLoops.UntilLoop").newInstance();
+        downTo = (IntToLongFunction) loader.loadClass("rangeLoops.DownToLoop").newInstance();
+        reversed = (IntToLongFunction) loader.loadClass("rangeLoops.ReversedLoop").newInstance();
+        constantStep = (IntToLongFunction) loader.loadClass("rangeLoops.ConstantStepLoop").newInstance();
+        step = (IntToLongFunction) loader.loadClass("rangeLoops.StepLoop").getConstructor(int.class).newInstance(3);
+        //noinspection unchecked
+        indices = (ToLongFunction<int[]>) loader.loadClass("rangeLoops.IndicesLoop").newInstance();
+    }
+
+    private ClassLoader compileKotlinLoops() {
+        List<KtFile> files = Collections.singletonList(KotlinTestUtils.createFile("rangeLoops.kt", KOTLIN_LOOPS, environment.getProject()));
+        AnalysisResult analysisResult = JvmResolveUtil.analyzeAndCheckForErrors(files, environment);
+        GenerationState state = new GenerationState(
+                environment.getProject(), ClassBuilderFactories.BINARIES, analysisResult.getModuleDescriptor(),
+                analysisResult.getBindingContext(), files, environment.getConfiguration()
+        );
+        KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION);
+        return new GeneratedClassLoader(state.getFactory(), RangeLoopBenchmark.class.getClassLoader());
+    }
+
+    @Benchmark
+    public long rangeTo() {
+        return rangeTo.applyAsLong(size);
+    }
+
+    @Benchmark
+    public long until() {
+        return until.applyAsLong(size);
+    }
+
+    @Benchmark
+    public long downTo() {
+        return downTo.applyAsLong(size);
+    }
+
+    @Benchmark
+    public long reversed() {
+        return reversed.applyAsLong(size);
+    }
+
+    @Benchmark
+    public long constantStep() {
+        return constantStep.applyAsLong(size);
+    }
+
+    @Benchmark
+    public long step() {
+        return step.applyAsLong(size);
+    }
+
+    @Benchmark
+    public long indices() {
+        return indices.applyAsLong(array);
+    }
+
+    private static class JavaRangeToLoop implements IntToLongFunction {
+        @Override
+        public long applyAsLong(int n) {
+            long sum = 0;
+            for (int i = 0; i <= n; i++) sum += i;
+            return sum;
+        }
+    }
+
+    private static class JavaUntilLoop implements IntToLongFunction {
+        @Override
+        public long applyAsLong(int n) {
+            long sum = 0;
+            for (int i = 0; i < n; i++) sum += i;
+            return sum;
+        }
+    }
+
+    private static class JavaDownToLoop implements IntToLongFunction {
+        @Override
+        public long applyAsLong(int n) {
+            long sum = 0;
+            for (int i = n; i >= 0; i--) sum += i;
+            return sum;
+        }
+    }
+
+    private static class JavaReversedLoop implements IntToLongFunction {
+        @Override
+        public long applyAsLong(int n) {
+            long sum = 0;
+            for (int i = n - 1; i >= 0; i--) sum += i;
+            return sum;
+        }
+    }
+
+    private static class JavaConstantStepLoop implements IntToLongFunction {
+        @Override
+        public long applyAsLong(int n) {
+            long sum = 0;
+            for (int i = 0; i <= n; i += 3) sum += i;
+            return sum;
+        }
+    }
+
+    private static class JavaStepLoop implements IntToLongFunction {
+        private final int step;
+
+        private JavaStepLoop(int step) {
+            this.step = step;
+        }
+
+        @Override
+        public long applyAsLong(int n) {
+            long sum = 0;
+            for (int i = n; i >= 0; i -= step) sum += i;
+            return sum;
+        }
+    }
+
+    private static class JavaIndicesLoop implements ToLongFunction<int[]> {
+        @Override
+        public long applyAsLong(int[] array) {
+            long sum = 0;
+            for (int i = 0; i < array.length; i++) sum += array[i];
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.List;
+
+/**
+ * Full body resolution of a fixture: dominated by CallResolver and type inference.
+ */
+public class ResolveBenchmark extends AbstractCompilerBenchmark {
+    @Param({"codegen/box/regressions/collections.kt", "codegen/box/controlStructures/bottles.kt", "codegen/boxInline/complex/use.kt"})
+    public String fixture;
+
+    private List<KtFile> files;
+
+    @Override
+    protected void setUp() throws Exception {
+        files = createFiles(fixture);
+    }
+
+    @Benchmark
+    public AnalysisResult analyze() {
+        return JvmResolveUtil.analyzeAndCheckForErrors(files, environment);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.psi.util.PsiTreeUtil;
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.checkers.CheckerTestUtil;
+import org.jetbrains.kotlin.psi.KtExpression;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.jetbrains.kotlin.test.KotlinTestUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Body resolution of smart cast heavy diagnostic fixtures, dominated by data flow info operations.
+ * Besides analyses per second, the "expressions" counter reports the number of resolved expressions per second;
+ * dividing it by the analyses per second gives the number of expressions in the fixture, and dividing gc.alloc.rate.norm
+ * by that number gives the allocation per expression.
+ */
+public class SmartCastBenchmark extends AbstractCompilerBenchmark {
+    @Param({
+            "diagnostics/tests/smartCasts/safecalls/safeAccessReceiverNotNull.kt",
+            "diagnostics/tests/smartCasts/fakeSmartCastOnEquality.kt",
+            "diagnostics/tests/smartCasts/varnotnull/initInTryReturnInCatch.kt"
+    })
+    public String fixture;
+
+    private KtFile file;
+    private int expressionCount;
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class Counters {
+        public long expressions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            expressions = 0;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        // Diagnostic fixtures are marked up with expected diagnostics which must be removed before analysis
+        String text = CheckerTestUtil.parseDiagnosedRanges(loadFixture(fixture), new ArrayList<CheckerTestUtil.DiagnosedRange>());
+        file = KotlinTestUtils.createFile(new File(fixture).getName(), text, environment.getProject());
+        expressionCount = PsiTreeUtil.collectElementsOfType(file, KtExpression.class).size();
+    }
+
+    @Benchmark
+    public AnalysisResult analyze(Counters counters) {
+        counters.expressions += expressionCount;
+        return JvmResolveUtil.analyze(file, environment);
+    }
+}
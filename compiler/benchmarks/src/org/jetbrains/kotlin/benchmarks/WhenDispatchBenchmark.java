@@ -0,0 +1,142 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.codegen.ClassBuilderFactories;
+import org.jetbrains.kotlin.codegen.CompilationErrorHandler;
+import org.jetbrains.kotlin.codegen.GeneratedClassLoader;
+import org.jetbrains.kotlin.codegen.KotlinCodegenFacade;
+import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.jetbrains.kotlin.test.KotlinTestUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * Dispatch cost of 'when' over sealed class subclasses and over strings depending on the number of branches.
+ * The "switch" strategy compiles 'when's which the current backend turns into a switch, the "chain" strategy compiles
+ * the same branches in a form which is always generated as a chain of instanceof or equals checks
+ * (a 'when' with too few sealed subclass branches is generated as a chain for both strategies).
+ * Each invocation dispatches all the values of an array which cycles through all the branches, so call sites are megamorphic.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(WhenDispatchBenchmark.VALUES)
+public class WhenDispatchBenchmark extends AbstractCompilerBenchmark {
+    static final int VALUES = 1024;
+
+    @Param({"switch", "chain"})
+    public String strategy;
+
+    @Param({"2", "4", "8", "16", "32", "48"})
+    public int branches;
+
+    private ToIntFunction<Object> sealedDispatch;
+    private ToIntFunction<Object> stringDispatch;
+    private Object[] nodes;
+    private Object[] strings;
+
+    @Override
+    protected void setUp() throws Exception {
+        ClassLoader loader = compileKotlinDispatch(generateKotlinDispatch());
+
+        //noinspection unchecked
+        sealedDispatch = (ToIntFunction<Object>) loader.loadClass("whenDispatch.SealedDispatch").newInstance();
+        //noinspection unchecked
+        stringDispatch = (ToIntFunction<Object>) loader.loadClass("whenDispatch.StringDispatch").newInstance();
+
+        nodes = new Object[VALUES];
+        strings = new Object[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            nodes[i] = loader.loadClass("whenDispatch.Node$C" + i % branches).newInstance();
+            strings[i] = new String("key" + i % branches);
+        }
+    }
+
+    private String generateKotlinDispatch() {
+        boolean useSwitch = "switch".equals(strategy);
+        StringBuilder sb = new StringBuilder();
+        sb.append("package whenDispatch\n\n");
+        sb.append("import java.util.function.ToIntFunction\n\n");
+
+        sb.append(useSwitch ? "sealed" : "abstract").append(" class Node {\n");
+        for (int i = 0; i < branches; i++) {
+            sb.append("    class C").append(i).append(" : Node()\n");
+        }
+        sb.append("}\n\n");
+
+        sb.append("class SealedDispatch : ToIntFunction<Any> {\n");
+        sb.append("    override fun applyAsInt(value: Any): Int = when (value as Node) {\n");
+        for (int i = 0; i < branches; i++) {
+            sb.append("        is Node.C").append(i).append(" -> ").append(i).append("\n");
+        }
+        if (!useSwitch) {
+            sb.append("        else -> -1\n");
+        }
+        sb.append("    }\n");
+        sb.append("}\n\n");
+
+        sb.append("class StringDispatch : ToIntFunction<Any> {\n");
+        sb.append("    override fun applyAsInt(value: Any): Int {\n");
+        sb.append("        val s = value as String\n");
+        sb.append(useSwitch ? "        return when (s) {\n" : "        return when {\n");
+        for (int i = 0; i < branches; i++) {
+            sb.append("            ").append(useSwitch ? "" : "s == ").append("\"key").append(i).append("\" -> ").append(i).append("\n");
+        }
+        sb.append("            else -> -1\n");
+        sb.append("        }\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+
+        return sb.toString();
+    }
+
+    private ClassLoader compileKotlinDispatch(String text) {
+        List<KtFile> files = Collections.singletonList(KotlinTestUtils.createFile("whenDispatch.kt", text, environment.getProject()));
+        AnalysisResult analysisResult = JvmResolveUtil.analyzeAndCheckForErrors(files, environment);
+        GenerationState state = new GenerationState(
+                environment.getProject(), ClassBuilderFactories.BINARIES, analysisResult.getModuleDescriptor(),
+                analysisResult.getBindingContext(), files, environment.getConfiguration()
+        );
+        KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION);
+        return new GeneratedClassLoader(state.getFactory(), WhenDispatchBenchmark.class.getClassLoader());
+    }
+
+    @Benchmark
+    public int sealedClass() {
+        return dispatchAll(sealedDispatch, nodes);
+    }
+
+    @Benchmark
+    public int string() {
+        return dispatchAll(stringDispatch, strings);
+    }
+
+    private static int dispatchAll(ToIntFunction<Object> dispatch, Object[] values) {
+        int sum = 0;
+        for (Object value : values) {
+            sum += dispatch.applyAsInt(value);
+        }
+        return sum;
+    }
+}
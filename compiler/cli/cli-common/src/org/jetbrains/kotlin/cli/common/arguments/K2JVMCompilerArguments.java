@@ -104,6 +104,30 @@ public class K2JVMCompilerArguments extends CommonCompilerArguments {
     @Argument(value = "Xinterface-compatibility", description = "Generate DefaultImpls classes for interfaces in JVM target bytecode version 1.8 for binary compatibility with 1.6")
     public boolean interfaceCompatibility;
 
+    @Argument(value = "Xbackend-threads", description = "Generate bytecode for independent packages in parallel using the given number of threads")
+    @ValueDescription("<N>")
+    public String backendThreads;
+
+    @Argument(value = "Xanalysis-threads", description = "Resolve bodies of declarations in different files in parallel using the given number of threads")
+    @ValueDescription("<N>")
+    public String analysisThreads;
+
+    @Argument(value = "Xinline-trivial-methods", description = "Inline synthetic accessors and calls to methods returning constants within the module to reduce the method count")
+    public boolean inlineTrivialMethods;
+
+    @Argument(value = "Xtail-calls-to-loops", description = "Convert self-recursive tail calls of non-overridable functions to loops, as for tailrec functions")
+    public boolean tailCallsToLoops;
+
+    @Argument(value = "Xdump-null-check-statistics-to", description = "Path to file to dump the number of removed and retained not-null assertions per class")
+    @ValueDescription("<path>")
+    public String nullCheckStatisticsOutputPath;
+
+    @Argument(value = "Xstream-output", description = "Write class files to the destination as soon as they are generated instead of keeping them in memory until the end of compilation")
+    public boolean streamOutput;
+
+    @Argument(value = "Xintermediate-jar", description = "Write the destination jar without compression and with fixed time stamps, for jars only read by the next build step")
+    public boolean intermediateJar;
+
     // Paths to output directories for friend modules.
     public String[] friendPaths;
 
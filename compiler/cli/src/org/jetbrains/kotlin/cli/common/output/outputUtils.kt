@@ -40,7 +40,16 @@ fun OutputFileCollection.writeAllTo(outputDir: File) {
 }
 
 fun OutputFileCollection.writeAll(outputDir: File, messageCollector: MessageCollector) {
-    writeAll(outputDir) { sources, output ->
-        messageCollector.report(CompilerMessageSeverity.OUTPUT, OutputMessageUtil.formatOutputMessage(sources, output), CompilerMessageLocation.NO_LOCATION)
+    writeAll(outputDir) { sources, output -> reportOutput(messageCollector, sources, output) }
+}
+
+// For files which have already been written to the output directory, e.g. by StreamingOutputWriter
+fun OutputFileCollection.reportAll(outputDir: File, messageCollector: MessageCollector) {
+    for (file in asList()) {
+        reportOutput(messageCollector, file.sourceFiles, File(outputDir, file.relativePath))
     }
 }
+
+private fun reportOutput(messageCollector: MessageCollector, sources: List<File>, output: File) {
+    messageCollector.report(CompilerMessageSeverity.OUTPUT, OutputMessageUtil.formatOutputMessage(sources, output), CompilerMessageLocation.NO_LOCATION)
+}
@@ -22,8 +22,10 @@ import org.jetbrains.kotlin.cli.common.CLICompiler
 import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys
 import org.jetbrains.kotlin.cli.common.ExitCode
 import org.jetbrains.kotlin.cli.common.ExitCode.*
+import org.jetbrains.kotlin.cli.common.KOTLIN_COMPILER_ENVIRONMENT_KEEPALIVE_PROPERTY
 import org.jetbrains.kotlin.cli.common.arguments.K2JVMCompilerArguments
 import org.jetbrains.kotlin.cli.common.messages.*
+import org.jetbrains.kotlin.cli.common.toBooleanLenient
 import org.jetbrains.kotlin.cli.jvm.compiler.CompileEnvironmentUtil
 import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
 import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
@@ -139,6 +141,35 @@ class K2JVMCompiler : CLICompiler<K2JVMCompilerArguments>() {
             }
         }
 
+        if (arguments.backendThreads != null) {
+            val threads = try { arguments.backendThreads.toInt() } catch (e: NumberFormatException) { 0 }
+            if (threads > 0) {
+                configuration.put(JVMConfigurationKeys.BACKEND_THREADS, threads)
+            }
+            else {
+                messageCollector.report(CompilerMessageSeverity.ERROR,
+                                        "Number of backend threads should be a positive integer: ${arguments.backendThreads}",
+                                        CompilerMessageLocation.NO_LOCATION)
+            }
+        }
+
+        if (arguments.analysisThreads != null) {
+            val threads = try { arguments.analysisThreads.toInt() } catch (e: NumberFormatException) { 0 }
+            if (threads > 0) {
+                configuration.put(JVMConfigurationKeys.ANALYSIS_THREADS, threads)
+            }
+            else {
+                messageCollector.report(CompilerMessageSeverity.ERROR,
+                                        "Number of analysis threads should be a positive integer: ${arguments.analysisThreads}",
+                                        CompilerMessageLocation.NO_LOCATION)
+            }
+        }
+
+        if (System.getProperty(KOTLIN_COMPILER_ENVIRONMENT_KEEPALIVE_PROPERTY).toBooleanLenient() ?: false) {
+            // several compilations are performed in this process, e.g. in the daemon
+            configuration.put(JVMConfigurationKeys.SHARE_INLINE_FUNCTIONS_CACHE, true)
+        }
+
         if (arguments.interfaceCompatibility) {
             val target = configuration.get(JVMConfigurationKeys.JVM_TARGET)
             if (target != JvmTarget.JVM_1_8) {
@@ -333,8 +364,13 @@ class K2JVMCompiler : CLICompiler<K2JVMCompilerArguments>() {
             configuration.put(CLIConfigurationKeys.ALLOW_KOTLIN_PACKAGE, arguments.allowKotlinPackage)
             configuration.put(CLIConfigurationKeys.REPORT_PERF, arguments.reportPerf)
             configuration.put(JVMConfigurationKeys.USE_SINGLE_MODULE, arguments.singleModule)
+            configuration.put(JVMConfigurationKeys.INLINE_TRIVIAL_METHODS, arguments.inlineTrivialMethods)
+            configuration.put(JVMConfigurationKeys.CONVERT_TAIL_CALLS_TO_LOOPS, arguments.tailCallsToLoops)
+            configuration.put(JVMConfigurationKeys.STREAM_OUTPUT, arguments.streamOutput)
+            configuration.put(JVMConfigurationKeys.INTERMEDIATE_JAR, arguments.intermediateJar)
 
             arguments.declarationsOutputPath?.let { configuration.put(JVMConfigurationKeys.DECLARATIONS_JSON_PATH, it) }
+            arguments.nullCheckStatisticsOutputPath?.let { configuration.put(JVMConfigurationKeys.NULL_CHECK_STATISTICS_PATH, it) }
         }
 
         private fun getClasspath(paths: KotlinPaths, arguments: K2JVMCompilerArguments): List<File> {
@@ -172,7 +172,9 @@ class CliLightClassGenerationSupport(project: Project) : LightClassGenerationSup
         return NoScopeRecordCliBindingTrace()
     }
 
-    class NoScopeRecordCliBindingTrace : CliBindingTrace() {
+    class NoScopeRecordCliBindingTrace @JvmOverloads constructor(
+            allowConcurrentAccess: Boolean = false
+    ) : CliBindingTrace(allowConcurrentAccess) {
         override fun <K, V> record(slice: WritableSlice<K, V>, key: K, value: V) {
             if (slice === BindingContext.LEXICAL_SCOPE) {
                 // In the compiler there's no need to keep scopes
@@ -186,7 +188,9 @@ class CliLightClassGenerationSupport(project: Project) : LightClassGenerationSup
         }
     }
 
-    open class CliBindingTrace @TestOnly constructor() : BindingTraceContext() {
+    open class CliBindingTrace @TestOnly @JvmOverloads constructor(
+            allowConcurrentAccess: Boolean = false
+    ) : BindingTraceContext(BindingTraceFilter.ACCEPT_ALL, allowConcurrentAccess) {
         private var kotlinCodeAnalyzer: KotlinCodeAnalyzer? = null
 
         override fun toString(): String {
@@ -75,35 +75,55 @@ public class CompileEnvironmentUtil {
     }
 
     // TODO: includeRuntime should be not a flag but a path to runtime
-    private static void doWriteToJar(OutputFileCollection outputFiles, OutputStream fos, @Nullable FqName mainClass, boolean includeRuntime) {
+    private static void doWriteToJar(
+            OutputFileCollection outputFiles,
+            OutputStream fos,
+            @Nullable FqName mainClass,
+            boolean includeRuntime,
+            boolean storeOnly
+    ) {
         try {
-            Manifest manifest = new Manifest();
-            Attributes mainAttributes = manifest.getMainAttributes();
-            mainAttributes.putValue("Manifest-Version", "1.0");
-            mainAttributes.putValue("Created-By", "JetBrains Kotlin");
-            if (mainClass != null) {
-                mainAttributes.putValue("Main-Class", mainClass.asString());
-            }
-            JarOutputStream stream = new JarOutputStream(fos, manifest);
-            for (OutputFile outputFile : outputFiles.asList()) {
-                stream.putNextEntry(new JarEntry(outputFile.getRelativePath()));
-                stream.write(outputFile.asByteArray());
+            ParallelJarWriter writer = new ParallelJarWriter(fos, createManifest(mainClass), storeOnly);
+            try {
+                for (OutputFile outputFile : outputFiles.asList()) {
+                    writer.add(outputFile.getRelativePath(), outputFile.asByteArray());
+                }
+                if (includeRuntime) {
+                    writeRuntimeToJar(writer);
+                }
             }
-            if (includeRuntime) {
-                writeRuntimeToJar(stream);
+            finally {
+                writer.close();
             }
-            stream.finish();
         }
         catch (IOException e) {
             throw new CompileEnvironmentException("Failed to generate jar file", e);
         }
     }
 
-    public static void writeToJar(File jarPath, boolean jarRuntime, FqName mainClass, OutputFileCollection outputFiles) {
+    @NotNull
+    static Manifest createManifest(@Nullable FqName mainClass) {
+        Manifest manifest = new Manifest();
+        Attributes mainAttributes = manifest.getMainAttributes();
+        mainAttributes.putValue("Manifest-Version", "1.0");
+        mainAttributes.putValue("Created-By", "JetBrains Kotlin");
+        if (mainClass != null) {
+            mainAttributes.putValue("Main-Class", mainClass.asString());
+        }
+        return manifest;
+    }
+
+    public static void writeToJar(
+            File jarPath,
+            boolean jarRuntime,
+            boolean storeOnly,
+            FqName mainClass,
+            OutputFileCollection outputFiles
+    ) {
         FileOutputStream outputStream = null;
         try {
             outputStream = new FileOutputStream(jarPath);
-            doWriteToJar(outputFiles, outputStream, mainClass, jarRuntime);
+            doWriteToJar(outputFiles, outputStream, mainClass, jarRuntime, storeOnly);
             outputStream.close();
         }
         catch (FileNotFoundException e) {
@@ -117,7 +137,7 @@ public class CompileEnvironmentUtil {
         }
     }
 
-    private static void writeRuntimeToJar(JarOutputStream stream) throws IOException {
+    static void writeRuntimeToJar(ParallelJarWriter writer) throws IOException {
         File runtimePath = PathUtil.getKotlinPathsForCompiler().getRuntimePath();
         if (!runtimePath.exists()) {
             throw new CompileEnvironmentException("Couldn't find runtime library");
@@ -127,10 +147,10 @@ public class CompileEnvironmentUtil {
             throw new CompileEnvironmentException("Couldn't find script runtime library");
         }
 
-        copyJarImpl(stream, runtimePath);
+        copyJarImpl(writer, runtimePath);
     }
 
-    private static void copyJarImpl(JarOutputStream stream, File jarPath) throws IOException {
+    private static void copyJarImpl(ParallelJarWriter writer, File jarPath) throws IOException {
         JarInputStream jis = new JarInputStream(new FileInputStream(jarPath));
         try {
             while (true) {
@@ -139,8 +159,7 @@ public class CompileEnvironmentUtil {
                     break;
                 }
                 if (FileUtilRt.extensionEquals(e.getName(), "class")) {
-                    stream.putNextEntry(e);
-                    FileUtil.copy(jis, stream);
+                    writer.add(e.getName(), FileUtil.loadBytes(jis));
                 }
             }
         }
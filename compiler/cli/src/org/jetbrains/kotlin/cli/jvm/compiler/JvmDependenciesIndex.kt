@@ -17,10 +17,10 @@
 package org.jetbrains.kotlin.cli.jvm.compiler
 
 import com.intellij.openapi.vfs.VirtualFile
-import com.intellij.util.containers.IntArrayList
 import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.FqName
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.locks.ReentrantReadWriteLock
 import kotlin.concurrent.read
 import kotlin.concurrent.write
@@ -73,7 +73,8 @@ class JvmUpdatableDependenciesIndexFactory : JvmDependenciesIndexFactory<JvmDepe
 }
 
 // speeds up finding files/classes in classpath/java source roots
-// NOT THREADSAFE, needs to be adapted/removed if we want compiler to be multithreaded
+// may be used from several threads (see JVMConfigurationKeys.ANALYSIS_THREADS): caches are only ever extended, and the result
+// of the last class search is replaced as a whole
 // the main idea of this class is for each package to store roots which contains it to avoid excessive file system traversal
 class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
 
@@ -84,33 +85,43 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
         get() = roots.size
 
     // each "Cache" object corresponds to a package
-    private class Cache {
-        private val innerPackageCaches = HashMap<String, Cache>()
+    private class Cache(rootIndices: IntArray = IntArray(0)) {
+        private val innerPackageCaches = ConcurrentHashMap<String, Cache>()
 
         operator fun get(name: String) = innerPackageCaches.getOrPut(name) { Cache() }
 
-        // indices of roots that are known to contain this package
+        // indices of roots that are known to contain this package, sorted
         // if this list contains [1, 3, 5] then roots with indices 1, 3 and 5 are known to contain this package, 2 and 4 are known not to (no information about roots 6 or higher)
         // if this list contains maxIndex that means that all roots containing this package are known
-        val rootIndices = IntArrayList()
+        // the array is replaced on each change, so that it can be iterated while another thread adds to it
+        @Volatile var rootIndices: IntArray = rootIndices
+            private set
+
+        @Synchronized
+        fun addRootIndex(index: Int) {
+            val current = rootIndices
+            val position = Arrays.binarySearch(current, index)
+            // another thread may have added it already
+            if (position >= 0) return
+
+            val insertionPoint = -position - 1
+            val updated = IntArray(current.size + 1)
+            System.arraycopy(current, 0, updated, 0, insertionPoint)
+            updated[insertionPoint] = index
+            System.arraycopy(current, insertionPoint, updated, insertionPoint + 1, current.size - insertionPoint)
+            rootIndices = updated
+        }
     }
 
     // root "Cache" object corresponds to DefaultPackage which exists in every root. Roots with non-default fqname are also listed here but
     // they will be ignored on requests with invalid fqname prefix.
     private val rootCache: Cache by lazy {
-        with(Cache()) {
-            roots.indices.forEach {
-                rootIndices.add(it)
-            }
-            rootIndices.add(maxIndex)
-            rootIndices.trimToSize()
-            this
-        }
+        Cache(IntArray(maxIndex + 1) { it })
     }
 
     // holds the request and the result last time we searched for class
     // helps improve several scenarios, LazyJavaResolverContext.findClassInJava being the most important
-    private var lastClassSearch: Pair<FindClassRequest, SearchResult>? = null
+    @Volatile private var lastClassSearch: Pair<FindClassRequest, SearchResult>? = null
 
     override val indexedRoots by lazy { roots.asSequence() }
 
@@ -165,11 +176,12 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
         fun doSearch() = doSearch(request, handler)
 
         // make a decision based on information saved from last class search
-        if (request !is FindClassRequest || lastClassSearch == null) {
+        val lastSearch = lastClassSearch
+        if (request !is FindClassRequest || lastSearch == null) {
             return doSearch()
         }
         
-        val (cachedRequest, cachedResult) = lastClassSearch!!
+        val (cachedRequest, cachedResult) = lastSearch
         if (cachedRequest.classId != request.classId) {
             return doSearch()
         }
@@ -234,9 +246,9 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
         val cachesLastIndex = caches.lastIndex
         for (cacheIndex in 0..cachesLastIndex) {
             val reverseCacheIndex = cachesLastIndex - cacheIndex
-            val cache = caches[reverseCacheIndex]
-            for (i in 0..cache.rootIndices.size() - 1) {
-                val rootIndex = cache.rootIndices[i]
+            val rootIndices = caches[reverseCacheIndex].rootIndices
+            for (i in 0..rootIndices.size - 1) {
+                val rootIndex = rootIndices[i]
                 if (rootIndex <= processedRootsUpTo) continue // roots with those indices have been processed by now
 
                 val directoryInRoot = travelPath(rootIndex, packagesPath, reverseCacheIndex, caches) ?: continue
@@ -246,7 +258,7 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
                     return found(directoryInRoot, root, result)
                 }
             }
-            processedRootsUpTo = cache.rootIndices.lastOrNull() ?: processedRootsUpTo
+            processedRootsUpTo = rootIndices.lastOrNull() ?: processedRootsUpTo
         }
         
         return notFound()
@@ -258,8 +270,7 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
         if (rootIndex >= maxIndex) {
             for (i in (fillCachesAfter + 1)..(cachesPath.size - 1)) {
                 // we all know roots that contain this package by now
-                cachesPath[i].rootIndices.add(maxIndex)
-                cachesPath[i].rootIndices.trimToSize()
+                cachesPath[i].addRootIndex(maxIndex)
             }
             return null
         }
@@ -284,7 +295,7 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
             val correspondingCacheIndex = pathIndex + 1
             if (correspondingCacheIndex > fillCachesAfter) {
                 // subPackageName exists in this root
-                cachesPath[correspondingCacheIndex].rootIndices.add(rootIndex)
+                cachesPath[correspondingCacheIndex].addRootIndex(rootIndex)
             }
         }
 
@@ -336,7 +347,8 @@ class JvmDependenciesDynamicCompoundIndex() : JvmDependenciesIndex {
     }
 
     fun addNewIndexForRoots(roots: Iterable<JavaRoot>): JvmDependenciesIndex? =
-            lock.read {
+            // a read lock can't be upgraded to the write one taken by addIndex
+            lock.write {
                 val alreadyIndexed = indexedRoots.toHashSet()
                 val newRoots = roots.filter { !alreadyIndexed.contains(it) }
                 if (newRoots.isEmpty()) null
@@ -373,6 +385,3 @@ class JvmDependenciesDynamicCompoundIndex() : JvmDependenciesIndex {
     }
 }
 
-private fun IntArrayList.lastOrNull() = if (isEmpty) null else get(size() - 1)
-private val IntArrayList.indices: IntRange get() = 0..(size() - 1)
-
@@ -99,6 +99,8 @@ import org.jetbrains.kotlin.utils.PathUtil
 import java.io.File
 import java.lang.IllegalStateException
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
 
 class KotlinCoreEnvironment private constructor(
         parentDisposable: Disposable,
@@ -267,6 +269,9 @@ class KotlinCoreEnvironment private constructor(
             report(WARNING, "Classpath entry points to a file that is not a JAR archive: $path")
             return null
         }
+        if (applicationEnvironment === ourApplicationEnvironment) {
+            openedJarStamps.putIfAbsent(path.absolutePath, JarStamp(path))
+        }
         return jarFile
     }
 
@@ -334,6 +339,10 @@ class KotlinCoreEnvironment private constructor(
         // used in the daemon for jar cache cleanup
         val applicationEnvironment: JavaCoreApplicationEnvironment? get() = ourApplicationEnvironment
 
+        // jars opened in the shared application environment, with their state at the moment of opening;
+        // used in the daemon to keep the jar cache between compilations while the jars are not changed
+        val openedJarStamps: ConcurrentMap<String, JarStamp> = ConcurrentHashMap()
+
         private fun getOrCreateApplicationEnvironmentForProduction(configuration: CompilerConfiguration, configFilePaths: List<String>): JavaCoreApplicationEnvironment {
             synchronized (APPLICATION_LOCK) {
                 if (ourApplicationEnvironment != null)
@@ -357,6 +366,7 @@ class KotlinCoreEnvironment private constructor(
                 ourApplicationEnvironment = null
                 Disposer.dispose(environment.parentDisposable)
                 ZipHandler.clearFileAccessorCache()
+                openedJarStamps.clear()
             }
         }
 
@@ -462,3 +472,7 @@ class KotlinCoreEnvironment private constructor(
         }
     }
 }
+
+data class JarStamp(val lastModified: Long, val length: Long) {
+    constructor(file: File) : this(file.lastModified(), file.length())
+}
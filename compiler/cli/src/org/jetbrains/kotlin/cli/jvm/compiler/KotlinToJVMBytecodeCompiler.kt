@@ -33,6 +33,7 @@ import org.jetbrains.kotlin.backend.common.output.SimpleOutputFileCollection
 import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys
 import org.jetbrains.kotlin.cli.common.ExitCode
 import org.jetbrains.kotlin.cli.common.messages.*
+import org.jetbrains.kotlin.cli.common.output.outputUtils.reportAll
 import org.jetbrains.kotlin.cli.common.output.outputUtils.writeAll
 import org.jetbrains.kotlin.cli.common.tryConstructScriptClass
 import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler
@@ -41,6 +42,7 @@ import org.jetbrains.kotlin.codegen.ClassBuilderFactories
 import org.jetbrains.kotlin.codegen.CompilationErrorHandler
 import org.jetbrains.kotlin.codegen.GeneratedClassLoader
 import org.jetbrains.kotlin.codegen.KotlinCodegenFacade
+import org.jetbrains.kotlin.codegen.optimization.NullCheckStatistics
 import org.jetbrains.kotlin.codegen.state.GenerationState
 import org.jetbrains.kotlin.codegen.state.GenerationStateEventCallback
 import org.jetbrains.kotlin.config.CompilerConfiguration
@@ -56,6 +58,7 @@ import org.jetbrains.kotlin.name.Name
 import org.jetbrains.kotlin.name.isSubpackageOf
 import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus
 import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.resolve.BindingContext
 import org.jetbrains.kotlin.resolve.jvm.TopDownAnalyzerFacadeForJVM
 import org.jetbrains.kotlin.util.PerformanceCounter
 import org.jetbrains.kotlin.utils.KotlinPaths
@@ -85,10 +88,21 @@ object KotlinToJVMBytecodeCompiler {
             outputFiles: OutputFileCollection,
             mainClass: FqName?
     ) {
+        if (isOutputStreamed(configuration)) {
+            // The files have already been written by StreamingOutputWriter, but the build tools still need to know about them
+            if (configuration.get(JVMConfigurationKeys.OUTPUT_JAR) == null) {
+                val outputDir = configuration.get(JVMConfigurationKeys.OUTPUT_DIRECTORY) ?: File(".")
+                val messageCollector = configuration.get(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, MessageCollector.NONE)
+                outputFiles.reportAll(outputDir, messageCollector)
+            }
+            return
+        }
+
         val jarPath = configuration.get(JVMConfigurationKeys.OUTPUT_JAR)
         if (jarPath != null) {
             val includeRuntime = configuration.get(JVMConfigurationKeys.INCLUDE_RUNTIME, false)
-            CompileEnvironmentUtil.writeToJar(jarPath, includeRuntime, mainClass, outputFiles)
+            val storeOnly = configuration.getBoolean(JVMConfigurationKeys.INTERMEDIATE_JAR)
+            CompileEnvironmentUtil.writeToJar(jarPath, includeRuntime, storeOnly, mainClass, outputFiles)
             return
         }
 
@@ -97,6 +111,12 @@ object KotlinToJVMBytecodeCompiler {
         outputFiles.writeAll(outputDir, messageCollector)
     }
 
+    private fun isOutputStreamed(configuration: CompilerConfiguration): Boolean =
+            configuration.getBoolean(JVMConfigurationKeys.STREAM_OUTPUT) &&
+            !configuration.getBoolean(JVMConfigurationKeys.RETAIN_OUTPUT_IN_MEMORY) &&
+            // trivial methods are inlined into all classes of the module at once, after all of them are generated
+            !configuration.getBoolean(JVMConfigurationKeys.INLINE_TRIVIAL_METHODS)
+
     private fun createOutputFilesFlushingCallbackIfPossible(configuration: CompilerConfiguration): GenerationStateEventCallback {
         if (configuration.get(JVMConfigurationKeys.OUTPUT_DIRECTORY) == null) {
             return GenerationStateEventCallback.DO_NOTHING
@@ -156,6 +176,7 @@ object KotlinToJVMBytecodeCompiler {
                 ProgressIndicatorAndCompilationCanceledStatus.checkCanceled()
                 writeOutput(state.configuration, state.factory, null)
             }
+            NullCheckStatistics.dump(outputs.values.mapNotNull { it.nullCheckStatistics })
             return true
         }
         finally {
@@ -183,8 +204,8 @@ object KotlinToJVMBytecodeCompiler {
         configuration.addAll(JVMConfigurationKeys.MODULES, chunk)
     }
 
-    private fun findMainClass(generationState: GenerationState, files: List<KtFile>): FqName? {
-        val mainFunctionDetector = MainFunctionDetector(generationState.bindingContext)
+    private fun findMainClass(bindingContext: BindingContext, files: List<KtFile>): FqName? {
+        val mainFunctionDetector = MainFunctionDetector(bindingContext)
         return files.asSequence()
                 .map { file ->
                     if (mainFunctionDetector.hasMain(file.declarations))
@@ -207,10 +228,11 @@ object KotlinToJVMBytecodeCompiler {
 
         val generationState = analyzeAndGenerate(environment) ?: return false
 
-        val mainClass = findMainClass(generationState, environment.getSourceFiles())
+        val mainClass = findMainClass(generationState.bindingContext, environment.getSourceFiles())
 
         try {
             writeOutput(environment.configuration, generationState.factory, mainClass)
+            NullCheckStatistics.dump(listOfNotNull(generationState.nullCheckStatistics))
             return true
         }
         finally {
@@ -347,7 +369,9 @@ object KotlinToJVMBytecodeCompiler {
                 return TopDownAnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
                         project,
                         environment.getSourceFiles(),
-                        CliLightClassGenerationSupport.NoScopeRecordCliBindingTrace(),
+                        CliLightClassGenerationSupport.NoScopeRecordCliBindingTrace(
+                                allowConcurrentAccess = environment.configuration.get(JVMConfigurationKeys.ANALYSIS_THREADS, 1) > 1
+                        ),
                         environment.configuration,
                         { scope -> JvmPackagePartProvider(environment, scope) },
                         sourceModuleSearchScope = scope
@@ -397,6 +421,10 @@ object KotlinToJVMBytecodeCompiler {
             module: Module?
     ): GenerationState {
         val isKapt2Enabled = environment.project.getUserData(IS_KAPT2_ENABLED_KEY) ?: false
+        val outputWriter =
+                if (isOutputStreamed(configuration))
+                    StreamingOutputWriter.create(configuration, if (module == null) findMainClass(result.bindingContext, sourceFiles) else null)
+                else null
         val generationState = GenerationState(
                 environment.project,
                 ClassBuilderFactories.binaries(isKapt2Enabled),
@@ -408,13 +436,19 @@ object KotlinToJVMBytecodeCompiler {
                 module?.let(::TargetId),
                 module?.let(Module::getModuleName),
                 module?.let { File(it.getOutputDirectory()) },
-                createOutputFilesFlushingCallbackIfPossible(configuration)
+                if (outputWriter != null) GenerationStateEventCallback.DO_NOTHING else createOutputFilesFlushingCallbackIfPossible(configuration),
+                classFileSink = outputWriter
         )
         ProgressIndicatorAndCompilationCanceledStatus.checkCanceled()
 
         val generationStart = PerformanceCounter.currentTime()
 
-        KotlinCodegenFacade.compileCorrectFiles(generationState, CompilationErrorHandler.THROW_EXCEPTION)
+        try {
+            KotlinCodegenFacade.compileCorrectFiles(generationState, CompilationErrorHandler.THROW_EXCEPTION)
+        }
+        finally {
+            outputWriter?.close()
+        }
 
         val generationNanos = PerformanceCounter.currentTime() - generationStart
         val desc = if (module != null) "target " + module.getModuleName() + "-" + module.getModuleType() + " " else ""
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.cli.jvm.compiler
+
+import java.io.*
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.jar.JarFile
+import java.util.jar.Manifest
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipException
+
+/**
+ * Writes a jar file, compressing its entries in parallel on all available cores. Entries are written to the archive, and listed
+ * in its central directory, in the order they're added; the manifest always comes first, as [java.util.jar.JarInputStream]
+ * expects it.
+ *
+ * In the [storeOnly] mode, entries are not compressed and all of them have the same fixed time stamp, so the same classes always
+ * produce the same jar. This is meant for intermediate jars which are only read by the next step of the build.
+ *
+ * ZIP64 is not supported, which limits the archive to 65535 entries and 4 GB.
+ */
+class ParallelJarWriter(output: OutputStream, manifest: Manifest, private val storeOnly: Boolean) : Closeable {
+    private class Entry(val name: ByteArray, val method: Int, val crc: Long, val size: Int, val data: ByteArray)
+
+    // Everything about a written entry except its content, which is not kept in memory
+    private class EntryHeader(val name: ByteArray, val method: Int, val crc: Long, val compressedSize: Long, val size: Long)
+
+    private class CentralDirectoryRecord(val header: EntryHeader, val offset: Long)
+
+    private class CountingOutputStream(output: OutputStream) : FilterOutputStream(output) {
+        var written: Long = 0
+            private set
+
+        override fun write(b: Int) {
+            out.write(b)
+            written++
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            out.write(b, off, len)
+            written += len
+        }
+    }
+
+    private val out = CountingOutputStream(BufferedOutputStream(output))
+    private val executor: ExecutorService? = if (storeOnly) null else Executors.newFixedThreadPool(THREADS) { task ->
+        Thread(task, "Kotlin jar compression").apply { isDaemon = true }
+    }
+    private val pending = ArrayDeque<Future<Entry>>()
+    private val names = HashSet<String>()
+    private val centralDirectory = ArrayList<CentralDirectoryRecord>()
+    private val dosTime = if (storeOnly) DOS_EPOCH else toDosTime(System.currentTimeMillis())
+
+    init {
+        val manifestBytes = ByteArrayOutputStream()
+        manifest.write(manifestBytes)
+        add(JarFile.MANIFEST_NAME, manifestBytes.toByteArray())
+    }
+
+    @Throws(IOException::class)
+    fun add(name: String, content: ByteArray) {
+        if (!names.add(name)) throw ZipException("duplicate entry: $name")
+
+        if (executor == null) {
+            writeEntry(createEntry(name, content, compress = false))
+            return
+        }
+
+        pending.add(executor.submit(Callable<Entry> { createEntry(name, content, compress = true) }))
+
+        // Entries are written in order as soon as they're compressed, but not too many of them are kept in memory at once
+        while (pending.size > MAX_PENDING_ENTRIES || (pending.isNotEmpty() && pending.peek().isDone)) {
+            writeEntry(getCompressed(pending.poll()))
+        }
+    }
+
+    @Throws(IOException::class)
+    override fun close() {
+        try {
+            while (pending.isNotEmpty()) {
+                writeEntry(getCompressed(pending.poll()))
+            }
+            writeCentralDirectory()
+            out.flush()
+        }
+        finally {
+            executor?.shutdownNow()
+            out.close()
+        }
+    }
+
+    private fun getCompressed(future: Future<Entry>): Entry {
+        try {
+            return future.get()
+        }
+        catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+    }
+
+    private fun createEntry(name: String, content: ByteArray, compress: Boolean): Entry {
+        val crc = CRC32()
+        crc.update(content)
+        val nameBytes = name.toByteArray(Charsets.UTF_8)
+        if (compress) {
+            val deflated = deflate(content)
+            if (deflated.size < content.size) {
+                return Entry(nameBytes, ZipEntry.DEFLATED, crc.value, content.size, deflated)
+            }
+        }
+        return Entry(nameBytes, ZipEntry.STORED, crc.value, content.size, content)
+    }
+
+    private fun deflate(content: ByteArray): ByteArray {
+        val deflater = Deflater(Deflater.DEFAULT_COMPRESSION, /* nowrap = */ true)
+        try {
+            deflater.setInput(content)
+            deflater.finish()
+            val result = ByteArrayOutputStream(content.size / 2 + 64)
+            val buffer = ByteArray(8192)
+            while (!deflater.finished()) {
+                result.write(buffer, 0, deflater.deflate(buffer))
+            }
+            return result.toByteArray()
+        }
+        finally {
+            deflater.end()
+        }
+    }
+
+    private fun writeEntry(entry: Entry) {
+        val offset = out.written
+        if (offset > MAX_UINT32) throw ZipException("Jar file is too large, ZIP64 is not supported")
+
+        val header = EntryHeader(entry.name, entry.method, entry.crc, entry.data.size.toLong(), entry.size.toLong())
+        writeInt(LOCAL_HEADER_SIGNATURE)
+        writeEntryHeader(header)
+        writeShort(0) // extra field length
+        out.write(entry.name)
+        out.write(entry.data)
+
+        centralDirectory.add(CentralDirectoryRecord(header, offset))
+    }
+
+    private fun writeCentralDirectory() {
+        if (centralDirectory.size > MAX_UINT16) throw ZipException("Too many entries in the jar file, ZIP64 is not supported")
+
+        val start = out.written
+        for (record in centralDirectory) {
+            writeInt(CENTRAL_HEADER_SIGNATURE)
+            writeShort(VERSION_DEFLATED) // version made by
+            writeEntryHeader(record.header)
+            writeShort(0) // extra field length
+            writeShort(0) // comment length
+            writeShort(0) // disk number
+            writeShort(0) // internal attributes
+            writeInt(0) // external attributes
+            writeInt(record.offset)
+            out.write(record.header.name)
+        }
+        val size = out.written - start
+        if (out.written > MAX_UINT32) throw ZipException("Jar file is too large, ZIP64 is not supported")
+
+        writeInt(END_SIGNATURE)
+        writeShort(0) // this disk number
+        writeShort(0) // disk with the central directory
+        writeShort(centralDirectory.size)
+        writeShort(centralDirectory.size)
+        writeInt(size)
+        writeInt(start)
+        writeShort(0) // comment length
+    }
+
+    // Fields from "version needed to extract" to "file name length", which are the same in local and central headers
+    private fun writeEntryHeader(header: EntryHeader) {
+        writeShort(if (header.method == ZipEntry.DEFLATED) VERSION_DEFLATED else VERSION_STORED)
+        writeShort(UTF8_FLAG)
+        writeShort(header.method)
+        writeInt(dosTime)
+        writeInt(header.crc)
+        writeInt(header.compressedSize)
+        writeInt(header.size)
+        writeShort(header.name.size)
+    }
+
+    private fun writeShort(value: Int) {
+        out.write(value and 0xFF)
+        out.write((value ushr 8) and 0xFF)
+    }
+
+    private fun writeInt(value: Long) {
+        writeShort((value and 0xFFFF).toInt())
+        writeShort(((value ushr 16) and 0xFFFF).toInt())
+    }
+
+    companion object {
+        private val THREADS = Runtime.getRuntime().availableProcessors()
+        private val MAX_PENDING_ENTRIES = THREADS * 16
+
+        private val LOCAL_HEADER_SIGNATURE = 0x04034b50L
+        private val CENTRAL_HEADER_SIGNATURE = 0x02014b50L
+        private val END_SIGNATURE = 0x06054b50L
+
+        private val VERSION_STORED = 10
+        private val VERSION_DEFLATED = 20
+        private val UTF8_FLAG = 0x800
+
+        private val MAX_UINT16 = 0xFFFF
+        private val MAX_UINT32 = 0xFFFFFFFFL
+
+        // 1980-01-01 00:00:00, the earliest time representable in a ZIP file
+        private val DOS_EPOCH = ((1L shl 5) or 1L) shl 16
+
+        private fun toDosTime(millis: Long): Long {
+            val calendar = Calendar.getInstance()
+            calendar.timeInMillis = millis
+            val year = calendar.get(Calendar.YEAR)
+            if (year < 1980) return DOS_EPOCH
+
+            val date = ((year - 1980) shl 9) or ((calendar.get(Calendar.MONTH) + 1) shl 5) or calendar.get(Calendar.DAY_OF_MONTH)
+            val time = (calendar.get(Calendar.HOUR_OF_DAY) shl 11) or (calendar.get(Calendar.MINUTE) shl 5) or
+                       (calendar.get(Calendar.SECOND) shr 1)
+            return (date.toLong() shl 16) or time.toLong()
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.cli.jvm.compiler
+
+import com.intellij.openapi.util.io.FileUtil
+import org.jetbrains.kotlin.backend.common.output.OutputFile
+import org.jetbrains.kotlin.codegen.ClassFileSink
+import org.jetbrains.kotlin.config.CompilerConfiguration
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.name.FqName
+import java.io.File
+import java.io.FileNotFoundException
+import java.io.FileOutputStream
+import java.util.concurrent.ArrayBlockingQueue
+import kotlin.concurrent.thread
+
+/**
+ * Writes class files to the output directory or jar on a background thread as soon as they're generated.
+ *
+ * At most [MAX_PENDING_FILES] files wait to be written at any time: if the disk can't keep up with the bytecode generation,
+ * the generation is suspended rather than keeping the generated files in memory.
+ */
+class StreamingOutputWriter private constructor(private val target: Target) : ClassFileSink {
+    private interface Target {
+        fun write(relativePath: String, bytes: ByteArray)
+        fun close()
+    }
+
+    private class DirectoryTarget(private val outputDir: File) : Target {
+        override fun write(relativePath: String, bytes: ByteArray) {
+            FileUtil.writeToFile(File(outputDir, relativePath), bytes)
+        }
+
+        override fun close() {
+        }
+    }
+
+    private class JarTarget(jarPath: File, mainClass: FqName?, private val includeRuntime: Boolean, storeOnly: Boolean) : Target {
+        private val writer = try {
+            ParallelJarWriter(FileOutputStream(jarPath), CompileEnvironmentUtil.createManifest(mainClass), storeOnly)
+        }
+        catch (e: FileNotFoundException) {
+            throw CompileEnvironmentException("Invalid jar path " + jarPath, e)
+        }
+
+        override fun write(relativePath: String, bytes: ByteArray) {
+            writer.add(relativePath, bytes)
+        }
+
+        override fun close() {
+            writer.use {
+                if (includeRuntime) {
+                    CompileEnvironmentUtil.writeRuntimeToJar(writer)
+                }
+            }
+        }
+    }
+
+    private class Entry(val relativePath: String, val bytes: ByteArray)
+
+    private val queue = ArrayBlockingQueue<Entry>(MAX_PENDING_FILES)
+
+    @Volatile
+    private var error: Throwable? = null
+
+    private val writerThread = thread(name = "Kotlin class file writer", isDaemon = true) {
+        while (true) {
+            val entry = queue.take()
+            if (entry === END) break
+
+            // after a failure, the queue is still drained so that the bytecode generation is not blocked forever
+            if (error == null) {
+                try {
+                    target.write(entry.relativePath, entry.bytes)
+                }
+                catch (e: Throwable) {
+                    error = e
+                }
+            }
+        }
+    }
+
+    override fun write(file: OutputFile) {
+        checkNoError()
+        queue.put(Entry(file.relativePath, file.asByteArray()))
+    }
+
+    /**
+     * Waits until all files passed to [write] are written and closes the output.
+     */
+    fun close() {
+        try {
+            queue.put(END)
+            writerThread.join()
+        }
+        finally {
+            target.close()
+        }
+        checkNoError()
+    }
+
+    private fun checkNoError() {
+        val e = error ?: return
+        throw CompileEnvironmentException("Failed to write the output: " + e.message, e)
+    }
+
+    companion object {
+        private val MAX_PENDING_FILES = 256
+
+        private val END = Entry("", ByteArray(0))
+
+        fun create(configuration: CompilerConfiguration, mainClass: FqName?): StreamingOutputWriter {
+            val jarPath = configuration.get(JVMConfigurationKeys.OUTPUT_JAR)
+            val target =
+                    if (jarPath != null)
+                        JarTarget(jarPath, mainClass, configuration.get(JVMConfigurationKeys.INCLUDE_RUNTIME, false),
+                                  configuration.getBoolean(JVMConfigurationKeys.INTERMEDIATE_JAR))
+                    else
+                        DirectoryTarget(configuration.get(JVMConfigurationKeys.OUTPUT_DIRECTORY) ?: File("."))
+            return StreamingOutputWriter(target)
+        }
+    }
+}
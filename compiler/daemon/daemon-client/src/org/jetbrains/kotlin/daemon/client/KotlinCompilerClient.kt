@@ -112,8 +112,13 @@ object KotlinCompilerClient {
                 port: Int = SOCKET_ANY_FREE_PORT,
                 operationsTracer: RemoteOperationsTracer? = null
     ): Int {
-        val outStrm = RemoteOutputStreamServer(out, port = port)
-        return compilerService.remoteCompile(sessionId, targetPlatform, args, CompilerCallbackServicesFacadeServer(port = port), outStrm, CompileService.OutputFormat.PLAIN, outStrm, operationsTracer).get()
+        val outStrm = RemoteOutputStreamServer(out, port = port, enableStreaming = isSocketStreamingEnabled)
+        try {
+            return compilerService.remoteCompile(sessionId, targetPlatform, args, CompilerCallbackServicesFacadeServer(port = port), outStrm, CompileService.OutputFormat.PLAIN, outStrm, operationsTracer).get()
+        }
+        finally {
+            outStrm.disconnect()
+        }
     }
 
 
@@ -128,6 +133,9 @@ object KotlinCompilerClient {
                            profiler: Profiler = DummyProfiler(),
                            operationsTracer: RemoteOperationsTracer? = null
     ): Int = profiler.withMeasure(this) {
+        val compilerOutStrm = RemoteOutputStreamServer(compilerOut, port, enableStreaming = isSocketStreamingEnabled)
+        val daemonOutStrm = RemoteOutputStreamServer(daemonOut, port, enableStreaming = isSocketStreamingEnabled)
+        try {
             compileService.remoteIncrementalCompile(
                     sessionId,
                     targetPlatform,
@@ -135,12 +143,20 @@ object KotlinCompilerClient {
                     CompilerCallbackServicesFacadeServer(incrementalCompilationComponents = callbackServices.incrementalCompilationComponents,
                                                          compilationCanceledStatus = callbackServices.compilationCanceledStatus,
                                                          port = port),
-                    RemoteOutputStreamServer(compilerOut, port),
+                    compilerOutStrm,
                     CompileService.OutputFormat.XML,
-                    RemoteOutputStreamServer(daemonOut, port),
+                    daemonOutStrm,
                     operationsTracer).get()
+        }
+        finally {
+            compilerOutStrm.disconnect()
+            daemonOutStrm.disconnect()
+        }
     }
 
+    private val isSocketStreamingEnabled: Boolean
+        get() = System.getProperty(COMPILE_DAEMON_SOCKET_STREAMING_PROPERTY) != "false"
+
     val COMPILE_DAEMON_CLIENT_OPTIONS_PROPERTY: String = "kotlin.daemon.client.options"
     data class ClientOptions(
             var stop: Boolean = false
@@ -16,27 +16,149 @@
 
 package org.jetbrains.kotlin.daemon.client
 
-import org.jetbrains.kotlin.daemon.common.LoopbackNetworkInterface
-import org.jetbrains.kotlin.daemon.common.SOCKET_ANY_FREE_PORT
-import org.jetbrains.kotlin.daemon.common.RemoteOutputStream
-import org.jetbrains.kotlin.daemon.common.SOCKET_ANY_FREE_PORT
-import java.io.OutputStream
+import org.jetbrains.kotlin.daemon.common.*
+import java.io.*
+import java.net.ServerSocket
+import java.net.Socket
+import java.net.SocketException
 import java.rmi.server.UnicastRemoteObject
+import java.security.SecureRandom
+import java.util.*
+import kotlin.concurrent.thread
 
 
-class RemoteOutputStreamServer(val out: OutputStream, port: Int = SOCKET_ANY_FREE_PORT)
+/**
+ * @param enableStreaming allows the daemon to send the data through a loopback socket instead of RMI calls, see [StreamingEndpoint];
+ * in this case [disconnect] should be called after the remote call which uses the stream is finished
+ */
+class RemoteOutputStreamServer(val out: OutputStream, port: Int = SOCKET_ANY_FREE_PORT, enableStreaming: Boolean = false)
 : RemoteOutputStream,
   UnicastRemoteObject(port, LoopbackNetworkInterface.clientLoopbackSocketFactory, LoopbackNetworkInterface.serverLoopbackSocketFactory)
 {
+    private val streamingServer = if (enableStreaming) StreamingServer.tryCreate(out) else null
+
     override fun close() {
         out.close()
     }
 
     override fun write(data: ByteArray, offset: Int, length: Int) {
-        out.write(data, offset, length)
+        synchronized(out) {
+            out.write(data, offset, length)
+        }
     }
 
     override fun write(dataByte: Int) {
-        out.write(dataByte)
+        synchronized(out) {
+            out.write(dataByte)
+        }
+    }
+
+    override fun streamingEndpoint(): StreamingEndpoint? = streamingServer?.endpoint
+
+    /**
+     * Waits until all data sent through the streaming connections is written to [out], and stops accepting new connections
+     */
+    fun disconnect() {
+        streamingServer?.stop()
+    }
+}
+
+private class StreamingServer private constructor(private val serverSocket: ServerSocket, private val out: OutputStream) {
+    val endpoint = StreamingEndpoint(serverSocket.localPort, random.nextLong())
+
+    private val readers = ArrayList<Thread>()
+    private val connections = ArrayList<Socket>()
+
+    private val acceptor = thread(isDaemon = true, name = "RemoteOutputStreamServer acceptor") {
+        try {
+            while (true) {
+                accept(serverSocket.accept())
+            }
+        }
+        catch (e: SocketException) {
+            // the server socket is closed
+        }
+    }
+
+    private fun accept(socket: Socket) {
+        try {
+            val input = DataInputStream(BufferedInputStream(socket.inputStream))
+            if (input.readLong() != endpoint.token) {
+                socket.close()
+                return
+            }
+            // the reader is registered before the acknowledgement, so the daemon cannot finish the remote call before that
+            synchronized(readers) {
+                connections.add(socket)
+                readers.add(thread(isDaemon = true, name = "RemoteOutputStreamServer reader") { read(socket, input) })
+            }
+            socket.outputStream.write(STREAMING_ACK)
+            socket.outputStream.flush()
+        }
+        catch (e: IOException) {
+            // the daemon falls back to RMI calls if the connection is not acknowledged
+            socket.close()
+        }
+    }
+
+    private fun read(socket: Socket, input: DataInputStream) {
+        try {
+            var buffer = ByteArray(REMOTE_STREAM_FRAME_SIZE)
+            while (true) {
+                val length = input.readInt()
+                if (length == STREAMING_END_OF_STREAM) break
+
+                if (length > buffer.size) {
+                    buffer = ByteArray(length)
+                }
+                input.readFully(buffer, 0, length)
+                synchronized(out) {
+                    out.write(buffer, 0, length)
+                }
+            }
+        }
+        catch (e: IOException) {
+            // the connection is broken, e.g. the daemon is killed
+        }
+        finally {
+            socket.close()
+        }
+    }
+
+    /**
+     * Waits for the end of stream on all connections, but no longer than [STOP_TIMEOUT_MS] in total,
+     * e.g. if the daemon hangs; the connections which are still open after that are closed
+     */
+    fun stop() {
+        val deadline = System.currentTimeMillis() + STOP_TIMEOUT_MS
+        serverSocket.close()
+        acceptor.joinUntil(deadline)
+        for (reader in synchronized(readers) { readers.toList() }) {
+            reader.joinUntil(deadline)
+        }
+        for (socket in synchronized(readers) { connections.toList() }) {
+            socket.close()
+        }
+    }
+
+    private fun Thread.joinUntil(deadline: Long) {
+        val timeout = deadline - System.currentTimeMillis()
+        if (timeout > 0) {
+            join(timeout)
+        }
+    }
+
+    companion object {
+        private val random = SecureRandom()
+        private val REMOTE_STREAM_FRAME_SIZE = 4096
+        private val STOP_TIMEOUT_MS = 10000L
+
+        fun tryCreate(out: OutputStream): StreamingServer? =
+                try {
+                    StreamingServer(LoopbackNetworkInterface.serverLoopbackSocketFactory.createServerSocket(SOCKET_ANY_FREE_PORT), out)
+                }
+                catch (e: IOException) {
+                    null
+                }
     }
 }
@@ -37,6 +37,7 @@ val COMPILE_DAEMON_OPTIONS_PROPERTY: String = "kotlin.daemon.options"
 val COMPILE_DAEMON_CLIENT_ALIVE_PATH_PROPERTY: String = "kotlin.daemon.client.alive.path"
 val COMPILE_DAEMON_LOG_PATH_PROPERTY: String = "kotlin.daemon.log.path"
 val COMPILE_DAEMON_REPORT_PERF_PROPERTY: String = "kotlin.daemon.perf"
+val COMPILE_DAEMON_SOCKET_STREAMING_PROPERTY: String = "kotlin.daemon.socket.streaming"
 val COMPILE_DAEMON_VERBOSE_REPORT_PROPERTY: String = "kotlin.daemon.verbose"
 val COMPILE_DAEMON_CMDLINE_OPTIONS_PREFIX: String = "--daemon-"
 val COMPILE_DAEMON_STARTUP_TIMEOUT_PROPERTY: String = "kotlin.daemon.startup.timeout"
@@ -48,6 +49,8 @@ val COMPILE_DAEMON_DEFAULT_SHUTDOWN_DELAY_MS: Long = 1000L // 1 sec
 val COMPILE_DAEMON_MEMORY_THRESHOLD_INFINITE: Long = 0L
 val COMPILE_DAEMON_FORCE_SHUTDOWN_DEFAULT_TIMEOUT_MS: Long = 10000L // 10 secs
 val COMPILE_DAEMON_TIMEOUT_INFINITE_MS: Long = 0L
+val COMPILE_DAEMON_DEFAULT_JAR_CACHE_MAX_ROOTS: Int = 1000
+val COMPILE_DAEMON_PARALLEL_COMPILATIONS_BY_CPU_COUNT: Int = 0
 
 val COMPILE_DAEMON_DEFAULT_RUN_DIR_PATH: String get() =
     FileSystem.getRuntimeStateFilesPath("kotlin", "daemon")
@@ -207,7 +210,10 @@ data class DaemonOptions(
         var shutdownDelayMilliseconds: Long = COMPILE_DAEMON_DEFAULT_SHUTDOWN_DELAY_MS,
         var forceShutdownTimeoutMilliseconds: Long = COMPILE_DAEMON_FORCE_SHUTDOWN_DEFAULT_TIMEOUT_MS,
         var verbose: Boolean = false,
-        var reportPerf: Boolean = false
+        var reportPerf: Boolean = false,
+        // 0 means that jar caches are cleared after every session
+        var jarCacheMaxRoots: Int = COMPILE_DAEMON_DEFAULT_JAR_CACHE_MAX_ROOTS,
+        var maxParallelCompilations: Int = COMPILE_DAEMON_PARALLEL_COMPILATIONS_BY_CPU_COUNT
 ) : OptionsGroup {
 
     override val mappers: List<PropMapper<*, *, *>>
@@ -219,7 +225,9 @@ data class DaemonOptions(
                        PropMapper(this, DaemonOptions::shutdownDelayMilliseconds, fromString = { it.toLong() }, skipIf = { it == COMPILE_DAEMON_DEFAULT_SHUTDOWN_DELAY_MS }, mergeDelimiter = "="),
                        PropMapper(this, DaemonOptions::forceShutdownTimeoutMilliseconds, fromString = { it.toLong() }, skipIf = { it == COMPILE_DAEMON_FORCE_SHUTDOWN_DEFAULT_TIMEOUT_MS }, mergeDelimiter = "="),
                        BoolPropMapper(this, DaemonOptions::verbose),
-                       BoolPropMapper(this, DaemonOptions::reportPerf))
+                       BoolPropMapper(this, DaemonOptions::reportPerf),
+                       PropMapper(this, DaemonOptions::jarCacheMaxRoots, fromString = { it.toInt() }, skipIf = { it == COMPILE_DAEMON_DEFAULT_JAR_CACHE_MAX_ROOTS }, mergeDelimiter = "="),
+                       PropMapper(this, DaemonOptions::maxParallelCompilations, fromString = { it.toInt() }, skipIf = { it == COMPILE_DAEMON_PARALLEL_COMPILATIONS_BY_CPU_COUNT }, mergeDelimiter = "="))
 }
 
 // TODO: consider implementing generic approach to it or may be replace getters with ones returning default if necessary
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.daemon.common
+
+import java.io.Serializable
+
+/**
+ * Loopback socket through which the data of a [RemoteOutputStream] may be sent instead of making an RMI call for every write.
+ *
+ * Protocol: the connecting side sends the [token] (long) and waits for [STREAMING_ACK] from the accepting side,
+ * then it sends frames, each of them is the data length (int) followed by the data, and [STREAMING_END_OF_STREAM] instead
+ * of the length after the last frame.
+ */
+data class StreamingEndpoint(val port: Int, val token: Long) : Serializable {
+    companion object {
+        private val serialVersionUID: Long = 1L
+    }
+}
+
+val STREAMING_ACK: Int = 1
+val STREAMING_END_OF_STREAM: Int = -1
@@ -75,6 +75,12 @@ inline fun ThreadMXBean.threadCpuTime() = if (isCurrentThreadCpuTimeSupported) c
 @Suppress("NOTHING_TO_INLINE")
 inline fun ThreadMXBean.threadUserTime() = if (isCurrentThreadCpuTimeSupported) currentThreadUserTime else 0L
 
+// allocations are only counted on HotSpot-based VMs
+fun ThreadMXBean.threadAllocatedBytes(): Long =
+        if (this is com.sun.management.ThreadMXBean && isThreadAllocatedMemorySupported && isThreadAllocatedMemoryEnabled)
+            getThreadAllocatedBytes(Thread.currentThread().id)
+        else 0L
+
 @Suppress("NOTHING_TO_INLINE")
 inline fun usedMemory(withGC: Boolean): Long {
     if (withGC) {
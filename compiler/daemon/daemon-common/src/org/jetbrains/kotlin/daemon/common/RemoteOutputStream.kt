@@ -29,4 +29,10 @@ interface RemoteOutputStream : Remote {
 
     @Throws(RemoteException::class)
     fun write(dataByte: Int)
+
+    /**
+     * @return endpoint for sending the data without RMI, or null if only RMI calls are supported by this stream
+     */
+    @Throws(RemoteException::class)
+    fun streamingEndpoint(): StreamingEndpoint?
 }
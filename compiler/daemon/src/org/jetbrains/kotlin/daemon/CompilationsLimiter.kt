@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.daemon
+
+import org.jetbrains.kotlin.daemon.common.usedMemory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import java.util.logging.Logger
+import kotlin.concurrent.withLock
+
+private val MAX_USED_MEMORY_RATIO = 0.8
+private val MEMORY_RECHECK_INTERVAL_MS = 100L
+
+internal fun isHeapAlmostFull(): Boolean = usedMemory(withGC = false) > Runtime.getRuntime().maxMemory() * MAX_USED_MEMORY_RATIO
+
+/**
+ * Limits the number of compilations running in the daemon at the same time.
+ *
+ * Every compilation works in its own project environment, only the application environment is shared, so compilations
+ * of different sessions may run in parallel. A new compilation also waits while the heap is almost full and
+ * other compilations are running: they free their memory on completion, and running one more would likely end up in OOM.
+ */
+internal class CompilationsLimiter(maxParallelCompilations: Int, private val log: Logger) {
+    private val limit = if (maxParallelCompilations > 0) maxParallelCompilations else Runtime.getRuntime().availableProcessors()
+    private val lock = ReentrantLock()
+    private val finished = lock.newCondition()
+    private var running = 0
+
+    fun <R> withPermit(body: () -> R): R {
+        acquire()
+        try {
+            return body()
+        }
+        finally {
+            release()
+        }
+    }
+
+    private fun acquire() {
+        lock.withLock {
+            var logged = false
+            while (running >= limit || (running > 0 && isHeapAlmostFull())) {
+                if (!logged) {
+                    log.info("waiting for one of $running running compilations to finish" + if (running < limit) " (the heap is almost full)" else "")
+                    logged = true
+                }
+                // the memory is rechecked periodically, because it may be freed by GC without any compilation finished
+                finished.await(MEMORY_RECHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)
+            }
+            running++
+            log.info("compilation permit acquired, $running of $limit compilations running")
+        }
+    }
+
+    private fun release() {
+        lock.withLock {
+            running--
+            finished.signalAll()
+        }
+    }
+}
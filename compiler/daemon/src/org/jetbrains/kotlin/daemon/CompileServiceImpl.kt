@@ -18,8 +18,6 @@ package org.jetbrains.kotlin.daemon
 
 import com.intellij.openapi.Disposable
 import com.intellij.openapi.util.Disposer
-import com.intellij.openapi.vfs.impl.ZipHandler
-import com.intellij.openapi.vfs.impl.jar.CoreJarFileSystem
 import org.jetbrains.kotlin.cli.common.CLICompiler
 import org.jetbrains.kotlin.cli.common.ExitCode
 import org.jetbrains.kotlin.cli.common.KOTLIN_COMPILER_ENVIRONMENT_KEEPALIVE_PROPERTY
@@ -27,7 +25,6 @@ import org.jetbrains.kotlin.cli.common.repl.ReplCheckResult
 import org.jetbrains.kotlin.cli.common.repl.ReplCodeLine
 import org.jetbrains.kotlin.cli.common.repl.ReplCompileResult
 import org.jetbrains.kotlin.cli.common.repl.ReplEvalResult
-import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
 import org.jetbrains.kotlin.config.Services
 import org.jetbrains.kotlin.daemon.common.*
 import org.jetbrains.kotlin.load.kotlin.incremental.components.IncrementalCompilationComponents
@@ -36,6 +33,7 @@ import org.jetbrains.kotlin.utils.addToStdlib.check
 import java.io.BufferedOutputStream
 import java.io.File
 import java.io.PrintStream
+import java.lang.management.ManagementFactory
 import java.rmi.NoSuchObjectException
 import java.rmi.registry.Registry
 import java.rmi.server.UnicastRemoteObject
@@ -43,6 +41,7 @@ import java.util.*
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 import java.util.concurrent.locks.ReentrantReadWriteLock
 import java.util.logging.Level
 import java.util.logging.Logger
@@ -95,6 +94,7 @@ class CompileServiceImpl(
         val registered = nowSeconds()
         val secondsSinceRegistered: Long get() = nowSeconds() - registered
         val isAlive: Boolean get() = aliveFlagPath?.let { File(it).exists() } ?: true // assuming that if no file was given, the client is alive
+        val allocatedBytes = AtomicLong(0)
         fun dispose() {
             disposable?.let {
                 Disposer.dispose(it)
@@ -130,6 +130,10 @@ class CompileServiceImpl(
 
     private val log by lazy { Logger.getLogger("compiler") }
 
+    private val jarCache by lazy { JarCache(daemonOptions.jarCacheMaxRoots, log) }
+
+    private val compilationsLimiter by lazy { CompilationsLimiter(daemonOptions.maxParallelCompilations, log) }
+
     private val rwlock = ReentrantReadWriteLock()
 
     private var runFile: File
@@ -200,10 +204,13 @@ class CompileServiceImpl(
 
     override fun releaseCompileSession(sessionId: Int) = ifAlive(minAliveness = Aliveness.LastSession) {
         synchronized(state.sessions) {
-            state.sessions[sessionId]?.dispose()
+            state.sessions[sessionId]?.let {
+                log.info("session $sessionId allocated ${it.allocatedBytes.get() / 1024} kb in total")
+                it.dispose()
+            }
             state.sessions.remove(sessionId)
             log.info("cleaning after session $sessionId")
-            clearJarCache()
+            jarCache.cleanUpIfIdle()
             if (state.sessions.isEmpty()) {
                 // TODO: and some goes here
             }
@@ -430,7 +437,7 @@ class CompileServiceImpl(
                 }
 
                 if (anyDead && !shuttingDown) {
-                    clearJarCache()
+                    jarCache.cleanUpIfIdle()
                 }
             }
             CompileService.CallResult.Ok()
@@ -514,24 +521,47 @@ class CompileServiceImpl(
                           serviceOutputStreamProxy: RemoteOutputStream,
                           operationsTracer: RemoteOperationsTracer?,
                           body: (PrintStream, EventManger, Profiler) -> ExitCode): CompileService.CallResult<Int> =
-            ifAlive {
-                withValidClientOrSessionProxy(sessionId) { session ->
-                    operationsTracer?.before("compile")
-                    val rpcProfiler = if (daemonOptions.reportPerf) WallAndThreadTotalProfiler() else DummyProfiler()
-                    val eventManger = EventMangerImpl()
-                    val compilerMessagesStream = PrintStream(BufferedOutputStream(RemoteOutputStreamClient(compilerMessagesStreamProxy, rpcProfiler), REMOTE_STREAM_BUFFER_SIZE))
-                    val serviceOutputStream = PrintStream(BufferedOutputStream(RemoteOutputStreamClient(serviceOutputStreamProxy, rpcProfiler), REMOTE_STREAM_BUFFER_SIZE))
-                    try {
-                        CompileService.CallResult.Good(
-                                checkedCompile(args, serviceOutputStream, rpcProfiler) {
-                                    body(compilerMessagesStream, eventManger, rpcProfiler).code
-                                })
-                    }
-                    finally {
-                        serviceOutputStream.flush()
-                        compilerMessagesStream.flush()
-                        eventManger.fireCompilationFinished()
-                        operationsTracer?.after("compile")
+            // the permit is acquired before the state lock, so that compilations waiting for it don't hold off shutdown
+            compilationsLimiter.withPermit {
+                ifAlive {
+                    withValidClientOrSessionProxy(sessionId) { session ->
+                        operationsTracer?.before("compile")
+                        val rpcProfiler = if (daemonOptions.reportPerf) WallAndThreadTotalProfiler() else DummyProfiler()
+                        val eventManger = EventMangerImpl()
+                        val compilerMessagesStreamClient = RemoteOutputStreamClient(compilerMessagesStreamProxy, rpcProfiler)
+                        val serviceOutputStreamClient = RemoteOutputStreamClient(serviceOutputStreamProxy, rpcProfiler)
+                        val compilerMessagesStream = PrintStream(BufferedOutputStream(compilerMessagesStreamClient, REMOTE_STREAM_BUFFER_SIZE))
+                        val serviceOutputStream = PrintStream(BufferedOutputStream(serviceOutputStreamClient, REMOTE_STREAM_BUFFER_SIZE))
+                        jarCache.beforeCompilation()
+                        try {
+                            CompileService.CallResult.Good(
+                                    checkedCompile(args, serviceOutputStream, rpcProfiler, session) {
+                                        body(compilerMessagesStream, eventManger, rpcProfiler).code
+                                    })
+                        }
+                        finally {
+                            try {
+                                // disconnecting is a remote call which may fail, that shouldn't affect the other stream or the clean-up
+                                try {
+                                    serviceOutputStream.flush()
+                                    serviceOutputStreamClient.disconnect()
+                                }
+                                finally {
+                                    compilerMessagesStream.flush()
+                                    compilerMessagesStreamClient.disconnect()
+                                }
+                            }
+                            finally {
+                                try {
+                                    eventManger.fireCompilationFinished()
+                                }
+                                finally {
+                                    // otherwise the compilation would be counted as running forever, blocking the jar cache clean-up
+                                    jarCache.afterCompilation()
+                                    operationsTracer?.after("compile")
+                                }
+                            }
+                        }
                     }
                 }
             }
@@ -548,7 +578,7 @@ class CompileServiceImpl(
     }
 
 
-    private fun<R> checkedCompile(args: Array<out String>, serviceOut: PrintStream, rpcProfiler: Profiler, body: () -> R): R {
+    private fun<R> checkedCompile(args: Array<out String>, serviceOut: PrintStream, rpcProfiler: Profiler, session: ClientOrSessionProxy<Any>?, body: () -> R): R {
         try {
             if (args.none())
                 throw IllegalArgumentException("Error: empty arguments list.")
@@ -556,11 +586,17 @@ class CompileServiceImpl(
 
             val profiler = if (daemonOptions.reportPerf) WallAndThreadAndMemoryTotalProfiler(withGC = false) else DummyProfiler()
 
+            // unlike the used memory, allocations of the compilation thread are not affected by other compilations running in parallel
+            val threadMXBean = ManagementFactory.getThreadMXBean()
+            val startAllocated = threadMXBean.threadAllocatedBytes()
+
             val res = profiler.withMeasure(null, body)
 
             val endMem = if (daemonOptions.reportPerf) usedMemory(withGC = false) else 0L
+            val allocated = threadMXBean.threadAllocatedBytes() - startAllocated
+            session?.allocatedBytes?.addAndGet(allocated)
 
-            log.info("Done with result " + res.toString())
+            log.info("Done with result " + res.toString() + ", allocated ${allocated / 1024} kb")
 
             if (daemonOptions.reportPerf) {
                 fun Long.ms() = TimeUnit.NANOSECONDS.toMillis(this)
@@ -568,7 +604,7 @@ class CompileServiceImpl(
                 val pc = profiler.getTotalCounters()
                 val rpc = rpcProfiler.getTotalCounters()
 
-                "PERF: Compile on daemon: ${pc.time.ms()} ms; thread: user ${pc.threadUserTime.ms()} ms, sys ${(pc.threadTime - pc.threadUserTime).ms()} ms; rpc: ${rpc.count} calls, ${rpc.time.ms()} ms, thread ${rpc.threadTime.ms()} ms; memory: ${endMem.kb()} kb (${"%+d".format(pc.memory.kb())} kb)".let {
+                "PERF: Compile on daemon: ${pc.time.ms()} ms; thread: user ${pc.threadUserTime.ms()} ms, sys ${(pc.threadTime - pc.threadUserTime).ms()} ms; rpc: ${rpc.count} calls, ${rpc.time.ms()} ms, thread ${rpc.threadTime.ms()} ms; memory: ${endMem.kb()} kb (${"%+d".format(pc.memory.kb())} kb); allocated: ${allocated.kb()} kb".let {
                     serviceOut.println(it)
                     log.info(it)
                 }
@@ -590,11 +626,6 @@ class CompileServiceImpl(
         }
     }
 
-    private fun clearJarCache() {
-        ZipHandler.clearFileAccessorCache()
-        (KotlinCoreEnvironment.applicationEnvironment?.jarFileSystem as? CoreJarFileSystem)?.clearHandlersCache()
-    }
-
     private fun<R> ifAlive(minAliveness: Aliveness = Aliveness.Alive,
                            ignoreCompilerChanged: Boolean = false,
                            body: () -> CompileService.CallResult<R>
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.daemon
+
+import com.intellij.openapi.vfs.impl.ZipHandler
+import com.intellij.openapi.vfs.impl.jar.CoreJarFileSystem
+import org.jetbrains.kotlin.cli.jvm.compiler.JarStamp
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import java.io.File
+import java.util.concurrent.locks.ReentrantLock
+import java.util.logging.Logger
+import kotlin.concurrent.withLock
+
+/**
+ * Keeps jar file system handlers of the shared application environment between compilations, so that unchanged
+ * library jars are not opened and indexed again for every build.
+ *
+ * The handlers are dropped all at once, because [CoreJarFileSystem] cannot forget a single jar: before a compilation if any
+ * of the opened jars is changed, and after it if too many jars are opened or the heap is almost full.
+ * Opened zip files are closed when there are no compilations running, so that the jars are not locked between builds.
+ *
+ * Compilations of different sessions may run in parallel and share the handlers, so they're counted, and nothing is dropped
+ * while any of them is running: a compilation which finds a changed jar waits until the running ones are finished,
+ * and the cleanup after a compilation is left to the last one running.
+ */
+internal class JarCache(private val maxRoots: Int, private val log: Logger) {
+    private val lock = ReentrantLock()
+    private val noCompilationsRunning = lock.newCondition()
+    private var runningCompilations = 0
+
+    fun beforeCompilation() {
+        lock.withLock {
+            var logged = false
+            while (true) {
+                val changed = KotlinCoreEnvironment.openedJarStamps.entries.firstOrNull { JarStamp(File(it.key)) != it.value } ?: break
+                if (runningCompilations == 0) {
+                    clear("${changed.key} is changed")
+                    break
+                }
+                if (!logged) {
+                    log.info("${changed.key} is changed, waiting for $runningCompilations running compilations to finish")
+                    logged = true
+                }
+                noCompilationsRunning.await()
+            }
+            runningCompilations++
+        }
+    }
+
+    fun afterCompilation() {
+        lock.withLock {
+            runningCompilations--
+            cleanUpIfIdle()
+            if (runningCompilations == 0) {
+                noCompilationsRunning.signalAll()
+            }
+        }
+    }
+
+    /**
+     * Drops the handlers if they take too much resources, and closes opened zip files, unless some compilations are running.
+     */
+    fun cleanUpIfIdle() {
+        lock.withLock {
+            if (runningCompilations > 0) return
+
+            val openedJars = KotlinCoreEnvironment.openedJarStamps.size
+            when {
+                openedJars > maxRoots -> clear("$openedJars jars are opened, the limit is $maxRoots")
+                isHeapAlmostFull() -> clear("the heap is almost full")
+                else -> ZipHandler.clearFileAccessorCache()
+            }
+        }
+    }
+
+    private fun clear(reason: String) {
+        log.info("clearing jar cache: $reason")
+        ZipHandler.clearFileAccessorCache()
+        (KotlinCoreEnvironment.applicationEnvironment?.jarFileSystem as? CoreJarFileSystem)?.clearHandlersCache()
+        KotlinCoreEnvironment.openedJarStamps.clear()
+    }
+}
@@ -16,7 +16,8 @@
 
 package org.jetbrains.kotlin.daemon
 
-import com.intellij.util.containers.StringInterner
+import gnu.trove.TLongHashSet
+import gnu.trove.TObjectIntHashMap
 import org.jetbrains.kotlin.daemon.common.CompilerCallbackServicesFacade
 import org.jetbrains.kotlin.daemon.common.DummyProfiler
 import org.jetbrains.kotlin.daemon.common.Profiler
@@ -24,37 +25,107 @@ import org.jetbrains.kotlin.incremental.components.LookupInfo
 import org.jetbrains.kotlin.incremental.components.LookupTracker
 import org.jetbrains.kotlin.incremental.components.Position
 import org.jetbrains.kotlin.incremental.components.ScopeKind
+import java.util.*
+import java.util.logging.Logger
 
-
+/**
+ * Collects lookups locally and sends only distinct ones to the client, in batches of about [LOOKUPS_BATCH_SIZE] lookups.
+ * A batch is sent when a lookup from the next file is recorded, or when the compilation is finished.
+ *
+ * Lookups without positions are compared by ids of their strings packed into a single long, so a repeated lookup doesn't allocate anything.
+ *
+ * Lookups may be recorded from several threads at once, e.g. with parallel analysis or code generation, so recording and sending is synchronized.
+ */
 class RemoteLookupTrackerClient(val facade: CompilerCallbackServicesFacade, eventManger: EventManger, val profiler: Profiler = DummyProfiler()) : LookupTracker {
     private val isDoNothing = profiler.withMeasure(this) { facade.lookupTracker_isDoNothing() }
 
-    private val lookups = hashSetOf<LookupInfo>()
-    private val interner = StringInterner()
-
     override val requiresPosition: Boolean = profiler.withMeasure(this) { facade.lookupTracker_requiresPosition() }
 
+    private val strings = ArrayList<String>()
+    private val stringIds = TObjectIntHashMap<String>()
+    private val recordedLookupIds = TLongHashSet()
+    private val recordedLookups = hashSetOf<LookupInfo>()
+
+    private val batch = ArrayList<LookupInfo>()
+    private var lastFilePath: String? = null
+
+    private var recordsCount = 0L
+    private var sentCount = 0L
+    private var batchesCount = 0
+
+    @Synchronized
     override fun record(filePath: String, position: Position, scopeFqName: String, scopeKind: ScopeKind, name: String) {
         if (isDoNothing) return
 
-        val internedFilePath = interner.intern(filePath)
-        val internedScopeFqName = interner.intern(scopeFqName)
-        val internedName = interner.intern(name)
+        recordsCount++
+
+        if (filePath != lastFilePath) {
+            if (batch.size >= LOOKUPS_BATCH_SIZE) {
+                sendBatch()
+            }
+            lastFilePath = filePath
+        }
+
+        val fileId = getId(filePath)
+        val scopeId = getId(scopeFqName)
+        val nameId = getId(name)
 
-        lookups.add(LookupInfo(internedFilePath, position, internedScopeFqName, scopeKind, internedName))
+        if (position == Position.NO_POSITION && fileId < MAX_PACKED_ID && scopeId < MAX_PACKED_ID && nameId < MAX_PACKED_ID) {
+            val lookupId = (fileId.toLong() shl 43) or (scopeId.toLong() shl 22) or (nameId.toLong() shl 1) or scopeKind.ordinal.toLong()
+            if (recordedLookupIds.add(lookupId)) {
+                batch.add(LookupInfo(strings[fileId], position, strings[scopeId], scopeKind, strings[nameId]))
+            }
+        }
+        else {
+            val lookup = LookupInfo(strings[fileId], position, strings[scopeId], scopeKind, strings[nameId])
+            if (recordedLookups.add(lookup)) {
+                batch.add(lookup)
+            }
+        }
     }
 
     init {
         eventManger.onCompilationFinished { flush() }
     }
 
-    private fun flush() {
-        if (isDoNothing || lookups.isEmpty()) return
+    private fun getId(string: String): Int {
+        val existing = stringIds.get(string)
+        // 0 is returned for absent keys, so the ids are shifted by one
+        if (existing > 0) return existing - 1
+
+        strings.add(string)
+        stringIds.put(string, strings.size)
+        return strings.size - 1
+    }
+
+    private fun sendBatch() {
+        if (batch.isEmpty()) return
 
         profiler.withMeasure(this) {
-            facade.lookupTracker_record(lookups)
+            facade.lookupTracker_record(batch)
         }
 
-        lookups.clear()
+        sentCount += batch.size
+        batchesCount++
+        batch.clear()
+    }
+
+    @Synchronized
+    private fun flush() {
+        if (isDoNothing) return
+
+        sendBatch()
+
+        if (recordsCount > 0) {
+            Logger.getLogger("compiler").info("lookup tracking: $recordsCount lookups recorded, $sentCount distinct sent in $batchesCount batches " +
+                                              "(${recordsCount - batchesCount} calls saved compared to a call per lookup)")
+        }
+    }
+
+    private companion object {
+        val LOOKUPS_BATCH_SIZE = 50000
+
+        // lookup ids consist of three 21-bit string ids and a scope kind bit
+        val MAX_PACKED_ID = 1 shl 21
     }
 }
@@ -16,21 +16,104 @@
 
 package org.jetbrains.kotlin.daemon
 
-import org.jetbrains.kotlin.daemon.common.DummyProfiler
-import org.jetbrains.kotlin.daemon.common.Profiler
-import org.jetbrains.kotlin.daemon.common.RemoteOutputStream
+import org.jetbrains.kotlin.daemon.common.*
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.IOException
 import java.io.OutputStream
+import java.net.Socket
+import java.rmi.RemoteException
 
 class RemoteOutputStreamClient(val remote: RemoteOutputStream, val profiler: Profiler = DummyProfiler()): OutputStream() {
+    private var socket: Socket? = null
+    private var streaming: DataOutputStream? = null
+    private var isStreamingChecked = false
+
     override fun write(data: ByteArray) {
-        profiler.withMeasure(this) { remote.write(data, 0, data.size) }
+        write(data, 0, data.size)
     }
 
     override fun write(data: ByteArray, offset: Int, length: Int) {
-        profiler.withMeasure(this) { remote.write(data, offset, length) }
+        val streaming = getStreaming()
+        if (streaming != null) {
+            streaming.writeInt(length)
+            streaming.write(data, offset, length)
+        }
+        else {
+            profiler.withMeasure(this) { remote.write(data, offset, length) }
+        }
     }
 
     override fun write(byte: Int) {
-        profiler.withMeasure(this) { remote.write(byte) }
+        val streaming = getStreaming()
+        if (streaming != null) {
+            streaming.writeInt(1)
+            streaming.write(byte)
+        }
+        else {
+            profiler.withMeasure(this) { remote.write(byte) }
+        }
+    }
+
+    override fun flush() {
+        streaming?.flush()
+    }
+
+    /**
+     * Sends the end of stream through the streaming connection, if any; should be called when the stream is not needed anymore,
+     * because the client waits for it before returning from the remote call
+     */
+    fun disconnect() {
+        val streaming = streaming ?: return
+        try {
+            streaming.writeInt(STREAMING_END_OF_STREAM)
+            streaming.flush()
+        }
+        finally {
+            socket?.close()
+            this.streaming = null
+            socket = null
+        }
+    }
+
+    private fun getStreaming(): DataOutputStream? {
+        if (!isStreamingChecked) {
+            isStreamingChecked = true
+            val endpoint = try {
+                profiler.withMeasure(this) { remote.streamingEndpoint() }
+            }
+            catch (e: RemoteException) {
+                // the client is older than the daemon and doesn't know this method (UnmarshalException), falling back to RMI
+                null
+            }
+            if (endpoint != null) {
+                connect(endpoint)
+            }
+        }
+        return streaming
+    }
+
+    private fun connect(endpoint: StreamingEndpoint) {
+        val newSocket = try {
+            LoopbackNetworkInterface.clientLoopbackSocketFactory.createSocket(LoopbackNetworkInterface.loopbackInetAddressName, endpoint.port)
+        }
+        catch (e: IOException) {
+            // falling back to RMI
+            return
+        }
+        try {
+            val out = DataOutputStream(BufferedOutputStream(newSocket.outputStream, REMOTE_STREAM_BUFFER_SIZE))
+            out.writeLong(endpoint.token)
+            out.flush()
+            if (newSocket.inputStream.read() == STREAMING_ACK) {
+                socket = newSocket
+                streaming = out
+                return
+            }
+        }
+        catch (e: IOException) {
+            // falling back to RMI
+        }
+        newSocket.close()
     }
 }
@@ -38,12 +38,16 @@ public class JVMConfigurationKeys {
             CompilerConfigurationKey.create("output .jar");
     public static final CompilerConfigurationKey<Boolean> INCLUDE_RUNTIME =
             CompilerConfigurationKey.create("include runtime to the resulting .jar");
+    public static final CompilerConfigurationKey<Boolean> INTERMEDIATE_JAR =
+            CompilerConfigurationKey.create("write the resulting .jar without compression and with fixed time stamps");
 
     public static final CompilerConfigurationKey<List<KotlinScriptDefinition>> SCRIPT_DEFINITIONS =
             CompilerConfigurationKey.create("script definitions");
 
     public static final CompilerConfigurationKey<Boolean> RETAIN_OUTPUT_IN_MEMORY =
             CompilerConfigurationKey.create("retain compiled classes in memory for further use, e.g. when running scripts");
+    public static final CompilerConfigurationKey<Boolean> STREAM_OUTPUT =
+            CompilerConfigurationKey.create("write compiled classes to the destination as soon as they are generated");
 
     public static final CompilerConfigurationKey<Boolean> DISABLE_CALL_ASSERTIONS =
             CompilerConfigurationKey.create("disable not-null call assertions");
@@ -55,6 +59,19 @@ public class JVMConfigurationKeys {
             CompilerConfigurationKey.create("compile multifile classes to a hierarchy of parts and facade");
     public static final CompilerConfigurationKey<Boolean> USE_TYPE_TABLE =
             CompilerConfigurationKey.create("use type table in serializer");
+    public static final CompilerConfigurationKey<Integer> BACKEND_THREADS =
+            CompilerConfigurationKey.create("number of threads used to generate bytecode for independent packages");
+    public static final CompilerConfigurationKey<Boolean> SHARE_INLINE_FUNCTIONS_CACHE =
+            CompilerConfigurationKey.create("keep bodies of compiled inline functions between compilations in the same process");
+    public static final CompilerConfigurationKey<Boolean> INLINE_TRIVIAL_METHODS =
+            CompilerConfigurationKey.create("inline trivial synthetic accessors and methods returning constants across the generated classes");
+    public static final CompilerConfigurationKey<Boolean> CONVERT_TAIL_CALLS_TO_LOOPS =
+            CompilerConfigurationKey.create("convert self-recursive tail calls of non-overridable functions to loops");
+
+    public static final CompilerConfigurationKey<Boolean> CONCURRENT_LAZY_RESOLVE =
+            CompilerConfigurationKey.create("allow several threads to resolve unrelated declarations at the same time");
+    public static final CompilerConfigurationKey<Integer> ANALYSIS_THREADS =
+            CompilerConfigurationKey.create("number of threads used to resolve bodies of declarations in different files");
 
     public static final CompilerConfigurationKey<Boolean> USE_SINGLE_MODULE =
             CompilerConfigurationKey.create("combine modules for source files and binary dependencies into a single module");
@@ -77,6 +94,9 @@ public class JVMConfigurationKeys {
     public static final CompilerConfigurationKey<String> DECLARATIONS_JSON_PATH =
             CompilerConfigurationKey.create("path to declarations output");
 
+    public static final CompilerConfigurationKey<String> NULL_CHECK_STATISTICS_PATH =
+            CompilerConfigurationKey.create("path to statistics of removed and retained not-null assertions");
+
     public static final CompilerConfigurationKey<List<Module>> MODULES =
             CompilerConfigurationKey.create("module data");
 
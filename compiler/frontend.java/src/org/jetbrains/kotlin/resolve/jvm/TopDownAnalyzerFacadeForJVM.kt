@@ -40,6 +40,8 @@ import org.jetbrains.kotlin.descriptors.impl.ModuleDependenciesImpl
 import org.jetbrains.kotlin.frontend.java.di.createContainerForTopDownAnalyzerForJvm
 import org.jetbrains.kotlin.frontend.java.di.initJvmBuiltInsForTopDownAnalysis
 import org.jetbrains.kotlin.incremental.components.LookupTracker
+import org.jetbrains.kotlin.incremental.components.Position
+import org.jetbrains.kotlin.incremental.components.ScopeKind
 import org.jetbrains.kotlin.load.java.lazy.ModuleClassResolver
 import org.jetbrains.kotlin.load.java.structure.JavaClass
 import org.jetbrains.kotlin.load.java.structure.impl.JavaClassImpl
@@ -51,6 +53,7 @@ import org.jetbrains.kotlin.name.Name
 import org.jetbrains.kotlin.platform.JvmBuiltIns
 import org.jetbrains.kotlin.psi.KtFile
 import org.jetbrains.kotlin.resolve.BindingTrace
+import org.jetbrains.kotlin.resolve.BodyResolver
 import org.jetbrains.kotlin.resolve.LazyTopDownAnalyzer
 import org.jetbrains.kotlin.resolve.TopDownAnalysisMode
 import org.jetbrains.kotlin.resolve.jvm.extensions.AnalysisCompletedHandlerExtension
@@ -59,10 +62,16 @@ import org.jetbrains.kotlin.resolve.jvm.platform.JvmPlatform
 import org.jetbrains.kotlin.resolve.lazy.KotlinCodeAnalyzer
 import org.jetbrains.kotlin.resolve.lazy.declarations.DeclarationProviderFactory
 import org.jetbrains.kotlin.resolve.lazy.declarations.FileBasedDeclarationProviderFactory
+import org.jetbrains.kotlin.storage.SpeculativeEffects
 import org.jetbrains.kotlin.storage.StorageManager
+import org.jetbrains.kotlin.types.checker.SubtypingCache
+import org.jetbrains.kotlin.util.PerformanceCounter
 import java.util.*
 
 object TopDownAnalyzerFacadeForJVM {
+    private val subtypingCacheRequests = PerformanceCounter.create("Subtyping cache requests")
+    private val subtypingCacheMisses = PerformanceCounter.create("Subtyping cache misses")
+
     @JvmStatic
     @JvmOverloads
     fun analyzeFilesWithJavaIntegration(
@@ -78,7 +87,12 @@ object TopDownAnalyzerFacadeForJVM {
                 project, files, trace, configuration, packagePartProvider, declarationProviderFactory, sourceModuleSearchScope
         )
 
-        container.get<LazyTopDownAnalyzer>().analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations, files)
+        val subtypingCache = SubtypingCache()
+        SubtypingCache.runWith(subtypingCache) {
+            container.get<LazyTopDownAnalyzer>().analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations, files)
+        }
+        subtypingCacheRequests.increment(subtypingCache.hits + subtypingCache.misses)
+        subtypingCacheMisses.increment(subtypingCache.misses)
 
         val module = container.get<ModuleDescriptor>()
         for (extension in AnalysisCompletedHandlerExtension.getInstances(project)) {
@@ -103,8 +117,12 @@ object TopDownAnalyzerFacadeForJVM {
         val storageManager = moduleContext.storageManager
         val module = moduleContext.module
 
+        val analysisThreads = configuration.get(JVMConfigurationKeys.ANALYSIS_THREADS, 1)
+
         val incrementalComponents = configuration.get(JVMConfigurationKeys.INCREMENTAL_COMPILATION_COMPONENTS)
-        val lookupTracker = incrementalComponents?.getLookupTracker() ?: LookupTracker.DO_NOTHING
+        val lookupTracker = incrementalComponents?.getLookupTracker()?.let {
+            if (analysisThreads > 1) SynchronizedLookupTracker(it) else it
+        } ?: LookupTracker.DO_NOTHING
         val targetIds = configuration.get(JVMConfigurationKeys.MODULES)?.map(::TargetId)
 
         val separateModules = !configuration.getBoolean(JVMConfigurationKeys.USE_SINGLE_MODULE)
@@ -149,6 +167,7 @@ object TopDownAnalyzerFacadeForJVM {
                 languageVersionSettings, moduleClassResolver
         ).apply {
             initJvmBuiltInsForTopDownAnalysis(module, languageVersionSettings)
+            get<BodyResolver>().setThreads(analysisThreads)
         }
 
         moduleClassResolver.sourceCodeResolver = container.get<JavaDescriptorResolver>()
@@ -213,13 +232,48 @@ object TopDownAnalyzerFacadeForJVM {
         }
     }
 
+    // Lookups recorded by a computation of a lazy value are kept aside until the computation is complete, because it may be restarted
+    private class SynchronizedLookupTracker(private val delegate: LookupTracker) : LookupTracker {
+        override val requiresPosition: Boolean
+            get() = delegate.requiresPosition
+
+        override fun record(filePath: String, position: Position, scopeFqName: String, scopeKind: ScopeKind, name: String) {
+            val buffer = SpeculativeEffects.getBuffer(this) { LookupsBuffer() }
+            if (buffer != null) {
+                buffer.lookups.add(Lookup(filePath, position, scopeFqName, scopeKind, name))
+            }
+            else {
+                recordAll(listOf(Lookup(filePath, position, scopeFqName, scopeKind, name)))
+            }
+        }
+
+        @Synchronized
+        private fun recordAll(lookups: List<Lookup>) {
+            for (lookup in lookups) {
+                delegate.record(lookup.filePath, lookup.position, lookup.scopeFqName, lookup.scopeKind, lookup.name)
+            }
+        }
+
+        private inner class LookupsBuffer : SpeculativeEffects.Buffer {
+            val lookups = arrayListOf<Lookup>()
+
+            override fun commit() {
+                recordAll(lookups)
+            }
+        }
+
+        private class Lookup(val filePath: String, val position: Position, val scopeFqName: String, val scopeKind: ScopeKind, val name: String)
+    }
+
     fun createContextWithSealedModule(project: Project, configuration: CompilerConfiguration): MutableModuleContext =
             createModuleContext(project, configuration).apply {
                 setDependencies(module, module.builtIns.builtInsModule)
             }
 
     private fun createModuleContext(project: Project, configuration: CompilerConfiguration): MutableModuleContext {
-        val projectContext = ProjectContext(project)
+        val concurrent = configuration.getBoolean(JVMConfigurationKeys.CONCURRENT_LAZY_RESOLVE) ||
+                         configuration.get(JVMConfigurationKeys.ANALYSIS_THREADS, 1) > 1
+        val projectContext = ProjectContext(project, concurrent)
         return ContextForNewModule(
                 projectContext, Name.special("<${configuration.getNotNull(CommonConfigurationKeys.MODULE_NAME)}>"),
                 JvmPlatform, JvmBuiltIns(projectContext.storageManager)
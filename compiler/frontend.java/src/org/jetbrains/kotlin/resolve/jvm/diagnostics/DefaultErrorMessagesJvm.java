@@ -112,6 +112,8 @@ public class DefaultErrorMessagesJvm implements DefaultErrorMessages.Extension {
                 "Method implementation inheritance is restricted for such cases. " +
                 "Please make explicit overrides (abstract or concrete) for the following non-abstract members of ''{1}'': {2}",
                 Renderers.NAME, Renderers.NAME, Renderers.TO_STRING);
+
+        MAP.put(ErrorsJvm.TAIL_CALLS_CONVERTED_TO_LOOP, "Self-recursive tail calls of this function were converted to a loop");
     }
 
     @NotNull
@@ -27,6 +27,7 @@ import org.jetbrains.kotlin.types.KotlinType;
 
 import static org.jetbrains.kotlin.diagnostics.PositioningStrategies.*;
 import static org.jetbrains.kotlin.diagnostics.Severity.ERROR;
+import static org.jetbrains.kotlin.diagnostics.Severity.INFO;
 import static org.jetbrains.kotlin.diagnostics.Severity.WARNING;
 
 public interface ErrorsJvm {
@@ -89,6 +90,8 @@ public interface ErrorsJvm {
 
     DiagnosticFactory3<KtExpression, DeclarationDescriptor, DeclarationDescriptor, String> TARGET6_INTERFACE_INHERITANCE = DiagnosticFactory3.create(ERROR);
 
+    DiagnosticFactory0<KtDeclaration> TAIL_CALLS_CONVERTED_TO_LOOP = DiagnosticFactory0.create(INFO, DECLARATION_SIGNATURE);
+
     @SuppressWarnings("UnusedDeclaration")
     Object _initializer = new Object() {
         {
@@ -28,6 +28,7 @@ import org.jetbrains.kotlin.resolve.createModule
 import org.jetbrains.kotlin.storage.ExceptionTracker
 import org.jetbrains.kotlin.storage.LockBasedStorageManager
 import org.jetbrains.kotlin.storage.StorageManager
+import org.jetbrains.kotlin.storage.StripedLockStorageManager
 
 interface GlobalContext {
     val storageManager: StorageManager
@@ -85,12 +86,21 @@ class MutableModuleContextImpl(
         projectContext: ProjectContext
 ) : MutableModuleContext, ProjectContext by projectContext
 
-fun GlobalContext(): GlobalContextImpl {
+/**
+ * @param concurrent whether lazy values of unrelated declarations may be computed by several threads at the same time,
+ *                   see [StripedLockStorageManager]
+ */
+@JvmOverloads
+fun GlobalContext(concurrent: Boolean = false): GlobalContextImpl {
     val tracker = ExceptionTracker()
-    return GlobalContextImpl(LockBasedStorageManager.createWithExceptionHandling(tracker), tracker)
+    val storageManager =
+            if (concurrent) StripedLockStorageManager.createWithExceptionHandling(tracker)
+            else LockBasedStorageManager.createWithExceptionHandling(tracker)
+    return GlobalContextImpl(storageManager, tracker)
 }
 
-fun ProjectContext(project: Project): ProjectContext = ProjectContextImpl(project, GlobalContext())
+@JvmOverloads
+fun ProjectContext(project: Project, concurrent: Boolean = false): ProjectContext = ProjectContextImpl(project, GlobalContext(concurrent))
 fun ModuleContext(module: ModuleDescriptor, project: Project): ModuleContext =
         ModuleContextImpl(module, ProjectContext(project))
 
@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.resolve;
 
 import com.google.common.collect.ImmutableMap;
+import kotlin.jvm.functions.Function0;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
@@ -24,12 +25,16 @@ import org.jetbrains.kotlin.diagnostics.Diagnostic;
 import org.jetbrains.kotlin.psi.KtExpression;
 import org.jetbrains.kotlin.resolve.diagnostics.Diagnostics;
 import org.jetbrains.kotlin.resolve.diagnostics.MutableDiagnosticsWithSuppression;
+import org.jetbrains.kotlin.storage.SpeculativeEffects;
 import org.jetbrains.kotlin.types.KotlinType;
 import org.jetbrains.kotlin.types.expressions.KotlinTypeInfo;
 import org.jetbrains.kotlin.types.expressions.typeInfoFactory.TypeInfoFactoryKt;
 import org.jetbrains.kotlin.util.slicedMap.*;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 public class BindingTraceContext implements BindingTrace {
     // These flags are used for debugging of "Rewrite at slice..." exceptions
@@ -39,6 +44,9 @@ public class BindingTraceContext implements BindingTrace {
     private final MutableSlicedMap map;
     @Nullable private final MutableDiagnosticsWithSuppression mutableDiagnostics;
     @NotNull private final BindingTraceFilter filter;
+    // With concurrent access, a computation may be rolled back to avoid a deadlock and restarted from scratch (see
+    // StripedLockStorageManager), so diagnostics it reports are kept aside until it's complete, as well as recorded values
+    private final boolean bufferDiagnostics;
 
     private final BindingContext bindingContext = new BindingContext() {
 
@@ -83,22 +91,37 @@ public class BindingTraceContext implements BindingTrace {
     }
 
     public BindingTraceContext(BindingTraceFilter filter) {
+        this(filter, false);
+    }
+
+    /**
+     * @param allowConcurrentAccess whether the trace may be recorded to and read from several threads at once,
+     *                              e.g. when bodies of declarations are resolved in parallel
+     */
+    public BindingTraceContext(BindingTraceFilter filter, boolean allowConcurrentAccess) {
+        this(allowConcurrentAccess ? new SpeculativeSlicedMap(new SynchronizedSlicedMap(createMap())) : createMap(), filter,
+             allowConcurrentAccess);
+    }
+
+    @NotNull
+    private static MutableSlicedMap createMap() {
         //noinspection ConstantConditions
-        this(TRACK_REWRITES ? new TrackingSlicedMap(TRACK_WITH_STACK_TRACES) : SlicedMapImpl.create(), filter);
+        return TRACK_REWRITES ? new TrackingSlicedMap(TRACK_WITH_STACK_TRACES) : SlicedMapImpl.create();
     }
 
 
-    private BindingTraceContext(@NotNull MutableSlicedMap map, BindingTraceFilter filter) {
+    private BindingTraceContext(@NotNull MutableSlicedMap map, BindingTraceFilter filter, boolean bufferDiagnostics) {
         this.map = map;
         this.mutableDiagnostics = !filter.getIgnoreDiagnostics()
                                   ? new MutableDiagnosticsWithSuppression(bindingContext, Diagnostics.Companion.getEMPTY())
                                   : null;
         this.filter = filter;
+        this.bufferDiagnostics = bufferDiagnostics;
     }
 
     @TestOnly
     public static BindingTraceContext createTraceableBindingTrace() {
-        return new BindingTraceContext(new TrackingSlicedMap(TRACK_WITH_STACK_TRACES), BindingTraceFilter.Companion.getACCEPT_ALL());
+        return new BindingTraceContext(new TrackingSlicedMap(TRACK_WITH_STACK_TRACES), BindingTraceFilter.Companion.getACCEPT_ALL(), false);
     }
 
     @Override
@@ -106,12 +129,30 @@ public class BindingTraceContext implements BindingTrace {
         if (mutableDiagnostics == null) {
             return;
         }
-        mutableDiagnostics.report(diagnostic);
+        if (bufferDiagnostics) {
+            DiagnosticsBuffer buffer = SpeculativeEffects.getBuffer(this, createDiagnosticsBuffer);
+            if (buffer != null) {
+                buffer.diagnostics.add(diagnostic);
+                return;
+            }
+        }
+        reportAll(Collections.singletonList(diagnostic));
+    }
+
+    private void reportAll(@NotNull List<Diagnostic> diagnostics) {
+        assert mutableDiagnostics != null : "Diagnostics are ignored by " + this;
+        synchronized (mutableDiagnostics) {
+            for (Diagnostic diagnostic : diagnostics) {
+                mutableDiagnostics.report(diagnostic);
+            }
+        }
     }
 
     public void clearDiagnostics() {
         if (mutableDiagnostics != null) {
-            mutableDiagnostics.clear();
+            synchronized (mutableDiagnostics) {
+                mutableDiagnostics.clear();
+            }
         }
     }
 
@@ -160,4 +201,20 @@ public class BindingTraceContext implements BindingTrace {
         typeInfo = typeInfo != null ? typeInfo.replaceType(type) : TypeInfoFactoryKt.createTypeInfo(type);
         record(BindingContext.EXPRESSION_TYPE_INFO, expression, typeInfo);
     }
+
+    private final Function0<DiagnosticsBuffer> createDiagnosticsBuffer = new Function0<DiagnosticsBuffer>() {
+        @Override
+        public DiagnosticsBuffer invoke() {
+            return new DiagnosticsBuffer();
+        }
+    };
+
+    private class DiagnosticsBuffer implements SpeculativeEffects.Buffer {
+        private final List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+
+        @Override
+        public void commit() {
+            reportAll(diagnostics);
+        }
+    }
 }
@@ -51,6 +51,10 @@ import org.jetbrains.kotlin.util.ReenteringLazyValueComputationException;
 import org.jetbrains.kotlin.util.slicedMap.WritableSlice;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.jetbrains.kotlin.config.LanguageFeature.TopLevelSealedInheritance;
 import static org.jetbrains.kotlin.diagnostics.Errors.*;
@@ -73,6 +77,8 @@ public class BodyResolver {
     @NotNull private final OverloadChecker overloadChecker;
     @NotNull private final LanguageVersionSettings languageVersionSettings;
 
+    private int threads = 1;
+
     public BodyResolver(
             @NotNull AnnotationResolver annotationResolver,
             @NotNull BodyResolveCache bodyResolveCache,
@@ -105,6 +111,15 @@ public class BodyResolver {
         this.languageVersionSettings = languageVersionSettings;
     }
 
+    /**
+     * Sets the number of threads used to resolve bodies of declarations in different files of a non-local context.
+     * With more than one thread, the binding trace and the storage manager of the container must support concurrent access.
+     */
+    public void setThreads(int threads) {
+        assert threads > 0 : "Number of threads should be positive: " + threads;
+        this.threads = threads;
+    }
+
     private void resolveBehaviorDeclarationBodies(@NotNull BodiesResolveContext c) {
         resolveSuperTypeEntryLists(c);
 
@@ -236,12 +251,84 @@ public class BodyResolver {
     }
 
     public void resolveBodies(@NotNull BodiesResolveContext c) {
+        if (threads > 1 && !c.getTopDownAnalysisMode().isLocalDeclarations() && c.getFiles().size() > 1) {
+            resolveBodiesInParallel(c);
+            return;
+        }
+
         resolveBehaviorDeclarationBodies(c);
         controlFlowAnalyzer.process(c);
         declarationsChecker.process(c);
         analyzerExtensions.process(c);
     }
 
+    /**
+     * Resolves bodies of declarations and checks their control flow file by file on a pool of {@link #threads} threads.
+     * Supertype lists are resolved beforehand, and the rest of the checks afterwards, in this thread. Within a file, the steps
+     * are run in the same order as in {@link #resolveBehaviorDeclarationBodies}.
+     * Diagnostics are reported in an unspecified order and are expected to be sorted by the consumer.
+     */
+    private void resolveBodiesInParallel(@NotNull BodiesResolveContext c) {
+        resolveSuperTypeEntryLists(c);
+
+        Collection<FileBodiesResolveContext> fileContexts = FileBodiesResolveContext.splitByFile(c);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, fileContexts.size()));
+        try {
+            List<Future<?>> tasks = new ArrayList<Future<?>>(fileContexts.size());
+            for (final FileBodiesResolveContext fileContext : fileContexts) {
+                tasks.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        resolvePropertyDeclarationBodies(fileContext);
+                        resolveAnonymousInitializers(fileContext);
+                        resolvePrimaryConstructorParameters(fileContext);
+                        resolveSecondaryConstructors(fileContext);
+                        resolveFunctionBodies(fileContext);
+                    }
+                }));
+            }
+            waitFor(tasks);
+
+            // Deferred types may refer to declarations in other files, so they are computed after all bodies are resolved
+            computeDeferredTypes();
+
+            tasks.clear();
+            for (final FileBodiesResolveContext fileContext : fileContexts) {
+                tasks.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        controlFlowAnalyzer.process(fileContext);
+                    }
+                }));
+            }
+            waitFor(tasks);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        declarationsChecker.process(c);
+        analyzerExtensions.process(c);
+    }
+
+    private static void waitFor(@NotNull List<Future<?>> tasks) {
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Resolution of declaration bodies was interrupted", e);
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
     private void resolveSuperTypeEntryLists(@NotNull BodiesResolveContext c) {
         // TODO : Make sure the same thing is not initialized twice
         for (Map.Entry<KtClassOrObject, ClassDescriptorWithResolutionScopes> entry : c.getDeclaredClasses().entrySet()) {
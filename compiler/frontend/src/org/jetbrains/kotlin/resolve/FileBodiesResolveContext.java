@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.resolve;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.descriptors.*;
+import org.jetbrains.kotlin.psi.*;
+import org.jetbrains.kotlin.resolve.calls.smartcasts.DataFlowInfo;
+import org.jetbrains.kotlin.resolve.lazy.descriptors.LazyScriptDescriptor;
+import org.jetbrains.kotlin.resolve.scopes.LexicalScope;
+
+import java.util.*;
+
+/**
+ * The part of a {@link BodiesResolveContext} consisting of the declarations of a single file.
+ * Bodies of declarations in different files do not depend on each other, so such parts may be processed in parallel.
+ */
+class FileBodiesResolveContext implements BodiesResolveContext {
+    private final BodiesResolveContext parent;
+    private final KtFile file;
+
+    private final Map<KtClassOrObject, ClassDescriptorWithResolutionScopes> declaredClasses =
+            new LinkedHashMap<KtClassOrObject, ClassDescriptorWithResolutionScopes>();
+    private final Map<KtAnonymousInitializer, ClassDescriptorWithResolutionScopes> anonymousInitializers =
+            new LinkedHashMap<KtAnonymousInitializer, ClassDescriptorWithResolutionScopes>();
+    private final Map<KtSecondaryConstructor, ClassConstructorDescriptor> secondaryConstructors =
+            new LinkedHashMap<KtSecondaryConstructor, ClassConstructorDescriptor>();
+    private final Map<KtScript, LazyScriptDescriptor> scripts = new LinkedHashMap<KtScript, LazyScriptDescriptor>();
+    private final Map<KtProperty, PropertyDescriptor> properties = new LinkedHashMap<KtProperty, PropertyDescriptor>();
+    private final Map<KtNamedFunction, SimpleFunctionDescriptor> functions = new LinkedHashMap<KtNamedFunction, SimpleFunctionDescriptor>();
+    private final Map<KtTypeAlias, TypeAliasDescriptor> typeAliases = new LinkedHashMap<KtTypeAlias, TypeAliasDescriptor>();
+
+    private FileBodiesResolveContext(@NotNull BodiesResolveContext parent, @NotNull KtFile file) {
+        this.parent = parent;
+        this.file = file;
+    }
+
+    /**
+     * @return contexts for each file of the given context, in the order of {@link BodiesResolveContext#getFiles()}
+     */
+    @NotNull
+    public static Collection<FileBodiesResolveContext> splitByFile(@NotNull BodiesResolveContext c) {
+        Map<KtFile, FileBodiesResolveContext> result = new LinkedHashMap<KtFile, FileBodiesResolveContext>();
+        for (KtFile file : c.getFiles()) {
+            result.put(file, new FileBodiesResolveContext(c, file));
+        }
+
+        for (Map.Entry<KtClassOrObject, ClassDescriptorWithResolutionScopes> entry : c.getDeclaredClasses().entrySet()) {
+            forFile(c, result, entry.getKey()).declaredClasses.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<KtAnonymousInitializer, ClassDescriptorWithResolutionScopes> entry : c.getAnonymousInitializers().entrySet()) {
+            forFile(c, result, entry.getKey()).anonymousInitializers.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<KtSecondaryConstructor, ClassConstructorDescriptor> entry : c.getSecondaryConstructors().entrySet()) {
+            forFile(c, result, entry.getKey()).secondaryConstructors.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<KtScript, LazyScriptDescriptor> entry : c.getScripts().entrySet()) {
+            forFile(c, result, entry.getKey()).scripts.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<KtProperty, PropertyDescriptor> entry : c.getProperties().entrySet()) {
+            forFile(c, result, entry.getKey()).properties.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<KtNamedFunction, SimpleFunctionDescriptor> entry : c.getFunctions().entrySet()) {
+            forFile(c, result, entry.getKey()).functions.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<KtTypeAlias, TypeAliasDescriptor> entry : c.getTypeAliases().entrySet()) {
+            forFile(c, result, entry.getKey()).typeAliases.put(entry.getKey(), entry.getValue());
+        }
+
+        return result.values();
+    }
+
+    @NotNull
+    private static FileBodiesResolveContext forFile(
+            @NotNull BodiesResolveContext c,
+            @NotNull Map<KtFile, FileBodiesResolveContext> contexts,
+            @NotNull KtElement declaration
+    ) {
+        KtFile file = declaration.getContainingKtFile();
+        FileBodiesResolveContext context = contexts.get(file);
+        if (context == null) {
+            context = new FileBodiesResolveContext(c, file);
+            contexts.put(file, context);
+        }
+        return context;
+    }
+
+    @Override
+    public Collection<KtFile> getFiles() {
+        return Collections.singletonList(file);
+    }
+
+    @Override
+    public Map<KtClassOrObject, ClassDescriptorWithResolutionScopes> getDeclaredClasses() {
+        return declaredClasses;
+    }
+
+    @Override
+    public Map<KtAnonymousInitializer, ClassDescriptorWithResolutionScopes> getAnonymousInitializers() {
+        return anonymousInitializers;
+    }
+
+    @Override
+    public Map<KtSecondaryConstructor, ClassConstructorDescriptor> getSecondaryConstructors() {
+        return secondaryConstructors;
+    }
+
+    @Override
+    public Map<KtScript, LazyScriptDescriptor> getScripts() {
+        return scripts;
+    }
+
+    @Override
+    public Map<KtProperty, PropertyDescriptor> getProperties() {
+        return properties;
+    }
+
+    @Override
+    public Map<KtNamedFunction, SimpleFunctionDescriptor> getFunctions() {
+        return functions;
+    }
+
+    @Override
+    public Map<KtTypeAlias, TypeAliasDescriptor> getTypeAliases() {
+        return typeAliases;
+    }
+
+    @Nullable
+    @Override
+    public LexicalScope getDeclaringScope(@NotNull KtDeclaration declaration) {
+        return parent.getDeclaringScope(declaration);
+    }
+
+    @NotNull
+    @Override
+    public DataFlowInfo getOuterDataFlowInfo() {
+        return parent.getOuterDataFlowInfo();
+    }
+
+    @NotNull
+    @Override
+    public TopDownAnalysisMode getTopDownAnalysisMode() {
+        return parent.getTopDownAnalysisMode();
+    }
+}
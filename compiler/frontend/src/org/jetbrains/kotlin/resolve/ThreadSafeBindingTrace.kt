@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.resolve
+
+import org.jetbrains.kotlin.diagnostics.Diagnostic
+import org.jetbrains.kotlin.psi.KtExpression
+import org.jetbrains.kotlin.types.KotlinType
+import org.jetbrains.kotlin.util.slicedMap.ReadOnlySlice
+import org.jetbrains.kotlin.util.slicedMap.WritableSlice
+
+/**
+ * A [DelegatingBindingTrace] which may be written to and read from several threads at once.
+ * The parent context is expected to be effectively immutable while this trace is in use.
+ */
+class ThreadSafeBindingTrace(
+        parentContext: BindingContext,
+        name: String,
+        withParentDiagnostics: Boolean = true,
+        filter: BindingTraceFilter = BindingTraceFilter.ACCEPT_ALL
+) : DelegatingBindingTrace(parentContext, name, withParentDiagnostics, filter) {
+    private val lock = Any()
+
+    override fun <K, V> record(slice: WritableSlice<K, V>, key: K, value: V) {
+        synchronized(lock) { super.record(slice, key, value) }
+    }
+
+    override fun <K, V> get(slice: ReadOnlySlice<K, V>, key: K): V? = synchronized(lock) { super.get(slice, key) }
+
+    override fun <K, V> getKeys(slice: WritableSlice<K, V>): Collection<K> = synchronized(lock) { super.getKeys(slice).toList() }
+
+    override fun recordType(expression: KtExpression, type: KotlinType?) {
+        synchronized(lock) { super.recordType(expression, type) }
+    }
+
+    override fun report(diagnostic: Diagnostic) {
+        synchronized(lock) { super.report(diagnostic) }
+    }
+}
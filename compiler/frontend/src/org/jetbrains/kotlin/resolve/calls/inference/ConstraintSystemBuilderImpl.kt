@@ -57,6 +57,7 @@ open class ConstraintSystemBuilderImpl(private val mode: Mode = ConstraintSystem
     }
 
     internal val allTypeParameterBounds = LinkedHashMap<TypeVariable, TypeBoundsImpl>()
+    private val typeVariableByParameter = HashMap<TypeParameterDescriptor, TypeVariable>()
     internal val usedInBounds = HashMap<TypeVariable, MutableList<TypeBounds.Bound>>()
     internal val errors = ArrayList<ConstraintError>()
     internal val initialConstraints = ArrayList<Constraint>()
@@ -92,11 +93,12 @@ open class ConstraintSystemBuilderImpl(private val mode: Mode = ConstraintSystem
             }
         }
 
-        for ((descriptor, typeVariable) in typeParameters.zip(typeVariables)) {
-            allTypeParameterBounds.put(typeVariable, TypeBoundsImpl(typeVariable))
+        for (typeVariable in typeVariables) {
+            addTypeBounds(TypeBoundsImpl(typeVariable))
         }
 
-        for ((typeVariable, typeBounds) in allTypeParameterBounds) {
+        // bounds of the variables registered earlier are already incorporated
+        for (typeVariable in typeVariables) {
             for (declaredUpperBound in typeVariable.freshTypeParameter.upperBounds) {
                 if (declaredUpperBound.isDefaultBound()) continue //todo remove this line (?)
                 val context = ConstraintContext(TYPE_BOUND_POSITION.position(typeVariable.originalTypeParameter.index))
@@ -260,7 +262,7 @@ open class ConstraintSystemBuilderImpl(private val mode: Mode = ConstraintSystem
         val bound = Bound(typeVariable, constrainingType, kind, constraintContext.position,
                           constrainingType.isProper(), constraintContext.derivedFrom ?: emptySet())
         val typeBounds = getTypeBounds(typeVariable)
-        if (typeBounds.bounds.contains(bound)) return
+        if (typeBounds.containsBound(bound)) return
 
         typeBounds.addBound(bound)
 
@@ -354,7 +356,13 @@ open class ConstraintSystemBuilderImpl(private val mode: Mode = ConstraintSystem
     }
 
     private fun getMyTypeVariable(typeParameter: TypeParameterDescriptor): TypeVariable? =
-            allTypeParameterBounds.keys.find { it.freshTypeParameter == typeParameter }
+            typeVariableByParameter[typeParameter]
+
+    internal fun addTypeBounds(typeBounds: TypeBoundsImpl) {
+        allTypeParameterBounds.put(typeBounds.typeVariable, typeBounds)
+        // the first registered variable wins, as in a lookup through all variables
+        typeVariableByParameter.getOrPut(typeBounds.typeVariable.freshTypeParameter) { typeBounds.typeVariable }
+    }
 
     private fun storeInitialConstraint(constraintKind: ConstraintKind, subType: KotlinType, superType: KotlinType, position: ConstraintPosition) {
         initialConstraints.add(Constraint(constraintKind, subType, superType, position))
@@ -390,7 +398,7 @@ open class ConstraintSystemBuilderImpl(private val mode: Mode = ConstraintSystem
             )
         }
 
-        allTypeParameterBounds.putAll(other.allTypeParameterBounds)
+        other.allTypeParameterBounds.values.forEach { addTypeBounds(it) }
         usedInBounds.putAll(other.usedInBounds)
         errors.addAll(other.errors)
         initialConstraints.addAll(other.initialConstraints)
@@ -176,8 +176,8 @@ internal class ConstraintSystemImpl(
 
     override fun toBuilder(filterConstraintPosition: (ConstraintPosition) -> Boolean): ConstraintSystem.Builder {
         val result = ConstraintSystemBuilderImpl()
-        for ((typeParameter, typeBounds) in allTypeParameterBounds) {
-            result.allTypeParameterBounds.put(typeParameter, typeBounds.filter(filterConstraintPosition))
+        for (typeBounds in allTypeParameterBounds.values) {
+            result.addTypeBounds(typeBounds.filter(filterConstraintPosition))
         }
         result.usedInBounds.putAll(usedInBounds.map {
             val (variable, bounds) = it
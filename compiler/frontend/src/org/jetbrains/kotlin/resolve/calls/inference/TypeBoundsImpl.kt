@@ -26,10 +26,24 @@ import org.jetbrains.kotlin.types.checker.KotlinTypeChecker
 import org.jetbrains.kotlin.utils.addIfNotNull
 import java.util.*
 
-class TypeBoundsImpl(override val typeVariable: TypeVariable) : TypeBounds {
-    override val bounds = ArrayList<Bound>()
+class TypeBoundsImpl private constructor(
+        override val typeVariable: TypeVariable,
+        private var storage: BoundStorage,
+        private var resultValues: Collection<KotlinType>?
+) : TypeBounds {
+    constructor(typeVariable: TypeVariable) : this(typeVariable, BoundStorage(), null)
 
-    private var resultValues: Collection<KotlinType>? = null
+    // Bounds are shared by type bounds filtered from one another (see [filter]) until one of them gets a new bound
+    private class BoundStorage(val list: ArrayList<Bound>, val set: HashSet<Bound>) {
+        constructor() : this(ArrayList(), HashSet())
+
+        var isShared = false
+
+        fun copy() = BoundStorage(ArrayList(list), HashSet(set))
+    }
+
+    override val bounds: List<Bound>
+        get() = storage.list
 
     var isFixed: Boolean = false
         private set
@@ -38,12 +52,19 @@ class TypeBoundsImpl(override val typeVariable: TypeVariable) : TypeBounds {
         isFixed = true
     }
 
+    fun containsBound(bound: Bound): Boolean = bound in storage.set
+
     fun addBound(bound: Bound) {
         resultValues = null
         assert(bound.typeVariable == typeVariable) {
             "$bound is added for incorrect type variable ${bound.typeVariable.name}. Expected: ${typeVariable.name}"
         }
-        bounds.add(bound)
+        if (storage.isShared) {
+            storage = storage.copy()
+        }
+        if (storage.set.add(bound)) {
+            storage.list.add(bound)
+        }
     }
 
     private fun filterBounds(bounds: Collection<Bound>, kind: BoundKind, errorValues: MutableCollection<KotlinType>? = null): Set<KotlinType> {
@@ -62,8 +83,18 @@ class TypeBoundsImpl(override val typeVariable: TypeVariable) : TypeBounds {
     }
 
     fun filter(condition: (ConstraintPosition) -> Boolean): TypeBoundsImpl {
+        if (storage.list.all { condition(it.position) }) {
+            // values depend on bounds only, so they can be shared as well
+            storage.isShared = true
+            return TypeBoundsImpl(typeVariable, storage, resultValues)
+        }
+
         val result = TypeBoundsImpl(typeVariable)
-        result.bounds.addAll(bounds.filter { condition(it.position) })
+        for (bound in storage.list) {
+            if (condition(bound.position)) {
+                result.addBound(bound)
+            }
+        }
         return result
     }
 
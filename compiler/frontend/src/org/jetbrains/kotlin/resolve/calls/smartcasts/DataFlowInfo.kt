@@ -98,5 +98,5 @@ interface DataFlowInfo {
 
 object DataFlowInfoFactory {
     @JvmField
-    val EMPTY: DataFlowInfo = DelegatingDataFlowInfo()
+    val EMPTY: DataFlowInfo = PersistentDataFlowInfo()
 }
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.resolve.calls.smartcasts
+
+import com.google.common.collect.LinkedHashMultimap
+import com.google.common.collect.Sets
+import com.google.common.collect.SetMultimap
+import org.jetbrains.kotlin.builtins.KotlinBuiltIns
+import org.jetbrains.kotlin.resolve.calls.smartcasts.Nullability.NOT_NULL
+import org.jetbrains.kotlin.types.*
+import org.jetbrains.kotlin.types.typeUtil.*
+import org.jetbrains.kotlin.utils.PersistentHashMap
+import java.util.*
+
+/**
+ * Keeps the complete data flow information in persistent maps, so that deriving a new info shares everything unchanged
+ * with this one instead of copying it or chaining to it, and merging infos with a common ancestor skips the shared parts.
+ */
+internal class PersistentDataFlowInfo private constructor(
+        private val nullabilityInfo: PersistentHashMap<DataFlowValue, Nullability>,
+        // Never contains empty sets and original types of values, sets are not modified after they are put here
+        private val typeInfo: PersistentHashMap<DataFlowValue, Set<KotlinType>>
+) : DataFlowInfo {
+
+    constructor(): this(PersistentHashMap.empty(), PersistentHashMap.empty())
+
+    override val completeNullabilityInfo: Map<DataFlowValue, Nullability>
+        get() = nullabilityInfo.toMap()
+
+    override val completeTypeInfo: SetMultimap<DataFlowValue, KotlinType>
+        get() {
+            val result = newTypeInfo()
+            typeInfo.forEach { value, types -> result.putAll(value, types) }
+            return result
+        }
+
+    override fun getCollectedNullability(key: DataFlowValue) = getNullability(key, false)
+
+    override fun getStableNullability(key: DataFlowValue) = getNullability(key, true)
+
+    private fun getNullability(key: DataFlowValue, stableOnly: Boolean) =
+            if (stableOnly && !key.isStable) {
+                key.immanentNullability
+            }
+            else {
+                nullabilityInfo[key] ?: key.immanentNullability
+            }
+
+    private fun putNullability(map: PersistentHashMap<DataFlowValue, Nullability>, value: DataFlowValue,
+                               nullability: Nullability, affectReceiver: Boolean = true): PersistentHashMap<DataFlowValue, Nullability> {
+        var result = map.put(value, nullability)
+
+        val identifierInfo = value.identifierInfo
+        if (affectReceiver && !nullability.canBeNull()) {
+            when (identifierInfo) {
+                is IdentifierInfo.Qualified -> {
+                    val receiverType = identifierInfo.receiverType
+                    if (identifierInfo.safe && receiverType != null) {
+                        result = putNullability(result, DataFlowValue(identifierInfo.receiverInfo, receiverType), nullability)
+                    }
+                }
+                is IdentifierInfo.Variable -> identifierInfo.bound?.let {
+                    result = putNullability(result, it, nullability)
+                }
+            }
+        }
+
+        return result
+    }
+
+    override fun getCollectedTypes(key: DataFlowValue) = getCollectedTypes(key, true)
+
+    private fun getCollectedTypes(key: DataFlowValue, enrichWithNotNull: Boolean): Set<KotlinType> {
+        val types = typeInfo[key] ?: emptySet<KotlinType>()
+        if (!enrichWithNotNull || getCollectedNullability(key).canBeNull()) {
+            return types
+        }
+
+        val enrichedTypes = Sets.newHashSetWithExpectedSize<KotlinType>(types.size + 1)
+        val originalType = key.type
+        if (originalType.isMarkedNullable) {
+            enrichedTypes.add(TypeUtils.makeNotNullable(originalType))
+        }
+        for (type in types) {
+            enrichedTypes.add(TypeUtils.makeNotNullable(type))
+        }
+
+        return enrichedTypes
+    }
+
+    override fun getStableTypes(key: DataFlowValue) = getStableTypes(key, true)
+
+    private fun getStableTypes(key: DataFlowValue, enrichWithNotNull: Boolean) =
+            if (!key.isStable) LinkedHashSet() else getCollectedTypes(key, enrichWithNotNull)
+
+    /**
+     * Call this function to clear all data flow information about
+     * the given data flow value.
+
+     * @param value
+     */
+    override fun clearValueInfo(value: DataFlowValue): DataFlowInfo {
+        return create(putNullability(nullabilityInfo, value, Nullability.UNKNOWN), typeInfo.remove(value))
+    }
+
+    override fun assign(a: DataFlowValue, b: DataFlowValue): DataFlowInfo {
+        val nullabilityOfB = getStableNullability(b)
+        val nullability = putNullability(nullabilityInfo, a, nullabilityOfB, affectReceiver = false)
+
+        var typesForB = getStableTypes(b)
+        // Own type of B must be recorded separately, e.g. for a constant
+        // But if its type is the same as A, there is no reason to do it
+        // because own type is not saved in this set
+        // Error types are also not saved
+        if (!b.type.isError && a.type != b.type) {
+            typesForB += b.type
+        }
+
+        return create(nullability, addTypes(typeInfo, a, typesForB, replace = true))
+    }
+
+    override fun equate(a: DataFlowValue, b: DataFlowValue, sameTypes: Boolean): DataFlowInfo {
+        val nullabilityOfA = getStableNullability(a)
+        val nullabilityOfB = getStableNullability(b)
+        val newNullabilityOfA = nullabilityOfA.refine(nullabilityOfB)
+        val newNullabilityOfB = nullabilityOfB.refine(nullabilityOfA)
+
+        var changed = (newNullabilityOfA != getCollectedNullability(a)) or
+                      (newNullabilityOfB != getCollectedNullability(b))
+        val nullability = putNullability(putNullability(nullabilityInfo, a, newNullabilityOfA), b, newNullabilityOfB)
+
+        // NB: == has no guarantees of type equality, see KT-11280 for the example
+        var types = typeInfo
+        if (sameTypes) {
+            val newTypeInfo = newTypeInfo()
+            newTypeInfo.putAll(a, getStableTypes(b, false))
+            newTypeInfo.putAll(b, getStableTypes(a, false))
+            if (a.type != b.type) {
+                // To avoid recording base types of own type
+                if (!a.type.isSubtypeOf(b.type)) {
+                    newTypeInfo.put(a, b.type)
+                }
+                if (!b.type.isSubtypeOf(a.type)) {
+                    newTypeInfo.put(b, a.type)
+                }
+            }
+            changed = changed or !newTypeInfo.isEmpty
+            for (value in newTypeInfo.keySet()) {
+                types = addTypes(types, value, newTypeInfo[value], replace = false)
+            }
+        }
+
+        return if (!changed) this else create(nullability, types)
+    }
+
+    override fun disequate(a: DataFlowValue, b: DataFlowValue): DataFlowInfo {
+        val nullabilityOfA = getStableNullability(a)
+        val nullabilityOfB = getStableNullability(b)
+        val newNullabilityOfA = nullabilityOfA.refine(nullabilityOfB.invert())
+        val newNullabilityOfB = nullabilityOfB.refine(nullabilityOfA.invert())
+
+        val changed = (newNullabilityOfA != getCollectedNullability(a)) or
+                      (newNullabilityOfB != getCollectedNullability(b))
+        if (!changed) return this
+
+        return create(putNullability(putNullability(nullabilityInfo, a, newNullabilityOfA), b, newNullabilityOfB), typeInfo)
+    }
+
+    override fun establishSubtyping(value: DataFlowValue, type: KotlinType): DataFlowInfo {
+        if (value.type == type) return this
+        if (getCollectedTypes(value).contains(type)) return this
+        if (!value.type.isFlexible() && value.type.isSubtypeOf(type)) return this
+        val nullability = if (type.isMarkedNullable) nullabilityInfo else putNullability(nullabilityInfo, value, NOT_NULL)
+        return create(nullability, addTypes(typeInfo, value, listOf(type), replace = false))
+    }
+
+    override fun and(other: DataFlowInfo): DataFlowInfo {
+        if (other === DataFlowInfo.EMPTY) return this
+        if (this === DataFlowInfo.EMPTY) return other
+        if (this === other) return this
+
+        assert(other is PersistentDataFlowInfo) { "Unknown DataFlowInfo type: " + other }
+        other as PersistentDataFlowInfo
+
+        val nullability = nullabilityInfo.mergeWith(other.nullabilityInfo) { key, thisFlags, otherFlags ->
+            val collectedFlags = thisFlags ?: key.immanentNullability
+            val flags = collectedFlags.and(otherFlags)
+            if (flags != collectedFlags) flags else null
+        }
+
+        if (nullability === nullabilityInfo && containsAll(typeInfo, other.typeInfo)) {
+            return this
+        }
+
+        // Types of the other info go first, as if it was put on top of this one
+        val types = typeInfo.mergeWith(other.typeInfo) { key, thisTypes, otherTypes ->
+            if (thisTypes == null) otherTypes else union(otherTypes, thisTypes)
+        }
+        return create(nullability, types)
+    }
+
+    private fun Set<KotlinType>.containsNothing() = any { KotlinBuiltIns.isNothing(it) }
+
+    private fun Set<KotlinType>.intersect(other: Set<KotlinType>) =
+            if (other.containsNothing()) this
+            else if (this.containsNothing()) other
+            else Sets.intersection(this, other)
+
+    override fun or(other: DataFlowInfo): DataFlowInfo {
+        if (other === DataFlowInfo.EMPTY) return DataFlowInfo.EMPTY
+        if (this === DataFlowInfo.EMPTY) return DataFlowInfo.EMPTY
+        if (this === other) return this
+
+        assert(other is PersistentDataFlowInfo) { "Unknown DataFlowInfo type: " + other }
+        other as PersistentDataFlowInfo
+
+        val nullability = nullabilityInfo.retainKeysOf(other.nullabilityInfo) { key, thisFlags, otherFlags ->
+            (thisFlags ?: key.immanentNullability).or(otherFlags)
+        }
+
+        val types = typeInfo.retainKeysOf(other.typeInfo) { key, thisTypes, otherTypes ->
+            if (thisTypes == null) {
+                null
+            }
+            else {
+                val common = thisTypes.intersect(otherTypes)
+                when {
+                    common.isEmpty() -> null
+                    common === otherTypes -> otherTypes
+                    common.size == thisTypes.size -> thisTypes
+                    else -> LinkedHashSet(common)
+                }
+            }
+        }
+
+        return create(nullability, types)
+    }
+
+    private fun create(
+            nullabilityInfo: PersistentHashMap<DataFlowValue, Nullability>,
+            typeInfo: PersistentHashMap<DataFlowValue, Set<KotlinType>>
+    ): DataFlowInfo {
+        if (nullabilityInfo === this.nullabilityInfo && typeInfo === this.typeInfo) return this
+        if (nullabilityInfo.isEmpty && typeInfo.isEmpty) return DataFlowInfoFactory.EMPTY
+        return PersistentDataFlowInfo(nullabilityInfo, typeInfo)
+    }
+
+    override fun toString() = if (typeInfo.isEmpty && nullabilityInfo.isEmpty) "EMPTY" else "Non-trivial DataFlowInfo"
+
+    companion object {
+        private fun containsAll(
+                first: PersistentHashMap<DataFlowValue, Set<KotlinType>>,
+                second: PersistentHashMap<DataFlowValue, Set<KotlinType>>
+        ): Boolean {
+            // Nothing is changed by the merge iff every set of the second map is contained in the corresponding set of the first one
+            val merged = first.mergeWith(second) { key, firstTypes, secondTypes ->
+                if (firstTypes != null && firstTypes.containsAll(secondTypes)) null else secondTypes
+            }
+            return merged === first
+        }
+
+        /**
+         * Returns [types] of [value] followed by the types which are already known for it (unless [replace] is true),
+         * excluding the original type of the value (see also KT-10666).
+         */
+        private fun addTypes(
+                map: PersistentHashMap<DataFlowValue, Set<KotlinType>>,
+                value: DataFlowValue,
+                types: Collection<KotlinType>,
+                replace: Boolean
+        ): PersistentHashMap<DataFlowValue, Set<KotlinType>> {
+            val newTypes = types.filterTo(LinkedHashSet<KotlinType>()) { it != value.type }
+            val oldTypes = map[value]
+            val result = if (replace || oldTypes == null) newTypes else union(newTypes, oldTypes)
+            return if (result.isEmpty()) map.remove(value) else map.put(value, result)
+        }
+
+        /**
+         * Returns [first] followed by [second] without duplicates, or [second] itself if the result would have the same order.
+         */
+        private fun union(first: Set<KotlinType>, second: Set<KotlinType>): Set<KotlinType> {
+            val result = LinkedHashSet<KotlinType>(first)
+            result.addAll(second)
+            return if (result.size == second.size && result.toList() == second.toList()) second else result
+        }
+
+        fun newTypeInfo(): SetMultimap<DataFlowValue, KotlinType> = LinkedHashMultimap.create<DataFlowValue, KotlinType>()
+    }
+}
@@ -62,6 +62,11 @@ abstract class PerformanceCounter protected constructor(val name: String) {
 
         fun create(name: String, vararg excluded: PerformanceCounter): PerformanceCounter = CounterWithExclude(name, *excluded)
 
+        /**
+         * Also accounts memory allocated by the current thread inside [time], when the JVM supports it.
+         */
+        fun createWithAllocations(name: String): PerformanceCounter = AllocationTrackingCounter(name)
+
         internal inline fun <T> getOrPut(threadLocal: ThreadLocal<T>, default: () -> T) : T {
             var value = threadLocal.get()
             if (value == null) {
@@ -76,6 +81,7 @@ abstract class PerformanceCounter protected constructor(val name: String) {
 
     private var count: Int = 0
     private var totalTimeNanos: Long = 0
+    private var allocatedBytes: Long = 0
 
     init {
         synchronized(allCounters) {
@@ -83,8 +89,8 @@ abstract class PerformanceCounter protected constructor(val name: String) {
         }
     }
 
-    fun increment() {
-        count++
+    @JvmOverloads fun increment(delta: Int = 1) {
+        count += delta
     }
 
     fun <T> time(block: () -> T): T {
@@ -103,12 +109,17 @@ abstract class PerformanceCounter protected constructor(val name: String) {
     fun reset() {
         count = 0
         totalTimeNanos = 0
+        allocatedBytes = 0
     }
 
     protected fun incrementTime(delta: Long) {
         totalTimeNanos += delta
     }
 
+    protected fun incrementAllocatedBytes(delta: Long) {
+        allocatedBytes += delta
+    }
+
     protected abstract fun <T> countTime(block: () -> T): T
 
     fun report(consumer: (String) -> Unit) {
@@ -117,7 +128,8 @@ abstract class PerformanceCounter protected constructor(val name: String) {
         }
         else {
             val millis = TimeUnit.NANOSECONDS.toMillis(totalTimeNanos)
-            consumer("$name performed $count times, total time $millis ms")
+            val allocated = if (allocatedBytes > 0) ", allocated ${allocatedBytes / 1024} Kb" else ""
+            consumer("$name performed $count times, total time $millis ms$allocated")
         }
     }
 }
@@ -134,6 +146,35 @@ private class SimpleCounter(name: String): PerformanceCounter(name) {
     }
 }
 
+private class AllocationTrackingCounter(name: String): PerformanceCounter(name) {
+    companion object {
+        private val threadMXBean: com.sun.management.ThreadMXBean? =
+                try {
+                    val bean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+                    if (bean != null && bean.isThreadAllocatedMemorySupported) bean else null
+                }
+                catch (e: Throwable) {
+                    // not a HotSpot-compatible JVM
+                    null
+                }
+
+        private fun threadAllocatedBytes(): Long =
+                threadMXBean?.getThreadAllocatedBytes(Thread.currentThread().id) ?: 0
+    }
+
+    override fun <T> countTime(block: () -> T): T {
+        val startTime = PerformanceCounter.currentTime()
+        val startBytes = threadAllocatedBytes()
+        try {
+            return block()
+        }
+        finally {
+            incrementTime(PerformanceCounter.currentTime() - startTime)
+            incrementAllocatedBytes(threadAllocatedBytes() - startBytes)
+        }
+    }
+}
+
 private class ReenterableCounter(name: String): PerformanceCounter(name) {
     companion object {
         private val enteredCounters = ThreadLocal<MutableSet<ReenterableCounter>>()
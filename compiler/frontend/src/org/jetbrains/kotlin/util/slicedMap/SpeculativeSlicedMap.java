@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.util.slicedMap;
+
+import com.google.common.collect.ImmutableMap;
+import kotlin.jvm.functions.Function0;
+import kotlin.jvm.functions.Function3;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.TestOnly;
+import org.jetbrains.kotlin.storage.SpeculativeEffects;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * A {@link MutableSlicedMap} which keeps values recorded by a computation of a lazy value aside until the computation is complete
+ * (see {@link SpeculativeEffects}). Such values are visible only to the thread running the computation, and are dropped if the
+ * computation is rolled back to be restarted.
+ */
+public class SpeculativeSlicedMap implements MutableSlicedMap {
+    private final MutableSlicedMap delegate;
+
+    private final Function0<Buffer> createBuffer = new Function0<Buffer>() {
+        @Override
+        public Buffer invoke() {
+            return new Buffer();
+        }
+    };
+
+    public SpeculativeSlicedMap(@NotNull MutableSlicedMap delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public <K, V> void put(WritableSlice<K, V> slice, K key, V value) {
+        Buffer buffer = SpeculativeEffects.getBuffer(this, createBuffer);
+        if (buffer != null) {
+            buffer.values.put(slice, key, value);
+        }
+        else {
+            delegate.put(slice, key, value);
+        }
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
+        List<Buffer> buffers = SpeculativeEffects.getBuffers(this);
+        if (buffers.isEmpty()) return delegate.get(slice, key);
+
+        ReadOnlySlice<K, V> rawSlice = slice.makeRawValueVersion();
+        V value = null;
+        for (Buffer buffer : buffers) {
+            value = buffer.values.get(rawSlice, key);
+            if (value != null) break;
+        }
+        if (value == null) {
+            value = delegate.get(rawSlice, key);
+        }
+        return slice.computeValue(this, key, value, value == null);
+    }
+
+    @Override
+    public <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
+        List<Buffer> buffers = SpeculativeEffects.getBuffers(this);
+        if (buffers.isEmpty()) return delegate.getKeys(slice);
+
+        Collection<K> keys = new LinkedHashSet<K>(delegate.getKeys(slice));
+        for (int i = buffers.size() - 1; i >= 0; i--) {
+            keys.addAll(buffers.get(i).values.getKeys(slice));
+        }
+        return new ArrayList<K>(keys);
+    }
+
+    @Override
+    public void forEach(@NotNull Function3<WritableSlice, Object, Object, Void> f) {
+        delegate.forEach(f);
+    }
+
+    @NotNull
+    @TestOnly
+    @Override
+    public <K, V> ImmutableMap<K, V> getSliceContents(@NotNull ReadOnlySlice<K, V> slice) {
+        return delegate.getSliceContents(slice);
+    }
+
+    private class Buffer implements SpeculativeEffects.Buffer {
+        private final SlicedMapImpl values = SlicedMapImpl.create();
+
+        @Override
+        public void commit() {
+            final List<Buffer> outerBuffers = SpeculativeEffects.getBuffers(SpeculativeSlicedMap.this);
+            values.forEach(new Function3<WritableSlice, Object, Object, Void>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Void invoke(WritableSlice slice, Object key, Object value) {
+                    delegate.put(slice, key, value);
+                    // An outer computation which has recorded the same value before should see the new one, as it would without buffers
+                    for (Buffer outer : outerBuffers) {
+                        if (outer.values.get(slice.makeRawValueVersion(), key) != null) {
+                            outer.values.put(slice, key, value);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+}
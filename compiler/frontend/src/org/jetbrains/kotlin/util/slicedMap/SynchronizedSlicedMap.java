@@ -0,0 +1,71 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.util.slicedMap;
+
+import com.google.common.collect.ImmutableMap;
+import kotlin.jvm.functions.Function3;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.TestOnly;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * A {@link MutableSlicedMap} which guards all operations of the delegate with a single lock,
+ * so that a binding trace may be shared by several threads resolving different declarations.
+ */
+public class SynchronizedSlicedMap implements MutableSlicedMap {
+    private final MutableSlicedMap delegate;
+
+    public SynchronizedSlicedMap(@NotNull MutableSlicedMap delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public synchronized <K, V> void put(WritableSlice<K, V> slice, K key, V value) {
+        delegate.put(slice, key, value);
+    }
+
+    @Override
+    public synchronized void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public synchronized <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
+        return delegate.get(slice, key);
+    }
+
+    @Override
+    public synchronized <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
+        // The collection returned by the delegate is a live view, which may be modified by other threads while it's iterated
+        return new ArrayList<K>(delegate.getKeys(slice));
+    }
+
+    @Override
+    public synchronized void forEach(@NotNull Function3<WritableSlice, Object, Object, Void> f) {
+        delegate.forEach(f);
+    }
+
+    @NotNull
+    @TestOnly
+    @Override
+    public synchronized <K, V> ImmutableMap<K, V> getSliceContents(@NotNull ReadOnlySlice<K, V> slice) {
+        return delegate.getSliceContents(slice);
+    }
+}
@@ -0,0 +1,4 @@
+fun a(): Int {
+    val unused = 1
+    return ""
+}
@@ -0,0 +1,3 @@
+class B {
+    val b: Int = ""
+}
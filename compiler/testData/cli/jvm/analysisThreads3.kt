@@ -0,0 +1,4 @@
+fun c() {
+    val x: Int
+    println(x)
+}
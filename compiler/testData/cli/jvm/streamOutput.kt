@@ -0,0 +1,13 @@
+interface I {
+    fun run(): String
+}
+
+class A : I {
+    inner class B
+
+    override fun run() = object : I {
+        override fun run() = "OK"
+    }.run()
+}
+
+fun main(args: Array<String>) = println(A().run())
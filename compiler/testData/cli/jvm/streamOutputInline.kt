@@ -0,0 +1,17 @@
+object Inline {
+    inline fun wrap(crossinline f: () -> String): I = object : I {
+        override fun run() = f()
+    }
+
+    inline fun lazy(crossinline f: () -> String): () -> String = { f() }
+}
+
+interface I {
+    fun run(): String
+}
+
+class Call {
+    fun run() = Inline.wrap { "O" }.run() + Inline.lazy { "K" }()
+}
+
+fun main(args: Array<String>) = println(Call().run())
@@ -0,0 +1,22 @@
+fun sum(n: Int, acc: Int): Int =
+        if (n == 0) acc else sum(n - 1, acc + n)
+
+fun notTail(n: Int): Int =
+        if (n == 0) 0 else 1 + notTail(n - 1)
+
+tailrec fun alreadyTailrec(n: Int): Int =
+        if (n == 0) 0 else alreadyTailrec(n - 1)
+
+fun countdown(n: Int): String = when {
+    n < 0 -> "negative"
+    n == 0 -> "done"
+    else -> countdown(n - 1)
+}
+
+open class A {
+    open fun virtual(n: Int): Int =
+            if (n == 0) 0 else virtual(n - 1)
+
+    fun member(n: Int): Int =
+            if (n == 0) 0 else member(n - 1)
+}
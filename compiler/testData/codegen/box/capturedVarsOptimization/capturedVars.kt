@@ -0,0 +1,57 @@
+// WITH_RUNTIME
+
+inline fun repeatInline(times: Int, action: (Int) -> Unit) {
+    for (i in 0..times - 1) action(i)
+}
+
+fun primitives(): String {
+    var i = 0
+    var l = 0L
+    var d = 0.0
+    var c = 'a'
+    var b = false
+    repeatInline(3) {
+        i += it
+        l += it
+        d += 0.5
+        c++
+        b = !b
+    }
+    return "$i $l $d $c $b"
+}
+
+fun objects(): String {
+    var s = ""
+    var n: Int? = null
+    repeatInline(3) {
+        s += it
+        n = (n ?: 0) + it
+    }
+    return "$s $n"
+}
+
+fun freshInLoop(): String {
+    val lambdas = arrayListOf<() -> Int>()
+    var result = ""
+    repeatInline(3) {
+        var counter = it
+        repeatInline(2) { counter++ }
+        result += counter
+        var escaping = it
+        lambdas.add { escaping++ }
+    }
+    return result + lambdas.map { it() }.joinToString("")
+}
+
+fun box(): String {
+    val p = primitives()
+    if (p != "3 3 1.5 d true") return "fail primitives: $p"
+
+    val o = objects()
+    if (o != "012 3") return "fail objects: $o"
+
+    val f = freshInLoop()
+    if (f != "234012") return "fail freshInLoop: $f"
+
+    return "OK"
+}
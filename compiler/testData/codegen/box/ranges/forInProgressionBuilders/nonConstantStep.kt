@@ -0,0 +1,82 @@
+// WITH_RUNTIME
+
+import kotlin.test.assertEquals
+
+fun collect(progression: Iterable<Int>): List<Int> {
+    val result = arrayListOf<Int>()
+    for (i in progression) {
+        result.add(i)
+    }
+    return result
+}
+
+fun steppedRange(from: Int, to: Int, step: Int): List<Int> {
+    val result = arrayListOf<Int>()
+    for (i in from..to step step) {
+        result.add(i)
+    }
+    return result
+}
+
+fun steppedDownTo(from: Int, to: Int, step: Int): List<Int> {
+    val result = arrayListOf<Int>()
+    for (i in from downTo to step step) {
+        result.add(i)
+    }
+    return result
+}
+
+fun reversedSteppedRange(from: Int, to: Int, step: Int): List<Int> {
+    val result = arrayListOf<Int>()
+    for (i in (from..to step step).reversed()) {
+        result.add(i)
+    }
+    return result
+}
+
+fun steppedProgression(progression: IntProgression, step: Int): List<Int> {
+    val result = arrayListOf<Int>()
+    for (i in progression step step) {
+        result.add(i)
+    }
+    return result
+}
+
+fun steppedLongRange(from: Long, to: Long, step: Long): List<Long> {
+    val result = arrayListOf<Long>()
+    for (i in from..to step step) {
+        result.add(i)
+    }
+    return result
+}
+
+fun box(): String {
+    assertEquals(collect(1..10 step 3), steppedRange(1, 10, 3))
+    assertEquals(listOf(1, 4, 7, 10), steppedRange(1, 10, 3))
+    assertEquals(listOf(10, 7, 4, 1), steppedDownTo(10, 0, 3))
+    assertEquals(listOf(7, 4, 1), reversedSteppedRange(1, 9, 3))
+    assertEquals(listOf<Int>(), steppedRange(10, 1, 2))
+    assertEquals(listOf(Int.MAX_VALUE - 4, Int.MAX_VALUE - 2, Int.MAX_VALUE), steppedRange(Int.MAX_VALUE - 4, Int.MAX_VALUE, 2))
+    assertEquals(listOf(Int.MIN_VALUE + 4, Int.MIN_VALUE + 2, Int.MIN_VALUE), steppedDownTo(Int.MIN_VALUE + 4, Int.MIN_VALUE, 2))
+    assertEquals(listOf(Int.MIN_VALUE, -1, Int.MAX_VALUE - 1), steppedRange(Int.MIN_VALUE, Int.MAX_VALUE, Int.MAX_VALUE))
+    assertEquals(listOf(9, 6, 3), steppedProgression(9 downTo 1, 3))
+    assertEquals(listOf(0L, 5000000000L), steppedLongRange(0L, 9000000000L, 5000000000L))
+
+    try {
+        steppedRange(1, 10, 0)
+        return "Fail: zero step should be rejected"
+    }
+    catch (e: IllegalArgumentException) {
+        assertEquals("Step must be positive, was: 0.", e.message)
+    }
+
+    try {
+        steppedDownTo(10, 1, -1)
+        return "Fail: negative step should be rejected"
+    }
+    catch (e: IllegalArgumentException) {
+        assertEquals("Step must be positive, was: -1.", e.message)
+    }
+
+    return "OK"
+}
@@ -0,0 +1,33 @@
+// WITH_RUNTIME
+
+import kotlin.test.assertEquals
+
+fun box(): String {
+    val range = 1..5
+    val result = arrayListOf<Int>()
+    for (i in range.reversed()) {
+        result.add(i)
+    }
+    assertEquals(listOf(5, 4, 3, 2, 1), result)
+
+    val progression = 1..9 step 4
+    result.clear()
+    for (i in progression.reversed()) {
+        result.add(i)
+    }
+    assertEquals(listOf(9, 5, 1), result)
+
+    result.clear()
+    for (i: Int? in (1..3).reversed()) {
+        result.add(i!!)
+    }
+    assertEquals(listOf(3, 2, 1), result)
+
+    val chars = StringBuilder()
+    for (c in "abc".indices.reversed()) {
+        chars.append("abc"[c])
+    }
+    assertEquals("cba", chars.toString())
+
+    return "OK"
+}
@@ -0,0 +1,50 @@
+// WITH_RUNTIME
+
+import kotlin.test.assertEquals
+
+fun countUntil(from: Int, to: Int): Int {
+    var count = 0
+    for (i in from until to) {
+        count++
+    }
+    return count
+}
+
+fun countUntil(from: Long, to: Long): Int {
+    var count = 0
+    for (i in from until to) {
+        count++
+    }
+    return count
+}
+
+fun countUntil(from: Char, to: Char): Int {
+    var count = 0
+    for (c in from until to) {
+        count++
+    }
+    return count
+}
+
+fun countReversedUntil(from: Int, to: Int): Int {
+    var count = 0
+    for (i in (from until to).reversed()) {
+        count++
+    }
+    return count
+}
+
+fun box(): String {
+    assertEquals(0, countUntil(Int.MIN_VALUE, Int.MIN_VALUE))
+    assertEquals(0, countUntil(0, Int.MIN_VALUE))
+    assertEquals(1, countUntil(Int.MIN_VALUE, Int.MIN_VALUE + 1))
+    assertEquals(1, countUntil(Int.MAX_VALUE - 1, Int.MAX_VALUE))
+    assertEquals(0, countUntil(Long.MIN_VALUE, Long.MIN_VALUE))
+    assertEquals(2, countUntil(Long.MAX_VALUE - 2, Long.MAX_VALUE))
+    assertEquals(0, countUntil('a', '\u0000'))
+    assertEquals(3, countUntil('a', 'd'))
+    assertEquals(0, countReversedUntil(5, Int.MIN_VALUE))
+    assertEquals(5, countReversedUntil(0, 5))
+
+    return "OK"
+}
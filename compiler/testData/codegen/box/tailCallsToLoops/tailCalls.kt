@@ -0,0 +1,35 @@
+// KOTLIN_CONFIGURATION_FLAGS: +JVM.CONVERT_TAIL_CALLS_TO_LOOPS
+
+fun sum(n: Int, acc: Long): Long = if (n == 0) acc else sum(n - 1, acc + n)
+
+fun digits(s: String, i: Int, acc: Int): Int =
+        when {
+            i >= s.length -> acc
+            s[i] in '0'..'9' -> digits(s, i + 1, acc * 10 + (s[i] - '0'))
+            s[i] == '_' -> digits(s, i + 1, acc)
+            else -> -1
+        }
+
+class Parser(val input: String) {
+    fun skip(i: Int, c: Char): Int =
+            when {
+                i >= input.length -> i
+                input[i] == c -> skip(i + 1, c)
+                else -> i
+            }
+
+    fun skipOther(other: Parser, i: Int): Int = if (i == 0) input.length else other.skipOther(this, i - 1)
+}
+
+fun box(): String {
+    if (sum(10000, 0L) != 50005000L) return "Fail sum"
+    if (digits("1_234_567", 0, 0) != 1234567) return "Fail digits"
+    if (digits("12a", 0, 0) != -1) return "Fail digits invalid"
+
+    val parser = Parser("   x")
+    if (parser.skip(0, ' ') != 3) return "Fail skip"
+    if (parser.skip(3, ' ') != 3) return "Fail skip none"
+    if (parser.skipOther(Parser("ab"), 3) != 2) return "Fail skipOther"
+
+    return "OK"
+}
@@ -0,0 +1,51 @@
+sealed class Shape {
+    class Circle : Shape()
+    class Square : Shape()
+    object Point : Shape()
+
+    open class Polygon : Shape()
+    class Triangle : Polygon()
+
+    sealed class Line : Shape() {
+        class Segment : Line()
+        class Ray : Line()
+        class Straight : Line()
+    }
+}
+
+class Outside : Shape()
+
+class Pentagon : Shape.Polygon()
+
+fun name(s: Shape?): String = when (s) {
+    is Shape.Circle -> "circle"
+    is Shape.Square -> "square"
+    is Shape.Point -> "point"
+    is Shape.Polygon -> "polygon"
+    is Shape.Line -> "line"
+    else -> "other"
+}
+
+fun lineName(l: Shape.Line): String = when (l) {
+    is Shape.Line.Segment -> "segment"
+    is Shape.Line.Ray -> "ray"
+    is Shape.Line.Straight -> "straight"
+}
+
+fun box(): String {
+    if (name(Shape.Circle()) != "circle") return "Fail circle"
+    if (name(Shape.Square()) != "square") return "Fail square"
+    if (name(Shape.Point) != "point") return "Fail point"
+    if (name(Shape.Polygon()) != "polygon") return "Fail polygon"
+    if (name(Shape.Triangle()) != "polygon") return "Fail triangle"
+    if (name(Pentagon()) != "polygon") return "Fail pentagon"
+    if (name(Shape.Line.Ray()) != "line") return "Fail line"
+    if (name(Outside()) != "other") return "Fail outside"
+    if (name(null) != "other") return "Fail null"
+
+    if (lineName(Shape.Line.Segment()) != "segment") return "Fail segment"
+    if (lineName(Shape.Line.Ray()) != "ray") return "Fail ray"
+    if (lineName(Shape.Line.Straight()) != "straight") return "Fail straight"
+
+    return "OK"
+}
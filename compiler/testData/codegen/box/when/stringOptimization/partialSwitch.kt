@@ -0,0 +1,35 @@
+// WITH_RUNTIME
+
+import kotlin.test.assertEquals
+
+fun foo(x: String?, y: String): String {
+    return when (x) {
+        y -> "y"
+        "abc", "cde" -> "abc_cde"
+        "abz]", "efg" -> "abz_efg"
+        "aby|", "abc" -> "aby_abc"
+        in setOf("xyz") -> "set"
+        "ghi", "jkl" -> "ghi_jkl"
+        "mno" -> "mno"
+        else -> "other"
+    }
+}
+
+fun box(): String {
+    assert("abz]".hashCode() == "aby|".hashCode())
+
+    assertEquals("y", foo("abc", "abc"))
+    assertEquals("abc_cde", foo("abc", "y"))
+    assertEquals("abc_cde", foo("cde", "y"))
+    assertEquals("abz_efg", foo("abz]", "y"))
+    assertEquals("abz_efg", foo("efg", "y"))
+    assertEquals("aby_abc", foo("aby|", "y"))
+    assertEquals("set", foo("xyz", "y"))
+    assertEquals("ghi_jkl", foo("ghi", "y"))
+    assertEquals("ghi_jkl", foo("jkl", "y"))
+    assertEquals("mno", foo("mno", "y"))
+    assertEquals("other", foo("pqr", "y"))
+    assertEquals("other", foo(null, "y"))
+
+    return "OK"
+}
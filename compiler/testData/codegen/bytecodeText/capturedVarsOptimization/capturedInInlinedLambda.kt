@@ -0,0 +1,19 @@
+inline fun IntArray.forEachElement(action: (Int) -> Unit) {
+    for (element in this) action(element)
+}
+
+fun sum(a: IntArray): Int {
+    var result = 0
+    a.forEachElement { result += it }
+    return result
+}
+
+fun last(a: IntArray): String? {
+    var last: String? = null
+    a.forEachElement { last = it.toString() }
+    return last
+}
+
+// 0 NEW kotlin/jvm/internal/Ref\$
+// 0 GETFIELD kotlin/jvm/internal/Ref\$
+// 0 PUTFIELD kotlin/jvm/internal/Ref\$
@@ -0,0 +1,14 @@
+inline fun runInline(block: () -> Unit) = block()
+
+fun runLater(block: () -> Unit) = block
+
+fun test(): () -> Unit {
+    var escaping = 0
+    var local = 0L
+    runInline { local++ }
+    escaping += local.toInt()
+    return runLater { escaping++ }
+}
+
+// 1 NEW kotlin/jvm/internal/Ref\$IntRef
+// 0 NEW kotlin/jvm/internal/Ref\$LongRef
@@ -0,0 +1,25 @@
+// WITH_RUNTIME
+
+fun test(n: Int, array: IntArray, range: IntRange): Int {
+    var sum = 0
+    for (i in (0..n).reversed()) {
+        sum += i
+    }
+    for (i in (n downTo 0).reversed()) {
+        sum += i
+    }
+    for (i in array.indices.reversed()) {
+        sum += array[i]
+    }
+    for (i in range.reversed()) {
+        sum += i
+    }
+    return sum
+}
+
+// 0 iterator
+// 0 RangesKt.reversed
+// 1 getFirst
+// 1 getLast
+// 0 getStep
+// 0 NEW kotlin/ranges
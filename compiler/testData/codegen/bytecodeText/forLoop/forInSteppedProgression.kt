@@ -0,0 +1,27 @@
+// WITH_RUNTIME
+
+fun test(n: Int, k: Int): Int {
+    var sum = 0
+    for (i in 0..n step 2) {
+        sum += i
+    }
+    for (i in n downTo 0 step 3) {
+        sum += i
+    }
+    for (i in 0 until n step k) {
+        sum += i
+    }
+    for (i in (0..n step 2).reversed()) {
+        sum += i
+    }
+    return sum
+}
+
+// 0 iterator
+// 0 RangesKt.step
+// 0 getFirst
+// 0 getLast
+// 0 getStep
+// 0 NEW kotlin/ranges
+// 4 INVOKESTATIC kotlin/internal/ProgressionUtilKt.getProgressionLastElement
+// 1 NEW java/lang/IllegalArgumentException
@@ -0,0 +1,31 @@
+// WITH_RUNTIME
+
+fun sumInts(n: Int): Int {
+    var sum = 0
+    for (i in 0 until n) {
+        sum += i
+    }
+    return sum
+}
+
+fun sumLongs(n: Long): Long {
+    var sum = 0L
+    for (i in 0L until n) {
+        sum += i
+    }
+    return sum
+}
+
+fun countChars(c: Char): Int {
+    var count = 0
+    for (ch in 'a' until c) {
+        count++
+    }
+    return count
+}
+
+// 0 iterator
+// 0 getFirst
+// 0 getLast
+// 0 RangesKt.until
+// 0 NEW kotlin/ranges
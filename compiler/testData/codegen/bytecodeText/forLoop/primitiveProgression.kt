@@ -2,11 +2,11 @@ fun f() {
     for (i in 0..5 step 2) {
     }
 
-    for (i in 5 downTo 1 step 1) { // suppress optimized code generation for 'for-in-downTo'
+    for (i in 5 downTo 1 step 1) {
     }
 }
 
 // 0 iterator
-// 2 getFirst
-// 2 getLast
-// 2 getStep
\ No newline at end of file
+// 0 getFirst
+// 0 getLast
+// 0 getStep
@@ -3,7 +3,8 @@ fun foo() {
     for (i in 1 until 2) {
     }
 
-    for (i in 1..2 step 4) {}
+    val progression = 1..2 step 4
+    for (i in progression) {}
 }
 
 // 1 INVOKEVIRTUAL kotlin/ranges/IntRange.getFirst \(\)I
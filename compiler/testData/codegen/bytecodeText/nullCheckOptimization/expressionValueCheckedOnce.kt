@@ -0,0 +1,8 @@
+fun test(): Int {
+    val s = System.getProperty("a")
+    val a: String = s
+    val b: String = s
+    return a.length + b.length
+}
+
+// 1 checkExpressionValueIsNotNull
@@ -0,0 +1,8 @@
+fun test(a: String?, b: String): Int {
+    val s = a ?: b
+    if (s == null) return -1
+    return s.length
+}
+
+// 1 checkParameterIsNotNull
+// 1 IF(NON)?NULL
@@ -0,0 +1,10 @@
+fun test(x: Any?): Int {
+    if (x is String) {
+        if (x == null) return -1
+        return x.length
+    }
+    return 0
+}
+
+// 0 IFNULL
+// 0 IFNONNULL
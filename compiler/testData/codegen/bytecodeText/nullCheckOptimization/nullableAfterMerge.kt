@@ -0,0 +1,6 @@
+fun test(a: String?, flag: Boolean): Int {
+    val s = if (flag) "x" else a
+    return if (s != null) s.length else 0
+}
+
+// 1 IF(NON)?NULL
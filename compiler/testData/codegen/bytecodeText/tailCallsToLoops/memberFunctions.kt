@@ -0,0 +1,20 @@
+// KOTLIN_CONFIGURATION_FLAGS: +JVM.CONVERT_TAIL_CALLS_TO_LOOPS
+
+class Parser(val input: String) {
+    fun skipSpaces(i: Int): Int = if (i < input.length && input[i] == ' ') skipSpaces(i + 1) else i
+
+    private fun skipDigits(i: Int): Int = if (i < input.length && input[i] in '0'..'9') skipDigits(i + 1) else i
+
+    fun skipNumber(i: Int): Int = skipDigits(i)
+
+    fun skipOther(other: Parser, i: Int): Int = if (i == 0) i else other.skipOther(this, i - 1)
+}
+
+open class Base {
+    open fun count(n: Int): Int = if (n == 0) 0 else count(n - 1)
+}
+
+// 0 Parser\.skipSpaces \(I\)I
+// 1 Parser\.skipDigits \(I\)I
+// 1 Parser\.skipOther \(LParser;I\)I
+// 1 Base\.count \(I\)I
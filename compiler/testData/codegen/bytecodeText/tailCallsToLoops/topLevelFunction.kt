@@ -0,0 +1,8 @@
+// KOTLIN_CONFIGURATION_FLAGS: +JVM.CONVERT_TAIL_CALLS_TO_LOOPS
+
+fun sum(n: Int, acc: Int): Int = if (n == 0) acc else sum(n - 1, acc + n)
+
+fun factorial(n: Int): Int = if (n <= 1) 1 else n * factorial(n - 1)
+
+// 0 INVOKESTATIC .*\.sum
+// 1 INVOKESTATIC .*\.factorial
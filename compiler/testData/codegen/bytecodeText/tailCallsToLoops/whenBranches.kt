@@ -0,0 +1,18 @@
+// KOTLIN_CONFIGURATION_FLAGS: +JVM.CONVERT_TAIL_CALLS_TO_LOOPS
+
+fun skipBlanks(s: String, i: Int): Int =
+        when {
+            i >= s.length -> i
+            s[i] == ' ' -> skipBlanks(s, i + 1)
+            s[i] == '\t' -> skipBlanks(s, i + 1)
+            else -> i
+        }
+
+fun skipToEnd(s: String, i: Int) {
+    if (i < s.length) {
+        skipToEnd(s, i + 1)
+    }
+}
+
+// 0 INVOKESTATIC .*\.skipBlanks
+// 0 INVOKESTATIC .*\.skipToEnd
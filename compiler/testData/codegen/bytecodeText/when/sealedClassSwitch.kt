@@ -0,0 +1,17 @@
+sealed class Expr {
+    class Const(val value: Int) : Expr()
+    class Neg(val arg: Expr) : Expr()
+    class Sum(val left: Expr, val right: Expr) : Expr()
+    object Zero : Expr()
+}
+
+fun eval(e: Expr): Int = when (e) {
+    is Expr.Const -> e.value
+    is Expr.Neg -> -eval(e.arg)
+    is Expr.Sum -> eval(e.left) + eval(e.right)
+    is Expr.Zero -> 0
+}
+
+// 1 LOOKUPSWITCH
+// 1 INVOKEVIRTUAL Expr.\$sealedSubclassKey\$Expr \(\)I
+// 4 INSTANCEOF
@@ -0,0 +1,37 @@
+// FILE: expr.kt
+
+package expr
+
+sealed class Expr {
+    class A : Expr()
+    class B : Expr()
+    class C : Expr()
+}
+
+fun samePackage(e: Expr) = when (e) {
+    is Expr.A -> 1
+    is Expr.B -> 2
+    is Expr.C -> 3
+}
+
+inline fun inInlineFunction(e: Expr) = when (e) {
+    is Expr.A -> 1
+    is Expr.B -> 2
+    is Expr.C -> 3
+}
+
+// FILE: main.kt
+
+package main
+
+import expr.Expr
+
+fun otherPackage(e: Expr) = when (e) {
+    is Expr.A -> 1
+    is Expr.B -> 2
+    is Expr.C -> 3
+}
+
+// 1 LOOKUPSWITCH
+// 1 INVOKEVIRTUAL expr/Expr.\$sealedSubclassKey\$expr\$Expr \(\)I
+// 9 INSTANCEOF
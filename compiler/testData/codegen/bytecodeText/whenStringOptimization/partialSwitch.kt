@@ -0,0 +1,15 @@
+fun foo(x: String, y: String): Int {
+    return when (x) {
+        y -> 0
+        "abc", "cde" -> 1
+        "efg" -> 2
+        "ghi" -> 3
+        in setOf("jkl") -> 4
+        "mno", "pqr" -> 5
+        else -> -1
+    }
+}
+
+// 1 LOOKUPSWITCH
+// 4 INVOKEVIRTUAL java/lang/String.equals
+// 3 INVOKESTATIC kotlin/jvm/internal/Intrinsics.areEqual
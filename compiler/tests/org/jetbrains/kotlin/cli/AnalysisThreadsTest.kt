@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli
+
+import org.jetbrains.kotlin.cli.common.ExitCode
+import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import java.io.File
+
+class AnalysisThreadsTest : KtUsefulTestCase() {
+    fun testDiagnosticsDoNotDependOnNumberOfThreads() {
+        val tmpdir = KotlinTestUtils.tmpDir(javaClass.simpleName)
+        val sources = (0..FILES - 1).map { i -> File(tmpdir, "file$i.kt").apply { writeText(source(i)) } }
+
+        val (expectedOutput, expectedExitCode) = compile(sources, File(tmpdir, "out1"), 1)
+        assertEquals(expectedOutput, ExitCode.COMPILATION_ERROR, expectedExitCode)
+        assertTrue(expectedOutput, expectedOutput.contains("file${FILES - 1}.kt"))
+
+        // Files are distributed among threads differently each time, so the compilation is repeated a few times
+        for (attempt in 1..3) {
+            val (output, exitCode) = compile(sources, File(tmpdir, "out$attempt"), THREADS)
+            assertEquals(expectedOutput, output)
+            assertEquals(expectedExitCode, exitCode)
+        }
+    }
+
+    private fun compile(sources: List<File>, destination: File, threads: Int) =
+            AbstractCliTest.executeCompilerGrabOutput(K2JVMCompiler(), sources.map { it.path } + listOf(
+                    "-d", destination.path,
+                    "-Xanalysis-threads", threads.toString()
+            ))
+
+    // Every file refers to declarations of the next one, so that their types are resolved from different threads at once
+    private fun source(i: Int): String {
+        val next = (i + 1) % FILES
+        return """
+            package test
+
+            val inferred$i = f$next(0)
+
+            fun f$i(x: Int) = x + $i
+
+            fun g$i(s: String?): Int {
+                val unused = inferred$next
+                var x: Int
+                println(x)
+                return s.length + h$next()
+            }
+
+            class C$i(val p: Int = "") : Base$i() {
+                constructor() : this(undefined$i)
+
+                init {
+                    val a: String = p + f$next(inferred$next)
+                }
+
+                override fun foo(): String = g$next(null)
+            }
+
+            abstract class Base$i {
+                abstract fun foo(): Int
+            }
+            """.trimIndent()
+    }
+
+    companion object {
+        private val FILES = 20
+        private val THREADS = 4
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.cli
+
+import org.jetbrains.kotlin.cli.common.ExitCode
+import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import java.io.File
+
+class NullCheckStatisticsTest : KtUsefulTestCase() {
+    fun testStatisticsOfAllModulesInChunk() {
+        val tmpdir = KotlinTestUtils.tmpDir(javaClass.simpleName)
+        val moduleA = File(tmpdir, "a.kt").apply { writeText("package a\n\nfun length(s: String) = s.length\n") }
+        val moduleB = File(tmpdir, "b.kt").apply { writeText("package b\n\nfun length(s: String) = s.length\n") }
+        val modules = File(tmpdir, "modules.xml")
+        modules.writeText("""
+            <modules>
+                <module name="a" outputDir="${File(tmpdir, "outA").path}" type="java-production">
+                    <sources path="${moduleA.path}"/>
+                </module>
+                <module name="b" outputDir="${File(tmpdir, "outB").path}" type="java-production">
+                    <sources path="${moduleB.path}"/>
+                </module>
+            </modules>
+        """)
+        val statistics = File(tmpdir, "statistics.txt")
+
+        val (output, exitCode) = AbstractCliTest.executeCompilerGrabOutput(K2JVMCompiler(), listOf(
+                "-module", modules.path,
+                "-Xdump-null-check-statistics-to", statistics.path
+        ))
+        assertEquals(output, ExitCode.OK, exitCode)
+
+        // statistics of the second module shouldn't overwrite the ones of the first module
+        val lines = statistics.readLines()
+        assertTrue(lines.joinToString("\n"), lines.any { it.startsWith("a/AKt: ") })
+        assertTrue(lines.joinToString("\n"), lines.any { it.startsWith("b/BKt: ") })
+        assertTrue(lines.last().startsWith("Total: "))
+    }
+}
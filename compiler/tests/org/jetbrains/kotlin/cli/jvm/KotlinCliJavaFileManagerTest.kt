@@ -25,11 +25,15 @@ import org.jetbrains.kotlin.cli.jvm.config.JavaSourceRoot
 import org.jetbrains.kotlin.load.kotlin.JvmVirtualFileFinder
 import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.name.Name
 import org.jetbrains.kotlin.test.ConfigurationKind
 import org.jetbrains.kotlin.test.KotlinTestUtils
 import org.jetbrains.kotlin.test.KotlinTestWithEnvironment
 import org.jetbrains.kotlin.test.TestJdkKind
 import java.io.File
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 
 class KotlinCliJavaFileManagerTest : KotlinTestWithEnvironment() {
@@ -175,6 +179,41 @@ class KotlinCliJavaFileManagerTest : KotlinTestWithEnvironment() {
         TestCase.assertNull("Should not find class in empty scope", manager.findClass("foo.Test", GlobalSearchScope.EMPTY_SCOPE))
     }
 
+    fun testConcurrentSearchesInIndex() {
+        val roots = (1..10).map { i ->
+            val rootDir = KotlinTestUtils.tmpDir("java-file-manager-test-root$i")
+            val packageDir = File(rootDir, "foo/p${i % 3}")
+            packageDir.mkdirs()
+            File(packageDir, "C$i.java").writeText("package foo.p${i % 3};\n\npublic class C$i {}\n")
+            JavaRoot(environment.contentRootToVirtualFile(JavaSourceRoot(rootDir, null))!!, JavaRoot.RootType.SOURCE)
+        }
+        val index = JvmDependenciesIndexImpl(roots)
+
+        val executor = Executors.newFixedThreadPool(4)
+        try {
+            val results = (0..3).map { thread ->
+                executor.submit(Callable {
+                    val order = if (thread % 2 == 0) (1..10).toList() else (1..10).reversed()
+                    // classes D1..D10 don't exist, so the whole package is searched
+                    order.flatMap { i ->
+                        val packageFqName = FqName("foo.p${i % 3}")
+                        listOf(ClassId(packageFqName, Name.identifier("C$i")), ClassId(packageFqName, Name.identifier("D$i")))
+                    }.map { classId ->
+                        index.findClass(classId) { dir, rootType -> dir.findChild(classId.shortClassName.asString() + ".java") }?.name
+                    }.filterNotNull().sorted()
+                })
+            }
+
+            val expected = (1..10).map { "C$it.java" }.sorted()
+            for (result in results) {
+                TestCase.assertEquals(expected, result.get(1, TimeUnit.MINUTES))
+            }
+        }
+        finally {
+            executor.shutdownNow()
+        }
+    }
+
     override fun createEnvironment(): KotlinCoreEnvironment {
         javaFilesDir = KotlinTestUtils.tmpDir("java-file-manager-test")
 
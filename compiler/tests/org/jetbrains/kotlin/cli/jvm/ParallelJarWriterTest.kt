@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.cli.jvm
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.cli.jvm.compiler.ParallelJarWriter
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.util.*
+import java.util.jar.Attributes
+import java.util.jar.JarInputStream
+import java.util.jar.Manifest
+import java.util.zip.ZipEntry
+import java.util.zip.ZipException
+
+class ParallelJarWriterTest : TestCase() {
+    private val entries: Map<String, ByteArray> = (1..500).associate { i ->
+        val content = if (i % 7 == 0) Random(i.toLong()).let { random -> ByteArray(i * 3).apply { random.nextBytes(this) } }
+                      else "class $i ".repeat(i).toByteArray()
+        "foo/Class$i.class" to content
+    }
+
+    fun testCompressed() {
+        val jar = readJar(writeJar(storeOnly = false))
+        assertEquals(entries.keys.toList(), jar.keys.toList())
+        for ((name, content) in entries) {
+            assertTrue(name, Arrays.equals(content, jar[name]))
+        }
+    }
+
+    fun testStoreOnlyIsReproducible() {
+        val bytes = writeJar(storeOnly = true)
+        assertTrue(Arrays.equals(bytes, writeJar(storeOnly = true)))
+
+        JarInputStream(ByteArrayInputStream(bytes)).use { input ->
+            while (true) {
+                val entry = input.nextJarEntry ?: break
+                assertEquals(entry.name, ZipEntry.STORED, entry.method)
+            }
+        }
+        assertEquals(entries.keys.toList(), readJar(bytes).keys.toList())
+    }
+
+    fun testDuplicateEntry() {
+        val writer = ParallelJarWriter(ByteArrayOutputStream(), Manifest(), storeOnly = false)
+        writer.use {
+            writer.add("A.class", ByteArray(10))
+            try {
+                writer.add("A.class", ByteArray(10))
+                fail("Duplicate entry is not reported")
+            }
+            catch (e: ZipException) {
+            }
+        }
+    }
+
+    private fun writeJar(storeOnly: Boolean): ByteArray {
+        val manifest = Manifest()
+        manifest.mainAttributes.putValue(Attributes.Name.MANIFEST_VERSION.toString(), "1.0")
+        manifest.mainAttributes.putValue(Attributes.Name.MAIN_CLASS.toString(), "foo.Class1")
+
+        val output = ByteArrayOutputStream()
+        ParallelJarWriter(output, manifest, storeOnly).use { writer ->
+            for ((name, content) in entries) {
+                writer.add(name, content)
+            }
+        }
+        return output.toByteArray()
+    }
+
+    private fun readJar(bytes: ByteArray): Map<String, ByteArray> {
+        val result = LinkedHashMap<String, ByteArray>()
+        JarInputStream(ByteArrayInputStream(bytes)).use { input ->
+            assertEquals("foo.Class1", input.manifest.mainAttributes.getValue(Attributes.Name.MAIN_CLASS))
+            while (true) {
+                val entry = input.nextJarEntry ?: break
+                result[entry.name] = input.readBytes()
+            }
+        }
+        return result
+    }
+}
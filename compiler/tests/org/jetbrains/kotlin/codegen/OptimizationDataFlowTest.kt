@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.codegen.optimization.DeadCodeEliminationMethodTransformer
+import org.jetbrains.kotlin.codegen.optimization.common.ControlFlowGraph
+import org.jetbrains.kotlin.codegen.optimization.common.analyzeLiveness
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.jetbrains.org.objectweb.asm.tree.*
+
+class OptimizationDataFlowTest : TestCase() {
+    // static int test(int x) { int y = 0; while (x > 0) { y += x; x--; } return y; <dead code> }
+    private fun loopMethod(): MethodNode {
+        val node = MethodNode(Opcodes.ACC_STATIC, "test", "(I)I", null, null)
+        val loop = LabelNode()
+        val exit = LabelNode()
+        with(node.instructions) {
+            add(InsnNode(Opcodes.ICONST_0))
+            add(VarInsnNode(Opcodes.ISTORE, 1))
+            add(loop)
+            add(VarInsnNode(Opcodes.ILOAD, 0))
+            add(JumpInsnNode(Opcodes.IFLE, exit))
+            add(VarInsnNode(Opcodes.ILOAD, 1))
+            add(VarInsnNode(Opcodes.ILOAD, 0))
+            add(InsnNode(Opcodes.IADD))
+            add(VarInsnNode(Opcodes.ISTORE, 1))
+            add(IincInsnNode(0, -1))
+            add(JumpInsnNode(Opcodes.GOTO, loop))
+            add(exit)
+            add(VarInsnNode(Opcodes.ILOAD, 1))
+            add(InsnNode(Opcodes.IRETURN))
+            add(InsnNode(Opcodes.ICONST_1))
+            add(InsnNode(Opcodes.IRETURN))
+        }
+        node.maxLocals = 2
+        node.maxStack = 2
+        return node
+    }
+
+    fun testGraph() {
+        val node = loopMethod()
+        val graph = ControlFlowGraph.build(node)
+
+        assertEquals(listOf(5, 11), graph.getSuccessorsIndices(4).sorted())
+        assertEquals(listOf(1, 10), graph.getPredecessorsIndices(2).sorted())
+        assertTrue(graph.isReachable(13))
+        assertFalse(graph.isReachable(14))
+        assertFalse(graph.isReachable(15))
+    }
+
+    fun testLivenessInLoop() {
+        val node = loopMethod()
+        val frames = analyzeLiveness(node)
+
+        // x is alive through the whole loop, y is dead before its initialization
+        assertTrue(frames[10].isAlive(0))
+        assertTrue(frames[2].isAlive(1))
+        assertFalse(frames[0].isAlive(1))
+        // only y is needed after the loop
+        assertFalse(frames[12].isAlive(0))
+        assertTrue(frames[12].isAlive(1))
+    }
+
+    fun testDeadCodeElimination() {
+        val node = loopMethod()
+        DeadCodeEliminationMethodTransformer().transform("Test", node)
+
+        assertEquals(14, node.instructions.size())
+        assertEquals(Opcodes.IRETURN, node.instructions.last.opcode)
+        assertEquals(Opcodes.ILOAD, node.instructions.last.previous.opcode)
+    }
+}
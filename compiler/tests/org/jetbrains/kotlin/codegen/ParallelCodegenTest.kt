@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.TestJdkKind
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+
+class ParallelCodegenTest : KtUsefulTestCase() {
+    fun testOutputDoesNotDependOnNumberOfThreads() {
+        val sources = (1..PACKAGES_COUNT).map { "p$it.kt" to syntheticPackage(it) }
+        assertEquals(generate(sources, threads = 1), generate(sources, threads = 4))
+    }
+
+    // Anonymous objects of a same-module inline function are generated into the uncommitted batch of each call site
+    fun testInlineFunctionWithObjectLiteralFromOtherPackages() {
+        val inlineFunction = """
+            package inlineFun
+
+            inline fun <T> withRunnable(f: () -> T): T {
+                val r = object : Runnable { override fun run() {} }
+                r.run()
+                val g = { r.hashCode() }
+                g()
+                return f()
+            }
+        """
+        val callers = (1..PACKAGES_COUNT).map {
+            "caller$it.kt" to """
+                package caller$it
+
+                fun call(): Int = inlineFun.withRunnable { $it }
+            """
+        }
+        val sources = listOf("inlineFun.kt" to inlineFunction) + callers
+        assertEquals(generate(sources, threads = 1), generate(sources, threads = 4))
+    }
+
+    private fun generate(sources: List<Pair<String, String>>, threads: Int): Map<String, String> {
+        val configuration = KotlinTestUtils.newConfiguration(ConfigurationKind.JDK_ONLY, TestJdkKind.MOCK_JDK)
+        configuration.put(JVMConfigurationKeys.BACKEND_THREADS, threads)
+        val environment = KotlinCoreEnvironment.createForTests(testRootDisposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES)
+
+        val files = sources.map { KotlinTestUtils.createFile(it.first, it.second, environment.project) }
+        return GenerationUtils.compileFiles(files, environment).factory.createTextForEachFile()
+    }
+
+    private fun syntheticPackage(index: Int): String {
+        val previous = if (index > 1) " + p${index - 1}.top${index - 1}(x)" else ""
+        return """
+            package p$index
+
+            enum class E$index { A, B, C }
+
+            inline fun <T> call$index(f: () -> T): T = f()
+
+            class C$index(val x: Int) {
+                fun f(e: E$index): Int = when (e) {
+                    E$index.A -> call$index { x + $index }
+                    E$index.B -> call$index { object : Runnable { override fun run() {} }.hashCode() }
+                    E$index.C -> { i: Int -> i * x }($index)
+                }
+            }
+
+            fun top$index(x: Int): Int = C$index(x).f(E$index.A)$previous
+        """
+    }
+
+    companion object {
+        private val PACKAGES_COUNT = 16
+    }
+}
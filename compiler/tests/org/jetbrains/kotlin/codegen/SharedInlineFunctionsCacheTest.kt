@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.codegen
+
+import com.intellij.openapi.vfs.impl.ZipHandler
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.cli.jvm.config.addJvmClasspathRoot
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.MockLibraryUtil
+import org.jetbrains.kotlin.test.TestJdkKind
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import org.jetbrains.kotlin.util.PerformanceCounter
+import java.io.File
+import java.io.FileOutputStream
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+class SharedInlineFunctionsCacheTest : KtUsefulTestCase() {
+    fun testCachedFunctionsAreInlinedTheSameWay() {
+        val expected = generate(shareCache = false)
+
+        PerformanceCounter.resetAllCounters()
+        assertEquals(expected, generate(shareCache = true))
+        assertEquals(expected, generate(shareCache = true))
+
+        val report = arrayListOf<String>()
+        PerformanceCounter.report { report.add(it) }
+        val hits = report.single { it.startsWith("Shared inline functions cache hits") }
+        assertFalse("No functions are taken from the cache: $hits", hits.contains(" 0 times"))
+    }
+
+    fun testChangedLibraryJarWithFixedEntryTimeStamps() {
+        val tmpDir = KotlinTestUtils.tmpDir("sharedInlineCache")
+        val libraryJar = File(tmpDir, "library.jar")
+        val callSource = "fun test() = library.value()"
+
+        // the values have the same length, so the changed class file has the same length too
+        buildLibraryWithFixedTimeStamps(tmpDir, "inline fun value() = \"v1\"", libraryJar)
+        val first = generate(shareCache = true, source = callSource, classpath = libraryJar)
+        assertTrue(first.values.joinToString().contains("v1"))
+
+        buildLibraryWithFixedTimeStamps(tmpDir, "inline fun value() = \"v2\"", libraryJar)
+        // opened zip files are shared between environments, the daemon closes them after every compilation too
+        ZipHandler.clearFileAccessorCache()
+
+        val second = generate(shareCache = true, source = callSource, classpath = libraryJar)
+        assertTrue("Inline function from the changed jar is taken from the cache", second.values.joinToString().contains("v2"))
+    }
+
+    private fun buildLibraryWithFixedTimeStamps(tmpDir: File, declaration: String, target: File) {
+        val source = File(tmpDir, "library.kt")
+        source.writeText("package library\n\n$declaration\n")
+        val compiled = MockLibraryUtil.compileLibraryToJar(source.path, "library", false, false)
+
+        // the same as jars written with -Xintermediate-jar or reproducible build tools
+        ZipFile(compiled).use { zip ->
+            ZipOutputStream(FileOutputStream(target)).use { out ->
+                for (entry in zip.entries()) {
+                    out.putNextEntry(ZipEntry(entry.name).apply { time = FIXED_ENTRY_TIME })
+                    zip.getInputStream(entry).use { it.copyTo(out) }
+                    out.closeEntry()
+                }
+            }
+        }
+    }
+
+    private fun generate(shareCache: Boolean): Map<String, String> =
+            generate(shareCache, """
+                fun test(list: List<String>): Map<Int, List<String>> =
+                        list.filter { it.isNotEmpty() }.map { it.toUpperCase() }.groupBy { it.length }
+
+                fun sum(array: IntArray): Int = array.fold(0) { acc, i -> acc + i }
+            """, classpath = null)
+
+    private fun generate(shareCache: Boolean, source: String, classpath: File?): Map<String, String> {
+        val configuration = KotlinTestUtils.newConfiguration(ConfigurationKind.ALL, TestJdkKind.MOCK_JDK)
+        configuration.put(JVMConfigurationKeys.SHARE_INLINE_FUNCTIONS_CACHE, shareCache)
+        if (classpath != null) {
+            configuration.addJvmClasspathRoot(classpath)
+        }
+        val environment = KotlinCoreEnvironment.createForTests(testRootDisposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES)
+
+        val file = KotlinTestUtils.createFile("test.kt", source, environment.project)
+
+        return GenerationUtils.compileFiles(listOf(file), environment).factory.createTextForEachFile()
+    }
+
+    private companion object {
+        // 1980-01-01, the earliest time representable in a zip entry
+        val FIXED_ENTRY_TIME = 315532800000L
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.codegen.state.GenerationState
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.TestJdkKind
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+
+class TrivialMethodInliningTest : KtUsefulTestCase() {
+    fun testAccessorsAreInlinedAndConstantsFolded() {
+        val plain = generate(inlineTrivialMethods = false)
+        val inlined = generate(inlineTrivialMethods = true)
+
+        assertEquals("OK", plain.box())
+        assertEquals("OK", inlined.box())
+
+        val plainText = plain.factory.createText()
+        val inlinedText = inlined.factory.createText()
+        for (accessor in listOf("access\$getCounter\$p", "access\$setCounter\$p", "access\$getPrefix\$cp", "access\$answer")) {
+            assertTrue("$accessor should be generated without the option", accessor in plainText)
+            assertFalse("$accessor should be inlined", accessor in inlinedText)
+        }
+
+        assertTrue("INVOKEVIRTUAL Config.size" in plainText)
+        assertFalse("Call to a final method returning a constant should be folded", "INVOKEVIRTUAL Config.size" in inlinedText)
+
+        // The accessor to an instance method isn't a field access or a static call, so it's kept
+        assertTrue("access\$limit" in inlinedText)
+    }
+
+    private fun GenerationState.box(): String {
+        val classLoader = GeneratedClassLoader(factory, TrivialMethodInliningTest::class.java.classLoader)
+        return classLoader.loadClass("TestKt").getMethod("box").invoke(null) as String
+    }
+
+    private fun generate(inlineTrivialMethods: Boolean): GenerationState {
+        val configuration = KotlinTestUtils.newConfiguration(ConfigurationKind.ALL, TestJdkKind.MOCK_JDK)
+        configuration.put(JVMConfigurationKeys.INLINE_TRIVIAL_METHODS, inlineTrivialMethods)
+        val environment = KotlinCoreEnvironment.createForTests(testRootDisposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES)
+
+        val file = KotlinTestUtils.createFile("test.kt", """
+            class Outer {
+                private var counter = 0
+                private fun limit() = 10
+
+                fun run(): Int {
+                    val increment = { counter++ }
+                    increment()
+                    increment()
+                    val getLimit = { limit() }
+                    return counter + getLimit()
+                }
+
+                companion object {
+                    private val prefix = "O"
+
+                    fun prefix() = prefix
+                }
+            }
+
+            object Config {
+                fun size() = 3
+            }
+
+            private fun answer() = 42
+
+            fun box(): String {
+                val getAnswer = { answer() }
+                if (getAnswer() != 42) return "Fail answer"
+                if (Config.size() != 3) return "Fail size"
+                if (Outer().run() != 12) return "Fail run"
+                return Outer.prefix() + "K"
+            }
+        """, environment.project)
+
+        return GenerationUtils.compileFiles(listOf(file), environment)
+    }
+}
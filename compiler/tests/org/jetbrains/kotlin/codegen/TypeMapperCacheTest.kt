@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.codegen
+
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.TestJdkKind
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import org.jetbrains.kotlin.util.PerformanceCounter
+
+class TypeMapperCacheTest : KtUsefulTestCase() {
+    fun testSignaturesAreTakenFromCache() {
+        PerformanceCounter.resetAllCounters()
+        generate(backendThreads = 1)
+
+        val requests = counter("Type mapper signature cache requests")
+        val misses = counter("Type mapper signature cache misses")
+        assertTrue("Every signature is computed again: $misses misses of $requests requests", misses < requests)
+    }
+
+    fun testParallelBackendGeneratesTheSameCode() {
+        assertEquals(generate(backendThreads = 1), generate(backendThreads = 4))
+    }
+
+    private fun counter(name: String): Int {
+        val report = arrayListOf<String>()
+        PerformanceCounter.report { report.add(it) }
+        return report.single { it.startsWith(name) }.substringAfter(" performed ").substringBefore(" times").toInt()
+    }
+
+    private fun generate(backendThreads: Int): Map<String, String> {
+        val configuration = KotlinTestUtils.newConfiguration(ConfigurationKind.ALL, TestJdkKind.MOCK_JDK)
+        configuration.put(JVMConfigurationKeys.BACKEND_THREADS, backendThreads)
+        val environment = KotlinCoreEnvironment.createForTests(testRootDisposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES)
+
+        val file = KotlinTestUtils.createFile("test.kt", """
+            open class A<T>(val value: T) {
+                open fun get(): T = value
+                fun twice(): List<T> = listOf(get(), get())
+            }
+
+            class B : A<String>("b") {
+                override fun get(): String = super.get() + get(0)
+                fun get(index: Int): String = value.substring(index)
+            }
+
+            fun test(a: A<String>, b: B): String = a.get() + b.get() + b.get(1) + a.twice() + b.twice()
+
+            fun local(): Any {
+                val x = 42
+                class L(val y: Int) {
+                    fun sum() = x + y
+                }
+                return L(1).sum() + L(2).sum()
+            }
+        """, environment.project)
+
+        return GenerationUtils.compileFiles(listOf(file), environment).factory.createTextForEachFile()
+    }
+}
@@ -32,6 +32,7 @@ import java.io.ByteArrayOutputStream
 import java.io.File
 import java.net.URL
 import java.net.URLClassLoader
+import java.rmi.UnmarshalException
 import java.rmi.server.UnicastRemoteObject
 import java.util.concurrent.CountDownLatch
 import java.util.concurrent.Future
@@ -123,6 +124,48 @@ class CompilerDaemonTest : KotlinIntegrationTestBase() {
         }
     }
 
+    fun testOutputStreamingFallback() {
+        withFlagFile(getTestName(true), ".alive") { flagFile ->
+            val daemonOptions = DaemonOptions(runFilesPath = File(tmpdir, getTestName(true)).absolutePath)
+            val daemonJVMOptions = configureDaemonJVMOptions(inheritMemoryLimits = false, inheritAdditionalProperties = false)
+            val backupStreaming = System.getProperty(COMPILE_DAEMON_SOCKET_STREAMING_PROPERTY)
+            try {
+                val missingSource = File(tmpdir, "missing.kt").absolutePath
+                val streamed = compileOnDaemon(flagFile, compilerId, daemonJVMOptions, daemonOptions, missingSource)
+                System.setProperty(COMPILE_DAEMON_SOCKET_STREAMING_PROPERTY, "false")
+                val viaRmi = compileOnDaemon(flagFile, compilerId, daemonJVMOptions, daemonOptions, missingSource)
+
+                assertEquals(viaRmi.resultCode, streamed.resultCode)
+                assertTrue("compiler output is empty", viaRmi.out.contains(missingSource))
+                assertEquals(viaRmi.out, streamed.out)
+            }
+            finally {
+                restoreSystemProperty(COMPILE_DAEMON_SOCKET_STREAMING_PROPERTY, backupStreaming)
+                KotlinCompilerClient.shutdownCompileService(compilerId, daemonOptions)
+            }
+        }
+    }
+
+    fun testOutputStreamingFallbackForOldClients() {
+        // imitates a client compiled before streaming was supported: the daemon gets UnmarshalException for the unknown method
+        val out = ByteArrayOutputStream()
+        val oldClientStream = object : RemoteOutputStream {
+            override fun close() = out.close()
+            override fun write(data: ByteArray, offset: Int, length: Int) = out.write(data, offset, length)
+            override fun write(dataByte: Int) = out.write(dataByte)
+            override fun streamingEndpoint(): StreamingEndpoint? = throw UnmarshalException("unrecognized method hash")
+        }
+
+        val client = RemoteOutputStreamClient(oldClientStream)
+        client.write("compiler ".toByteArray())
+        client.write('o'.toInt())
+        client.write("utput".toByteArray())
+        client.flush()
+        client.disconnect()
+
+        assertEquals("compiler output", out.toString())
+    }
+
     fun testDaemonJvmOptionsParsing() {
         val backupJvmOptions = System.getProperty(COMPILE_DAEMON_JVM_OPTIONS_PROPERTY)
         try {
@@ -151,6 +194,19 @@ class CompilerDaemonTest : KotlinIntegrationTestBase() {
         }
     }
 
+    fun testDaemonResourceOptionsParsing() {
+        val backupOptions = System.getProperty(COMPILE_DAEMON_OPTIONS_PROPERTY)
+        try {
+            System.setProperty(COMPILE_DAEMON_OPTIONS_PROPERTY, "maxParallelCompilations=2,jarCacheMaxRoots=10")
+            val opts = configureDaemonOptions()
+            assertEquals(2, opts.maxParallelCompilations)
+            assertEquals(10, opts.jarCacheMaxRoots)
+        }
+        finally {
+            restoreSystemProperty(COMPILE_DAEMON_OPTIONS_PROPERTY, backupOptions)
+        }
+    }
+
     fun testDaemonInstancesSimple() {
         withFlagFile(getTestName(true), ".alive") { flagFile ->
             val daemonOptions = DaemonOptions(runFilesPath = File(tmpdir, getTestName(true)).absolutePath)
@@ -354,49 +410,90 @@ class CompilerDaemonTest : KotlinIntegrationTestBase() {
     private val PARALLEL_WAIT_TIMEOUT_S = 60L
 
     fun testParallelCompilationOnDaemon() {
-
-        assertTrue(PARALLEL_THREADS_TO_COMPILE <= LoopbackNetworkInterface.SERVER_SOCKET_BACKLOG_SIZE)
-
         withFlagFile(getTestName(true), ".alive") { flagFile ->
             val daemonOptions = DaemonOptions(runFilesPath = File(tmpdir, getTestName(true)).absolutePath)
             val daemonJVMOptions = configureDaemonJVMOptions(inheritMemoryLimits = true, inheritAdditionalProperties = false)
-            val daemon = KotlinCompilerClient.connectToCompileService(compilerId, flagFile, daemonJVMOptions, daemonOptions, DaemonReportingTargets(out = System.err), autostart = true)
-            assertNotNull("failed to connect daemon", daemon)
+            runParallelCompilations(flagFile, daemonJVMOptions, daemonOptions)
+        }
+    }
 
-            val (registry, port) = findPortAndCreateRegistry(10, 16384, 65535)
-            val tracer = SynchronizationTracer(CountDownLatch(1), CountDownLatch(PARALLEL_THREADS_TO_COMPILE), port)
+    private val PARALLEL_COMPILATIONS_LIMIT = 2
 
-            val resultCodes = arrayOfNulls<Int>(PARALLEL_THREADS_TO_COMPILE)
-            val localEndSignal = CountDownLatch(PARALLEL_THREADS_TO_COMPILE)
-            val outStreams = Array(PARALLEL_THREADS_TO_COMPILE, { ByteArrayOutputStream() })
+    fun testParallelCompilationsLimitOnDaemon() {
+        withFlagFile(getTestName(true), ".alive") { flagFile ->
+            val daemonOptions = DaemonOptions(runFilesPath = File(tmpdir, getTestName(true)).absolutePath,
+                                              maxParallelCompilations = PARALLEL_COMPILATIONS_LIMIT)
+            KotlinCompilerClient.shutdownCompileService(compilerId, daemonOptions)
 
-            fun runCompile(threadNo: Int) =
-                    thread {
-                        val jar = tmpdir.absolutePath + File.separator + "hello.$threadNo.jar"
-                        val res = KotlinCompilerClient.compile(
-                                daemon!!,
-                                CompileService.NO_SESSION,
-                                CompileService.TargetPlatform.JVM,
-                                arrayOf("-include-runtime", File(getHelloAppBaseDir(), "hello.kt").absolutePath, "-d", jar),
-                                outStreams[threadNo],
-                                port = port,
-                                operationsTracer = tracer as RemoteOperationsTracer)
-                        synchronized(resultCodes) {
-                            resultCodes[threadNo] = res
-                        }
-                        localEndSignal.countDown()
+            val logFile = createTempFile("kotlin-daemon-test.", ".log")
+            val daemonJVMOptions = configureDaemonJVMOptions("D$COMPILE_DAEMON_LOG_PATH_PROPERTY=\"${logFile.loggerCompatiblePath}\"",
+                                                             inheritMemoryLimits = true, inheritAdditionalProperties = false)
+            try {
+                runParallelCompilations(flagFile, daemonJVMOptions, daemonOptions)
+            }
+            finally {
+                KotlinCompilerClient.shutdownCompileService(compilerId, daemonOptions)
+            }
+
+            var permitsAcquired = 0
+            var waited = false
+            logFile.reader().useLines { lines ->
+                lines.forEach { line ->
+                    if ("waiting for one of" in line) {
+                        waited = true
                     }
+                    "compilation permit acquired, (\\d+) of (\\d+) compilations running".toRegex().find(line)?.let {
+                        permitsAcquired++
+                        assertEquals(PARALLEL_COMPILATIONS_LIMIT, it.groups[2]!!.value.toInt())
+                        assertTrue("Too many compilations are running: $line", it.groups[1]!!.value.toInt() <= PARALLEL_COMPILATIONS_LIMIT)
+                    }
+                }
+            }
+            assertEquals(PARALLEL_THREADS_TO_COMPILE, permitsAcquired)
+            assertTrue("No compilation waited for a permit, see ${logFile.absolutePath}", waited)
+            logFile.delete()
+        }
+    }
+
+    private fun runParallelCompilations(flagFile: File, daemonJVMOptions: DaemonJVMOptions, daemonOptions: DaemonOptions) {
+        assertTrue(PARALLEL_THREADS_TO_COMPILE <= LoopbackNetworkInterface.SERVER_SOCKET_BACKLOG_SIZE)
 
-            (1..PARALLEL_THREADS_TO_COMPILE).forEach { runCompile(it - 1) }
+        val daemon = KotlinCompilerClient.connectToCompileService(compilerId, flagFile, daemonJVMOptions, daemonOptions, DaemonReportingTargets(out = System.err), autostart = true)
+        assertNotNull("failed to connect daemon", daemon)
 
-            tracer.startSignal.countDown()
-            val succeeded = tracer.doneSignal.await(PARALLEL_WAIT_TIMEOUT_S, TimeUnit.SECONDS)
-            assertTrue("parallel compilation failed to complete in $PARALLEL_WAIT_TIMEOUT_S ms, ${tracer.doneSignal.count} unfinished threads", succeeded)
+        val (registry, port) = findPortAndCreateRegistry(10, 16384, 65535)
+        val tracer = SynchronizationTracer(CountDownLatch(1), CountDownLatch(PARALLEL_THREADS_TO_COMPILE), port)
+
+        val resultCodes = arrayOfNulls<Int>(PARALLEL_THREADS_TO_COMPILE)
+        val localEndSignal = CountDownLatch(PARALLEL_THREADS_TO_COMPILE)
+        val outStreams = Array(PARALLEL_THREADS_TO_COMPILE, { ByteArrayOutputStream() })
+
+        fun runCompile(threadNo: Int) =
+                thread {
+                    val jar = tmpdir.absolutePath + File.separator + "hello.$threadNo.jar"
+                    val res = KotlinCompilerClient.compile(
+                            daemon!!,
+                            CompileService.NO_SESSION,
+                            CompileService.TargetPlatform.JVM,
+                            arrayOf("-include-runtime", File(getHelloAppBaseDir(), "hello.kt").absolutePath, "-d", jar),
+                            outStreams[threadNo],
+                            port = port,
+                            operationsTracer = tracer as RemoteOperationsTracer)
+                    synchronized(resultCodes) {
+                        resultCodes[threadNo] = res
+                    }
+                    localEndSignal.countDown()
+                }
 
-            localEndSignal.await(PARALLEL_WAIT_TIMEOUT_S, TimeUnit.SECONDS)
-            (1..PARALLEL_THREADS_TO_COMPILE).forEach {
-                assertEquals("Compilation on thread $it failed:\n${outStreams[it - 1]}", 0, resultCodes[it - 1])
-            }
+        (1..PARALLEL_THREADS_TO_COMPILE).forEach { runCompile(it - 1) }
+
+        tracer.startSignal.countDown()
+        val succeeded = tracer.doneSignal.await(PARALLEL_WAIT_TIMEOUT_S, TimeUnit.SECONDS)
+        assertTrue("parallel compilation failed to complete in $PARALLEL_WAIT_TIMEOUT_S ms, ${tracer.doneSignal.count} unfinished threads", succeeded)
+
+        localEndSignal.await(PARALLEL_WAIT_TIMEOUT_S, TimeUnit.SECONDS)
+        (1..PARALLEL_THREADS_TO_COMPILE).forEach {
+            assertEquals("Compilation on thread $it failed:\n${outStreams[it - 1]}", 0, resultCodes[it - 1])
         }
     }
 
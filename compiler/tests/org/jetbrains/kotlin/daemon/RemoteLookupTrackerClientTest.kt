@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.daemon
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.daemon.common.CompilerCallbackServicesFacade
+import org.jetbrains.kotlin.incremental.components.LookupInfo
+import org.jetbrains.kotlin.incremental.components.Position
+import org.jetbrains.kotlin.incremental.components.ScopeKind
+import java.lang.reflect.Proxy
+import java.util.*
+
+class RemoteLookupTrackerClientTest : TestCase() {
+    private val batches = ArrayList<List<LookupInfo>>()
+    private val onCompilationFinished = ArrayList<() -> Unit>()
+
+    private fun createTracker(requiresPosition: Boolean = false): RemoteLookupTrackerClient {
+        // only the lookup tracker part of the facade is used by the client
+        val facade = Proxy.newProxyInstance(javaClass.classLoader, arrayOf(CompilerCallbackServicesFacade::class.java)) { proxy, method, args ->
+            when (method.name) {
+                "lookupTracker_isDoNothing" -> false
+                "lookupTracker_requiresPosition" -> requiresPosition
+                "lookupTracker_record" -> {
+                    // the client reuses the collection, so it's copied as RMI would do
+                    @Suppress("UNCHECKED_CAST")
+                    batches.add(ArrayList(args[0] as Collection<LookupInfo>))
+                    null
+                }
+                else -> throw UnsupportedOperationException(method.name)
+            }
+        } as CompilerCallbackServicesFacade
+
+        val eventManager = object : EventManger {
+            override fun onCompilationFinished(f: () -> Unit) {
+                onCompilationFinished.add(f)
+            }
+        }
+        return RemoteLookupTrackerClient(facade, eventManager)
+    }
+
+    private fun finishCompilation() {
+        onCompilationFinished.forEach { it() }
+    }
+
+    fun testDuplicatesAreSentOnce() {
+        val tracker = createTracker()
+        for (i in 1..3) {
+            tracker.record("a.kt", Position.NO_POSITION, "foo", ScopeKind.PACKAGE, "bar")
+            tracker.record("a.kt", Position(1, 2), "foo", ScopeKind.PACKAGE, "bar")
+        }
+        finishCompilation()
+
+        assertEquals(listOf(listOf(LookupInfo("a.kt", Position.NO_POSITION, "foo", ScopeKind.PACKAGE, "bar"),
+                                   LookupInfo("a.kt", Position(1, 2), "foo", ScopeKind.PACKAGE, "bar"))),
+                     batches)
+    }
+
+    fun testLookupsDifferingInOnePartAreDistinct() {
+        val tracker = createTracker()
+        val strings = listOf("a", "b", "c", "a.b", "")
+        val expected = LinkedHashSet<LookupInfo>()
+        for (file in strings) {
+            for (scope in strings) {
+                for (scopeKind in ScopeKind.values()) {
+                    for (name in strings) {
+                        tracker.record(file, Position.NO_POSITION, scope, scopeKind, name)
+                        expected.add(LookupInfo(file, Position.NO_POSITION, scope, scopeKind, name))
+                    }
+                }
+            }
+        }
+        finishCompilation()
+
+        assertEquals(expected.toList(), batches.flatten())
+    }
+
+    fun testBatchIsSentWhenNextFileStarts() {
+        val tracker = createTracker()
+        for (i in 0..BATCH_SIZE - 1) {
+            tracker.record("a.kt", Position.NO_POSITION, "foo", ScopeKind.CLASSIFIER, "name$i")
+        }
+        assertEquals("Lookups of a file shouldn't be split between batches", 0, batches.size)
+
+        tracker.record("b.kt", Position.NO_POSITION, "foo", ScopeKind.CLASSIFIER, "name0")
+        assertEquals(1, batches.size)
+        assertEquals(BATCH_SIZE, batches[0].size)
+        assertTrue(batches[0].all { it.filePath == "a.kt" })
+
+        tracker.record("a.kt", Position.NO_POSITION, "foo", ScopeKind.CLASSIFIER, "name0")
+        finishCompilation()
+        assertEquals(listOf(LookupInfo("b.kt", Position.NO_POSITION, "foo", ScopeKind.CLASSIFIER, "name0")), batches[1])
+        assertEquals(2, batches.size)
+    }
+
+    fun testSmallBatchIsSentOnCompilationFinished() {
+        val tracker = createTracker()
+        tracker.record("a.kt", Position.NO_POSITION, "foo", ScopeKind.CLASSIFIER, "x")
+        tracker.record("b.kt", Position.NO_POSITION, "foo", ScopeKind.CLASSIFIER, "y")
+        assertEquals(0, batches.size)
+
+        finishCompilation()
+        assertEquals(1, batches.size)
+        assertEquals(2, batches[0].size)
+    }
+
+    fun testConcurrentRecords() {
+        val tracker = createTracker()
+        val threads = (0..3).map { thread ->
+            Thread {
+                for (i in 0..9999) {
+                    // every lookup is recorded by two threads
+                    tracker.record("file${i % 10}.kt", Position.NO_POSITION, "scope${thread % 2}", ScopeKind.CLASSIFIER, "name$i")
+                }
+            }
+        }
+        threads.forEach { it.start() }
+        threads.forEach { it.join() }
+        finishCompilation()
+
+        val lookups = batches.flatten()
+        assertEquals(2 * 10000, lookups.size)
+        assertEquals(lookups.size, lookups.toSet().size)
+    }
+
+    private companion object {
+        // see RemoteLookupTrackerClient.LOOKUPS_BATCH_SIZE
+        val BATCH_SIZE = 50000
+    }
+}
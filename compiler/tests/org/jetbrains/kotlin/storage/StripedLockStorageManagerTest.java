@@ -0,0 +1,218 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import kotlin.jvm.functions.Function0;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+public class StripedLockStorageManagerTest extends StorageManagerTest {
+    private static final int VALUES_COUNT = 300;
+    private static final int THREADS_COUNT = 8;
+
+    private static final LockBasedStorageManager.ExceptionHandlingStrategy WRAPPING_STRATEGY =
+            new LockBasedStorageManager.ExceptionHandlingStrategy() {
+                @NotNull
+                @Override
+                public RuntimeException handleException(@NotNull Throwable throwable) {
+                    throw new IllegalStateException("Wrapped by strategy", throwable);
+                }
+            };
+
+    @NotNull
+    @Override
+    protected StorageManager createStorageManager() {
+        return new StripedLockStorageManager();
+    }
+
+    public void testNoDeadlocksOnCrossDependentValues() throws Exception {
+        // Only two stripes, so that threads computing unrelated values often need locks held by each other
+        doTestCrossDependentValues(new StripedLockStorageManager(LockBasedStorageManager.ExceptionHandlingStrategy.THROW, 2), false);
+    }
+
+    public void testNoDeadlocksWhenComputationsWrapExceptions() throws Exception {
+        doTestCrossDependentValues(new StripedLockStorageManager(LockBasedStorageManager.ExceptionHandlingStrategy.THROW, 2), true);
+    }
+
+    public void testNoDeadlocksWithWrappingExceptionHandlingStrategy() throws Exception {
+        doTestCrossDependentValues(new StripedLockStorageManager(WRAPPING_STRATEGY, 2), false);
+    }
+
+    public void testDelegatingStorageManagerSharesStripes() throws Exception {
+        StripedLockStorageManager base = new StripedLockStorageManager(LockBasedStorageManager.ExceptionHandlingStrategy.THROW, 2);
+        LockBasedStorageManager delegating = LockBasedStorageManager.createDelegatingWithSameLock(base, WRAPPING_STRATEGY);
+
+        assertTrue("Delegating storage manager should be striped: " + delegating, delegating instanceof StripedLockStorageManager);
+        for (int hash = 0; hash < 16; hash++) {
+            assertSame(base.getLockFor(hash), delegating.getLockFor(hash));
+        }
+
+        doTestCrossDependentValues(delegating, true);
+    }
+
+    public void testEffectsAreCommittedWhenComputationCompletes() {
+        StorageManager storageManager = new StripedLockStorageManager();
+        final List<String> effects = new ArrayList<String>();
+
+        final NotNullLazyValue<String> inner = storageManager.createLazyValue(new Function0<String>() {
+            @Override
+            public String invoke() {
+                recordEffect(effects, "inner");
+                assertEquals(Collections.emptyList(), effects);
+                return "inner";
+            }
+        });
+        NotNullLazyValue<String> outer = storageManager.createLazyValue(new Function0<String>() {
+            @Override
+            public String invoke() {
+                recordEffect(effects, "outer");
+                String result = inner.invoke();
+                // Effects of a completed computation are applied even though the outer one may still be rolled back
+                assertEquals(Collections.singletonList("inner"), effects);
+                assertEquals(1, SpeculativeEffects.<EffectsBuffer>getBuffers(effects).size());
+                return "outer(" + result + ")";
+            }
+        });
+
+        assertEquals("outer(inner)", outer.invoke());
+        assertEquals(Arrays.asList("inner", "outer"), effects);
+
+        recordEffect(effects, "no computation");
+        assertEquals(Arrays.asList("inner", "outer", "no computation"), effects);
+    }
+
+    private static void recordEffect(@NotNull final List<String> effects, @NotNull String effect) {
+        EffectsBuffer buffer = SpeculativeEffects.getBuffer(effects, new Function0<EffectsBuffer>() {
+            @Override
+            public EffectsBuffer invoke() {
+                return new EffectsBuffer(effects);
+            }
+        });
+        if (buffer != null) {
+            buffer.effects.add(effect);
+        }
+        else {
+            effects.add(effect);
+        }
+    }
+
+    private static class EffectsBuffer implements SpeculativeEffects.Buffer {
+        private final List<String> target;
+        private final List<String> effects = new ArrayList<String>();
+
+        private EffectsBuffer(@NotNull List<String> target) {
+            this.target = target;
+        }
+
+        @Override
+        public void commit() {
+            synchronized (target) {
+                target.addAll(effects);
+            }
+        }
+    }
+
+    private static void doTestCrossDependentValues(
+            @NotNull StorageManager storageManager,
+            final boolean wrapExceptions
+    ) throws Exception {
+        // Each value depends on several values with smaller indices, so there are no genuine cycles
+        final List<NotNullLazyValue<Integer>> values = new ArrayList<NotNullLazyValue<Integer>>();
+        // Each computation records its index, which should be applied once even if the computation is restarted
+        final List<String> effects = new ArrayList<String>();
+        Random random = new Random(42);
+        for (int i = 0; i < VALUES_COUNT; i++) {
+            final int index = i;
+            final int[] dependencies = new int[i == 0 ? 0 : 3];
+            for (int j = 0; j < dependencies.length; j++) {
+                dependencies[j] = random.nextInt(i);
+            }
+            values.add(storageManager.createLazyValue(new Function0<Integer>() {
+                @Override
+                public Integer invoke() {
+                    recordEffect(effects, String.valueOf(index));
+                    int result = index;
+                    for (int dependency : dependencies) {
+                        result = (result * 31 + getDependency(dependency)) % 1000003;
+                    }
+                    return result;
+                }
+
+                private int getDependency(int dependency) {
+                    if (!wrapExceptions) return values.get(dependency).invoke();
+
+                    // Imitates code which reports everything it catches in its own exception
+                    try {
+                        return values.get(dependency).invoke();
+                    }
+                    catch (RuntimeException e) {
+                        throw new IllegalStateException("Wrapped by computation of " + index, e);
+                    }
+                    catch (Throwable e) {
+                        throw new IllegalStateException("Wrapped by computation of " + index, e);
+                    }
+                }
+            }));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS_COUNT);
+        try {
+            List<Future<List<Integer>>> results = new ArrayList<Future<List<Integer>>>();
+            for (int t = 0; t < THREADS_COUNT; t++) {
+                final List<Integer> order = new ArrayList<Integer>();
+                for (int i = 0; i < VALUES_COUNT; i++) {
+                    order.add(i);
+                }
+                Collections.shuffle(order, new Random(t));
+
+                results.add(executor.submit(new Callable<List<Integer>>() {
+                    @Override
+                    public List<Integer> call() {
+                        List<Integer> result = new ArrayList<Integer>(Collections.<Integer>nCopies(VALUES_COUNT, null));
+                        for (int i : order) {
+                            result.set(i, values.get(i).invoke());
+                        }
+                        return result;
+                    }
+                }));
+            }
+
+            List<Integer> expected = results.get(0).get(1, TimeUnit.MINUTES);
+            for (Future<List<Integer>> result : results) {
+                assertEquals(expected, result.get(1, TimeUnit.MINUTES));
+            }
+
+            List<String> expectedEffects = new ArrayList<String>();
+            for (int i = 0; i < VALUES_COUNT; i++) {
+                expectedEffects.add(String.valueOf(i));
+            }
+            List<String> actualEffects = new ArrayList<String>(effects);
+            Collections.sort(expectedEffects);
+            Collections.sort(actualEffects);
+            assertEquals(expectedEffects, actualEffects);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
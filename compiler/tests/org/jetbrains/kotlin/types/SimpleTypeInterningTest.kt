@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.types
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.builtins.DefaultBuiltIns
+import org.jetbrains.kotlin.descriptors.CallableDescriptor
+import org.jetbrains.kotlin.descriptors.annotations.Annotations
+import org.jetbrains.kotlin.descriptors.annotations.AnnotationsImpl
+import java.util.*
+
+class SimpleTypeInterningTest : TestCase() {
+    private val builtIns = DefaultBuiltIns.Instance
+
+    private fun listType(argument: KotlinType, annotations: Annotations = Annotations.EMPTY) =
+            KotlinTypeFactory.simpleNotNullType(annotations, builtIns.list, listOf(TypeProjectionImpl(argument)))
+
+    fun testStructurallyIdenticalTypesAreShared() {
+        assertSame(listType(builtIns.intType), listType(builtIns.intType))
+        assertSame(listType(listType(builtIns.stringType)), listType(listType(builtIns.stringType)))
+        assertNotSame(listType(builtIns.intType), listType(builtIns.stringType))
+
+        val type = listType(builtIns.intType)
+        assertSame(type, KotlinTypeFactory.simpleType(Annotations.EMPTY, type.constructor, type.arguments, false))
+    }
+
+    fun testProjectionKindAndNullability() {
+        val invariant = listType(builtIns.intType)
+        val covariant = KotlinTypeFactory.simpleType(
+                Annotations.EMPTY, builtIns.list.typeConstructor, listOf(TypeProjectionImpl(Variance.OUT_VARIANCE, builtIns.intType)), false
+        )
+        assertNotSame(invariant, covariant)
+
+        val nullable = invariant.makeNullableAsSpecified(true)
+        assertTrue(nullable.isMarkedNullable)
+        assertSame(nullable, KotlinTypeFactory.simpleNotNullType(Annotations.EMPTY, builtIns.list, invariant.arguments).makeNullableAsSpecified(true))
+        assertSame(invariant, nullable.makeNullableAsSpecified(false))
+        assertSame(invariant, invariant.makeNullableAsSpecified(false))
+    }
+
+    fun testAnnotatedTypesAreNotShared() {
+        val annotations = AnnotationsImpl(emptyList())
+        assertNotSame(listType(builtIns.intType, annotations), listType(builtIns.intType, annotations))
+        assertNotSame(listType(builtIns.intType), listType(builtIns.intType, annotations))
+    }
+
+    fun testArgumentTypesAreComparedByIdentity() {
+        // equal, but distinct objects: only types built from the same argument types are shared
+        val first = KotlinTypeFactory.simpleType(Annotations.EMPTY, builtIns.string.typeConstructor, emptyList(), false, builtIns.string.unsubstitutedMemberScope)
+        val second = KotlinTypeFactory.simpleType(Annotations.EMPTY, builtIns.string.typeConstructor, emptyList(), false, builtIns.string.unsubstitutedMemberScope)
+        assertEquals(first, second)
+        assertNotSame(listType(first), listType(second))
+        assertEquals(listType(first), listType(second))
+    }
+
+    fun testDeserializedTypesAreShared() {
+        // built-in classes are deserialized, and Int has overloads of operators for each primitive type
+        val types = ArrayList<KotlinType>()
+        for (descriptor in builtIns.int.unsubstitutedMemberScope.getContributedDescriptors()) {
+            if (descriptor is CallableDescriptor) {
+                descriptor.valueParameters.mapTo(types) { it.type }
+                types.add(descriptor.returnType!!)
+            }
+        }
+        val distinct = Collections.newSetFromMap(IdentityHashMap<KotlinType, Boolean>())
+        distinct.addAll(types)
+
+        assertTrue("${distinct.size} distinct instances of ${types.size} types", distinct.size * 4 < types.size)
+
+        val functions = builtIns.int.unsubstitutedMemberScope.getContributedDescriptors().filterIsInstance<CallableDescriptor>()
+        assertSame(functions.first { it.name.asString() == "inc" }.returnType, functions.first { it.name.asString() == "dec" }.returnType)
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.types.checker
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.builtins.DefaultBuiltIns
+import org.jetbrains.kotlin.types.ErrorUtils
+import org.jetbrains.kotlin.types.KotlinType
+import org.jetbrains.kotlin.types.KotlinTypeFactory
+
+class SubtypingCacheTest : TestCase() {
+    private val builtIns = DefaultBuiltIns.Instance
+
+    private fun isSubtypeOf(subtype: KotlinType, supertype: KotlinType) = KotlinTypeChecker.DEFAULT.isSubtypeOf(subtype, supertype)
+
+    fun testRepeatedChecksAreCached() {
+        val cache = SubtypingCache()
+        SubtypingCache.runWith(cache) {
+            repeat(3) {
+                assertTrue(isSubtypeOf(builtIns.intType, builtIns.numberType))
+                assertFalse(isSubtypeOf(builtIns.numberType, builtIns.intType))
+            }
+        }
+        assertEquals(2, cache.misses)
+        assertEquals(4, cache.hits)
+    }
+
+    fun testFlexibleTypes() {
+        val nullableInt = builtIns.intType.makeNullableAsSpecified(true)
+        val flexibleInt = KotlinTypeFactory.flexibleType(builtIns.intType, nullableInt)
+        val cache = SubtypingCache()
+        SubtypingCache.runWith(cache) {
+            repeat(2) {
+                assertTrue(isSubtypeOf(flexibleInt, builtIns.intType))
+                assertTrue(isSubtypeOf(nullableInt, flexibleInt))
+                assertFalse(isSubtypeOf(builtIns.nullableAnyType, flexibleInt))
+            }
+        }
+        assertEquals(3, cache.misses)
+        assertEquals(3, cache.hits)
+    }
+
+    fun testErrorTypesAreNotCached() {
+        val errorType = ErrorUtils.createErrorType("test")
+        val cache = SubtypingCache()
+        SubtypingCache.runWith(cache) {
+            repeat(2) {
+                assertTrue(isSubtypeOf(errorType, builtIns.intType))
+                assertTrue(isSubtypeOf(builtIns.stringType, errorType))
+            }
+        }
+        assertEquals(0, cache.hits + cache.misses)
+    }
+
+    fun testLeastRecentlyUsedResultIsEvicted() {
+        val cache = SubtypingCache(1)
+        SubtypingCache.runWith(cache) {
+            isSubtypeOf(builtIns.intType, builtIns.numberType)
+            isSubtypeOf(builtIns.stringType, builtIns.anyType)
+            isSubtypeOf(builtIns.intType, builtIns.numberType)
+            isSubtypeOf(builtIns.intType, builtIns.numberType)
+        }
+        assertEquals(3, cache.misses)
+        assertEquals(1, cache.hits)
+    }
+
+    fun testCacheIsOnlyUsedInsideRunWith() {
+        val cache = SubtypingCache()
+        SubtypingCache.runWith(cache) {
+            isSubtypeOf(builtIns.intType, builtIns.numberType)
+        }
+        isSubtypeOf(builtIns.intType, builtIns.numberType)
+        assertEquals(1, cache.misses)
+        assertEquals(0, cache.hits)
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.utils
+
+import junit.framework.TestCase
+import java.util.*
+
+class PersistentHashMapTest : TestCase() {
+    // Hash codes of keys collide a lot, so that collision nodes and deep tries are exercised as well
+    private data class Key(val id: Int) {
+        override fun hashCode() = if (id % 3 == 0) 42 else id * 0x9E3779B9.toInt()
+    }
+
+    private fun PersistentHashMap<Key, Int>.assertContents(expected: Map<Key, Int>) {
+        assertEquals(expected, toMap())
+        assertEquals(expected.isEmpty(), isEmpty)
+        for (id in -10..1010) {
+            assertEquals(expected[Key(id)], this[Key(id)])
+        }
+    }
+
+    private fun randomMap(random: Random, size: Int): Pair<PersistentHashMap<Key, Int>, Map<Key, Int>> {
+        var map = PersistentHashMap.empty<Key, Int>()
+        val expected = HashMap<Key, Int>()
+        repeat(size) {
+            val key = Key(random.nextInt(1000))
+            if (random.nextInt(4) == 0) {
+                map = map.remove(key)
+                expected.remove(key)
+            }
+            else {
+                val value = random.nextInt(10)
+                map = map.put(key, value)
+                expected.put(key, value)
+            }
+        }
+        return map to expected
+    }
+
+    fun testPutAndRemove() {
+        val random = Random(0)
+        for (size in listOf(0, 1, 2, 10, 100, 3000)) {
+            val (map, expected) = randomMap(random, size)
+            map.assertContents(expected)
+        }
+    }
+
+    fun testUpdatesAreNotVisibleInOriginal() {
+        val original = PersistentHashMap.empty<Key, Int>().put(Key(1), 1).put(Key(3), 3).put(Key(6), 6)
+        val updated = original.put(Key(1), 10).remove(Key(3)).put(Key(2), 2)
+
+        original.assertContents(mapOf(Key(1) to 1, Key(3) to 3, Key(6) to 6))
+        updated.assertContents(mapOf(Key(1) to 10, Key(2) to 2, Key(6) to 6))
+    }
+
+    fun testUnchangedMapIsReturned() {
+        val value = 1000
+        val map = PersistentHashMap.empty<Key, Int>().put(Key(1), value).put(Key(3), 3)
+        assertSame(map, map.put(Key(1), value))
+        assertSame(map, map.remove(Key(2)))
+        assertSame(map, map.remove(Key(9)))
+    }
+
+    fun testMergeWith() {
+        val random = Random(1)
+        repeat(50) {
+            val (first, expectedFirst) = randomMap(random, random.nextInt(300))
+            val (second, expectedSecond) = randomMap(random, random.nextInt(300))
+
+            val expected = HashMap(expectedFirst)
+            for ((key, value) in expectedSecond) {
+                val mine = expectedFirst[key]
+                if (mine == null || value > mine) expected.put(key, value)
+            }
+
+            first.mergeWith(second) { key, mine, theirs -> if (mine == null || theirs > mine) theirs else null }.assertContents(expected)
+        }
+    }
+
+    fun testRetainKeysOf() {
+        val random = Random(2)
+        repeat(50) {
+            val (first, expectedFirst) = randomMap(random, random.nextInt(300))
+            val (second, expectedSecond) = randomMap(random, random.nextInt(300))
+
+            val expected = HashMap<Key, Int>()
+            for ((key, value) in expectedSecond) {
+                val mine = expectedFirst[key] ?: continue
+                expected.put(key, Math.max(mine, value))
+            }
+
+            first.retainKeysOf(second) { key, mine, theirs -> if (mine == null) null else Math.max(mine, theirs) }.assertContents(expected)
+        }
+    }
+
+    fun testMergeOfDerivedMapsSharesUnchangedParts() {
+        val random = Random(3)
+        val (base, expectedBase) = randomMap(random, 1000)
+        val derived = base.put(Key(5000), 1)
+
+        var calls = 0
+        val merged = base.mergeWith(derived) { key, mine, theirs -> calls++; if (mine == null) theirs else null }
+        merged.assertContents(expectedBase + (Key(5000) to 1))
+        assertTrue("Too many entries were visited: $calls", calls < 20)
+
+        assertSame(derived, derived.mergeWith(base) { key, mine, theirs -> null })
+        assertSame(base, base.retainKeysOf(base) { key, mine, theirs -> theirs })
+    }
+}
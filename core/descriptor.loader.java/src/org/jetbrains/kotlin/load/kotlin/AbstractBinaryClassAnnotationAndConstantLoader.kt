@@ -187,6 +187,10 @@ abstract class AbstractBinaryClassAnnotationAndConstantLoader<A : Any, C : Any,
         return proto.getExtension(JvmProtoBuf.typeAnnotation).map { loadTypeAnnotation(it, nameResolver) }
     }
 
+    override fun hasTypeAnnotations(proto: ProtoBuf.Type): Boolean {
+        return proto.getExtension(JvmProtoBuf.typeAnnotation).isNotEmpty()
+    }
+
     override fun loadTypeParameterAnnotations(proto: ProtoBuf.TypeParameter, nameResolver: NameResolver): List<A> {
         return proto.getExtension(JvmProtoBuf.typeParameterAnnotation).map { loadTypeAnnotation(it, nameResolver) }
     }
@@ -35,13 +35,28 @@ object KotlinTypeFactory {
         }
     }
 
+    @JvmStatic
+    fun simpleType(
+            annotations: Annotations,
+            constructor: TypeConstructor,
+            arguments: List<TypeProjection>,
+            nullable: Boolean
+    ): SimpleType {
+        if (annotations !== Annotations.EMPTY) {
+            return SimpleTypeImpl(annotations, constructor, arguments, nullable, computeMemberScope(constructor, arguments))
+        }
+        return SimpleTypeInterner.intern(constructor, arguments, nullable) {
+            SimpleTypeImpl(annotations, constructor, arguments, nullable, computeMemberScope(constructor, arguments), isInterned = true)
+        }
+    }
+
     @JvmStatic
     fun simpleType(
             annotations: Annotations,
             constructor: TypeConstructor,
             arguments: List<TypeProjection>,
             nullable: Boolean,
-            memberScope: MemberScope = computeMemberScope(constructor, arguments)
+            memberScope: MemberScope
     ): SimpleType = SimpleTypeImpl(annotations, constructor, arguments, nullable, memberScope)
 
     @JvmStatic
@@ -49,7 +64,14 @@ object KotlinTypeFactory {
             annotations: Annotations,
             descriptor: ClassDescriptor,
             arguments: List<TypeProjection>
-    ): SimpleType = SimpleTypeImpl(annotations, descriptor.typeConstructor, arguments, false, descriptor.getMemberScope(arguments))
+    ): SimpleType {
+        if (annotations !== Annotations.EMPTY) {
+            return SimpleTypeImpl(annotations, descriptor.typeConstructor, arguments, false, descriptor.getMemberScope(arguments))
+        }
+        return SimpleTypeInterner.intern(descriptor.typeConstructor, arguments, false) {
+            SimpleTypeImpl(annotations, descriptor.typeConstructor, arguments, false, descriptor.getMemberScope(arguments), isInterned = true)
+        }
+    }
 
     @JvmStatic
     fun simpleType(
@@ -73,10 +95,20 @@ private class SimpleTypeImpl(
         override val constructor: TypeConstructor,
         override val arguments: List<TypeProjection>,
         override val isMarkedNullable: Boolean,
-        override val memberScope: MemberScope
+        override val memberScope: MemberScope,
+        private val isInterned: Boolean = false
 ) : SimpleType() {
     override fun replaceAnnotations(newAnnotations: Annotations) = SimpleTypeImpl(newAnnotations, constructor, arguments, isMarkedNullable, memberScope)
-    override fun makeNullableAsSpecified(newNullability: Boolean) = SimpleTypeImpl(annotations, constructor, arguments, newNullability, memberScope)
+
+    override fun makeNullableAsSpecified(newNullability: Boolean): SimpleType {
+        if (!isInterned) return SimpleTypeImpl(annotations, constructor, arguments, newNullability, memberScope)
+        if (newNullability == isMarkedNullable) return this
+
+        // member scope of an interned type depends only on its constructor and arguments, so it can be shared
+        return SimpleTypeInterner.intern(constructor, arguments, newNullability) {
+            SimpleTypeImpl(annotations, constructor, arguments, newNullability, memberScope, isInterned = true)
+        }
+    }
 
     override val isError: Boolean
         get() = false
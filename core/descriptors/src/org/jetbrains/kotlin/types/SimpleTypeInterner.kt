@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.types
+
+import java.lang.ref.ReferenceQueue
+import java.lang.ref.WeakReference
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Weak canonicalization table for simple types without annotations whose member scope is derived from their constructor and arguments.
+ *
+ * Two such types are the same if they have the same (by identity) constructor and argument types, and equal nullability
+ * and projection kinds. Identity is essential here: type constructors of classes from different modules may be equal by FQ name,
+ * while their member scopes are not. Since argument types are compared by identity as well, nested types are shared bottom-up,
+ * and lazy argument types are never computed.
+ *
+ * Types are held weakly, so the table doesn't retain anything beyond the types which are used elsewhere.
+ */
+internal object SimpleTypeInterner {
+    private class Key(val constructor: TypeConstructor, val arguments: List<TypeProjection>, val nullable: Boolean) {
+        private val hashCode = computeHashCode()
+
+        private fun computeHashCode(): Int {
+            var result = System.identityHashCode(constructor)
+            for (argument in arguments) {
+                result = 31 * result + if (argument.isStarProjection) 0 else
+                    31 * argument.projectionKind.ordinal + System.identityHashCode(argument.type)
+            }
+            return 31 * result + if (nullable) 1 else 0
+        }
+
+        override fun equals(other: Any?): Boolean {
+            if (other !is Key || constructor !== other.constructor || nullable != other.nullable) return false
+            if (arguments.size != other.arguments.size) return false
+
+            for (i in arguments.indices) {
+                val argument = arguments[i]
+                val otherArgument = other.arguments[i]
+                if (argument.isStarProjection != otherArgument.isStarProjection) return false
+                if (!argument.isStarProjection &&
+                    (argument.projectionKind != otherArgument.projectionKind || argument.type !== otherArgument.type)) return false
+            }
+            return true
+        }
+
+        override fun hashCode() = hashCode
+    }
+
+    private class TypeReference(type: SimpleType, val key: Key, queue: ReferenceQueue<SimpleType>) : WeakReference<SimpleType>(type, queue)
+
+    private val types = ConcurrentHashMap<Key, TypeReference>()
+    private val queue = ReferenceQueue<SimpleType>()
+
+    // The type is created outside of the table, because computing its member scope may require locks of a storage manager
+    fun intern(constructor: TypeConstructor, arguments: List<TypeProjection>, nullable: Boolean, create: () -> SimpleType): SimpleType {
+        expungeStaleEntries()
+
+        val key = Key(constructor, arguments, nullable)
+        types[key]?.get()?.let { return it }
+
+        val type = create()
+        val reference = TypeReference(type, key, queue)
+        while (true) {
+            val existing = types.putIfAbsent(key, reference) ?: return type
+            existing.get()?.let { return it }
+            if (types.replace(key, existing, reference)) return type
+        }
+    }
+
+    val size: Int
+        get() {
+            expungeStaleEntries()
+            return types.size
+        }
+
+    private fun expungeStaleEntries() {
+        while (true) {
+            val reference = queue.poll() as TypeReference? ?: return
+            types.remove(reference.key, reference)
+        }
+    }
+}
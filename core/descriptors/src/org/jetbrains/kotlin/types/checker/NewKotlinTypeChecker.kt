@@ -77,8 +77,25 @@ object ErrorTypesAreEqualToAnything : KotlinTypeChecker {
 }
 
 object NewKotlinTypeChecker : KotlinTypeChecker {
-    override fun isSubtypeOf(subtype: KotlinType, supertype: KotlinType): Boolean =
-            TypeCheckerContext(true).run { isSubtypeOf(subtype.unwrap(), supertype.unwrap()) } // todo fix flag errorTypeEqualsToAnything
+    override fun isSubtypeOf(subtype: KotlinType, supertype: KotlinType): Boolean {
+        val subType = subtype.unwrap()
+        val superType = supertype.unwrap()
+
+        val cache = SubtypingCache.getCurrent()
+        if (cache == null || !SubtypingCache.isCacheable(subType) || !SubtypingCache.isCacheable(superType)) {
+            return TypeCheckerContext(true).run { isSubtypeOf(subType, superType) } // todo fix flag errorTypeEqualsToAnything
+        }
+
+        cache.get(subType, superType)?.let { return it }
+
+        val context = TypeCheckerContext(true)
+        val result = context.run { isSubtypeOf(subType, superType) }
+        if (!context.errorTypeEncountered) {
+            cache.put(subType, superType, result)
+        }
+        return result
+    }
+
     override fun equalTypes(a: KotlinType, b: KotlinType): Boolean =
             TypeCheckerContext(false).run { equalTypes(a.unwrap(), b.unwrap()) }
 
@@ -144,6 +161,7 @@ object NewKotlinTypeChecker : KotlinTypeChecker {
 
     private fun TypeCheckerContext.checkSubtypeForSpecialCases(subType: SimpleType, superType: SimpleType): Boolean? {
         if (subType.isError || superType.isError) {
+            errorTypeEncountered = true
             if (errorTypeEqualsToAnything) return true
 
             if (subType.isMarkedNullable && !superType.isMarkedNullable) return false
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.types.checker
+
+import org.jetbrains.kotlin.resolve.calls.inference.CapturedType
+import org.jetbrains.kotlin.resolve.constants.IntegerValueTypeConstructor
+import org.jetbrains.kotlin.types.FlexibleType
+import org.jetbrains.kotlin.types.SimpleType
+import org.jetbrains.kotlin.types.UnwrappedType
+import java.util.*
+
+/**
+ * Bounded memo of [NewKotlinTypeChecker.isSubtypeOf] results, keyed by identity of the (unwrapped) types.
+ *
+ * A cache is meant to live as long as one resolve session: it's installed for the current thread (and threads started from it)
+ * with [runWith] and is simply dropped afterwards, so no type outlives the session because of it.
+ */
+class SubtypingCache @JvmOverloads constructor(private val maxSize: Int = DEFAULT_MAX_SIZE) {
+    private class Key(val subType: UnwrappedType, val superType: UnwrappedType) {
+        override fun equals(other: Any?) = other is Key && subType === other.subType && superType === other.superType
+
+        override fun hashCode() = 31 * System.identityHashCode(subType) + System.identityHashCode(superType)
+    }
+
+    private val results = object : LinkedHashMap<Key, Boolean>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, Boolean>?) = size > maxSize
+    }
+
+    var hits: Int = 0
+        private set
+
+    var misses: Int = 0
+        private set
+
+    @Synchronized
+    internal fun get(subType: UnwrappedType, superType: UnwrappedType): Boolean? {
+        val result = results[Key(subType, superType)]
+        if (result != null) hits++ else misses++
+        return result
+    }
+
+    @Synchronized
+    internal fun put(subType: UnwrappedType, superType: UnwrappedType, result: Boolean) {
+        results[Key(subType, superType)] = result
+    }
+
+    @Synchronized
+    fun clear() {
+        results.clear()
+    }
+
+    override fun toString() = "SubtypingCache: $hits hits, $misses misses"
+
+    companion object {
+        const val DEFAULT_MAX_SIZE = 10000
+
+        private val current = InheritableThreadLocal<SubtypingCache?>()
+
+        internal fun getCurrent(): SubtypingCache? = current.get()
+
+        fun <T> runWith(cache: SubtypingCache, block: () -> T): T {
+            val previous = current.get()
+            current.set(cache)
+            try {
+                return block()
+            }
+            finally {
+                current.set(previous)
+            }
+        }
+
+        // Captured and integer value types are created anew on each call, so they would only pollute the cache
+        internal fun isCacheable(type: UnwrappedType): Boolean = when (type) {
+            is FlexibleType -> isCacheable(type.lowerBound) && isCacheable(type.upperBound)
+            is SimpleType -> !type.isError &&
+                             type !is CapturedType && type !is NewCapturedType &&
+                             type.constructor !is IntegerValueTypeConstructor
+        }
+    }
+}
@@ -24,6 +24,13 @@ import java.util.*
 open class TypeCheckerContext(val errorTypeEqualsToAnything: Boolean) {
     protected var argumentsDepth = 0
 
+    /**
+     * Set when an error type took part in the check, e.g. a placeholder for supertypes which are still being computed.
+     * Such a result may change later, so it's never put into [SubtypingCache].
+     */
+    var errorTypeEncountered = false
+        internal set
+
     private var supertypesLocked = false
     private var supertypesDeque: ArrayDeque<SimpleType>? = null
     private var supertypesSet: MutableSet<SimpleType>? = null
@@ -80,6 +87,10 @@ open class TypeCheckerContext(val errorTypeEqualsToAnything: Boolean) {
                 continue
             }
 
+            if (current.isError) {
+                errorTypeEncountered = true
+            }
+
             if (predicate(current)) {
                 clear()
                 return true
@@ -57,6 +57,9 @@ interface AnnotationAndConstantLoader<out A : Any, out C : Any, out T : Any> {
             nameResolver: NameResolver
     ): List<A>
 
+    // Should be cheap and must not load the annotations: types without annotations are shared by KotlinTypeFactory
+    fun hasTypeAnnotations(proto: ProtoBuf.Type): Boolean = true
+
     fun loadTypeParameterAnnotations(
             proto: ProtoBuf.TypeParameter,
             nameResolver: NameResolver
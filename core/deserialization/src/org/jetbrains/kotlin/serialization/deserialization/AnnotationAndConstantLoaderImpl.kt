@@ -80,6 +80,10 @@ class AnnotationAndConstantLoaderImpl(
         return proto.getExtension(protocol.typeAnnotation).orEmpty().map { deserializer.deserializeAnnotation(it, nameResolver) }
     }
 
+    override fun hasTypeAnnotations(proto: ProtoBuf.Type): Boolean {
+        return proto.getExtension(protocol.typeAnnotation).orEmpty().isNotEmpty()
+    }
+
     override fun loadTypeParameterAnnotations(proto: ProtoBuf.TypeParameter, nameResolver: NameResolver): List<AnnotationDescriptor> {
         return proto.getExtension(protocol.typeParameterAnnotation).orEmpty().map { deserializer.deserializeAnnotation(it, nameResolver) }
     }
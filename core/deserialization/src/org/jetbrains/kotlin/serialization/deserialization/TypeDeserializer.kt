@@ -83,11 +83,16 @@ class TypeDeserializer(
             return ErrorUtils.createErrorTypeWithCustomConstructor(constructor.toString(), constructor)
         }
 
-        val annotations = DeserializedAnnotationsWithPossibleTargets(c.storageManager) {
-            c.components.annotationAndConstantLoader
-                    .loadTypeAnnotations(proto, c.nameResolver)
-                    .map { AnnotationWithTarget(it, null) } + additionalAnnotations.getAllAnnotations()
-        }
+        val annotations =
+                if (additionalAnnotations === Annotations.EMPTY && !c.components.annotationAndConstantLoader.hasTypeAnnotations(proto)) {
+                    // Types without annotations are interned by KotlinTypeFactory
+                    Annotations.EMPTY
+                }
+                else DeserializedAnnotationsWithPossibleTargets(c.storageManager) {
+                    c.components.annotationAndConstantLoader
+                            .loadTypeAnnotations(proto, c.nameResolver)
+                            .map { AnnotationWithTarget(it, null) } + additionalAnnotations.getAllAnnotations()
+                }
 
         fun ProtoBuf.Type.collectAllArguments(): List<ProtoBuf.Type.Argument> =
                 argumentList + outerType(c.typeTable)?.collectAllArguments().orEmpty()
@@ -90,6 +90,10 @@ public class LockBasedStorageManager implements StorageManager {
         this(defaultDebugName(), exceptionHandlingStrategy, new ReentrantLock());
     }
 
+    protected LockBasedStorageManager(@NotNull ExceptionHandlingStrategy exceptionHandlingStrategy, @NotNull Lock lock) {
+        this(defaultDebugName(), exceptionHandlingStrategy, lock);
+    }
+
     private static String defaultDebugName() {
         return "<unknown creating class>";
     }
@@ -206,11 +210,34 @@ public class LockBasedStorageManager implements StorageManager {
 
     @Override
     public <T> T compute(@NotNull Function0<? extends T> computable) {
+        while (true) {
+            try {
+                return doCompute(computable);
+            }
+            catch (StripedLockStorageManager.Backoff backoff) {
+                backoff.retryIfNoLocksHeld();
+            }
+        }
+    }
+
+    private <T> T doCompute(@NotNull Function0<? extends T> computable) {
         lock.lock();
+        boolean effectsStarted = startComputation();
         try {
-            return computable.invoke();
+            T result = computable.invoke();
+            if (effectsStarted) {
+                effectsStarted = false;
+                SpeculativeEffects.finish(true);
+            }
+            return result;
         }
         catch (Throwable throwable) {
+            StripedLockStorageManager.Backoff backoff = StripedLockStorageManager.Backoff.findIn(throwable);
+            if (effectsStarted) {
+                SpeculativeEffects.finish(backoff == null);
+            }
+            if (backoff != null) throw backoff;
+
             throw exceptionHandlingStrategy.handleException(throwable);
         }
         finally {
@@ -218,6 +245,24 @@ public class LockBasedStorageManager implements StorageManager {
         }
     }
 
+    /**
+     * Starts keeping aside side effects of a computation which is about to run in the current thread, see {@link SpeculativeEffects}
+     *
+     * @return whether {@link SpeculativeEffects#finish} should be called when the computation is complete
+     */
+    private boolean startComputation() {
+        return SpeculativeEffects.start(this instanceof StripedLockStorageManager);
+    }
+
+    /**
+     * @param hash identity of a lazy value or of an input of a memoized function
+     * @return the lock which guards computation of the corresponding value
+     */
+    @NotNull
+    protected Lock getLockFor(int hash) {
+        return lock;
+    }
+
     @NotNull
     private static <K> ConcurrentMap<K, Object> createConcurrentHashMap() {
         // memory optimization: fewer segments and entries stored
@@ -298,9 +343,21 @@ public class LockBasedStorageManager implements StorageManager {
             Object _value = value;
             if (!(_value instanceof NotValue)) return WrappedValues.unescapeThrowable(_value);
 
-            storageManager.lock.lock();
+            while (true) {
+                try {
+                    return computeUnderLock();
+                }
+                catch (StripedLockStorageManager.Backoff backoff) {
+                    backoff.retryIfNoLocksHeld();
+                }
+            }
+        }
+
+        private T computeUnderLock() {
+            Lock lock = storageManager.getLockFor(System.identityHashCode(this));
+            lock.lock();
             try {
-                _value = value;
+                Object _value = value;
                 if (!(_value instanceof NotValue)) return WrappedValues.unescapeThrowable(_value);
 
                 if (_value == NotValue.COMPUTING) {
@@ -319,13 +376,29 @@ public class LockBasedStorageManager implements StorageManager {
                 }
 
                 value = NotValue.COMPUTING;
+                boolean effectsStarted = storageManager.startComputation();
                 try {
                     T typedValue = computable.invoke();
+                    if (effectsStarted) {
+                        // Effects are committed before the value is visible to other threads
+                        effectsStarted = false;
+                        SpeculativeEffects.finish(true);
+                    }
                     value = typedValue;
                     postCompute(typedValue);
                     return typedValue;
                 }
                 catch (Throwable throwable) {
+                    StripedLockStorageManager.Backoff backoff = StripedLockStorageManager.Backoff.findIn(throwable);
+                    if (effectsStarted) {
+                        SpeculativeEffects.finish(backoff == null);
+                    }
+                    if (backoff != null) {
+                        // The computation will be restarted from scratch
+                        value = NotValue.NOT_COMPUTED;
+                        throw backoff;
+                    }
+
                     if (value == NotValue.COMPUTING) {
                         // Store only if it's a genuine result, not something thrown through recursionDetected()
                         value = WrappedValues.escapeThrowable(throwable);
@@ -334,7 +407,7 @@ public class LockBasedStorageManager implements StorageManager {
                 }
             }
             finally {
-                storageManager.lock.unlock();
+                lock.unlock();
             }
         }
 
@@ -388,18 +461,38 @@ public class LockBasedStorageManager implements StorageManager {
             Object value = cache.get(input);
             if (value != null && value != NotValue.COMPUTING) return WrappedValues.unescapeExceptionOrNull(value);
 
-            storageManager.lock.lock();
+            while (true) {
+                try {
+                    return computeUnderLock(input);
+                }
+                catch (StripedLockStorageManager.Backoff backoff) {
+                    backoff.retryIfNoLocksHeld();
+                }
+            }
+        }
+
+        @Nullable
+        private V computeUnderLock(K input) {
+            Lock lock = storageManager.getLockFor(31 * System.identityHashCode(cache) + input.hashCode());
+            lock.lock();
             try {
-                value = cache.get(input);
+                Object value = cache.get(input);
                 if (value == NotValue.COMPUTING) {
                     throw recursionDetected(input);
                 }
                 if (value != null) return WrappedValues.unescapeExceptionOrNull(value);
 
                 AssertionError error = null;
+                boolean effectsStarted = false;
                 try {
                     cache.put(input, NotValue.COMPUTING);
+                    effectsStarted = storageManager.startComputation();
                     V typedValue = compute.invoke(input);
+                    if (effectsStarted) {
+                        // Effects are committed before the value is visible to other threads
+                        effectsStarted = false;
+                        SpeculativeEffects.finish(true);
+                    }
                     Object oldValue = cache.put(input, WrappedValues.escapeNull(typedValue));
 
                     // This code effectively asserts that oldValue is null
@@ -414,6 +507,16 @@ public class LockBasedStorageManager implements StorageManager {
                     return typedValue;
                 }
                 catch (Throwable throwable) {
+                    StripedLockStorageManager.Backoff backoff = StripedLockStorageManager.Backoff.findIn(throwable);
+                    if (effectsStarted) {
+                        SpeculativeEffects.finish(backoff == null);
+                    }
+                    if (backoff != null) {
+                        // The computation will be restarted from scratch
+                        cache.remove(input, NotValue.COMPUTING);
+                        throw backoff;
+                    }
+
                     if (throwable == error) throw storageManager.exceptionHandlingStrategy.handleException(throwable);
 
                     Object oldValue = cache.put(input, WrappedValues.escapeThrowable(throwable));
@@ -425,7 +528,7 @@ public class LockBasedStorageManager implements StorageManager {
                 }
             }
             finally {
-                storageManager.lock.unlock();
+                lock.unlock();
             }
         }
 
@@ -478,6 +581,9 @@ public class LockBasedStorageManager implements StorageManager {
             @NotNull LockBasedStorageManager base,
             @NotNull ExceptionHandlingStrategy newStrategy
     ) {
+        if (base instanceof StripedLockStorageManager) {
+            return ((StripedLockStorageManager) base).withExceptionHandling(newStrategy);
+        }
         return new LockBasedStorageManager(defaultDebugName(), newStrategy, base.lock);
     }
 
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import kotlin.jvm.functions.Function0;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Side effects of computations of lazy values and memoized functions which are kept aside until the computation completes.
+ *
+ * A computation of {@link StripedLockStorageManager} may be rolled back to avoid a deadlock and restarted from scratch.
+ * Code which has side effects other than computing other lazy values (e.g. records to a binding trace or reports diagnostics)
+ * puts them into a buffer of the innermost running computation instead of applying them right away, see {@link #getBuffer}.
+ * When the computation completes, normally or with an exception, its buffers are committed before its result becomes
+ * visible to other threads. When it's rolled back, its buffers are discarded, so that the restarted computation
+ * doesn't apply its effects twice.
+ *
+ * Owners of buffers should look into buffers of all running computations (see {@link #getBuffers}) before reading their
+ * own state, so that a computation observes its own effects.
+ */
+public final class SpeculativeEffects {
+    public interface Buffer {
+        /**
+         * Applies effects kept in this buffer. Called in the thread which has run the computation, after the computation is complete
+         * but while the lock guarding its value is still held. At this point {@link #getBuffers} returns buffers of the outer
+         * computations only, which still may be rolled back.
+         */
+        void commit();
+    }
+
+    // Buffers of one computation: owners at even positions, buffers at odd ones
+    private static final class Frame extends ArrayList<Object> {
+        Frame() {
+            super(2);
+        }
+    }
+
+    // Frames of computations running in the current thread, the innermost last. A frame without buffers is null
+    private static final ThreadLocal<ArrayList<Frame>> frames = new ThreadLocal<ArrayList<Frame>>() {
+        @Override
+        protected ArrayList<Frame> initialValue() {
+            return new ArrayList<Frame>();
+        }
+    };
+
+    // Until a restartable computation is started, other computations don't need frames at all
+    private static volatile boolean restartableComputationsStarted = false;
+
+    private SpeculativeEffects() {
+    }
+
+    /**
+     * @return the buffer of the given owner in the innermost computation running in the current thread, which is created by
+     * {@code createBuffer} if there's none, or {@code null} if no computation is running and effects should be applied right away
+     */
+    @Nullable
+    public static <B extends Buffer> B getBuffer(@NotNull Object owner, @NotNull Function0<? extends B> createBuffer) {
+        if (!restartableComputationsStarted) return null;
+
+        ArrayList<Frame> stack = frames.get();
+        int size = stack.size();
+        if (size == 0) return null;
+
+        Frame frame = stack.get(size - 1);
+        if (frame == null) {
+            frame = new Frame();
+            stack.set(size - 1, frame);
+        }
+        else {
+            B buffer = findBuffer(frame, owner);
+            if (buffer != null) return buffer;
+        }
+
+        B buffer = createBuffer.invoke();
+        frame.add(owner);
+        frame.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * @return buffers of the given owner in all computations running in the current thread, the innermost first
+     */
+    @NotNull
+    public static <B extends Buffer> List<B> getBuffers(@NotNull Object owner) {
+        if (!restartableComputationsStarted) return Collections.emptyList();
+
+        ArrayList<Frame> stack = frames.get();
+        List<B> result = null;
+        for (int i = stack.size() - 1; i >= 0; i--) {
+            Frame frame = stack.get(i);
+            if (frame == null) continue;
+
+            B buffer = findBuffer(frame, owner);
+            if (buffer == null) continue;
+
+            if (result == null) {
+                result = new ArrayList<B>(1);
+            }
+            result.add(buffer);
+        }
+        return result != null ? result : Collections.<B>emptyList();
+    }
+
+    @Nullable
+    private static <B extends Buffer> B findBuffer(@NotNull Frame frame, @NotNull Object owner) {
+        for (int i = 0; i < frame.size(); i += 2) {
+            if (frame.get(i) == owner) {
+                //noinspection unchecked
+                return (B) frame.get(i + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Called before a computation is started under its lock.
+     *
+     * @param restartable whether the computation may be rolled back and restarted
+     * @return whether a frame has been started, in which case {@link #finish} must be called when the computation is complete
+     */
+    static boolean start(boolean restartable) {
+        if (restartable) {
+            restartableComputationsStarted = true;
+        }
+        else if (!restartableComputationsStarted) {
+            return false;
+        }
+
+        ArrayList<Frame> stack = frames.get();
+        // Effects of other computations should be kept aside only when they are called from a restartable one,
+        // because their results are stored even if the outer computation is rolled back
+        if (!restartable && stack.isEmpty()) return false;
+
+        stack.add(null);
+        return true;
+    }
+
+    /**
+     * Finishes the innermost frame started by {@link #start}.
+     *
+     * @param commit {@code true} if the computation is complete, {@code false} if it's rolled back
+     */
+    static void finish(boolean commit) {
+        ArrayList<Frame> stack = frames.get();
+        Frame frame = stack.remove(stack.size() - 1);
+        if (frame == null || !commit) return;
+
+        for (int i = 1; i < frame.size(); i += 2) {
+            ((Buffer) frame.get(i)).commit();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A storage manager which guards lazy values and memoized functions with a fixed set of locks chosen by the identity of the value,
+ * instead of a single lock. This allows several threads to resolve unrelated declarations at the same time.
+ *
+ * Recursion detection and exception handling work exactly as in {@link LockBasedStorageManager}, because a value is always
+ * computed under the same lock. Unlike the single lock, several locks may be acquired by different threads in different order.
+ * When a thread is about to wait for a lock owned by a thread which (transitively) waits for a lock owned by the first one,
+ * all computations of the first thread are rolled back to the outermost one, and it's restarted after the other thread is done.
+ * This means that computations may be executed more than once, so any other side effects they have (recording to a binding trace,
+ * reporting diagnostics, recording lookups, etc.) should be put into {@link SpeculativeEffects} buffers, which are committed only
+ * when the computation completes and are discarded when it's rolled back.
+ *
+ * Only locks of this storage manager take part in deadlock detection. Any other lock must not be held while computing a lazy value
+ * or waiting for another thread, i.e. it may only guard short operations on some data structure, as in a synchronized binding trace.
+ * Otherwise a cycle through such a lock would hang forever instead of being broken by a rollback.
+ */
+public class StripedLockStorageManager extends LockBasedStorageManager {
+    private static final int DEFAULT_STRIPES_COUNT = 64;
+
+    private final Lock[] stripes;
+
+    public StripedLockStorageManager() {
+        this(ExceptionHandlingStrategy.THROW, DEFAULT_STRIPES_COUNT);
+    }
+
+    public StripedLockStorageManager(@NotNull ExceptionHandlingStrategy exceptionHandlingStrategy, int stripesCount) {
+        this(exceptionHandlingStrategy, new DeadlockDetectingLock(), createStripes(stripesCount));
+    }
+
+    private StripedLockStorageManager(@NotNull ExceptionHandlingStrategy exceptionHandlingStrategy, @NotNull Lock lock, @NotNull Lock[] stripes) {
+        super(exceptionHandlingStrategy, lock);
+        this.stripes = stripes;
+    }
+
+    @NotNull
+    private static Lock[] createStripes(int stripesCount) {
+        assert Integer.bitCount(stripesCount) == 1 : "Number of stripes should be a power of two: " + stripesCount;
+        Lock[] stripes = new Lock[stripesCount];
+        for (int i = 0; i < stripesCount; i++) {
+            stripes[i] = new DeadlockDetectingLock();
+        }
+        return stripes;
+    }
+
+    /**
+     * @return a storage manager with the given exception handling strategy which shares all locks with this one
+     */
+    @NotNull
+    StripedLockStorageManager withExceptionHandling(@NotNull ExceptionHandlingStrategy exceptionHandlingStrategy) {
+        return new StripedLockStorageManager(exceptionHandlingStrategy, lock, stripes);
+    }
+
+    @NotNull
+    public static StripedLockStorageManager createWithExceptionHandling(@NotNull ExceptionHandlingStrategy exceptionHandlingStrategy) {
+        return new StripedLockStorageManager(exceptionHandlingStrategy, DEFAULT_STRIPES_COUNT);
+    }
+
+    @NotNull
+    @Override
+    protected Lock getLockFor(int hash) {
+        // Spread higher bits to lower ones, because identity hash codes and hash codes of names often differ in higher bits only
+        int h = hash ^ (hash >>> 16);
+        return stripes[(h ^ (h >>> 8)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Thrown when acquiring a lock would lead to a deadlock. It's never stored as a result of a computation:
+     * instead, every computation it passes through is reset to the "not computed" state.
+     *
+     * This is an {@link Error}, so that computations which catch exceptions don't swallow it. It's also looked for among causes
+     * of exceptions thrown from computations, in case some computation wraps everything it catches.
+     */
+    static final class Backoff extends Error {
+        private static final int MAX_CAUSE_DEPTH = 16;
+
+        private final DeadlockDetectingLock awaitedLock;
+
+        private Backoff(@NotNull DeadlockDetectingLock awaitedLock) {
+            super("Backing off to avoid a deadlock on " + awaitedLock);
+            this.awaitedLock = awaitedLock;
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            // This exception is used for control flow only
+            return this;
+        }
+
+        @Nullable
+        static Backoff findIn(@NotNull Throwable throwable) {
+            Throwable current = throwable;
+            // Causes may form a cycle, so the depth is limited
+            for (int depth = 0; current != null && depth < MAX_CAUSE_DEPTH; depth++) {
+                if (current instanceof Backoff) return (Backoff) current;
+                current = current.getCause();
+            }
+            return null;
+        }
+
+        /**
+         * Rethrows this exception if the current thread still holds some locks, otherwise waits until the thread that
+         * owns the awaited lock releases it, so that the computation can be restarted.
+         */
+        void retryIfNoLocksHeld() {
+            if (DeadlockDetectingLock.holdsAnyLock()) throw this;
+
+            awaitedLock.lockWithoutDetection();
+            awaitedLock.unlock();
+        }
+    }
+
+    private static final class DeadlockDetectingLock extends ReentrantLock {
+        private static final long DEADLOCK_CHECK_INTERVAL_MS = 10;
+
+        private static final ConcurrentMap<Thread, DeadlockDetectingLock> waitingThreads =
+                new ConcurrentHashMap<Thread, DeadlockDetectingLock>();
+
+        private static final ThreadLocal<int[]> heldLocksCount = new ThreadLocal<int[]>() {
+            @Override
+            protected int[] initialValue() {
+                return new int[1];
+            }
+        };
+
+        static boolean holdsAnyLock() {
+            return heldLocksCount.get()[0] > 0;
+        }
+
+        @Override
+        public void lock() {
+            if (!tryLock()) {
+                waitForLock();
+            }
+            heldLocksCount.get()[0]++;
+        }
+
+        void lockWithoutDetection() {
+            super.lock();
+            heldLocksCount.get()[0]++;
+        }
+
+        @Override
+        public void unlock() {
+            super.unlock();
+            heldLocksCount.get()[0]--;
+        }
+
+        private void waitForLock() {
+            Thread current = Thread.currentThread();
+            waitingThreads.put(current, this);
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    // Checking periodically, because a cycle may be formed by threads which started waiting after this one
+                    if (isDeadlockedWith(current)) {
+                        throw new Backoff(this);
+                    }
+                    try {
+                        if (tryLock(DEADLOCK_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) return;
+                    }
+                    catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            finally {
+                waitingThreads.remove(current);
+                if (interrupted) {
+                    current.interrupt();
+                }
+            }
+        }
+
+        private boolean isDeadlockedWith(@NotNull Thread current) {
+            DeadlockDetectingLock lock = this;
+            // Other threads may be deadlocked between themselves, so the number of steps is limited to avoid looping forever
+            for (int steps = waitingThreads.size(); steps >= 0; steps--) {
+                Thread owner = lock.getOwner();
+                if (owner == null) return false;
+                if (owner == current) return true;
+
+                lock = waitingThreads.get(owner);
+                if (lock == null) return false;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.utils
+
+/**
+ * An immutable hash map implemented as a hash array mapped trie. Updates return a new map which shares all unchanged subtrees
+ * with the original one, so an update costs O(log n) time and memory instead of a copy of the whole map.
+ * Merging two maps derived from a common ancestor skips the subtrees which they still share.
+ * Iteration order is unspecified.
+ */
+@Suppress("UNCHECKED_CAST")
+class PersistentHashMap<K : Any, V : Any> private constructor(private val root: Node?) {
+    val isEmpty: Boolean
+        get() = root == null
+
+    operator fun get(key: K): V? = root?.get(key, key.hashCode(), 0) as V?
+
+    fun put(key: K, value: V): PersistentHashMap<K, V> = wrap(put(root, Entry(key, value, key.hashCode()), 0))
+
+    fun remove(key: K): PersistentHashMap<K, V> = if (root == null) this else wrap(root.remove(key, key.hashCode(), 0))
+
+    fun forEach(action: (K, V) -> Unit) {
+        root?.forEach { action(it.key as K, it.value as V) }
+    }
+
+    fun toMap(): Map<K, V> {
+        val result = java.util.HashMap<K, V>()
+        forEach { key, value -> result.put(key, value) }
+        return result
+    }
+
+    /**
+     * Returns a map with the keys of both this map and [other]. For each key of [other], [combine] receives the value in this map
+     * (or null if there's none) and the value in [other], and returns the resulting value, or null to leave this map's entry as is.
+     * Keys present only in this map are kept.
+     *
+     * When both values are the same object, [combine] must return either that object or null: subtrees shared by the two maps
+     * are not visited at all.
+     */
+    fun mergeWith(other: PersistentHashMap<K, V>, combine: (K, V?, V) -> V?): PersistentHashMap<K, V> {
+        if (other.root == null) return this
+        return wrap(Merger(true, combine as (Any, Any?, Any) -> Any?).mergeNodes(root, other.root, 0))
+    }
+
+    /**
+     * Returns a map with the keys of [other] only. For each of them [combine] receives the value in this map (or null if there's none)
+     * and the value in [other], and returns the resulting value, or null to leave the key out.
+     * The same restriction on [combine] as in [mergeWith] applies.
+     */
+    fun retainKeysOf(other: PersistentHashMap<K, V>, combine: (K, V?, V) -> V?): PersistentHashMap<K, V> {
+        if (other.root == null) return empty()
+        return wrap(Merger(false, combine as (Any, Any?, Any) -> Any?).mergeNodes(root, other.root, 0))
+    }
+
+    private fun wrap(newRoot: Node?): PersistentHashMap<K, V> = when {
+        newRoot === root -> this
+        newRoot == null -> empty()
+        else -> PersistentHashMap(newRoot)
+    }
+
+    override fun toString() = toMap().toString()
+
+    private class Entry(val key: Any, val value: Any, val hash: Int)
+
+    private abstract class Node {
+        abstract fun get(key: Any, hash: Int, shift: Int): Any?
+
+        abstract fun put(entry: Entry, shift: Int): Node
+
+        abstract fun remove(key: Any, hash: Int, shift: Int): Node?
+
+        abstract fun forEach(action: (Entry) -> Unit)
+    }
+
+    private class BitmapNode(val bitmap: Int, val slots: Array<Any>) : Node() {
+        fun index(bit: Int) = Integer.bitCount(bitmap and (bit - 1))
+
+        override fun get(key: Any, hash: Int, shift: Int): Any? {
+            val bit = bit(hash, shift)
+            if (bitmap and bit == 0) return null
+
+            val slot = slots[index(bit)]
+            if (slot is Entry) {
+                return if (slot.hash == hash && slot.key == key) slot.value else null
+            }
+            return (slot as Node).get(key, hash, shift + BITS)
+        }
+
+        override fun put(entry: Entry, shift: Int): Node {
+            val bit = bit(entry.hash, shift)
+            val index = index(bit)
+            if (bitmap and bit == 0) {
+                val newSlots = arrayOfNulls<Any>(slots.size + 1)
+                System.arraycopy(slots, 0, newSlots, 0, index)
+                newSlots[index] = entry
+                System.arraycopy(slots, index, newSlots, index + 1, slots.size - index)
+                return BitmapNode(bitmap or bit, newSlots as Array<Any>)
+            }
+
+            val slot = slots[index]
+            val newSlot = if (slot is Entry) {
+                if (slot.hash == entry.hash && slot.key == entry.key) {
+                    if (slot.value === entry.value) return this
+                    entry
+                }
+                else createNode(slot, entry, shift + BITS)
+            }
+            else {
+                val newChild = (slot as Node).put(entry, shift + BITS)
+                if (newChild === slot) return this
+                newChild
+            }
+            return BitmapNode(bitmap, slots.copyOf().apply { this[index] = newSlot })
+        }
+
+        override fun remove(key: Any, hash: Int, shift: Int): Node? {
+            val bit = bit(hash, shift)
+            if (bitmap and bit == 0) return this
+
+            val index = index(bit)
+            val slot = slots[index]
+            val newSlot = if (slot is Entry) {
+                if (slot.hash != hash || slot.key != key) return this
+                null
+            }
+            else {
+                val newChild = (slot as Node).remove(key, hash, shift + BITS)
+                if (newChild === slot) return this
+                compact(newChild)
+            }
+
+            if (newSlot != null) {
+                return BitmapNode(bitmap, slots.copyOf().apply { this[index] = newSlot })
+            }
+            if (bitmap == bit) return null
+
+            val newSlots = arrayOfNulls<Any>(slots.size - 1)
+            System.arraycopy(slots, 0, newSlots, 0, index)
+            System.arraycopy(slots, index + 1, newSlots, index, slots.size - index - 1)
+            return BitmapNode(bitmap xor bit, newSlots as Array<Any>)
+        }
+
+        override fun forEach(action: (Entry) -> Unit) {
+            for (slot in slots) {
+                if (slot is Entry) action(slot) else (slot as Node).forEach(action)
+            }
+        }
+    }
+
+    // Entries with the same hash code, only appear below the last level of bitmap nodes
+    private class CollisionNode(val entries: Array<Entry>) : Node() {
+        override fun get(key: Any, hash: Int, shift: Int): Any? = entries.firstOrNull { it.key == key }?.value
+
+        override fun put(entry: Entry, shift: Int): Node {
+            val index = entries.indexOfFirst { it.key == entry.key }
+            if (index < 0) {
+                return CollisionNode(Array(entries.size + 1) { if (it < entries.size) entries[it] else entry })
+            }
+            if (entries[index].value === entry.value) return this
+            return CollisionNode(entries.copyOf().apply { this[index] = entry })
+        }
+
+        override fun remove(key: Any, hash: Int, shift: Int): Node? {
+            val index = entries.indexOfFirst { it.key == key }
+            if (index < 0) return this
+            if (entries.size == 1) return null
+            return CollisionNode(entries.filterIndexed { i, entry -> i != index }.toTypedArray())
+        }
+
+        override fun forEach(action: (Entry) -> Unit) {
+            entries.forEach(action)
+        }
+    }
+
+    private class Merger(private val keepOwn: Boolean, private val combine: (Any, Any?, Any) -> Any?) {
+        fun mergeNodes(mine: Node?, theirs: Node, shift: Int): Node? {
+            if (mine === theirs) return mine
+            if (mine !is BitmapNode || theirs !is BitmapNode) return mergeEntries(mine, theirs, shift)
+
+            val bits = if (keepOwn) mine.bitmap or theirs.bitmap else theirs.bitmap
+            val newSlots = arrayOfNulls<Any>(Integer.bitCount(bits))
+            var newBitmap = 0
+            var count = 0
+            var changed = bits != mine.bitmap
+
+            var remaining = bits
+            while (remaining != 0) {
+                val bit = Integer.lowestOneBit(remaining)
+                remaining = remaining xor bit
+
+                val mySlot = if (mine.bitmap and bit != 0) mine.slots[mine.index(bit)] else null
+                val slot = if (theirs.bitmap and bit != 0) mergeSlots(mySlot, theirs.slots[theirs.index(bit)], shift + BITS) else mySlot
+                if (slot !== mySlot) changed = true
+                if (slot != null) {
+                    newBitmap = newBitmap or bit
+                    newSlots[count++] = slot
+                }
+            }
+
+            if (!changed) return mine
+            if (count == 0) return null
+            return BitmapNode(newBitmap, (if (count == newSlots.size) newSlots else newSlots.copyOf(count)) as Array<Any>)
+        }
+
+        private fun mergeSlots(mine: Any?, theirs: Any, shift: Int): Any? {
+            if (mine === theirs) return mine
+
+            if (mine is Entry && theirs is Entry && mine.hash == theirs.hash && mine.key == theirs.key) {
+                val value = combine(mine.key, mine.value, theirs.value)
+                return when {
+                    value == null -> if (keepOwn) mine else null
+                    value === mine.value -> mine
+                    value === theirs.value -> theirs
+                    else -> Entry(mine.key, value, mine.hash)
+                }
+            }
+
+            return compact(mergeNodes(if (mine != null) asNode(mine, shift) else null, asNode(theirs, shift), shift))
+        }
+
+        private fun mergeEntries(mine: Node?, theirs: Node, shift: Int): Node? {
+            var result = if (keepOwn) mine else null
+            theirs.forEach { entry ->
+                val myValue = mine?.get(entry.key, entry.hash, shift)
+                val value = combine(entry.key, myValue, entry.value)
+                if (value != null && (!keepOwn || value !== myValue)) {
+                    result = put(result, if (value === entry.value) entry else Entry(entry.key, value, entry.hash), shift)
+                }
+            }
+            return result
+        }
+    }
+
+    companion object {
+        private val EMPTY = PersistentHashMap<Any, Any>(null)
+
+        @JvmStatic
+        fun <K : Any, V : Any> empty(): PersistentHashMap<K, V> = EMPTY as PersistentHashMap<K, V>
+
+        private const val BITS = 5
+
+        private const val MAX_SHIFT = 30
+
+        private fun bit(hash: Int, shift: Int) = 1 shl ((hash ushr shift) and 31)
+
+        private fun put(node: Node?, entry: Entry, shift: Int): Node = node?.put(entry, shift) ?: asNode(entry, shift)
+
+        // A slot of a node is either an entry or a child node
+        private fun asNode(slot: Any, shift: Int): Node = when {
+            slot is Node -> slot
+            shift > MAX_SHIFT -> CollisionNode(arrayOf(slot as Entry))
+            else -> BitmapNode(bit((slot as Entry).hash, shift), arrayOf(slot))
+        }
+
+        private fun compact(node: Node?): Any? = when {
+            node is BitmapNode && node.slots.size == 1 && node.slots[0] is Entry -> node.slots[0]
+            node is CollisionNode && node.entries.size == 1 -> node.entries[0]
+            else -> node
+        }
+
+        private fun createNode(first: Entry, second: Entry, shift: Int): Node {
+            if (shift > MAX_SHIFT) return CollisionNode(arrayOf(first, second))
+
+            val firstIndex = (first.hash ushr shift) and 31
+            val secondIndex = (second.hash ushr shift) and 31
+            return when {
+                firstIndex == secondIndex -> BitmapNode(bit(first.hash, shift), arrayOf(createNode(first, second, shift + BITS)))
+                firstIndex < secondIndex -> BitmapNode(bit(first.hash, shift) or bit(second.hash, shift), arrayOf(first, second))
+                else -> BitmapNode(bit(first.hash, shift) or bit(second.hash, shift), arrayOf(second, first))
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2010-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.jps.incremental
+
+import com.intellij.testFramework.UsefulTestCase
+import com.intellij.util.io.EnumeratorStringDescriptor
+import org.jetbrains.kotlin.incremental.storage.IntCollectionExternalizer
+import org.jetbrains.kotlin.incremental.storage.MappedFileStorage
+import org.jetbrains.kotlin.incremental.storage.StringCollectionExternalizer
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import java.io.File
+import java.io.IOException
+
+class MappedFileStorageTest : UsefulTestCase() {
+    private lateinit var storageFile: File
+
+    override fun setUp() {
+        super.setUp()
+        storageFile = File(KotlinTestUtils.tmpDir("mappedStorage"), "test.tab")
+    }
+
+    private fun createStringStorage() =
+            MappedFileStorage(storageFile, EnumeratorStringDescriptor.INSTANCE, StringCollectionExternalizer)
+
+    fun testNoFileUntilFirstWrite() {
+        val storage = createStringStorage()
+        assertNull(storage["a"])
+        assertEmpty(storage.keys)
+        storage.close()
+        assertFalse(storageFile.parentFile.listFiles().any())
+    }
+
+    fun testSetGetRemove() {
+        val storage = createStringStorage()
+        storage["a"] = listOf("1", "2")
+        storage["b"] = listOf("3")
+        storage["a"] = listOf("4")
+        storage.remove("b")
+
+        assertEquals(setOf("4"), storage["a"]!!.toSet())
+        assertFalse("b" in storage)
+        assertEquals(listOf("a"), storage.keys.toList())
+    }
+
+    fun testAppend() {
+        val storage = MappedFileStorage(storageFile, EnumeratorStringDescriptor.INSTANCE, IntCollectionExternalizer)
+        storage.append("a", 1)
+        storage.flush(memoryCachesOnly = false)
+        storage.append("a", 2)
+        storage.append("b", 3)
+
+        assertEquals(setOf(1, 2), storage["a"])
+        assertEquals(setOf(3), storage["b"])
+    }
+
+    fun testReopen() {
+        val storage = createStringStorage()
+        storage.append("a", "x")
+        storage["b"] = listOf("y")
+        storage.flush(memoryCachesOnly = false)
+        storage.append("a", "z")
+        storage.remove("b")
+        storage.close()
+
+        val reopened = createStringStorage()
+        assertEquals(setOf("x", "z"), reopened["a"])
+        assertNull(reopened["b"])
+        reopened.close()
+    }
+
+    fun testTruncatedRecordIsDropped() {
+        val storage = createStringStorage()
+        storage["a"] = listOf("x")
+        storage["b"] = listOf("y")
+        storage.close()
+
+        val logFile = storageFile.parentFile.listFiles().single()
+        logFile.writeBytes(logFile.readBytes().let { it.copyOf(it.size - 1) })
+
+        val reopened = createStringStorage()
+        assertEquals(setOf("x"), reopened["a"])
+        assertNull(reopened["b"])
+        reopened["c"] = listOf("z")
+        reopened.close()
+
+        assertEquals(setOf("a", "c"), createStringStorage().keys.toSet())
+    }
+
+    fun testLogTruncatedAtAnyOffsetIsRecovered() {
+        val storage = createStringStorage()
+        storage["a"] = listOf("x")
+        storage.remove("a")
+        storage["b"] = listOf("y")
+        storage.close()
+
+        val logFile = storageFile.parentFile.listFiles().single()
+        val bytes = logFile.readBytes()
+        for (size in HEADER_SIZE..bytes.size - 1) {
+            logFile.writeBytes(bytes.copyOf(size))
+
+            val reopened = createStringStorage()
+            assertNull(reopened["b"])
+            reopened["c"] = listOf("z")
+            reopened.close()
+
+            val reopenedAgain = createStringStorage()
+            assertEquals(setOf("z"), reopenedAgain["c"])
+            assertNull(reopenedAgain["b"])
+            reopenedAgain.close()
+        }
+    }
+
+    fun testCompaction() {
+        val storage = createStringStorage()
+        for (i in 0..9999) {
+            storage["key${i % 10}"] = listOf("value$i")
+        }
+        storage.close()
+
+        val logFile = storageFile.parentFile.listFiles().single()
+        assertTrue("Log is not compacted: ${logFile.length()} bytes", logFile.length() < 1024)
+
+        val reopened = createStringStorage()
+        for (i in 0..9) {
+            assertEquals(setOf("value${9990 + i}"), reopened["key$i"])
+        }
+        reopened.close()
+    }
+
+    fun testManyAppends() {
+        val storage = MappedFileStorage(storageFile, EnumeratorStringDescriptor.INSTANCE, IntCollectionExternalizer)
+        for (i in 0..9999) {
+            storage.append("a", i)
+        }
+        storage["b"] = listOf(1)
+        assertEquals((0..9999).toSet(), storage["a"])
+        storage.close()
+
+        val reopened = MappedFileStorage(storageFile, EnumeratorStringDescriptor.INSTANCE, IntCollectionExternalizer)
+        assertEquals((0..9999).toSet(), reopened["a"])
+        reopened.close()
+    }
+
+    fun testCorruptedRecordSize() {
+        val storage = createStringStorage()
+        storage["a"] = listOf("x")
+        storage.close()
+
+        // the key size of the first record, which follows its kind
+        val logFile = storageFile.parentFile.listFiles().single()
+        val bytes = logFile.readBytes()
+        for (i in HEADER_SIZE + 1..HEADER_SIZE + 4) {
+            bytes[i] = 0xFF.toByte()
+        }
+        logFile.writeBytes(bytes)
+
+        try {
+            createStringStorage()["a"]
+            fail("Corrupted log should not be loaded")
+        }
+        catch (e: IOException) {
+            // expected
+        }
+    }
+
+    private companion object {
+        val HEADER_SIZE = 8
+    }
+}